@@ -0,0 +1,156 @@
+/*******************************************************************************
+ *  The MIT License (MIT)
+ *
+ *  Copyright (c) 2015 - 2019  Dr. Marc Mültin (V2G Clarity)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ *******************************************************************************/
+package com.v2gclarity.risev2g.benchmark;
+
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.Signature;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.v2gclarity.risev2g.shared.utils.JcaEngines;
+
+/**
+ * Compares the costs of the digest, sign and verify steps of the V2G message signatures (see SecurityUtils) with 
+ * a JCA engine looked up via getInstance() for each operation (the "lookup" benchmarks, as done before) and with 
+ * the engines reused per thread by JcaEngines (the "cached" benchmarks).
+ * 
+ * The provider lookup mostly hurts under contention, so run the benchmarks with several threads as well, e.g.
+ * 
+ * java -jar target/benchmarks.jar XmlSignatureBenchmark -t 4
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class XmlSignatureBenchmark {
+	
+	/*
+	 * Typical sizes of the EXI encoded fragments: a message body element (e.g. a MeteringReceiptReq) to be 
+	 * digested and the SignedInfo element to be signed
+	 */
+	private byte[] exiEncodedBody;
+	private byte[] exiEncodedSignedInfo;
+	private ECPrivateKey privateKey;
+	private ECPublicKey publicKey;
+	private byte[] derEncodedSignature;
+	private byte[] pkcs8EncodedPrivateKey;
+	
+	@Setup
+	public void setUp() throws Exception {
+		Random random = new Random(15118);
+		
+		exiEncodedBody = new byte[120];
+		random.nextBytes(exiEncodedBody);
+		exiEncodedSignedInfo = new byte[90];
+		random.nextBytes(exiEncodedSignedInfo);
+		
+		KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("EC");
+		keyPairGenerator.initialize(new ECGenParameterSpec("secp256r1"));
+		KeyPair keyPair = keyPairGenerator.generateKeyPair();
+		privateKey = (ECPrivateKey) keyPair.getPrivate();
+		publicKey = (ECPublicKey) keyPair.getPublic();
+		pkcs8EncodedPrivateKey = privateKey.getEncoded();
+		
+		Signature ecdsa = Signature.getInstance("SHA256withECDSA", "SunEC");
+		ecdsa.initSign(privateKey);
+		ecdsa.update(exiEncodedSignedInfo);
+		derEncodedSignature = ecdsa.sign();
+	}
+	
+	
+	@Benchmark
+	public byte[] digestLookup() throws Exception {
+		return MessageDigest.getInstance("SHA-256").digest(exiEncodedBody);
+	}
+	
+	@Benchmark
+	public byte[] digestCached() throws Exception {
+		return JcaEngines.getSHA256MessageDigest().digest(exiEncodedBody);
+	}
+	
+	
+	@Benchmark
+	public byte[] signLookup() throws Exception {
+		Signature ecdsa = Signature.getInstance("SHA256withECDSA", "SunEC");
+		ecdsa.initSign(privateKey);
+		ecdsa.update(exiEncodedSignedInfo);
+		return ecdsa.sign();
+	}
+	
+	@Benchmark
+	public byte[] signCached() throws Exception {
+		Signature ecdsa = JcaEngines.getSHA256withECDSASignatureSunEC();
+		ecdsa.initSign(privateKey);
+		ecdsa.update(exiEncodedSignedInfo);
+		return ecdsa.sign();
+	}
+	
+	
+	@Benchmark
+	public boolean verifyLookup() throws Exception {
+		Signature ecdsa = Signature.getInstance("SHA256withECDSA");
+		ecdsa.initVerify(publicKey);
+		ecdsa.update(exiEncodedSignedInfo);
+		return ecdsa.verify(derEncodedSignature);
+	}
+	
+	@Benchmark
+	public boolean verifyCached() throws Exception {
+		Signature ecdsa = JcaEngines.getSHA256withECDSASignature();
+		ecdsa.initVerify(publicKey);
+		ecdsa.update(exiEncodedSignedInfo);
+		return ecdsa.verify(derEncodedSignature);
+	}
+	
+	
+	@Benchmark
+	public Object keyFactoryLookup() throws Exception {
+		return KeyFactory.getInstance("EC").generatePrivate(new PKCS8EncodedKeySpec(pkcs8EncodedPrivateKey));
+	}
+	
+	@Benchmark
+	public Object keyFactoryCached() throws Exception {
+		return JcaEngines.getECKeyFactory().generatePrivate(new PKCS8EncodedKeySpec(pkcs8EncodedPrivateKey));
+	}
+}
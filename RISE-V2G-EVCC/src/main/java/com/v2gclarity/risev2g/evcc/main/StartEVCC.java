@@ -31,7 +31,10 @@ public class StartEVCC {
 
 	public static void main(String[] args) {
 		MiscUtils.loadProperties(GlobalValues.EVCC_CONFIG_PROPERTIES_PATH.toString());
-		new V2GCommunicationSessionHandlerEVCC();
+		V2GCommunicationSessionHandlerEVCC sessionHandler = new V2GCommunicationSessionHandlerEVCC();
+		
+		// The TCP/TLS client may run on a virtual thread which does not keep the JVM alive (see property 'transport.threads')
+		sessionHandler.awaitTransportLayerTask();
 	}
 
 }
@@ -25,8 +25,6 @@ package com.v2gclarity.risev2g.evcc.session;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Observable;
-import java.util.Observer;
 
 import com.v2gclarity.risev2g.evcc.evController.IEVController;
 import com.v2gclarity.risev2g.evcc.misc.EVCCImplementationFactory;
@@ -49,11 +47,12 @@ import com.v2gclarity.risev2g.evcc.states.WaitForSessionStopRes;
 import com.v2gclarity.risev2g.evcc.states.WaitForSupportedAppProtocolRes;
 import com.v2gclarity.risev2g.evcc.states.WaitForWeldingDetectionRes;
 import com.v2gclarity.risev2g.evcc.transportLayer.StatefulTransportLayerClient;
-import com.v2gclarity.risev2g.evcc.transportLayer.TCPClient;
-import com.v2gclarity.risev2g.evcc.transportLayer.TLSClient;
 import com.v2gclarity.risev2g.shared.enumerations.CPStates;
 import com.v2gclarity.risev2g.shared.enumerations.GlobalValues;
 import com.v2gclarity.risev2g.shared.enumerations.V2GMessages;
+import com.v2gclarity.risev2g.shared.events.FrameReceivedEvent;
+import com.v2gclarity.risev2g.shared.events.TransportLayerErrorEvent;
+import com.v2gclarity.risev2g.shared.events.V2GEventBus;
 import com.v2gclarity.risev2g.shared.messageHandling.ChangeProcessingState;
 import com.v2gclarity.risev2g.shared.messageHandling.PauseSession;
 import com.v2gclarity.risev2g.shared.messageHandling.ReactionToIncomingMessage;
@@ -78,7 +77,7 @@ import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.ServiceListType;
 import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.V2GMessage;
 
 // The state machine
-public class V2GCommunicationSessionEVCC extends V2GCommunicationSession implements Observer {
+public class V2GCommunicationSessionEVCC extends V2GCommunicationSession {
 	
 	private long v2gEVCCCommunicationSetupTimer;
 	private String evseID;
@@ -115,6 +114,16 @@ public class V2GCommunicationSessionEVCC extends V2GCommunicationSession impleme
 	public V2GCommunicationSessionEVCC(StatefulTransportLayerClient transportLayerClient) {
 		setTransportLayerClient(transportLayerClient);
 		
+		/*
+		 * Receive from the TCP- or TLSClient
+		 * - every new V2GTPMessage
+		 * - errors like a timeout which occurred while waiting for the respective response message
+		 */
+		V2GEventBus.getInstance().subscribe(transportLayerClient, FrameReceivedEvent.class, 
+				event -> processIncomingMessage(event.getV2gTpMessage()));
+		V2GEventBus.getInstance().subscribe(transportLayerClient, TransportLayerErrorEvent.class, 
+				event -> terminateSession("Transport layer has notified an error: " + event.getErrorMessage(), false));
+		
 		getStates().put(V2GMessages.SUPPORTED_APP_PROTOCOL_RES, new WaitForSupportedAppProtocolRes(this));
 		getStates().put(V2GMessages.SESSION_SETUP_RES, new WaitForSessionSetupRes(this));
 		getStates().put(V2GMessages.SERVICE_DISCOVERY_RES, new WaitForServiceDiscoveryRes(this));
@@ -160,38 +169,53 @@ public class V2GCommunicationSessionEVCC extends V2GCommunicationSession impleme
 	}
 	
 	
-	@Override
-	public void update(Observable obs, Object obj) {
-		if ((obs instanceof TCPClient || obs instanceof TLSClient) && obj instanceof byte[]) {
-			setV2gTpMessage(new V2GTPMessage((byte[]) obj));
-			
-			if (getMessageHandler().isV2GTPMessageValid(getV2gTpMessage())) {
-				/*
-				 * We need to decide which schema to use for decoding the EXI encoded message. Only 
-				 * the supportedAppProtocolReq/Res message uses a different schema
-				 */
+	/**
+	 * Processes a received V2GTPMessage. Called by the V2GEventBus, never by the thread reading from the 
+	 * TCP- or TLSClient's socket.
+	 * 
+	 * @param v2gTpMessage The received V2GTPMessage
+	 */
+	public void processIncomingMessage(V2GTPMessage v2gTpMessage) {
+		Object incomingMessage = null;
+		setV2gTpMessage(v2gTpMessage);
+		
+		if (getMessageHandler().isV2GTPMessageValid(getV2gTpMessage())) {
+			/*
+			 * We need to decide which schema to use for decoding the EXI encoded message. Only 
+			 * the supportedAppProtocolReq/Res message uses a different schema
+			 */
+			try {
 				if (getCurrentState().equals(getStates().get(V2GMessages.SUPPORTED_APP_PROTOCOL_RES))) {
-					obj = (SupportedAppProtocolRes) getMessageHandler().exiToSuppAppProtocolMsg(getV2gTpMessage().getPayload());
+					incomingMessage = (SupportedAppProtocolRes) getMessageHandler().exiToSuppAppProtocolMsg(getV2gTpMessage().getPayloadBuffer());
 				} else {
 					try {
-						obj = (V2GMessage) getMessageHandler().exiToV2gMsg(getV2gTpMessage().getPayload());
+						incomingMessage = (V2GMessage) getMessageHandler().exiToV2gMsg(getV2gTpMessage().getPayloadBuffer());
 					} catch (ClassCastException e) {
 						terminateSession("Received incoming message is not a valid V2GTPMessage\n" + e, false);
 					}
 				}
-				
-				processReaction(getCurrentState().processIncomingMessage(obj));
-			} else {
-				terminateSession("Received incoming message is not a valid V2GTPMessage", false);
+			} finally {
+				// The decoded message does not refer to the received bytes, so the receive buffer can be reused
+				v2gTpMessage.release();
 			}
-		} else if ((obs instanceof TCPClient || obs instanceof TLSClient) && obj == null) {
-			terminateSession("Transport layer has notified an error", false);
+			
+			processReaction(getCurrentState().processIncomingMessage(incomingMessage));
 		} else {
-			terminateSession("Notification received, but sending entity or received object not identifiable", false);
+			v2gTpMessage.release();
+			terminateSession("Received incoming message is not a valid V2GTPMessage", false);
 		}
 	}
 	
 	
+	/**
+	 * The events of this session are dispatched in order with the events of its TCP- or TLSClient.
+	 */
+	@Override
+	public Object getEventOrderingKey() {
+		return getTransportLayerClient();
+	}
+	
+	
 	private void processReaction(ReactionToIncomingMessage reactionToIncomingMessage) {
 		if (reactionToIncomingMessage instanceof SendMessage) {
 			send((SendMessage) reactionToIncomingMessage);
@@ -28,8 +28,8 @@ import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Observable;
-import java.util.Observer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -39,10 +39,13 @@ import com.v2gclarity.risev2g.evcc.transportLayer.TLSClient;
 import com.v2gclarity.risev2g.evcc.transportLayer.UDPClient;
 import com.v2gclarity.risev2g.shared.enumerations.GlobalValues;
 import com.v2gclarity.risev2g.shared.enumerations.V2GMessages;
+import com.v2gclarity.risev2g.shared.events.SessionPausedEvent;
+import com.v2gclarity.risev2g.shared.events.SessionTerminatedEvent;
+import com.v2gclarity.risev2g.shared.events.V2GEventBus;
 import com.v2gclarity.risev2g.shared.messageHandling.MessageHandler;
-import com.v2gclarity.risev2g.shared.messageHandling.PauseSession;
 import com.v2gclarity.risev2g.shared.messageHandling.TerminateSession;
 import com.v2gclarity.risev2g.shared.misc.TimeRestrictions;
+import com.v2gclarity.risev2g.shared.misc.TransportLayerExecutor;
 import com.v2gclarity.risev2g.shared.misc.V2GTPMessage;
 import com.v2gclarity.risev2g.shared.utils.ByteUtils;
 import com.v2gclarity.risev2g.shared.utils.MiscUtils;
@@ -52,7 +55,7 @@ import com.v2gclarity.risev2g.shared.v2gMessages.appProtocol.AppProtocolType;
 import com.v2gclarity.risev2g.shared.v2gMessages.appProtocol.SupportedAppProtocolReq;
 
 
-public class V2GCommunicationSessionHandlerEVCC implements Observer {
+public class V2GCommunicationSessionHandlerEVCC {
 
 	private Logger logger = LogManager.getLogger(this.getClass().getSimpleName());
 	private MessageHandler messageHandler;
@@ -61,7 +64,7 @@ public class V2GCommunicationSessionHandlerEVCC implements Observer {
 	private byte security;
 	private V2GCommunicationSessionEVCC v2gCommunicationSessionEVCC;
 	private V2GTPMessage v2gTpMessage;
-	private Thread transportLayerThread;
+	private Future<?> transportLayerTask;
 	private StatefulTransportLayerClient transportLayerClient;
 	
 	public V2GCommunicationSessionHandlerEVCC() {	
@@ -142,16 +145,13 @@ public class V2GCommunicationSessionHandlerEVCC implements Observer {
 			
 			if (!startTransportLayerClient(seccDiscoveryRes, seccAddress)) return false;
 			
+			// The session subscribes to the V2GTPMessages and errors of the TCP- or TLSClient itself
 			setV2gCommunicationSessionEVCC(new V2GCommunicationSessionEVCC(getTransportLayerClient()));
 			
-			/*
-			 * Tell the TCP- or TLSClient to notify if 
-			 * - a new V2GTPMessage has arrived
-			 * - a timeout has occurred while waiting for the respective response message
-			 */
-			getTransportLayerClient().addObserver(getV2gCommunicationSessionEVCC());
-			
-			getV2gCommunicationSessionEVCC().addObserver(this);
+			V2GEventBus.getInstance().subscribe(getV2gCommunicationSessionEVCC(), SessionTerminatedEvent.class, 
+					event -> stopSession(event.getTermination()));
+			V2GEventBus.getInstance().subscribe(getV2gCommunicationSessionEVCC(), SessionPausedEvent.class, 
+					event -> stopSession(null));
 			
 			// Set TLS security flag for communication session
 			boolean secureConn = (((Byte) getSecurity()).compareTo((Byte) GlobalValues.V2G_SECURITY_WITH_TLS.getByteValue()) == 0) ? true : false;
@@ -203,42 +203,31 @@ public class V2GCommunicationSessionHandlerEVCC implements Observer {
 			return false;
 		}
 		
-		setTransportLayerThread(new Thread(getTransportLayerClient()));
-		getTransportLayerThread().start();
+		setTransportLayerTask(TransportLayerExecutor.getInstance().execute(
+				getTransportLayerClient(), getTransportLayerClient().getClass().getSimpleName() + "Thread"));
 		
 		return true;
 	}
 	
 	
-	@Override
-	public void update(Observable obs, Object obj) {
-		if (obs instanceof V2GCommunicationSessionEVCC && 
-			(obj instanceof PauseSession || obj instanceof TerminateSession)) {
-			// In case of pausing or terminating a session the transport layer client must be stopped
-			getTransportLayerClient().stop();
-			getTransportLayerThread().interrupt();
-			
-			if (obj instanceof PauseSession) {
-				/*
-				 * If some action is needed by the sessionHandler when pausing, it can be done here.
-				 * If TCP/TLS client sends notification, it should always be a TerminateSession instance
-				 * (because a failure of the connection to the TCP/TLS server is its only reason for 
-				 * notification).
-				 */
-			} else if (obj instanceof TerminateSession) {
-				terminate((TerminateSession) obj);
-			}
-		} else if (obs instanceof TCPClient || obs instanceof TLSClient) {
-			// TCP- and TLSClient already stop themselves and interrupt their threads before notifying
-			terminate((TerminateSession) obj);
-		} else {
-			getLogger().warn("Notification coming from " + obs.getClass().getSimpleName() + 
-					 " unknown: " + obj.getClass().getSimpleName());
-		}
+	/**
+	 * In case of pausing or terminating a session the transport layer client must be stopped (which ends its task).
+	 * 
+	 * @param termination The reason for terminating the session, or null if the session is paused
+	 */
+	private void stopSession(TerminateSession termination) {
+		V2GEventBus.getInstance().unsubscribe(getV2gCommunicationSessionEVCC());
+		V2GEventBus.getInstance().unsubscribe(getTransportLayerClient());
+		
+		getTransportLayerClient().stop();
+		
+		/*
+		 * If some action is needed by the sessionHandler when pausing, it can be done here.
+		 */
+		if (termination != null) terminate(termination);
 	}
 	
 	private void terminate(TerminateSession terminationObject) {
-		getTransportLayerThread().interrupt();
 		setV2gCommunicationSessionEVCC(null);
 		UDPClient.getInstance().stop();;
 		
@@ -388,13 +377,30 @@ public class V2GCommunicationSessionHandlerEVCC implements Observer {
 	}
 
 
-	public Thread getTransportLayerThread() {
-		return transportLayerThread;
+	/**
+	 * Blocks until the task running the TCP/TLS client has finished, i.e. until the communication session has 
+	 * been paused or terminated. Returns immediately if no TCP/TLS client has been started.
+	 */
+	public void awaitTransportLayerTask() {
+		if (getTransportLayerTask() == null) return;
+		
+		try {
+			getTransportLayerTask().get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			getLogger().error(e.getClass().getSimpleName() + " occurred while running transport layer client", e.getCause());
+		}
+	}
+
+
+	public Future<?> getTransportLayerTask() {
+		return transportLayerTask;
 	}
 
 
-	public void setTransportLayerThread(Thread transportLayerThread) {
-		this.transportLayerThread = transportLayerThread;
+	public void setTransportLayerTask(Future<?> transportLayerTask) {
+		this.transportLayerTask = transportLayerTask;
 	}
 
 
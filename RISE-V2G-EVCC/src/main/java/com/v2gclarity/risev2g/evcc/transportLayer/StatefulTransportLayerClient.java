@@ -27,110 +27,119 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Inet6Address;
-import java.util.Arrays;
-import java.util.Observable;
+import java.net.ProtocolException;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import com.v2gclarity.risev2g.shared.enumerations.V2GMessages;
-import com.v2gclarity.risev2g.shared.messageHandling.TerminateSession;
+import com.v2gclarity.risev2g.shared.events.FrameReceivedEvent;
+import com.v2gclarity.risev2g.shared.events.TransportLayerErrorEvent;
+import com.v2gclarity.risev2g.shared.events.V2GEventBus;
 import com.v2gclarity.risev2g.shared.misc.TimeRestrictions;
+import com.v2gclarity.risev2g.shared.misc.V2GTPFrameDecoder;
 import com.v2gclarity.risev2g.shared.misc.V2GTPMessage;
-import com.v2gclarity.risev2g.shared.utils.ByteUtils;
 import com.v2gclarity.risev2g.shared.utils.MiscUtils;
 
-public abstract class StatefulTransportLayerClient  extends Observable implements Runnable {
+public abstract class StatefulTransportLayerClient implements Runnable {
 
 	private Logger logger = LogManager.getLogger(this.getClass().getSimpleName());
-	private byte[] v2gTPHeader; 
-	private byte[] v2gTPPayload;
-	private byte[] v2gTPMessage;
+	private V2GTPFrameDecoder frameDecoder;
 	private InputStream inStream;
 	private OutputStream outStream;
 	private int payloadLength;
-	private int bytesReadFromInputStream;
 	private Inet6Address clientAddress;
 	private int clientPort;
-	private int timeout;
-	private boolean stopAlreadyInitiated;
+	private final Object timeoutMonitor = new Object();
+	private volatile int timeout;
+	private volatile boolean stopAlreadyInitiated;
 	
 	protected void initialize() {
 		getLogger().debug("Initializing client connection ...");
 		setClientPort(MiscUtils.getRandomPortNumber());
 		setClientAddress(MiscUtils.getLinkLocalAddress());
-		setV2gTPHeader(new byte[8]);
+		setFrameDecoder(new V2GTPFrameDecoder());
 		setTimeout(TimeRestrictions.getV2gEvccMsgTimeout(V2GMessages.SUPPORTED_APP_PROTOCOL_RES)); // Needed for the supportedAppProtocol timeout
 	}
 	
 	protected boolean processIncomingMessage() throws IOException {
+		V2GTPMessage v2gTpMessage;
+		
 		/*
-		 * Read header (8 bytes) of incoming V2GTPMessage to further allocate a byte array with  
-		 * the appropriate length. 
+		 * The frame decoder reads until a complete V2GTPMessage (header and payload) has been received, 
+		 * no matter into how many pieces it has been fragmented by the TCP stream.
 		 */
 		try {
-			setBytesReadFromInputStream(getInStream().read(getV2gTPHeader()));
+			v2gTpMessage = getFrameDecoder().readMessage(getInStream());
+		} catch (ProtocolException e) {
+			stopAndNotify(e.getMessage(), null);
+			return false;
 		} catch (IOException e) {
 			/* 
 			 * If there are no bytes buffered on the socket, or all buffered bytes have been consumed by read, 
 			 * then all subsequent calls to read will throw an IOException.
 			 */
-			stopAndNotify("IOExeption occurred while trying to read the header of the incoming message. "
+			stopAndNotify("IOExeption occurred while trying to read the incoming message. "
 							+ "Maybe timeout occurred?", e);
 			return false;
 		} catch (NullPointerException e2) {
-			stopAndNotify("NullPointerException occurred while trying to read the header of the incoming message", e2);
+			stopAndNotify("NullPointerException occurred while trying to read the incoming message", e2);
 			return false;
 		}
 	
-		if (getBytesReadFromInputStream() < 0) {
+		if (v2gTpMessage == null) {
 			stopAndNotify("No bytes read from input stream, server socket seems to be closed", null);
 			return false;
 		}
-	
-		/*
-		 * The payload length is written to the last 4 bytes (v2gTPHeader[4] to v2gTPHeader[7])
-		 * of the V2GTP header. The biggest ISO 15118 message in size is the CertificateInstallationRes, which in EXI
-		 * consumes usually 3.000 to 4.000 bytes max. Let's use a threshold of 10.000 just to be safe to 
-		 * check for unreasonably high payload lengths.
-		 * 
-		 * Change this value if you use a V2GTP payload type for a proprietary, manufacturer-specific use (see Table 10 of ISO 15118-2)
-		 * that requires bigger payloads! 
-		 */
-		setPayloadLength(ByteUtils.toIntFromByteArray(Arrays.copyOfRange(getV2gTPHeader(), 4, 8)));
-		
-		if (getPayloadLength() > 10000) {
-			stopAndNotify("Payload length of V2GTP message is inappropiately high (" + getPayloadLength() + " bytes)! " +
-						 "There must be an error in the V2GTP message header!", null);
-			return false;
-		} else {
-			getLogger().debug("Length of V2GTP payload in bytes according to V2GTP header: " + getPayloadLength());
-			setV2gTPPayload(new byte[getPayloadLength()]);
-		
-			getInStream().read(getV2gTPPayload());
-		
-			getLogger().debug("Message received");
 		
-			setV2gTPMessage(new byte[getV2gTPHeader().length + getV2gTPPayload().length]);
-			System.arraycopy(getV2gTPHeader(), 0, getV2gTPMessage(), 0, getV2gTPHeader().length);
-			System.arraycopy(getV2gTPPayload(), 0, getV2gTPMessage(), getV2gTPHeader().length, getV2gTPPayload().length);
-		}
+		setPayloadLength(v2gTpMessage.getPayloadSize());
+		getLogger().debug("Message received (V2GTP payload length: " + getPayloadLength() + " bytes)");
 	
-		// Block another while-run before the new Socket timeout has been provided by send()
-		// TODO is there a more elegant way of blocking (this is rather resource-consuming)?
+		// Block another while-run before the new Socket timeout has been provided by send() (see awaitTimeout())
 		setTimeout(-1); 
 	
-		setChanged();
-		notifyObservers(getV2gTPMessage());
+		/*
+		 * The message owns the buffer it has been received in, the decoder continues with another buffer. So the 
+		 * message is handed to the session without copying it, although the next message may be read before the 
+		 * session has processed this one.
+		 */
+		V2GEventBus.getInstance().publish(new FrameReceivedEvent(this, v2gTpMessage));
 		
 		return true;
 	}
 	
+	/**
+	 * Blocks the calling thread (the client's run()-method) until send() provided the timeout for the 
+	 * response to the request just sent, or until the client is stopped. The request is sent by the thread 
+	 * dispatching the FrameReceivedEvent of the previous response, meanwhile this thread waits without consuming 
+	 * CPU time.
+	 * 
+	 * @return True, if a timeout has been provided and the response can be read, false if the client has been 
+	 * 		   stopped in the meantime
+	 */
+	protected boolean awaitTimeout() {
+		synchronized (timeoutMonitor) {
+			while (getTimeout() < 0 && !isStopAlreadyInitiated()) {
+				try {
+					timeoutMonitor.wait();
+				} catch (InterruptedException e) {
+					getLogger().warn("Transport layer client has been interrupted while waiting for the next request to be sent");
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+		}
+		
+		return !isStopAlreadyInitiated();
+	}
+	
+	
 	public abstract void send(V2GTPMessage message, int timeout);
 	
 	/**
 	 * If an error occurred in the run()-method, the TCP client will be stopped by closing all streams
-	 * and the socket and interrupting the Thread. V2GCommunicationSessionEVCC will be notified as well.
+	 * and the socket, which ends the run()-method. V2GCommunicationSessionEVCC will be notified as well 
+	 * by a TransportLayerErrorEvent.
 	 * The method's statements will not be executed if a stop of the TCP client has already been
 	 * initiated by the V2GCommunicationSessionEVCC (which might induce an error in the run()-method).
 	 * 
@@ -144,8 +153,7 @@ public abstract class StatefulTransportLayerClient  extends Observable implement
 			setStopAlreadyInitiated(true);
 			
 			// Notify V2GCommunicationSessionEVCC about termination of session
-			setChanged();
-			notifyObservers(new TerminateSession(errorMessage));
+			V2GEventBus.getInstance().publish(new TransportLayerErrorEvent(this, errorMessage));
 		}
 	}
 	
@@ -160,28 +168,22 @@ public abstract class StatefulTransportLayerClient  extends Observable implement
 		this.logger = logger;
 	}
 	
-	public byte[] getV2gTPHeader() {
-		return v2gTPHeader;
-	}
-
-	public void setV2gTPHeader(byte[] v2gTPHeader) {
-		this.v2gTPHeader = v2gTPHeader;
-	}
-
-	public byte[] getV2gTPPayload() {
-		return v2gTPPayload;
-	}
-
-	public void setV2gTPPayload(byte[] v2gTPPayload) {
-		this.v2gTPPayload = v2gTPPayload;
+	/**
+	 * Logs how many messages have been received and how many reads returned less bytes than needed 
+	 * to complete a message (see V2GTPFrameDecoder).
+	 */
+	protected void logReceptionStatistics() {
+		if (getFrameDecoder() != null)
+			getLogger().debug("Messages received: " + getFrameDecoder().getReceivedMessages() + 
+							  ", short reads: " + getFrameDecoder().getShortReads());
 	}
-
-	public byte[] getV2gTPMessage() {
-		return v2gTPMessage;
+	
+	public V2GTPFrameDecoder getFrameDecoder() {
+		return frameDecoder;
 	}
 
-	public void setV2gTPMessage(byte[] v2gTPMessage) {
-		this.v2gTPMessage = v2gTPMessage;
+	private void setFrameDecoder(V2GTPFrameDecoder frameDecoder) {
+		this.frameDecoder = frameDecoder;
 	}
 	
 	public InputStream getInStream() {
@@ -208,14 +210,6 @@ public abstract class StatefulTransportLayerClient  extends Observable implement
 		this.payloadLength = payloadLength;
 	}
 
-	public int getBytesReadFromInputStream() {
-		return bytesReadFromInputStream;
-	}
-
-	public void setBytesReadFromInputStream(int bytesReadFromInputStream) {
-		this.bytesReadFromInputStream = bytesReadFromInputStream;
-	}
-	
 	public Inet6Address getClientAddress() {
 		return clientAddress;
 	}
@@ -237,7 +231,10 @@ public abstract class StatefulTransportLayerClient  extends Observable implement
 	}
 
 	public void setTimeout(int timeout) {
-		this.timeout = timeout;
+		synchronized (timeoutMonitor) {
+			this.timeout = timeout;
+			timeoutMonitor.notifyAll();
+		}
 	}
 
 	public boolean isStopAlreadyInitiated() {
@@ -245,7 +242,10 @@ public abstract class StatefulTransportLayerClient  extends Observable implement
 	}
 
 	public void setStopAlreadyInitiated(boolean stopAlreadyInitiated) {
-		this.stopAlreadyInitiated = stopAlreadyInitiated;
+		synchronized (timeoutMonitor) {
+			this.stopAlreadyInitiated = stopAlreadyInitiated;
+			timeoutMonitor.notifyAll();
+		}
 	}
 	
 }
@@ -94,20 +94,19 @@ public class TCPClient extends StatefulTransportLayerClient {
 	
 	@Override
 	public void run() {
-		while (!Thread.currentThread().isInterrupted()) { 
-			if (getTimeout() > 0) {
-				try {
-					getSocketToServer().setSoTimeout(getTimeout());
-					
-					if (!processIncomingMessage()) break;
-					
-				} catch (SocketTimeoutException e) {
-					stopAndNotify("A timeout occurred while waiting for response message", null);
-					break;
-				} catch (IOException e2) {
-					stopAndNotify("An IOException occurred while trying to read message", e2);
-					break;
-				}
+		// awaitTimeout() blocks as long as the response to the last request has been processed, but no new request has been sent
+		while (awaitTimeout()) { 
+			try {
+				getSocketToServer().setSoTimeout(getTimeout());
+				
+				if (!processIncomingMessage()) break;
+				
+			} catch (SocketTimeoutException e) {
+				stopAndNotify("A timeout occurred while waiting for response message", null);
+				break;
+			} catch (IOException e2) {
+				stopAndNotify("An IOException occurred while trying to read message", e2);
+				break;
 			}
 		}
 		
@@ -117,8 +116,6 @@ public class TCPClient extends StatefulTransportLayerClient {
 	
 	@Override
 	public void send(V2GTPMessage message, int timeout) {
-		setV2gTPMessage(null);
-		
 		try {
 			getOutStream().write(message.getMessage());
 			getOutStream().flush();
@@ -133,6 +130,7 @@ public class TCPClient extends StatefulTransportLayerClient {
 	public void stop() {
 		if (!isStopAlreadyInitiated()) {
 			getLogger().debug("Stopping TCP client ...");
+			logReceptionStatistics();
 			setStopAlreadyInitiated(true);
 			
 			try {
@@ -140,7 +138,6 @@ public class TCPClient extends StatefulTransportLayerClient {
 				getOutStream().close();
 				getTcpSocketToServer().close();
 				uniqueTCPClientInstance = null;
-				Thread.currentThread().interrupt();
 			} catch (IOException e) {
 				getLogger().error("Error occurred while trying to close TCP socket to server", e);
 			} 
@@ -170,22 +170,18 @@ public class TLSClient extends StatefulTransportLayerClient {
 	
 	@Override
 	public void run() {
-		while (!Thread.currentThread().isInterrupted()) { 
-			if (getTimeout() >= 0) {
-				try {
-					getTlsSocketToServer().setSoTimeout(getTimeout());
-					
-					if (!processIncomingMessage()) break;
-					
-				} catch (SocketTimeoutException e) {
-					stopAndNotify("A timeout occurred while waiting for response message", null);
-					break;
-				} catch (IOException e2) {
-					stopAndNotify("An IOException occurred while trying to read message", e2);
-					break;
-				}
-			} else {
-				stopAndNotify("Timeout value is negative: " + getTimeout(), null);
+		// awaitTimeout() blocks as long as the response to the last request has been processed, but no new request has been sent
+		while (awaitTimeout()) { 
+			try {
+				getTlsSocketToServer().setSoTimeout(getTimeout());
+				
+				if (!processIncomingMessage()) break;
+				
+			} catch (SocketTimeoutException e) {
+				stopAndNotify("A timeout occurred while waiting for response message", null);
+				break;
+			} catch (IOException e2) {
+				stopAndNotify("An IOException occurred while trying to read message", e2);
 				break;
 			}
 		}
@@ -196,8 +192,6 @@ public class TLSClient extends StatefulTransportLayerClient {
 	
 	@Override
 	public void send(V2GTPMessage message, int timeout) {
-		setV2gTPMessage(null);
-		
 		try {
 			getOutStream().write(message.getMessage());
 			getOutStream().flush();
@@ -214,6 +208,7 @@ public class TLSClient extends StatefulTransportLayerClient {
 	public void stop() {
 		if (!isStopAlreadyInitiated()) {
 			getLogger().debug("Stopping TLS client ...");
+			logReceptionStatistics();
 			setStopAlreadyInitiated(true);
 			
 			try {
@@ -221,7 +216,6 @@ public class TLSClient extends StatefulTransportLayerClient {
 				getOutStream().close();
 				getTlsSocketToServer().close();
 				uniqueTLSClientInstance = null;
-				Thread.currentThread().interrupt();
 			} catch (IOException e) {
 				getLogger().error("Error occurred while trying to close TCP socket to server", e);
 			}
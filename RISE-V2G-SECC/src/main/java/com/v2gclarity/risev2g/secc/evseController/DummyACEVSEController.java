@@ -39,7 +39,6 @@ import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.UnitSymbolType;
 
 public class DummyACEVSEController implements IACEVSEController {
 
-	@SuppressWarnings("unused")
 	private V2GCommunicationSessionSECC commSessionContext;
 	
 	public DummyACEVSEController() {
@@ -47,6 +46,11 @@ public class DummyACEVSEController implements IACEVSEController {
 	
 	@Override
 	public String getEvseID() {
+		// Use the EVSE ID configured for the network interface of the session (see property 'evse.id'), if any
+		if (commSessionContext != null && commSessionContext.getEvseInterface() != null && 
+			commSessionContext.getEvseInterface().getEvseID() != null)
+			return commSessionContext.getEvseInterface().getEvseID();
+		
 		return "DE*V2G*E12345";
 	}
 
@@ -57,6 +57,11 @@ public class DummyDCEVSEController implements IDCEVSEController {
 	
 	@Override
 	public String getEvseID() {
+		// Use the EVSE ID configured for the network interface of the session (see property 'evse.id'), if any
+		if (commSessionContext != null && commSessionContext.getEvseInterface() != null && 
+			commSessionContext.getEvseInterface().getEvseID() != null)
+			return commSessionContext.getEvseInterface().getEvseID();
+		
 		return "DE*V2G*E12345";
 	}
 	
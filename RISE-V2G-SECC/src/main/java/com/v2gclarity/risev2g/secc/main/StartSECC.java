@@ -23,13 +23,14 @@
  *******************************************************************************/
 package com.v2gclarity.risev2g.secc.main;
 
+import java.util.List;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import com.v2gclarity.risev2g.secc.misc.EVSEInterface;
 import com.v2gclarity.risev2g.secc.session.V2GCommunicationSessionHandlerSECC;
-import com.v2gclarity.risev2g.secc.transportLayer.TCPServer;
-import com.v2gclarity.risev2g.secc.transportLayer.TLSServer;
-import com.v2gclarity.risev2g.secc.transportLayer.UDPServer;
 import com.v2gclarity.risev2g.shared.enumerations.GlobalValues;
+import com.v2gclarity.risev2g.shared.misc.TransportLayerExecutor;
 import com.v2gclarity.risev2g.shared.utils.MiscUtils;
 
 public class StartSECC {
@@ -38,34 +39,33 @@ public class StartSECC {
 		final Logger logger = LogManager.getLogger(StartSECC.class.getSimpleName());
 		MiscUtils.loadProperties(GlobalValues.SECC_CONFIG_PROPERTIES_PATH.toString());
 		
-		UDPServer udpServer = UDPServer.getInstance();
-		TCPServer tcpServer = TCPServer.getInstance();
-		TLSServer tlsServer = TLSServer.getInstance();
+		// One EVSE interface (with its own UDP, TCP and TLS server) per network interface listed in the properties file
+		List<EVSEInterface> evseInterfaces = EVSEInterface.createFromProperties();
+		
+		for (EVSEInterface evseInterface : evseInterfaces) {
+			if (!evseInterface.initialize()) {
+				logger.fatal("Unable to start SECC because UDP, TCP or TLS server could not be initialized");
+				return;
+			}
+		}
+		
+		/*
+		 * The servers run on platform threads of their own which keep the JVM alive. The ConnectionHandlers 
+		 * of the accepted connections run on the threads of the TransportLayerExecutor (platform or virtual 
+		 * threads, see property 'transport.threads'), which is set up here already so that a misconfiguration
+		 * is reported upon start.
+		 */
+		TransportLayerExecutor.getInstance();
+		
+		// All transport layer servers need to be initialized before initializing the SECC session handler.
+		new V2GCommunicationSessionHandlerSECC(evseInterfaces);
 		
-		if (!udpServer.initialize() || !tlsServer.initialize() || !tcpServer.initialize()) {
-			logger.fatal("Unable to start SECC because UDP, TCP or TLS server could not be initialized");
-		} else {
-			Thread udpServerThread = new Thread(udpServer);
-			udpServerThread.setName("UDPServerThread");
-			
-			Thread tcpServerThread = new Thread(tcpServer);
-			tcpServerThread.setName("TCPServerThread");
-			
-			Thread tlsServerThread = new Thread(tlsServer);
-			tlsServerThread.setName("TLSServerThread");
-			
-			// All transport layer threads need to be initialized before initializing the SECC session handler.
-			new V2GCommunicationSessionHandlerSECC();
-			
-			/*
-			 * To avoid possible race conditions, the transport layer threads need to be started AFTER the SECC
-			 * session handler has been initialized. Otherwise the situation might occur that the UDPServer is 
-			 * receiving a UDP client packet and tries to access the MessageHandler object before this object has
-			 * been created by the SECC session handler.
-			 */
-			udpServerThread.start();
-			tcpServerThread.start();
-			tlsServerThread.start();
-		} 
+		/*
+		 * To avoid possible race conditions, the transport layer threads need to be started AFTER the SECC
+		 * session handler has been initialized. Otherwise the situation might occur that the UDPServer is 
+		 * receiving a UDP client packet and tries to access the MessageHandler object before this object has
+		 * been created by the SECC session handler.
+		 */
+		for (EVSEInterface evseInterface : evseInterfaces) evseInterface.start();
 	}
 }
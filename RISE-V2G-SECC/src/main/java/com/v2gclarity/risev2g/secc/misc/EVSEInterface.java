@@ -0,0 +1,222 @@
+/*******************************************************************************
+ *  The MIT License (MIT)
+ *
+ *  Copyright (c) 2015 - 2019  Dr. Marc Mültin (V2G Clarity)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ *******************************************************************************/
+package com.v2gclarity.risev2g.secc.misc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import com.v2gclarity.risev2g.secc.transportLayer.NIOTCPServer;
+import com.v2gclarity.risev2g.secc.transportLayer.StatefulTransportLayerServer;
+import com.v2gclarity.risev2g.secc.transportLayer.TCPServer;
+import com.v2gclarity.risev2g.secc.transportLayer.TLSServer;
+import com.v2gclarity.risev2g.secc.transportLayer.UDPServer;
+import com.v2gclarity.risev2g.shared.enumerations.GlobalValues;
+import com.v2gclarity.risev2g.shared.misc.V2GTPMessage;
+import com.v2gclarity.risev2g.shared.utils.ByteUtils;
+import com.v2gclarity.risev2g.shared.utils.MiscUtils;
+import com.v2gclarity.risev2g.shared.v2gMessages.SECCDiscoveryRes;
+
+/**
+ * An EVSE served by the SECC via a network interface of its own (e.g. one PLC modem per charging point). 
+ * Each EVSE interface has its own UDP, TCP and TLS server, whereas the EXI codec, the keystores and the 
+ * session handler are shared by all EVSE interfaces of the SECC process.
+ */
+public class EVSEInterface {
+
+	private Logger logger = LogManager.getLogger(this.getClass().getSimpleName());
+	private String networkInterface;
+	private String evseID;
+	private UDPServer udpServer;
+	private StatefulTransportLayerServer tcpServer;
+	private TLSServer tlsServer;
+	// The SECCDiscoveryRes datagrams do not change after initialization and are therefore created only once
+	private byte[] seccDiscoveryResTLS;
+	private byte[] seccDiscoveryResTCP;
+	
+	/**
+	 * @param networkInterface The name (or index on Windows) of the network interface
+	 * @param evseID The EVSE ID to be provided to the EVCC, or null if the EVSE controller's default is to be used
+	 */
+	public EVSEInterface(String networkInterface, String evseID) {
+		setNetworkInterface(networkInterface);
+		setEvseID(evseID);
+		
+		setUdpServer(new UDPServer(networkInterface));
+		setTcpServer((NIOTCPServer.isEnabled()) ? new NIOTCPServer(networkInterface) : new TCPServer(networkInterface));
+		setTlsServer(new TLSServer(networkInterface));
+	}
+	
+	
+	/**
+	 * Creates one EVSE interface per network interface listed in the property 'network.interface'. The 
+	 * property 'evse.id' lists the respective EVSE IDs in the same order.
+	 * 
+	 * @return The EVSE interfaces to be served by the SECC
+	 */
+	@SuppressWarnings("unchecked")
+	public static List<EVSEInterface> createFromProperties() {
+		String[] networkInterfaces = MiscUtils.getPropertyValue("network.interface").toString().split(",");
+		
+		ArrayList<String> evseIDs = (MiscUtils.getProperties().containsKey("evse.id")) ? 
+									(ArrayList<String>) MiscUtils.getPropertyValue("evse.id") : 
+									new ArrayList<String>();
+		
+		ArrayList<EVSEInterface> evseInterfaces = new ArrayList<EVSEInterface>();
+		
+		for (int i = 0; i < networkInterfaces.length; i++) {
+			evseInterfaces.add(new EVSEInterface(networkInterfaces[i], (i < evseIDs.size()) ? evseIDs.get(i) : null));
+		}
+		
+		return evseInterfaces;
+	}
+	
+	
+	/**
+	 * Initializes the UDP, TCP and TLS server and prepares the SECCDiscoveryRes datagrams pointing to the 
+	 * TCP and TLS server.
+	 * 
+	 * @return True, if the UDP, TCP and TLS server of this EVSE interface could be initialized
+	 */
+	public boolean initialize() {
+		if (!getUdpServer().initialize() || !getTlsServer().initialize() || !getTcpServer().initialize()) {
+			getLogger().fatal("UDP, TCP or TLS server for network interface '" + getNetworkInterface() + 
+							  "' could not be initialized");
+			return false;
+		}
+		
+		setSeccDiscoveryResTLS(createSECCDiscoveryRes(getTlsServer(), GlobalValues.V2G_SECURITY_WITH_TLS.getByteValue()));
+		setSeccDiscoveryResTCP(createSECCDiscoveryRes(getTcpServer(), GlobalValues.V2G_SECURITY_WITHOUT_TLS.getByteValue()));
+		
+		return true;
+	}
+	
+	
+	private byte[] createSECCDiscoveryRes(StatefulTransportLayerServer server, byte security) {
+		SECCDiscoveryRes seccDiscoveryRes = new SECCDiscoveryRes(
+													server.getServerAddress().getAddress(),
+													ByteUtils.toByteArrayFromInt(server.getServerPort(), true),
+													security,
+													GlobalValues.V2G_TRANSPORT_PROTOCOL_TCP.getByteValue()
+												);
+		
+		return new V2GTPMessage(GlobalValues.V2GTP_VERSION_1_IS.getByteValue(), 
+								GlobalValues.V2GTP_PAYLOAD_TYPE_SDP_RESPONSE_MESSAGE.getByteArrayValue(),
+								seccDiscoveryRes.getPayload()).getMessage();
+	}
+	
+	
+	/**
+	 * Provides the complete V2GTP message (header and payload) of the SECCDiscoveryRes to be sent as UDP datagram. 
+	 * The returned array is shared and must not be modified.
+	 * 
+	 * @param secureCommunication True, if the EVCC requested TLS
+	 * @return The SECCDiscoveryRes pointing to the TLS server or to the TCP server, respectively
+	 */
+	public byte[] getSECCDiscoveryRes(boolean secureCommunication) {
+		return (secureCommunication) ? getSeccDiscoveryResTLS() : getSeccDiscoveryResTCP();
+	}
+	
+	
+	/**
+	 * Starts the threads of the UDP, TCP and TLS server. Must not be called before the session handler has been 
+	 * initialized (see StartSECC).
+	 */
+	public void start() {
+		Thread udpServerThread = new Thread(getUdpServer());
+		udpServerThread.setName("UDPServerThread " + getNetworkInterface());
+		
+		Thread tcpServerThread = new Thread(getTcpServer());
+		tcpServerThread.setName("TCPServerThread " + getNetworkInterface());
+		
+		Thread tlsServerThread = new Thread(getTlsServer());
+		tlsServerThread.setName("TLSServerThread " + getNetworkInterface());
+		
+		udpServerThread.start();
+		tcpServerThread.start();
+		tlsServerThread.start();
+	}
+	
+	
+	public Logger getLogger() {
+		return logger;
+	}
+
+	public String getNetworkInterface() {
+		return networkInterface;
+	}
+
+	private void setNetworkInterface(String networkInterface) {
+		this.networkInterface = networkInterface;
+	}
+
+	public String getEvseID() {
+		return evseID;
+	}
+
+	private void setEvseID(String evseID) {
+		this.evseID = evseID;
+	}
+
+	public UDPServer getUdpServer() {
+		return udpServer;
+	}
+
+	private void setUdpServer(UDPServer udpServer) {
+		this.udpServer = udpServer;
+	}
+
+	public StatefulTransportLayerServer getTcpServer() {
+		return tcpServer;
+	}
+
+	private void setTcpServer(StatefulTransportLayerServer tcpServer) {
+		this.tcpServer = tcpServer;
+	}
+
+	public TLSServer getTlsServer() {
+		return tlsServer;
+	}
+
+	private void setTlsServer(TLSServer tlsServer) {
+		this.tlsServer = tlsServer;
+	}
+
+	private byte[] getSeccDiscoveryResTLS() {
+		return seccDiscoveryResTLS;
+	}
+
+	private void setSeccDiscoveryResTLS(byte[] seccDiscoveryResTLS) {
+		this.seccDiscoveryResTLS = seccDiscoveryResTLS;
+	}
+
+	private byte[] getSeccDiscoveryResTCP() {
+		return seccDiscoveryResTCP;
+	}
+
+	private void setSeccDiscoveryResTCP(byte[] seccDiscoveryResTCP) {
+		this.seccDiscoveryResTCP = seccDiscoveryResTCP;
+	}
+}
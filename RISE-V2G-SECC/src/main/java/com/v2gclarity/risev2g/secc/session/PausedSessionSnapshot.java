@@ -0,0 +1,122 @@
+/*******************************************************************************
+ *  The MIT License (MIT)
+ *
+ *  Copyright (c) 2015 - 2019  Dr. Marc Mültin (V2G Clarity)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ *******************************************************************************/
+package com.v2gclarity.risev2g.secc.session;
+
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.CertificateChainType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.PaymentOptionType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.SAScheduleListType;
+
+/**
+ * The data of a paused V2G communication session which is needed to resume the session later on 
+ * (see [V2G2-741] and the checkSessionID() method of V2GCommunicationSessionSECC). Only this snapshot is kept
+ * while a session is paused, not the V2GCommunicationSessionSECC with its states, controllers and backend interface.
+ */
+public class PausedSessionSnapshot {
+
+	private String ipAddress;
+	private byte[] sessionID;
+	private long pauseTime;
+	private PaymentOptionType selectedPaymentOption;
+	private SAScheduleListType saSchedules;
+	private short chosenSAScheduleTuple;
+	private CertificateChainType contractSignatureCertChain;
+	
+	public PausedSessionSnapshot() {}
+	
+	/**
+	 * Takes a snapshot of the given session which is being paused. The referenced JAXB objects are not copied, 
+	 * as the paused session does not change them anymore.
+	 * 
+	 * @param session The session which is being paused
+	 */
+	public PausedSessionSnapshot(V2GCommunicationSessionSECC session) {
+		setIpAddress(session.getConnectionHandler().getAddress());
+		setSessionID(session.getSessionID());
+		setPauseTime(System.currentTimeMillis());
+		setSelectedPaymentOption(session.getSelectedPaymentOption());
+		setSaSchedules(session.getSaSchedules());
+		setChosenSAScheduleTuple(session.getChosenSAScheduleTuple());
+		setContractSignatureCertChain(session.getContractSignatureCertChain());
+	}
+	
+	
+	public String getIpAddress() {
+		return ipAddress;
+	}
+
+	public void setIpAddress(String ipAddress) {
+		this.ipAddress = ipAddress;
+	}
+
+	public byte[] getSessionID() {
+		return sessionID;
+	}
+
+	public void setSessionID(byte[] sessionID) {
+		this.sessionID = sessionID;
+	}
+
+	/**
+	 * @return The point in time (in milliseconds since the epoch) the session has been paused
+	 */
+	public long getPauseTime() {
+		return pauseTime;
+	}
+
+	public void setPauseTime(long pauseTime) {
+		this.pauseTime = pauseTime;
+	}
+
+	public PaymentOptionType getSelectedPaymentOption() {
+		return selectedPaymentOption;
+	}
+
+	public void setSelectedPaymentOption(PaymentOptionType selectedPaymentOption) {
+		this.selectedPaymentOption = selectedPaymentOption;
+	}
+
+	public SAScheduleListType getSaSchedules() {
+		return saSchedules;
+	}
+
+	public void setSaSchedules(SAScheduleListType saSchedules) {
+		this.saSchedules = saSchedules;
+	}
+
+	public short getChosenSAScheduleTuple() {
+		return chosenSAScheduleTuple;
+	}
+
+	public void setChosenSAScheduleTuple(short chosenSAScheduleTuple) {
+		this.chosenSAScheduleTuple = chosenSAScheduleTuple;
+	}
+
+	public CertificateChainType getContractSignatureCertChain() {
+		return contractSignatureCertChain;
+	}
+
+	public void setContractSignatureCertChain(CertificateChainType contractSignatureCertChain) {
+		this.contractSignatureCertChain = contractSignatureCertChain;
+	}
+}
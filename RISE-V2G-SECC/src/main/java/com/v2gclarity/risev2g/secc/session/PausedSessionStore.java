@@ -0,0 +1,417 @@
+/*******************************************************************************
+ *  The MIT License (MIT)
+ *
+ *  Copyright (c) 2015 - 2019  Dr. Marc Mültin (V2G Clarity)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ *******************************************************************************/
+package com.v2gclarity.risev2g.secc.session;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.namespace.QName;
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.v2gclarity.risev2g.shared.enumerations.GlobalValues;
+import com.v2gclarity.risev2g.shared.messageHandling.MessageHandler;
+import com.v2gclarity.risev2g.shared.utils.ByteUtils;
+import com.v2gclarity.risev2g.shared.utils.MiscUtils;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.CertificateChainType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.PaymentOptionType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.SAScheduleListType;
+
+/**
+ * Keeps the snapshots of paused V2G communication sessions (see PausedSessionSnapshot) until the respective 
+ * EVCC resumes the session, the snapshot's time to live has expired, or the snapshot is evicted because the 
+ * maximum number of paused sessions has been reached (the session paused first is evicted first). Snapshots 
+ * are identified by their session ID only, as several EVCCs may use the same IP address one after another.
+ * 
+ * If a file is configured with the property 'session.paused.file', the snapshots are written to this file 
+ * whenever they change and are read again upon startup. This way, an EVCC can still resume its session 
+ * after a restart of the SECC. The JAXB objects of a snapshot are stored in their XML representation. The 
+ * file is written by a background thread, so that the V2G message exchange never waits for it. Changes which 
+ * occur while the file is being written are coalesced into the next write.
+ * 
+ * Pausing and resuming sessions is rare compared to the message exchange within a session, therefore all 
+ * methods are simply synchronized.
+ */
+public class PausedSessionStore {
+
+	// Increase whenever the layout of the persistence file changes
+	private static final int FILE_FORMAT_VERSION = 1;
+	private static final long DEFAULT_TIME_TO_LIVE = 86400; // seconds
+	private static final int DEFAULT_MAX_PAUSED_SESSIONS = 1000;
+	
+	private Logger logger = LogManager.getLogger(this.getClass().getSimpleName());
+	/*
+	 * Maps the 8 byte session ID (given as long value) to the snapshot of the paused session, in the order of 
+	 * pausing. This way, a session can be resumed even if the EVCC connects with another IP address (e.g. via 
+	 * another PLC modem).
+	 */
+	private LinkedHashMap<Long, PausedSessionSnapshot> pausedSessions;
+	private long timeToLive;
+	private int maxPausedSessions;
+	private Path persistenceFile;
+	private ExecutorService persistenceWriter;
+	// Set while a write of the persistence file is pending, i.e. has been requested but not yet started
+	private AtomicBoolean writePending;
+	
+	public PausedSessionStore() {
+		setPausedSessions(new LinkedHashMap<Long, PausedSessionSnapshot>());
+		setWritePending(new AtomicBoolean());
+		
+		Object timeToLive = MiscUtils.getPropertyValue("session.paused.ttl");
+		setTimeToLive(1000 * ((timeToLive != null) ? (long) timeToLive : DEFAULT_TIME_TO_LIVE));
+		
+		Object maxPausedSessions = MiscUtils.getPropertyValue("session.paused.maxsessions");
+		setMaxPausedSessions((maxPausedSessions != null) ? (int) maxPausedSessions : DEFAULT_MAX_PAUSED_SESSIONS);
+		
+		Object persistenceFile = MiscUtils.getPropertyValue("session.paused.file");
+		if (persistenceFile != null && !((String) persistenceFile).isEmpty()) {
+			setPersistenceFile(Paths.get((String) persistenceFile));
+			setPersistenceWriter(Executors.newSingleThreadExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "PausedSessionWriter");
+				thread.setDaemon(true);
+				
+				return thread;
+			}));
+			load();
+		}
+	}
+	
+	
+	/**
+	 * Stores the snapshot of a session which has just been paused. A snapshot previously stored with the same 
+	 * session ID is replaced.
+	 * 
+	 * @param snapshot The snapshot of the paused session
+	 */
+	public synchronized void put(PausedSessionSnapshot snapshot) {
+		// Removing first moves the snapshot to the end of the pausing order
+		getPausedSessions().remove(toKey(snapshot.getSessionID()));
+		getPausedSessions().put(toKey(snapshot.getSessionID()), snapshot);
+		
+		evictExpired(System.currentTimeMillis());
+		
+		Iterator<PausedSessionSnapshot> snapshots = getPausedSessions().values().iterator();
+		
+		while (getPausedSessions().size() > getMaxPausedSessions()) {
+			PausedSessionSnapshot evictedSnapshot = snapshots.next();
+			snapshots.remove();
+			getLogger().info("Maximum number of paused sessions reached, discarding paused session with session ID " + 
+							 ByteUtils.toHexString(evictedSnapshot.getSessionID()));
+		}
+		
+		persist();
+	}
+	
+	
+	/**
+	 * @param sessionID The session ID presented by the EVCC in the SessionSetupReq
+	 * @return The snapshot of the paused session with the given session ID, or null if there is none (anymore)
+	 */
+	public synchronized PausedSessionSnapshot getBySessionID(byte[] sessionID) {
+		if (evictExpired(System.currentTimeMillis())) persist();
+		
+		PausedSessionSnapshot snapshot = getPausedSessions().get(toKey(sessionID));
+		
+		/*
+		 * The index key is the numerical value of the session ID, which is the same for e.g. a shorter or 
+		 * zero-padded session ID. Only the exact session ID must resume the session.
+		 */
+		if (snapshot != null && !Arrays.equals(sessionID, snapshot.getSessionID())) return null;
+		
+		return snapshot;
+	}
+	
+	
+	/**
+	 * Removes the given snapshot, e.g. because the session has been resumed or the EVCC started a new session.
+	 * 
+	 * @param snapshot The snapshot to be removed
+	 * @return True, if the snapshot has been removed, false if it was not stored (anymore)
+	 */
+	public synchronized boolean remove(PausedSessionSnapshot snapshot) {
+		boolean removed = getPausedSessions().remove(toKey(snapshot.getSessionID()), snapshot);
+		
+		if (removed) persist();
+		
+		return removed;
+	}
+	
+	
+	public synchronized int size() {
+		return getPausedSessions().size();
+	}
+	
+	
+	/**
+	 * Removes all snapshots whose time to live has expired. As the snapshots are kept in the order of pausing,
+	 * only the oldest ones need to be checked.
+	 * 
+	 * @param now The current time in milliseconds
+	 * @return True, if at least one snapshot has been removed
+	 */
+	private boolean evictExpired(long now) {
+		boolean evicted = false;
+		Iterator<PausedSessionSnapshot> snapshots = getPausedSessions().values().iterator();
+		
+		while (snapshots.hasNext()) {
+			PausedSessionSnapshot snapshot = snapshots.next();
+			
+			if (snapshot.getPauseTime() + getTimeToLive() > now) break;
+			
+			snapshots.remove();
+			evicted = true;
+			getLogger().info("Paused session with session ID " + ByteUtils.toHexString(snapshot.getSessionID()) + " has expired");
+		}
+		
+		return evicted;
+	}
+	
+	
+	/**
+	 * The session ID is an up to 8 byte long value and is therefore used as long value.
+	 */
+	private long toKey(byte[] sessionID) {
+		return ByteUtils.toLongFromByteArray(sessionID);
+	}
+	
+	
+	/**
+	 * Requests the snapshots to be written to the persistence file (if configured). The file is written by the 
+	 * background writer thread; if a write is already pending, it will include the current change as well.
+	 */
+	private void persist() {
+		if (getPersistenceFile() == null) return;
+		
+		if (getWritePending().compareAndSet(false, true)) getPersistenceWriter().execute(this::writePersistenceFile);
+	}
+	
+	
+	/**
+	 * Writes all snapshots to the persistence file. Only the list of snapshots is copied while holding the lock, 
+	 * the snapshots themselves are not changed after being stored. The file is replaced only after the new 
+	 * content has been written completely.
+	 */
+	private void writePersistenceFile() {
+		// Reset before copying, so that a change made after the copy requests another write
+		getWritePending().set(false);
+		
+		List<PausedSessionSnapshot> snapshots;
+		
+		synchronized (this) {
+			snapshots = new ArrayList<>(getPausedSessions().values());
+		}
+		
+		Path tempFile = getPersistenceFile().resolveSibling(getPersistenceFile().getFileName() + ".tmp");
+		
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+			out.writeInt(FILE_FORMAT_VERSION);
+			out.writeInt(snapshots.size());
+			
+			for (PausedSessionSnapshot snapshot : snapshots) {
+				out.writeUTF(snapshot.getIpAddress());
+				writeBytes(out, snapshot.getSessionID());
+				out.writeLong(snapshot.getPauseTime());
+				out.writeUTF((snapshot.getSelectedPaymentOption() != null) ? snapshot.getSelectedPaymentOption().name() : "");
+				out.writeShort(snapshot.getChosenSAScheduleTuple());
+				writeBytes(out, toXml(snapshot.getSaSchedules(), SAScheduleListType.class, "SAScheduleList"));
+				writeBytes(out, toXml(snapshot.getContractSignatureCertChain(), CertificateChainType.class, "ContractSignatureCertChain"));
+			}
+		} catch (IOException | JAXBException | RuntimeException e) {
+			getLogger().error(e.getClass().getSimpleName() + " occurred while trying to write paused sessions to file '" + 
+							  getPersistenceFile() + "'", e);
+			return;
+		}
+		
+		try {
+			Files.move(tempFile, getPersistenceFile(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			getLogger().error(e.getClass().getSimpleName() + " occurred while trying to replace file '" + 
+							  getPersistenceFile() + "'", e);
+		}
+	}
+	
+	
+	/**
+	 * Reads the snapshots from the persistence file (if existing). Snapshots which expired in the meantime 
+	 * are discarded.
+	 */
+	private void load() {
+		if (!Files.exists(getPersistenceFile())) return;
+		
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(getPersistenceFile())))) {
+			int fileFormatVersion = in.readInt();
+			
+			if (fileFormatVersion != FILE_FORMAT_VERSION) {
+				getLogger().warn("Paused sessions file '" + getPersistenceFile() + "' has unknown format version " + 
+								 fileFormatVersion + " and is ignored");
+				return;
+			}
+			
+			int numberOfSnapshots = in.readInt();
+			
+			for (int i = 0; i < numberOfSnapshots; i++) {
+				PausedSessionSnapshot snapshot = new PausedSessionSnapshot();
+				snapshot.setIpAddress(in.readUTF());
+				snapshot.setSessionID(readBytes(in));
+				snapshot.setPauseTime(in.readLong());
+				String selectedPaymentOption = in.readUTF();
+				snapshot.setSelectedPaymentOption((selectedPaymentOption.isEmpty()) ? null : PaymentOptionType.valueOf(selectedPaymentOption));
+				snapshot.setChosenSAScheduleTuple(in.readShort());
+				snapshot.setSaSchedules(fromXml(readBytes(in), SAScheduleListType.class));
+				snapshot.setContractSignatureCertChain(fromXml(readBytes(in), CertificateChainType.class));
+				
+				getPausedSessions().put(toKey(snapshot.getSessionID()), snapshot);
+			}
+		} catch (IOException | JAXBException | RuntimeException e) {
+			getLogger().error(e.getClass().getSimpleName() + " occurred while trying to read paused sessions from file '" + 
+							  getPersistenceFile() + "'", e);
+		}
+		
+		evictExpired(System.currentTimeMillis());
+		getLogger().info(getPausedSessions().size() + " paused session(s) restored from file '" + getPersistenceFile() + "'");
+	}
+	
+	
+	private <T> byte[] toXml(T value, Class<T> type, String elementName) throws JAXBException {
+		if (value == null) return null;
+		
+		ByteArrayOutputStream xml = new ByteArrayOutputStream();
+		JAXBElement<T> jaxbElement = new JAXBElement<T>(
+				new QName(GlobalValues.V2G_CI_MSG_DATATYPES_NAMESPACE.toString(), elementName), type, value);
+		
+		MessageHandler.getInstance().getExiCodec().getMarshaller().marshal(jaxbElement, xml);
+		
+		return xml.toByteArray();
+	}
+	
+	
+	private <T> T fromXml(byte[] xml, Class<T> type) throws JAXBException {
+		if (xml == null) return null;
+		
+		return MessageHandler.getInstance().getExiCodec().getUnmarshaller()
+					.unmarshal(new StreamSource(new ByteArrayInputStream(xml)), type).getValue();
+	}
+	
+	
+	private void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+		if (bytes == null) {
+			out.writeInt(-1);
+		} else {
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+	
+	
+	private byte[] readBytes(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) return null;
+		
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		
+		return bytes;
+	}
+	
+
+	public Logger getLogger() {
+		return logger;
+	}
+
+	public void setLogger(Logger logger) {
+		this.logger = logger;
+	}
+
+	private LinkedHashMap<Long, PausedSessionSnapshot> getPausedSessions() {
+		return pausedSessions;
+	}
+
+	private void setPausedSessions(LinkedHashMap<Long, PausedSessionSnapshot> pausedSessions) {
+		this.pausedSessions = pausedSessions;
+	}
+
+	/**
+	 * @return The time (in milliseconds) a paused session can be resumed
+	 */
+	public long getTimeToLive() {
+		return timeToLive;
+	}
+
+	private void setTimeToLive(long timeToLive) {
+		this.timeToLive = timeToLive;
+	}
+
+	public int getMaxPausedSessions() {
+		return maxPausedSessions;
+	}
+
+	private void setMaxPausedSessions(int maxPausedSessions) {
+		this.maxPausedSessions = maxPausedSessions;
+	}
+
+	public Path getPersistenceFile() {
+		return persistenceFile;
+	}
+
+	private void setPersistenceFile(Path persistenceFile) {
+		this.persistenceFile = persistenceFile;
+	}
+
+	private ExecutorService getPersistenceWriter() {
+		return persistenceWriter;
+	}
+
+	private void setPersistenceWriter(ExecutorService persistenceWriter) {
+		this.persistenceWriter = persistenceWriter;
+	}
+
+	private AtomicBoolean getWritePending() {
+		return writePending;
+	}
+
+	private void setWritePending(AtomicBoolean writePending) {
+		this.writePending = writePending;
+	}
+}
@@ -24,190 +24,199 @@
 package com.v2gclarity.risev2g.secc.session;
 
 import java.net.DatagramPacket;
-import java.net.Inet6Address;
-import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Observable;
-import java.util.Observer;
+import java.util.List;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import com.v2gclarity.risev2g.secc.misc.EVSEInterface;
+import com.v2gclarity.risev2g.secc.session.V2GCommunicationSessionRegistry.SessionEntry;
+import com.v2gclarity.risev2g.secc.transportLayer.ConnectionAcceptedEvent;
 import com.v2gclarity.risev2g.secc.transportLayer.ConnectionHandler;
-import com.v2gclarity.risev2g.secc.transportLayer.TCPServer;
+import com.v2gclarity.risev2g.secc.transportLayer.NIOConnectionHandler;
+import com.v2gclarity.risev2g.secc.transportLayer.StatefulTransportLayerServer;
 import com.v2gclarity.risev2g.secc.transportLayer.TLSServer;
-import com.v2gclarity.risev2g.secc.transportLayer.UDPServer;
 import com.v2gclarity.risev2g.shared.enumerations.GlobalValues;
+import com.v2gclarity.risev2g.shared.events.SessionPausedEvent;
+import com.v2gclarity.risev2g.shared.events.SessionTerminatedEvent;
+import com.v2gclarity.risev2g.shared.events.V2GEventBus;
 import com.v2gclarity.risev2g.shared.messageHandling.MessageHandler;
-import com.v2gclarity.risev2g.shared.messageHandling.PauseSession;
-import com.v2gclarity.risev2g.shared.messageHandling.TerminateSession;
+import com.v2gclarity.risev2g.shared.misc.TransportLayerExecutor;
 import com.v2gclarity.risev2g.shared.misc.V2GTPMessage;
-import com.v2gclarity.risev2g.shared.utils.ByteUtils;
-import com.v2gclarity.risev2g.shared.v2gMessages.SECCDiscoveryReq;
-import com.v2gclarity.risev2g.shared.v2gMessages.SECCDiscoveryRes;
 
-public class V2GCommunicationSessionHandlerSECC implements Observer {
+public class V2GCommunicationSessionHandlerSECC {
 
 	private Logger logger = LogManager.getLogger(this.getClass().getSimpleName());
-	private HashMap<String, V2GCommunicationSessionSECC> v2gCommunicationSessions;
 	/*
-	 * Keeps a list of all ConnectionHandlers and their respective running Threads.
-	 * The V2GCommunicationSessionHandlerSECC needs a ConnectionHandler (with its TCP/TLS client socket)
-	 * in order to associate it with a V2GCommunicationSessionSECC. Handing over a Thread instead brings
-	 * up the problem that you can't access the Thread's runnable object (ConnectionHandler).
+	 * Keeps track of all connected sessions as well as the ConnectionHandlers and the Futures of 
+	 * their running tasks (see TransportLayerExecutor). The registry is updated by the TCP/TLS server threads 
+	 * and all connection threads, which is why it is built on concurrent maps.
 	 */
-	private static HashMap<ConnectionHandler, Thread> connectionHandlerMap;
+	private V2GCommunicationSessionRegistry sessionRegistry;
+	/*
+	 * Maps the TCP and TLS server of each EVSE interface to the EVSE interface. The map is filled upon 
+	 * construction and only read afterwards.
+	 */
+	private HashMap<StatefulTransportLayerServer, EVSEInterface> evseInterfaces;
 	private MessageHandler messageHandler;
-	private V2GTPMessage v2gTpMessage;
-	private byte security; 
 	
-	public V2GCommunicationSessionHandlerSECC() {
-		// Tell the respective transport layer Observables to notify this session handler
-		UDPServer.getInstance().addObserver(this);
-		TCPServer.getInstance().addObserver(this);
-		TLSServer.getInstance().addObserver(this);
+	/**
+	 * @param evseInterfaces The EVSE interfaces whose UDP, TCP and TLS servers are to be handled
+	 */
+	public V2GCommunicationSessionHandlerSECC(List<EVSEInterface> evseInterfaces) {
+		setEvseInterfaces(new HashMap<StatefulTransportLayerServer, EVSEInterface>());
 		
-		// Maps IP addresses of the clients given as a String to V2GCommunicationSessionSECC objects
-		setV2gCommunicationSessions(new HashMap<String, V2GCommunicationSessionSECC>());
+		// Receive the SECCDiscoveryReq messages and the accepted connections of every EVSE interface
+		for (EVSEInterface evseInterface : evseInterfaces) {
+			evseInterface.getUdpServer().setPacketHandler(udpClientPacket -> processSECCDiscoveryReq(evseInterface, udpClientPacket));
+			
+			V2GEventBus.getInstance().subscribe(evseInterface.getTcpServer(), ConnectionAcceptedEvent.class, this::processAcceptedConnection);
+			V2GEventBus.getInstance().subscribe(evseInterface.getTlsServer(), ConnectionAcceptedEvent.class, this::processAcceptedConnection);
+			
+			getEvseInterfaces().put(evseInterface.getTcpServer(), evseInterface);
+			getEvseInterfaces().put(evseInterface.getTlsServer(), evseInterface);
+		}
 		
-		// Maps ConnectionHandlers to their respective running threads
-		setConnectionHandlerMap(new HashMap<ConnectionHandler, Thread>());
+		// Indexes the sessions by IP address of the client, session ID, EVSE ID and ConnectionHandler
+		setSessionRegistry(new V2GCommunicationSessionRegistry());
 		
 		setMessageHandler(MessageHandler.getInstance());
 	}
 
-	@Override
-	public void update(Observable obs, Object obj) {
-		if (obs instanceof UDPServer && obj instanceof DatagramPacket) {
-			processSECCDiscoveryReq((DatagramPacket) obj);
-		} else if ((obs instanceof TCPServer || obs instanceof TLSServer) && obj instanceof ConnectionHandler) {
-			String ipAddress = ((ConnectionHandler) obj).getAddress();
-			
-			if (getV2gCommunicationSessions().containsKey(ipAddress)) {
-				/*
-				 * Assign the new ConnectionHandler to the respective existing V2GCommunicationSessionSECC.
-				 * This way the V2GCommunicationSessionSECC knows to which socket to write to when
-				 * sending messages and from which socket to read from when receiving messages.
-				 * 
-				 * This if-clause is executed as soon as an EV resumes a previously paused charging 
-				 * session. Before pausing, the TCP/TLS socket has been closed, but the charging session 
-				 * data object (V2GCommunicationSessionSECC) needed to be kept alive in order to later
-				 * on continue a charging session with the saved data.
+	/*
+	 * Every connection gets a new V2GCommunicationSessionSECC. If the EVCC resumes a previously paused 
+	 * charging session, the session's data is restored from the PausedSessionStore as soon as the EVCC 
+	 * presents the session ID of the paused session (see checkSessionID() of V2GCommunicationSessionSECC).
+	 * 
+	 * Important!
+	 * The connectionHandler thread must not be started (will start reading the incoming bytes)
+	 * before the V2GCommunicationSessionSECC object is instantiated and subscribed to the 
+	 * ConnectionHandler's events, otherwise events may get lost. 
+	 */
+	private void processAcceptedConnection(ConnectionAcceptedEvent event) {
+		ConnectionHandler connectionHandler = event.getConnectionHandler();
+		
+		getLogger().debug("Initiating a new communication session ...");
+		V2GCommunicationSessionSECC newSession = new V2GCommunicationSessionSECC(connectionHandler);
+		newSession.setEvseInterface(getEvseInterfaces().get(event.getServer()));
+		newSession.setTlsConnection((event.getServer() instanceof TLSServer) ? true : false);
+		
+		V2GEventBus.getInstance().subscribe(newSession, SessionTerminatedEvent.class, this::processTerminatedSession);
+		V2GEventBus.getInstance().subscribe(newSession, SessionPausedEvent.class, this::processPausedSession);
+		
+		manageConnectionHandlers(getSessionRegistry().register(newSession, connectionHandler));
+	}
+	
+	
+	private void processTerminatedSession(SessionTerminatedEvent event) {
+		V2GCommunicationSessionSECC session = (V2GCommunicationSessionSECC) event.getSession();
+		stopConnectionHandler(session.getConnectionHandler(), false);
+		unsubscribe(session);
+		
+		// Remove the V2GCommunicationSessionSECC instance from the registry
+		getSessionRegistry().remove(session);
+	}
+	
+	
+	private void processPausedSession(SessionPausedEvent event) {
+		V2GCommunicationSessionSECC session = (V2GCommunicationSessionSECC) event.getSession();
+		stopConnectionHandler(session.getConnectionHandler(), true);
+		unsubscribe(session);
+		
+		// Keep the data needed for resuming the session in the PausedSessionStore, but not the session itself
+		getSessionRegistry().pause(session);
+	}
+	
+	
+	/**
+	 * Removes the listeners of the events of the given session and its ConnectionHandler, no further events of the 
+	 * connection are processed once the session has been terminated or paused.
+	 */
+	private void unsubscribe(V2GCommunicationSessionSECC session) {
+		V2GEventBus.getInstance().unsubscribe(session);
+		V2GEventBus.getInstance().unsubscribe(session.getConnectionHandler());
+	}
 
-				 * Important!
-				 * The connectionHandler thread must not be started (will start reading the incoming bytes)
-				 * before the V2GCommunicationSessionSECC object is instantiated, otherwise it may lead to 
-				 * race conditions. 
-				 */
-				getLogger().debug("Resuming previous communication session ...");
-				V2GCommunicationSessionSECC continuedSession = getV2gCommunicationSessions().get(ipAddress);
-				
-				// Reset charging session state from previous session (namely ChargingSessionType.PAUSE) to avoid confusion in the algorithm
-				continuedSession.setChargingSession(null);
-				
-				continuedSession.setConnectionHandler((ConnectionHandler) obj);
-				continuedSession.setTlsConnection((obs instanceof TLSServer) ? true : false);
-				((ConnectionHandler) obj).addObserver(getV2gCommunicationSessions().get(ipAddress));
-				
-				manageConnectionHandlers((ConnectionHandler) obj);
-			} else { 
-				getLogger().debug("Initiating a new communication session ...");
-				V2GCommunicationSessionSECC newSession = new V2GCommunicationSessionSECC((ConnectionHandler) obj);
-				newSession.setTlsConnection((obs instanceof TLSServer) ? true : false);
-				newSession.addObserver(this);
-				getV2gCommunicationSessions().put(ipAddress, newSession);
-				
-				manageConnectionHandlers((ConnectionHandler) obj);
-			}
-		} else if (obs instanceof V2GCommunicationSessionSECC && obj instanceof TerminateSession) {
-			// Remove the V2GCommunicationSessionSECC instance from the hash map
-			String ipAddress = ((V2GCommunicationSessionSECC) obs).getConnectionHandler().getAddress();
-			getV2gCommunicationSessions().remove(ipAddress);
-			
-			stopConnectionHandler(((V2GCommunicationSessionSECC) obs).getConnectionHandler(), false);
-		} else if (obs instanceof V2GCommunicationSessionSECC && obj instanceof PauseSession) {
-			// Stop the connection handler, but keep the V2GCommunicationSessionSECC instance in the hash map
-			stopConnectionHandler(((V2GCommunicationSessionSECC) obs).getConnectionHandler(), true);
-		} else {
-			getLogger().warn("Notification received, but sending entity or received object not identifiable");
+	
+	private void manageConnectionHandlers(SessionEntry sessionEntry) {
+		ConnectionHandler connectionHandler = sessionEntry.getConnectionHandler();
+		
+		if (connectionHandler instanceof NIOConnectionHandler) {
+			// Registers the connection with its event loop, no thread of its own is needed
+			connectionHandler.run();
+			return;
 		}
+		
+		sessionEntry.setConnectionTask(TransportLayerExecutor.getInstance().execute(
+				connectionHandler, "ConnectionThread " + connectionHandler.getAddress()));
 	}
-
 	
-	private void manageConnectionHandlers(ConnectionHandler connectionHandler) {
-		Thread connectionHandlerThread = new Thread(connectionHandler);
-		connectionHandlerThread.setDaemon(true);
-		connectionHandlerThread.setName("ConnectionThread " + connectionHandler.getAddress());
-		connectionHandlerThread.start();
+	/*
+	 * EVCCs repeat the SECCDiscoveryReq up to 50 times, and many EVCCs may probe at the same time. Therefore, 
+	 * the request is checked byte by byte without creating any objects and answered with one of the two 
+	 * SECCDiscoveryRes datagrams (TLS or no TLS) which each EVSE interface prepared upon initialization. 
+	 * No state is kept in this session handler, so the UDP servers of all EVSE interfaces may call this 
+	 * method concurrently.
+	 */
+	private void processSECCDiscoveryReq(EVSEInterface evseInterface, DatagramPacket udpClientPacket) {
+		if (!isSECCDiscoveryReq(udpClientPacket.getData(), udpClientPacket.getOffset(), udpClientPacket.getLength())) {
+			getLogger().warn("Incoming DatagramPacket could not be identified as an SECCDiscoveryReq");
+			return;
+		}
 		
-		getConnectionHandlerMap().put(connectionHandler, connectionHandlerThread);
+		byte security = udpClientPacket.getData()[udpClientPacket.getOffset() + V2GTPMessage.HEADER_LENGTH];
+		getLogger().debug("SECCDiscoveryReq received");
+		
+		/*
+		 * The TCP and TLS server ports are created upon initialization of the TCP/TLS server and will 
+		 * remain the same for every connected EV. Only TCP or TLS are allowed as transport 
+		 * protocols for further communication beyond the SECCDiscoveryReq/-Res handshake (not UDP).
+		 * 
+		 * One might implement further decision rules for dealing with the security level (TCP or TLS)
+		 * requested by the EVCC (see also Table 3 and 4 of ISO/IEC 15118-2). For now, the requested
+		 * security level of the EVCC will always be accepted.
+		 */
+		byte[] seccDiscoveryRes = evseInterface.getSECCDiscoveryRes(security == GlobalValues.V2G_SECURITY_WITH_TLS.getByteValue());
+		
+		// The SECCDiscoveryRes must be sent via UDP before the requested TCP/TLS server can be used
+		evseInterface.getUdpServer().send(seccDiscoveryRes, udpClientPacket.getAddress(), udpClientPacket.getPort());
 	}
 	
-	private void processSECCDiscoveryReq(DatagramPacket udpClientPacket) {
-		setV2gTpMessage(new V2GTPMessage(udpClientPacket.getData()));
+	
+	/**
+	 * Checks if the given bytes form a valid SECCDiscoveryReq (V2GTP header with SDP request payload type and a 
+	 * payload of 2 bytes, the first one requesting TLS or no TLS).
+	 */
+	private boolean isSECCDiscoveryReq(byte[] data, int offset, int length) {
+		if (length != V2GTPMessage.HEADER_LENGTH + 2) return false;
 		
-		try {
-			if (getMessageHandler().isV2GTPMessageValid(getV2gTpMessage()) &&
-			    Arrays.equals(getV2gTpMessage().getPayloadType(), GlobalValues.V2GTP_PAYLOAD_TYPE_SDP_REQUEST_MESSAGE.getByteArrayValue())) {
-				
-				SECCDiscoveryReq seccDiscoveryReq = new SECCDiscoveryReq(getV2gTpMessage().getPayload());
-				setSecurity(seccDiscoveryReq.getSecurity());
-				getLogger().debug("SECCDiscoveryReq received");
-				
-				/*
-				 * The TCP and TLS server ports are created upon initialization of the TCP/TLS server and will 
-				 * remain the same for every connected EV. Only TCP or TLS are allowed as transport 
-				 * protocols for further communication beyond the SECCDiscoveryReq/-Res handshake (not UDP).
-				 * 
-				 * One might implement further decision rules for dealing with the security level (TCP or TLS)
-				 * requested by the EVCC (see also Table 3 and 4 of ISO/IEC 15118-2). For now, the requested
-				 * security level of the EVCC will always be accepted.
-				 */
-				byte[] seccAddress = (isSecureCommunication()) ? TLSServer.getInstance().getServerAddress().getAddress() : TCPServer.getInstance().getServerAddress().getAddress();
-				int seccPort = (isSecureCommunication()) ? TLSServer.getInstance().getServerPort() : TCPServer.getInstance().getServerPort();
-						
-				SECCDiscoveryRes seccDiscoveryRes = new SECCDiscoveryRes(
-															seccAddress,
-															ByteUtils.toByteArrayFromInt(seccPort, true),
-															getSecurity(),
-															GlobalValues.V2G_TRANSPORT_PROTOCOL_TCP.getByteValue()
-														);
-				
-				setV2gTpMessage(new V2GTPMessage(GlobalValues.V2GTP_VERSION_1_IS.getByteValue(), 
-												 GlobalValues.V2GTP_PAYLOAD_TYPE_SDP_RESPONSE_MESSAGE.getByteArrayValue(),
-												 seccDiscoveryRes.getPayload()));
-				
-				getLogger().debug("Preparing to send SECCDiscoveryRes ...");
-				
-				// The SECCDiscoveryRes must be sent via UDP before the requested TCP/TLS server can be used
-				UDPServer.getInstance().send(getV2gTpMessage(), (Inet6Address) udpClientPacket.getAddress(), udpClientPacket.getPort());
-			} else {
-				getLogger().warn("Incoming DatagramPacket could not be identified as an SECCDiscoveryReq");
-			}
-		} catch (NullPointerException e) {
-			getLogger().error("NullPointerException occurred while processing SECCDiscoveryReq", e);
-		}
+		byte[] sdpRequestPayloadType = GlobalValues.V2GTP_PAYLOAD_TYPE_SDP_REQUEST_MESSAGE.getByteArrayValue();
+		byte security = data[offset + V2GTPMessage.HEADER_LENGTH];
+		
+		return data[offset] == GlobalValues.V2GTP_VERSION_1_IS.getByteValue() &&
+			   data[offset + 1] == (byte) (data[offset] ^ 0xFF) &&
+			   data[offset + 2] == sdpRequestPayloadType[0] && 
+			   data[offset + 3] == sdpRequestPayloadType[1] &&
+			   data[offset + 4] == 0 && data[offset + 5] == 0 && data[offset + 6] == 0 && data[offset + 7] == 2 &&
+			   (security == GlobalValues.V2G_SECURITY_WITH_TLS.getByteValue() || 
+			    security == GlobalValues.V2G_SECURITY_WITHOUT_TLS.getByteValue());
 	}
 	
+	
 	/**
-	 * Stops (interrupts) the respective thread running the provided ConnectionHandler and tries
-	 * to close its socket. 
-	 * @param connectionHandler The ConnectionHandler whose socket is to be closed and whose thread
-	 * 							   is to be interrupted.
+	 * Stops the provided ConnectionHandler by closing its socket, which ends the ConnectionHandler's task 
+	 * (or deregisters it from its event loop). 
+	 * @param connectionHandler The ConnectionHandler whose socket is to be closed
+	 * @param pausingSession True, if the connection is closed because the charging session is paused
 	 */
 	public void stopConnectionHandler(ConnectionHandler connectionHandler, boolean pausingSession) {
-		if (getConnectionHandlerMap().containsKey(connectionHandler)) {
+		// Removing the ConnectionHandler first makes sure that only one caller stops it
+		if (getSessionRegistry().detachConnectionHandler(connectionHandler) != null) {
 			// Close the socket
 			connectionHandler.stop();
 			
-			// Interrupt session thread
-			Thread connectionThread = getConnectionHandlerMap().get(connectionHandler);
-			connectionThread.interrupt();
-			
-			// Remove HashMap entry
-			getConnectionHandlerMap().remove(connectionHandler);
-			
-			
-			getLogger().debug("Thread '" + connectionThread.getName() + "' has been interrupted and removed" + 
+			getLogger().debug("Connection to client with IP address " + connectionHandler.getAddress() + " and port " + 
+							  connectionHandler.getPort() + " has been stopped and removed" + 
 							  ((pausingSession) ? ". Charging session is paused." : "") + "\n\n");
 		} else {
 			String address = connectionHandler.getAddress();
@@ -218,17 +227,12 @@ public class V2GCommunicationSessionHandlerSECC implements Observer {
 		}
 	}
 	
-	public boolean isSecureCommunication() {
-		return Byte.compare(getSecurity(), GlobalValues.V2G_SECURITY_WITH_TLS.getByteValue()) == 0 ? true : false;
-	}
-	
-	public HashMap<String, V2GCommunicationSessionSECC> getV2gCommunicationSessions() {
-		return v2gCommunicationSessions;
+	public V2GCommunicationSessionRegistry getSessionRegistry() {
+		return sessionRegistry;
 	}
 
-	public void setV2gCommunicationSessions(
-			HashMap<String, V2GCommunicationSessionSECC> v2gCommunicationSessions) {
-		this.v2gCommunicationSessions = v2gCommunicationSessions;
+	private void setSessionRegistry(V2GCommunicationSessionRegistry sessionRegistry) {
+		this.sessionRegistry = sessionRegistry;
 	}
 
 	public Logger getLogger() {
@@ -247,27 +251,11 @@ public class V2GCommunicationSessionHandlerSECC implements Observer {
 		this.messageHandler = messageHandler;
 	}
 
-	public V2GTPMessage getV2gTpMessage() {
-		return v2gTpMessage;
-	}
-
-	public void setV2gTpMessage(V2GTPMessage v2gTpMessage) {
-		this.v2gTpMessage = v2gTpMessage;
-	}
-
-	public static HashMap<ConnectionHandler, Thread> getConnectionHandlerMap() {
-		return connectionHandlerMap;
-	}
-
-	public static void setConnectionHandlerMap(HashMap<ConnectionHandler, Thread> connectionHandlerMap) {
-		V2GCommunicationSessionHandlerSECC.connectionHandlerMap = connectionHandlerMap;
-	}
-
-	public byte getSecurity() {
-		return security;
+	private HashMap<StatefulTransportLayerServer, EVSEInterface> getEvseInterfaces() {
+		return evseInterfaces;
 	}
 
-	public void setSecurity(byte security) {
-		this.security = security;
+	private void setEvseInterfaces(HashMap<StatefulTransportLayerServer, EVSEInterface> evseInterfaces) {
+		this.evseInterfaces = evseInterfaces;
 	}
 }
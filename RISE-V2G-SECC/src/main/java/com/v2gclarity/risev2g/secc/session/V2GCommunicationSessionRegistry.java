@@ -0,0 +1,405 @@
+/*******************************************************************************
+ *  The MIT License (MIT)
+ *
+ *  Copyright (c) 2015 - 2019  Dr. Marc Mültin (V2G Clarity)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ *******************************************************************************/
+package com.v2gclarity.risev2g.secc.session;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+
+import com.v2gclarity.risev2g.secc.transportLayer.ConnectionHandler;
+import com.v2gclarity.risev2g.shared.misc.State;
+import com.v2gclarity.risev2g.shared.utils.ByteUtils;
+
+/**
+ * Keeps track of all V2GCommunicationSessionSECC instances of the SECC which are connected to an EVCC. A session 
+ * can be looked up by the IP address of the EVCC, by its session ID, by the EVSE ID of its EVSE controller and by 
+ * its ConnectionHandler. Paused sessions are handed over to the PausedSessionStore.
+ * 
+ * The registry is accessed concurrently by the TCP/TLS server threads (new connections), the connection threads 
+ * or event loops (terminated and paused sessions) and monitoring code. All indexes are concurrent maps, so no 
+ * lookup blocks, and iterating over the sessions never throws a ConcurrentModificationException. 
+ */
+public class V2GCommunicationSessionRegistry {
+
+	private ConcurrentHashMap<V2GCommunicationSessionSECC, SessionEntry> sessions;
+	private ConcurrentHashMap<String, SessionEntry> sessionsByIpAddress;
+	private ConcurrentHashMap<Long, SessionEntry> sessionsBySessionID;
+	private ConcurrentHashMap<String, Set<SessionEntry>> sessionsByEvseID;
+	private ConcurrentHashMap<ConnectionHandler, SessionEntry> sessionsByConnectionHandler;
+	private PausedSessionStore pausedSessionStore;
+	
+	public V2GCommunicationSessionRegistry() {
+		setSessions(new ConcurrentHashMap<V2GCommunicationSessionSECC, SessionEntry>());
+		setSessionsByIpAddress(new ConcurrentHashMap<String, SessionEntry>());
+		setSessionsBySessionID(new ConcurrentHashMap<Long, SessionEntry>());
+		setSessionsByEvseID(new ConcurrentHashMap<String, Set<SessionEntry>>());
+		setSessionsByConnectionHandler(new ConcurrentHashMap<ConnectionHandler, SessionEntry>());
+		setPausedSessionStore(new PausedSessionStore());
+	}
+	
+	
+	/**
+	 * Registers a new session which is connected via the given ConnectionHandler. The session is told to 
+	 * report changes of its session ID to this registry.
+	 * 
+	 * @param session The new session
+	 * @param connectionHandler The ConnectionHandler of the session's TCP/TLS connection
+	 * @return The registry entry of the session
+	 */
+	public SessionEntry register(V2GCommunicationSessionSECC session, ConnectionHandler connectionHandler) {
+		SessionEntry entry = new SessionEntry(session);
+		
+		entry.setConnectionHandler(connectionHandler);
+		entry.setIpAddress(connectionHandler.getAddress());
+		entry.setCurrentState(session.getCurrentState());
+		
+		getSessions().put(session, entry);
+		getSessionsByConnectionHandler().put(connectionHandler, entry);
+		if (entry.getIpAddress() != null) getSessionsByIpAddress().put(entry.getIpAddress(), entry);
+		
+		String evseID = (session.getEvseController() != null) ? session.getEvseController().getEvseID() : null;
+		if (evseID != null) {
+			entry.setEvseID(evseID);
+			getSessionsByEvseID().computeIfAbsent(evseID, id -> ConcurrentHashMap.<SessionEntry>newKeySet()).add(entry);
+		}
+		
+		session.setSessionRegistry(this);
+		updateSessionID(session);
+		
+		return entry;
+	}
+	
+	
+	/**
+	 * Removes the given ConnectionHandler from the registry. Only the first call for a ConnectionHandler 
+	 * returns its session's entry, so concurrent attempts to stop the same connection can be told apart.
+	 * 
+	 * @param connectionHandler The ConnectionHandler whose connection is being stopped
+	 * @return The registry entry of the session the ConnectionHandler belonged to, or null if the 
+	 * 		   ConnectionHandler is unknown or has already been removed
+	 */
+	public SessionEntry detachConnectionHandler(ConnectionHandler connectionHandler) {
+		SessionEntry entry = getSessionsByConnectionHandler().remove(connectionHandler);
+		
+		if (entry != null && entry.getConnectionHandler() == connectionHandler) entry.setConnectionTask(null);
+		
+		return entry;
+	}
+	
+	
+	/**
+	 * Hands the given session over to the PausedSessionStore. Only a snapshot of the session's data needed for 
+	 * resuming it is kept, the session itself is removed from the registry.
+	 * 
+	 * @param session The session which has been paused by the EVCC
+	 * @return The snapshot of the paused session
+	 */
+	public PausedSessionSnapshot pause(V2GCommunicationSessionSECC session) {
+		PausedSessionSnapshot snapshot = new PausedSessionSnapshot(session);
+		getPausedSessionStore().put(snapshot);
+		remove(session);
+		
+		return snapshot;
+	}
+	
+	
+	/**
+	 * Updates the session ID index after the session ID of the given session changed. Called by the session
+	 * itself (see V2GCommunicationSessionSECC.setSessionID()).
+	 */
+	public void updateSessionID(V2GCommunicationSessionSECC session) {
+		SessionEntry entry = getSessions().get(session);
+		if (entry == null) return;
+		
+		long sessionID = toSessionIDKey(session.getSessionID());
+		
+		if (entry.getSessionID() != 0L && entry.getSessionID() != sessionID) 
+			getSessionsBySessionID().remove(entry.getSessionID(), entry);
+		
+		entry.setSessionID(sessionID);
+		if (sessionID != 0L) getSessionsBySessionID().put(sessionID, entry);
+	}
+	
+	
+	/**
+	 * Updates the current state and the last activity time of the given session after it has processed a 
+	 * received message. Called by the session itself (see V2GCommunicationSessionSECC.processIncomingMessage()).
+	 */
+	public void updateState(V2GCommunicationSessionSECC session) {
+		SessionEntry entry = getSessions().get(session);
+		if (entry == null) return;
+		
+		entry.setCurrentState(session.getCurrentState());
+		entry.setLastActivityTime(System.currentTimeMillis());
+	}
+	
+	
+	/**
+	 * Removes the given session from all indexes.
+	 * 
+	 * @param session The terminated session
+	 * @return The removed registry entry, or null if the session was not registered
+	 */
+	public SessionEntry remove(V2GCommunicationSessionSECC session) {
+		SessionEntry entry = getSessions().remove(session);
+		if (entry == null) return null;
+		
+		if (entry.getIpAddress() != null) getSessionsByIpAddress().remove(entry.getIpAddress(), entry);
+		if (entry.getSessionID() != 0L) getSessionsBySessionID().remove(entry.getSessionID(), entry);
+		if (entry.getConnectionHandler() != null) getSessionsByConnectionHandler().remove(entry.getConnectionHandler(), entry);
+		
+		if (entry.getEvseID() != null) {
+			getSessionsByEvseID().computeIfPresent(entry.getEvseID(), (id, entries) -> {
+				entries.remove(entry);
+				return (entries.isEmpty()) ? null : entries;
+			});
+		}
+		
+		session.setSessionRegistry(null);
+		
+		return entry;
+	}
+	
+	
+	public SessionEntry getBySession(V2GCommunicationSessionSECC session) {
+		return getSessions().get(session);
+	}
+	
+	public SessionEntry getByIpAddress(String ipAddress) {
+		return getSessionsByIpAddress().get(ipAddress);
+	}
+	
+	/**
+	 * @return The entry of the session with exactly the given session ID. Session IDs which only differ in 
+	 * 		   leading zero bytes share the same index key, so the session ID itself is compared as well.
+	 */
+	public SessionEntry getBySessionID(byte[] sessionID) {
+		long key = toSessionIDKey(sessionID);
+		if (key == 0L) return null;
+		
+		SessionEntry entry = getSessionsBySessionID().get(key);
+		
+		return (entry != null && Arrays.equals(entry.getSession().getSessionID(), sessionID)) ? entry : null;
+	}
+	
+	public SessionEntry getByConnectionHandler(ConnectionHandler connectionHandler) {
+		return getSessionsByConnectionHandler().get(connectionHandler);
+	}
+	
+	/**
+	 * @return The entries of all connected sessions served by the EVSE with the given ID. Paused sessions are 
+	 * 		   kept by the PausedSessionStore.
+	 */
+	public Collection<SessionEntry> getByEvseID(String evseID) {
+		Set<SessionEntry> entries = getSessionsByEvseID().get(evseID);
+		
+		return (entries != null) ? Collections.unmodifiableSet(entries) : Collections.<SessionEntry>emptySet();
+	}
+	
+	/**
+	 * @return A live, unmodifiable view of all registry entries for monitoring purposes. Iterating over it 
+	 * 		   does not block the registry.
+	 */
+	public Collection<SessionEntry> getSessionEntries() {
+		return Collections.unmodifiableCollection(getSessions().values());
+	}
+	
+	public int getSessionCount() {
+		return getSessions().size();
+	}
+	
+	public int getConnectedSessionCount() {
+		return getSessionsByConnectionHandler().size();
+	}
+	
+	public int getPausedSessionCount() {
+		return getPausedSessionStore().size();
+	}
+	
+	
+	/**
+	 * The session ID is an up to 8 byte long value and is therefore indexed as long value. The session ID "00" 
+	 * is used by the EVCC to request a new session and is not indexed (key 0).
+	 */
+	private long toSessionIDKey(byte[] sessionID) {
+		return (sessionID != null) ? ByteUtils.toLongFromByteArray(sessionID) : 0L;
+	}
+	
+	
+	/**
+	 * The registry's information about one session. 
+	 */
+	public static final class SessionEntry {
+		
+		private final V2GCommunicationSessionSECC session;
+		private final long creationTime;
+		private volatile State currentState;
+		private volatile long lastActivityTime;
+		private volatile ConnectionHandler connectionHandler;
+		private volatile Future<?> connectionTask;
+		private volatile String ipAddress;
+		private volatile long sessionID;
+		private volatile String evseID;
+		
+		private SessionEntry(V2GCommunicationSessionSECC session) {
+			this.session = session;
+			this.creationTime = System.currentTimeMillis();
+			this.lastActivityTime = creationTime;
+		}
+		
+		public V2GCommunicationSessionSECC getSession() {
+			return session;
+		}
+		
+		/**
+		 * @return The point in time (in milliseconds since the epoch) the session has been registered
+		 */
+		public long getCreationTime() {
+			return creationTime;
+		}
+		
+		/**
+		 * @return The state of the session after it has processed the last received message, i.e. the state 
+		 * 		   waiting for the next request message of the EVCC
+		 */
+		public State getCurrentState() {
+			return currentState;
+		}
+		
+		private void setCurrentState(State currentState) {
+			this.currentState = currentState;
+		}
+		
+		/**
+		 * @return The point in time (in milliseconds since the epoch) the session has last processed a received 
+		 * 		   message, or its creation time if it has not received any message yet
+		 */
+		public long getLastActivityTime() {
+			return lastActivityTime;
+		}
+		
+		private void setLastActivityTime(long lastActivityTime) {
+			this.lastActivityTime = lastActivityTime;
+		}
+		
+		public ConnectionHandler getConnectionHandler() {
+			return connectionHandler;
+		}
+		
+		private void setConnectionHandler(ConnectionHandler connectionHandler) {
+			this.connectionHandler = connectionHandler;
+		}
+		
+		/**
+		 * @return The Future of the ConnectionHandler's task, or null if the ConnectionHandler is served by an
+		 * 		   event loop or the connection has been stopped
+		 */
+		public Future<?> getConnectionTask() {
+			return connectionTask;
+		}
+		
+		public void setConnectionTask(Future<?> connectionTask) {
+			this.connectionTask = connectionTask;
+		}
+		
+		public String getIpAddress() {
+			return ipAddress;
+		}
+		
+		private void setIpAddress(String ipAddress) {
+			this.ipAddress = ipAddress;
+		}
+		
+		/**
+		 * @return The session ID given as long value, or 0 if no session ID has been assigned yet
+		 */
+		public long getSessionID() {
+			return sessionID;
+		}
+		
+		private void setSessionID(long sessionID) {
+			this.sessionID = sessionID;
+		}
+		
+		public String getEvseID() {
+			return evseID;
+		}
+		
+		private void setEvseID(String evseID) {
+			this.evseID = evseID;
+		}
+	}
+	
+
+	private ConcurrentHashMap<V2GCommunicationSessionSECC, SessionEntry> getSessions() {
+		return sessions;
+	}
+
+	private void setSessions(ConcurrentHashMap<V2GCommunicationSessionSECC, SessionEntry> sessions) {
+		this.sessions = sessions;
+	}
+
+	private ConcurrentHashMap<String, SessionEntry> getSessionsByIpAddress() {
+		return sessionsByIpAddress;
+	}
+
+	private void setSessionsByIpAddress(ConcurrentHashMap<String, SessionEntry> sessionsByIpAddress) {
+		this.sessionsByIpAddress = sessionsByIpAddress;
+	}
+
+	private ConcurrentHashMap<Long, SessionEntry> getSessionsBySessionID() {
+		return sessionsBySessionID;
+	}
+
+	private void setSessionsBySessionID(ConcurrentHashMap<Long, SessionEntry> sessionsBySessionID) {
+		this.sessionsBySessionID = sessionsBySessionID;
+	}
+
+	private ConcurrentHashMap<String, Set<SessionEntry>> getSessionsByEvseID() {
+		return sessionsByEvseID;
+	}
+
+	private void setSessionsByEvseID(ConcurrentHashMap<String, Set<SessionEntry>> sessionsByEvseID) {
+		this.sessionsByEvseID = sessionsByEvseID;
+	}
+
+	private ConcurrentHashMap<ConnectionHandler, SessionEntry> getSessionsByConnectionHandler() {
+		return sessionsByConnectionHandler;
+	}
+
+	private void setSessionsByConnectionHandler(ConcurrentHashMap<ConnectionHandler, SessionEntry> sessionsByConnectionHandler) {
+		this.sessionsByConnectionHandler = sessionsByConnectionHandler;
+	}
+
+	public PausedSessionStore getPausedSessionStore() {
+		return pausedSessionStore;
+	}
+
+	private void setPausedSessionStore(PausedSessionStore pausedSessionStore) {
+		this.pausedSessionStore = pausedSessionStore;
+	}
+}
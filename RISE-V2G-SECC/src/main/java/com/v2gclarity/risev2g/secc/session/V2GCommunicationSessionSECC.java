@@ -26,13 +26,12 @@ package com.v2gclarity.risev2g.secc.session;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Observable;
-import java.util.Observer;
 
 import com.v2gclarity.risev2g.secc.backend.IBackendInterface;
 import com.v2gclarity.risev2g.secc.evseController.IACEVSEController;
 import com.v2gclarity.risev2g.secc.evseController.IDCEVSEController;
 import com.v2gclarity.risev2g.secc.evseController.IEVSEController;
+import com.v2gclarity.risev2g.secc.misc.EVSEInterface;
 import com.v2gclarity.risev2g.secc.misc.SECCImplementationFactory;
 import com.v2gclarity.risev2g.secc.states.ForkState;
 import com.v2gclarity.risev2g.secc.states.WaitForAuthorizationReq;
@@ -56,6 +55,9 @@ import com.v2gclarity.risev2g.secc.states.WaitForWeldingDetectionReq;
 import com.v2gclarity.risev2g.secc.transportLayer.ConnectionHandler;
 import com.v2gclarity.risev2g.shared.enumerations.GlobalValues;
 import com.v2gclarity.risev2g.shared.enumerations.V2GMessages;
+import com.v2gclarity.risev2g.shared.events.FrameReceivedEvent;
+import com.v2gclarity.risev2g.shared.events.TransportLayerErrorEvent;
+import com.v2gclarity.risev2g.shared.events.V2GEventBus;
 import com.v2gclarity.risev2g.shared.messageHandling.ChangeProcessingState;
 import com.v2gclarity.risev2g.shared.messageHandling.PauseSession;
 import com.v2gclarity.risev2g.shared.messageHandling.ReactionToIncomingMessage;
@@ -81,7 +83,7 @@ import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.SAScheduleListType;
 import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.ServiceType;
 import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.V2GMessage;
 
-public class V2GCommunicationSessionSECC extends V2GCommunicationSession implements Observer {
+public class V2GCommunicationSessionSECC extends V2GCommunicationSession {
 	
 	private short schemaID;
 	private ACEVSEStatusType acEVSEStatus;
@@ -102,12 +104,17 @@ public class V2GCommunicationSessionSECC extends V2GCommunicationSession impleme
 	private CertificateChainType contractSignatureCertChain;
 	private MeterInfoType sentMeterInfo;
 	private boolean chargeProgressStarted; // for checking [V2G2-812]
+	private V2GCommunicationSessionRegistry sessionRegistry;
+	private EVSEInterface evseInterface;
 	
 	public V2GCommunicationSessionSECC(ConnectionHandler connectionHandler) {
 		setConnectionHandler(connectionHandler);
 		
-		// Tell the respective ConnectionHandler to notify if a new V2GTPMessage has arrived (see update()-method)
-		connectionHandler.addObserver(this);
+		// Receive the V2GTPMessages and errors of the respective ConnectionHandler
+		V2GEventBus.getInstance().subscribe(connectionHandler, FrameReceivedEvent.class, 
+				event -> processIncomingMessage(event.getV2gTpMessage()));
+		V2GEventBus.getInstance().subscribe(connectionHandler, TransportLayerErrorEvent.class, 
+				event -> terminateSession("ConnectionHandler has notified an error", false));
 		
 		getStates().put(V2GMessages.FORK, new ForkState(this));
 		getStates().put(V2GMessages.SUPPORTED_APP_PROTOCOL_REQ, new WaitForSupportedAppProtocolReq(this));
@@ -156,33 +163,47 @@ public class V2GCommunicationSessionSECC extends V2GCommunicationSession impleme
 	}
 	
 	
+	/**
+	 * The events of this session are dispatched in order with the events of its ConnectionHandler.
+	 */
 	@Override
-	public void update(Observable obs, Object obj) {
-		if (obs instanceof ConnectionHandler && obj instanceof byte[]) {
-			processIncomingMessage((byte[]) obj);
-		} else if (obs instanceof ConnectionHandler && obj == null) {
-			terminateSession("ConnectionHandler has notified an error", false);
-		}
+	public Object getEventOrderingKey() {
+		return getConnectionHandler();
 	}
 	
 	
-	public void processIncomingMessage(Object incomingMessage) {
-		setV2gTpMessage(new V2GTPMessage((byte[]) incomingMessage)); 
+	/**
+	 * Processes a received V2GTPMessage. Called by the V2GEventBus, never by the thread reading from the 
+	 * ConnectionHandler's socket.
+	 * 
+	 * @param v2gTpMessage The received V2GTPMessage
+	 */
+	public void processIncomingMessage(V2GTPMessage v2gTpMessage) {
+		Object incomingMessage = null;
+		setV2gTpMessage(v2gTpMessage); 
 		
 		if (getMessageHandler().isV2GTPMessageValid(getV2gTpMessage()) &&
-			Arrays.equals(getV2gTpMessage().getPayloadType(), GlobalValues.V2GTP_PAYLOAD_TYPE_EXI_ENCODED_V2G_MESSAGE.getByteArrayValue())) {
+			getV2gTpMessage().hasPayloadType(GlobalValues.V2GTP_PAYLOAD_TYPE_EXI_ENCODED_V2G_MESSAGE.getByteArrayValue())) {
 			/*
 			 * Decide which schema to use for decoding the EXI encoded message. 
 			 * Only the SupportedAppProtocolReq/Res message uses a different schema
 			 */
-			if (getCurrentState().equals(getStates().get(V2GMessages.SUPPORTED_APP_PROTOCOL_REQ))) {
-				incomingMessage = (SupportedAppProtocolReq) getMessageHandler().exiToSuppAppProtocolMsg(getV2gTpMessage().getPayload());
-			} else {
-				incomingMessage = (V2GMessage) getMessageHandler().exiToV2gMsg(getV2gTpMessage().getPayload());
+			try {
+				if (getCurrentState().equals(getStates().get(V2GMessages.SUPPORTED_APP_PROTOCOL_REQ))) {
+					incomingMessage = (SupportedAppProtocolReq) getMessageHandler().exiToSuppAppProtocolMsg(getV2gTpMessage().getPayloadBuffer());
+				} else {
+					incomingMessage = (V2GMessage) getMessageHandler().exiToV2gMsg(getV2gTpMessage().getPayloadBuffer());
+				}
+			} finally {
+				// The decoded message does not refer to the received bytes, so the receive buffer can be reused
+				v2gTpMessage.release();
 			}
 			
 			processReaction(getCurrentState().processIncomingMessage(incomingMessage));
+			
+			if (getSessionRegistry() != null) getSessionRegistry().updateState(this);
 		} else {
+			v2gTpMessage.release();
 			getLogger().warn("Received incoming message is not a valid V2GTPMessage", false);
 		}
 	}
@@ -222,38 +243,91 @@ public class V2GCommunicationSessionSECC extends V2GCommunicationSession impleme
 	 * @return The corresponding response code
 	 */
 	public ResponseCodeType checkSessionID(MessageHeaderType header) {
-		if (getCurrentState().equals(getStates().get(V2GMessages.SESSION_SETUP_REQ)) && 
-			ByteUtils.toHexString(header.getSessionID()).equals("00")) {
-			// EV wants to start a totally new charging session
+		byte[] presentedSessionID = header.getSessionID();
+		
+		if (!getCurrentState().equals(getStates().get(V2GMessages.SESSION_SETUP_REQ))) {
+			setOldSessionJoined(false);
+			
+			if (Arrays.equals(presentedSessionID, getSessionID())) {
+				// This should be the routine during a running charging session after a session setup
+				return ResponseCodeType.OK;
+			} else {
+				// EV sends a SessionID DURING the already running charging session which does not match
+				return ResponseCodeType.FAILED_UNKNOWN_SESSION;
+			}
+		}
+		
+		if (isNewSessionRequested(presentedSessionID)) {
+			/*
+			 * EV wants to start a totally new charging session. A session paused before by an EVCC with the same IP 
+			 * address is left untouched, as it may have been paused by another EV which used this address before.
+			 */
 			setSessionID(generateSessionIDRandomly());
 			setOldSessionJoined(false);
 			return ResponseCodeType.OK_NEW_SESSION_ESTABLISHED;
-		} else if (getCurrentState().equals(getStates().get(V2GMessages.SESSION_SETUP_REQ)) && 
-				   Arrays.equals(header.getSessionID(), getSessionID())) {
+		} 
+		
+		/*
+		 * The paused session is looked up by its session ID, not by the IP address of the EVCC, because the EVCC 
+		 * may have been assigned another link-local address in the meantime.
+		 */
+		PausedSessionSnapshot pausedSession = getPausedSession(presentedSessionID);
+		
+		if (pausedSession != null && getSessionRegistry().getPausedSessionStore().remove(pausedSession)) {
 			// A charging pause has taken place and the EV wants to resume the old charging session
+			resume(pausedSession);
+			setOldSessionJoined(true);
+			return ResponseCodeType.OK_OLD_SESSION_JOINED;
+		} else if (Arrays.equals(presentedSessionID, getSessionID())) {
+			// The EV repeats the session setup of this session
 			setOldSessionJoined(true);
 			return ResponseCodeType.OK_OLD_SESSION_JOINED;
-		} else if (getCurrentState().equals(getStates().get(V2GMessages.SESSION_SETUP_REQ)) && 
-				  !ByteUtils.toHexString(header.getSessionID()).equals("00") &&
-				  !Arrays.equals(header.getSessionID(), getSessionID())) {
+		} else {
 			// Avoid a "FAILED_..." response code by generating a new SessionID in the response
-			getLogger().warn("Presented session ID '" + ByteUtils.toHexString(header.getSessionID()) + "' does not match stored session ID '" +
+			getLogger().warn("Presented session ID '" + ByteUtils.toHexString(presentedSessionID) + "' does not match stored session ID '" +
 							 ByteUtils.toHexString(getSessionID()) + "'. Will reassign a new session ID");
 			setSessionID(generateSessionIDRandomly());
 			setOldSessionJoined(false);
 			return ResponseCodeType.OK_NEW_SESSION_ESTABLISHED;
-		} else if (Arrays.equals(header.getSessionID(), getSessionID())) {
-			// This should be the routine during a running charging session after a session setup
-			setOldSessionJoined(false);
-			return ResponseCodeType.OK;
-		} else {
-			// EV sends a SessionID DURING the already running charging session which does not match
-			setOldSessionJoined(false);
-			return ResponseCodeType.FAILED_UNKNOWN_SESSION;
 		}
 	}
 	
 	
+	/**
+	 * Checks if the given session ID is the one byte session ID "00" with which the EVCC requests a new session.
+	 */
+	private boolean isNewSessionRequested(byte[] sessionID) {
+		return sessionID != null && sessionID.length == 1 && sessionID[0] == 0;
+	}
+	
+	
+	/**
+	 * @param sessionID The session ID presented by the EVCC in the SessionSetupReq
+	 * @return The snapshot of the paused session with the given session ID, or null if there is none
+	 */
+	private PausedSessionSnapshot getPausedSession(byte[] sessionID) {
+		if (getSessionRegistry() == null || sessionID == null) return null;
+		
+		return getSessionRegistry().getPausedSessionStore().getBySessionID(sessionID);
+	}
+	
+	
+	/**
+	 * Restores the data of a paused session which the EVCC resumes with this session. 
+	 * 
+	 * @param pausedSession The snapshot taken when the session was paused
+	 */
+	private void resume(PausedSessionSnapshot pausedSession) {
+		getLogger().debug("Resuming previous communication session ...");
+		
+		setSessionID(pausedSession.getSessionID());
+		setSelectedPaymentOption(pausedSession.getSelectedPaymentOption());
+		setSaSchedules(pausedSession.getSaSchedules());
+		setChosenSAScheduleTuple(pausedSession.getChosenSAScheduleTuple());
+		setContractSignatureCertChain(pausedSession.getContractSignatureCertChain());
+	}
+	
+	
 	@SuppressWarnings("unchecked")
 	public PaymentOptionListType getPaymentOptions() {
 		ArrayList<PaymentOptionType> paymentOptions = new ArrayList<PaymentOptionType>();
@@ -301,6 +375,18 @@ public class V2GCommunicationSessionSECC extends V2GCommunicationSession impleme
 	}
 	
 	
+	/**
+	 * Sets the session ID and tells the session registry (if the session has been registered) to index 
+	 * the session by its new session ID.
+	 */
+	@Override
+	public void setSessionID(byte[] sessionID) {
+		super.setSessionID(sessionID);
+		
+		if (getSessionRegistry() != null) getSessionRegistry().updateSessionID(this);
+	}
+	
+	
 	public short getSchemaID() {
 		return schemaID;
 	}
@@ -491,4 +577,27 @@ public class V2GCommunicationSessionSECC extends V2GCommunicationSession impleme
 	public void setChargingSession(ChargingSessionType chargingSession) {
 		this.chargingSession = chargingSession;
 	}
+
+
+	public V2GCommunicationSessionRegistry getSessionRegistry() {
+		return sessionRegistry;
+	}
+
+
+	public void setSessionRegistry(V2GCommunicationSessionRegistry sessionRegistry) {
+		this.sessionRegistry = sessionRegistry;
+	}
+
+
+	/**
+	 * @return The EVSE interface via which the EVCC is connected, or null if not known (e.g. for testing purposes)
+	 */
+	public EVSEInterface getEvseInterface() {
+		return evseInterface;
+	}
+
+
+	public void setEvseInterface(EVSEInterface evseInterface) {
+		this.evseInterface = evseInterface;
+	}
 }
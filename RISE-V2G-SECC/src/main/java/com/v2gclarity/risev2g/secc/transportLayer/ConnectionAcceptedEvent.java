@@ -0,0 +1,53 @@
+/*******************************************************************************
+ *  The MIT License (MIT)
+ *
+ *  Copyright (c) 2015 - 2019  Dr. Marc Mültin (V2G Clarity)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ *******************************************************************************/
+package com.v2gclarity.risev2g.secc.transportLayer;
+
+import com.v2gclarity.risev2g.shared.events.V2GEvent;
+
+/**
+ * Published by a TCP or TLS server whenever a new client connection has been accepted. The ConnectionHandler 
+ * of the connection has not yet been started, which is left to the listener once it is ready to receive the 
+ * connection's events.
+ */
+public class ConnectionAcceptedEvent extends V2GEvent {
+
+	private final ConnectionHandler connectionHandler;
+	
+	/**
+	 * @param server The server which accepted the connection
+	 * @param connectionHandler The ConnectionHandler of the accepted connection
+	 */
+	public ConnectionAcceptedEvent(StatefulTransportLayerServer server, ConnectionHandler connectionHandler) {
+		super(server, connectionHandler);
+		this.connectionHandler = connectionHandler;
+	}
+	
+	public StatefulTransportLayerServer getServer() {
+		return (StatefulTransportLayerServer) getSource();
+	}
+
+	public ConnectionHandler getConnectionHandler() {
+		return connectionHandler;
+	}
+}
@@ -26,43 +26,57 @@ package com.v2gclarity.risev2g.secc.transportLayer;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.ProtocolException;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
-import java.util.Arrays;
-import java.util.Observable;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.SSLHandshakeException;
 import javax.net.ssl.SSLSocket;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import com.v2gclarity.risev2g.shared.events.FrameReceivedEvent;
+import com.v2gclarity.risev2g.shared.events.TransportLayerErrorEvent;
+import com.v2gclarity.risev2g.shared.events.V2GEventBus;
 import com.v2gclarity.risev2g.shared.misc.TimeRestrictions;
+import com.v2gclarity.risev2g.shared.misc.TransportLayerExecutor;
+import com.v2gclarity.risev2g.shared.misc.V2GTPFrameDecoder;
 import com.v2gclarity.risev2g.shared.misc.V2GTPMessage;
-import com.v2gclarity.risev2g.shared.utils.ByteUtils;
 
-public class ConnectionHandler extends Observable implements Runnable {
+public class ConnectionHandler implements Runnable {
 
+	// Time (in milliseconds) to wait for the EVCC to close the connection before closing it (see stop())
+	protected static final long CLOSE_DELAY = 5000;
+	
 	private Logger logger = LogManager.getLogger(this.getClass().getSimpleName());
 	private Socket tcpClientSocket;
 	private SSLSocket tlsClientSocket;
 	private InputStream inStream;
 	private OutputStream outStream;
-	private byte[] v2gTpHeader; 
-	private byte[] v2gTPPayload;
-	private byte[] v2gTPMessage;
+	private V2GTPFrameDecoder frameDecoder;
 	private int payloadLength;
-	private int bytesReadFromInputStream;
-	private boolean stopAlreadyInitiated;
+	private volatile boolean stopAlreadyInitiated;
+	private volatile ScheduledFuture<?> scheduledClose;
 	private String address;
 	private int port;
 	
+	/**
+	 * Used by subclasses which do not read from and write to the streams of a client socket (see NIOConnectionHandler).
+	 */
+	protected ConnectionHandler() {
+		setFrameDecoder(new V2GTPFrameDecoder());
+	}
+	
+	
 	public ConnectionHandler(Socket tcpClientSocket) {
 		setTcpClientSocket(tcpClientSocket);
+		setFrameDecoder(new V2GTPFrameDecoder());
 		
 		try {
 			setInStream(getTcpClientSocket().getInputStream());
 			setOutStream(getTcpClientSocket().getOutputStream());
-			setV2gTpHeader(new byte[8]);
 		} catch (Exception e) {
 			stopAndNotify("An IOException was thrown while creating streams from TCP client socket", e);
 		}
@@ -71,11 +85,11 @@ public class ConnectionHandler extends Observable implements Runnable {
 	
 	public ConnectionHandler(SSLSocket tlsClientSocket) {
 		setTlsClientSocket(tlsClientSocket);
+		setFrameDecoder(new V2GTPFrameDecoder());
 		
 		try {
 			setInStream(getTlsClientSocket().getInputStream());
 			setOutStream(getTlsClientSocket().getOutputStream());
-			setV2gTpHeader(new byte[8]);
 		} catch (IOException e) {
 			stopAndNotify("An IOException was thrown while creating streams from TLS client socket", e);
 		}
@@ -84,11 +98,7 @@ public class ConnectionHandler extends Observable implements Runnable {
 	
 	@Override
 	public void run() {	
-		while (!Thread.interrupted()) { 
-			/*
-			 * Read header (8 bytes) of incoming V2GTPMessage to further allocate a byte array with  
-			 * the appropriate length. 
-			 */
+		while (!isStopAlreadyInitiated()) { 
 			try {
 				if (getTcpClientSocket() != null) {
 					getTcpClientSocket().setSoTimeout(TimeRestrictions.V2G_SECC_SEQUENCE_TIMEOUT);
@@ -96,45 +106,29 @@ public class ConnectionHandler extends Observable implements Runnable {
 					getTlsClientSocket().setSoTimeout(TimeRestrictions.V2G_SECC_SEQUENCE_TIMEOUT);
 				} else {
 					getLogger().error("Neither TCP nor TLS client socket available");
-					Thread.currentThread().interrupt();
-				}
-				
-				setBytesReadFromInputStream(getInStream().read(getV2gTpHeader()));
-			
-				if (bytesReadFromInputStream < 0) {
-					stopAndNotify("No bytes read from input stream, client socket seems to be closed", null);
 					break;
 				}
 				
 				/*
-				 * The payload length is written to the last 4 bytes (v2gTPHeader[4] to v2gTPHeader[7])
-				 * of the V2GTP header. The biggest ISO 15118 message in size is the CertificateInstallationRes, which in EXI
-				 * consumes usually 3.000 to 4.000 bytes max. Let's use a threshold of 10.000 just to be safe to 
-				 * check for unreasonably high payload lengths.
-				 * 
-				 * Change this value if you use a V2GTP payload type for a proprietary, manufacturer-specific use (see Table 10 of ISO 15118-2)
-				 * that requires bigger payloads! 
+				 * The frame decoder reads until a complete V2GTPMessage (header and payload) has been received, 
+				 * no matter into how many pieces it has been fragmented. The message owns the buffer it has been 
+				 * received in, so it is published without copying while the next message is read into another buffer.
 				 */
-				setPayloadLength(ByteUtils.toIntFromByteArray(Arrays.copyOfRange(getV2gTpHeader(), 4, 8)));
-				
-				if (getPayloadLength() > 10000) {
-					stopAndNotify("Payload length of V2GTP message is inappropiately high (" + getPayloadLength() + " bytes)! " +
-								 "There must be an error in the V2GTP message header!", null);
+				V2GTPMessage v2gTpMessage = getFrameDecoder().readMessage(getInStream());
+			
+				if (v2gTpMessage == null) {
+					// If the closing of the connection has already been scheduled, the EVCC closed the connection as expected
+					if (isCloseScheduled()) close();
+					else stopAndNotify("No bytes read from input stream, client socket seems to be closed", null);
 					break;
-				} else {
-					getLogger().debug("Length of V2GTP payload in bytes according to V2GTP header: " + getPayloadLength());
-					setV2gTPPayload(new byte[getPayloadLength()]);
-					
-					getInStream().read(getV2gTPPayload());
-	
-					setV2gTPMessage(new byte[getV2gTpHeader().length + getV2gTPPayload().length]);
-					System.arraycopy(getV2gTpHeader(), 0, getV2gTPMessage(), 0, getV2gTpHeader().length);
-					System.arraycopy(getV2gTPPayload(), 0, getV2gTPMessage(), getV2gTpHeader().length, getV2gTPPayload().length);
-					
-					getLogger().debug("Message received");
-					setChanged();
-					notifyObservers(getV2gTPMessage());
 				}
+				
+				setPayloadLength(v2gTpMessage.getPayloadSize());
+				getLogger().debug("Message received (V2GTP payload length: " + getPayloadLength() + " bytes)");
+				V2GEventBus.getInstance().publish(new FrameReceivedEvent(this, v2gTpMessage));
+			} catch (ProtocolException e) {
+				stopAndNotify(e.getMessage(), null);
+				break;
 			} catch (SocketTimeoutException e) {
 				stopAndNotify("A SocketTimeoutException occurred", null);
 				break;
@@ -150,56 +144,79 @@ public class ConnectionHandler extends Observable implements Runnable {
 	
 	/**
 	 * If an error occurred in the run()-method, the client will be stopped by closing all streams
-	 * and the socket and interrupting the Thread. V2GCommunicationSessionSECC will be notified as well.
+	 * and the socket, which ends the run()-method. V2GCommunicationSessionSECC will be notified as well 
+	 * by a TransportLayerErrorEvent.
 	 * The method's statements will not be executed if a stop of the client has already been
 	 * initiated by the V2GCommunicationSessionSECC (which might induce an error in the run()-method).
 	 * 
 	 * @param errorMessage An error message explaining the reason for the error
 	 * @param e An optional exception
 	 */
-	private void stopAndNotify(String errorMessage, Exception e) {
-		if (!isStopAlreadyInitiated()) {
+	protected void stopAndNotify(String errorMessage, Exception e) {
+		if (isCloseScheduled()) {
+			// The session has already been terminated, the error just ends the waiting for the EVCC to close the connection
+			close();
+		} else if (!isStopAlreadyInitiated()) {
 			getLogger().error(errorMessage, e);
 			stop();
 			
-			// Notify V2GCommunicationSessionEVCC about termination of session
-			setChanged();
-			notifyObservers(null);
+			// Notify V2GCommunicationSessionSECC about termination of session
+			V2GEventBus.getInstance().publish(new TransportLayerErrorEvent(this, errorMessage));
 		}
 	}
 	
 	
-	public void stop() {
-		// See ISO 15118 User Group issue http://extmgmt.kn.e-technik.tu-dortmund.de/issues/50
+	/**
+	 * Schedules the closing of the connection. According to ISO 15118 User Group issue 
+	 * http://extmgmt.kn.e-technik.tu-dortmund.de/issues/50, the EVCC is given CLOSE_DELAY milliseconds to process 
+	 * the last response and close the connection itself. The connection is closed by the TransportLayerExecutor's 
+	 * scheduler after this delay, or as soon as the EVCC closes the connection, whichever happens first. 
+	 * The calling thread (e.g. the one of the V2GCommunicationSessionHandlerSECC) is not blocked. 
+	 */
+	public synchronized void stop() {
+		if (isCloseScheduled() || isStopAlreadyInitiated()) return;
+		
 		getLogger().debug("Waiting 5 seconds for EVCC to process response and close TCP/TLS connection ...");
-		try {
-            Thread.sleep(5000);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
+		setScheduledClose(TransportLayerExecutor.getInstance().schedule(this::close, CLOSE_DELAY, TimeUnit.MILLISECONDS));
+	}
+	
+	
+	/**
+	 * Closes the streams and the socket, which ends the run()-method. 
+	 */
+	protected synchronized void close() {
+		if (isStopAlreadyInitiated()) return;
 		
-		if (!isStopAlreadyInitiated()) {
-			getLogger().debug("Closing connection to client ...");
-			setStopAlreadyInitiated(true);
+		getLogger().debug("Closing connection to client ...");
+		logReceptionStatistics();
+		setStopAlreadyInitiated(true);
+		
+		if (getScheduledClose() != null) getScheduledClose().cancel(false);
+		
+		try {
+			if (getInStream() != null) getInStream().close();
+			if (getOutStream() != null) getOutStream().close();
 			
-			try {
-				getInStream().close();
-				getOutStream().close();
-				
-				if (getTcpClientSocket() != null) {
-					getTcpClientSocket().close();
-				} else if (getTlsClientSocket() != null) {
-					getTlsClientSocket().close();
-				} else {
-					getLogger().error("Neither TCP nor TLS client socket could be closed");
-				}
-				
-				Thread.currentThread().interrupt();
-				getLogger().debug("Connection to client closed");
-			} catch (IOException e) {
-				getLogger().error("Error occurred while trying to close socket to client", e);
-			} 
-		}
+			if (getTcpClientSocket() != null) {
+				getTcpClientSocket().close();
+			} else if (getTlsClientSocket() != null) {
+				getTlsClientSocket().close();
+			} else {
+				getLogger().error("Neither TCP nor TLS client socket could be closed");
+			}
+			
+			getLogger().debug("Connection to client closed");
+		} catch (IOException e) {
+			getLogger().error("Error occurred while trying to close socket to client", e);
+		} 
+	}
+	
+	
+	/**
+	 * @return True, if stop() has been called and the connection is about to be closed
+	 */
+	protected boolean isCloseScheduled() {
+		return getScheduledClose() != null && !isStopAlreadyInitiated();
 	}
 	
 	
@@ -232,20 +249,21 @@ public class ConnectionHandler extends Observable implements Runnable {
 		this.outStream = outStream;
 	}
 
-	public byte[] getV2gTPPayload() {
-		return v2gTPPayload;
-	}
-
-	public void setV2gTPPayload(byte[] v2gTPPayload) {
-		this.v2gTPPayload = v2gTPPayload;
+	/**
+	 * Logs how many messages have been received and how many reads did not complete a message, which shows
+	 * how often the link fragments the V2GTP messages.
+	 */
+	protected void logReceptionStatistics() {
+		getLogger().debug("Messages received: " + getFrameDecoder().getReceivedMessages() + 
+						  ", short reads: " + getFrameDecoder().getShortReads());
 	}
 
-	public byte[] getV2gTPMessage() {
-		return v2gTPMessage;
+	public V2GTPFrameDecoder getFrameDecoder() {
+		return frameDecoder;
 	}
 
-	public void setV2gTPMessage(byte[] v2gTPMessage) {
-		this.v2gTPMessage = v2gTPMessage;
+	private void setFrameDecoder(V2GTPFrameDecoder frameDecoder) {
+		this.frameDecoder = frameDecoder;
 	}
 
 	public int getPayloadLength() {
@@ -256,15 +274,6 @@ public class ConnectionHandler extends Observable implements Runnable {
 		this.payloadLength = payloadLength;
 	}
 
-	public int getBytesReadFromInputStream() {
-		return bytesReadFromInputStream;
-	}
-
-	public void setBytesReadFromInputStream(int bytesReadFromInputStream) {
-		this.bytesReadFromInputStream = bytesReadFromInputStream;
-	}
-
-
 	public Logger getLogger() {
 		return logger;
 	}
@@ -275,15 +284,6 @@ public class ConnectionHandler extends Observable implements Runnable {
 	}
 
 
-	public byte[] getV2gTpHeader() {
-		return v2gTpHeader;
-	}
-	
-	private void setV2gTpHeader(byte[] v2gTpHeader) {
-		this.v2gTpHeader = v2gTpHeader;
-	}
-
-
 	public boolean isStopAlreadyInitiated() {
 		return stopAlreadyInitiated;
 	}
@@ -318,6 +318,14 @@ public class ConnectionHandler extends Observable implements Runnable {
 	}
 
 
+	private ScheduledFuture<?> getScheduledClose() {
+		return scheduledClose;
+	}
+
+	private void setScheduledClose(ScheduledFuture<?> scheduledClose) {
+		this.scheduledClose = scheduledClose;
+	}
+
 	public String getAddress() {
 		return address;
 	}
@@ -0,0 +1,261 @@
+/*******************************************************************************
+ *  The MIT License (MIT)
+ *
+ *  Copyright (c) 2015 - 2019  Dr. Marc Mültin (V2G Clarity)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ *******************************************************************************/
+package com.v2gclarity.risev2g.secc.transportLayer;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.v2gclarity.risev2g.shared.events.FrameReceivedEvent;
+import com.v2gclarity.risev2g.shared.events.V2GEventBus;
+import com.v2gclarity.risev2g.shared.misc.TimeRestrictions;
+import com.v2gclarity.risev2g.shared.misc.V2GTPMessage;
+
+/**
+ * A ConnectionHandler for a non-blocking TCP connection which is served by an NIOEventLoop instead of a
+ * thread of its own. The received bytes are accumulated by the frame decoder until a complete V2GTP message is 
+ * available, a single read may also provide several messages. Each message is published as FrameReceivedEvent, 
+ * so that the event loop thread only copies the message instead of processing it.
+ * 
+ * Messages to be sent are queued and written as far as the socket's send buffer allows, the remainder is 
+ * written as soon as the channel becomes writable again. 
+ */
+public class NIOConnectionHandler extends ConnectionHandler {
+
+	private SocketChannel socketChannel;
+	private NIOEventLoop eventLoop;
+	private SelectionKey selectionKey;
+	private ConcurrentLinkedQueue<ByteBuffer> pendingWrites;
+	private volatile long lastReceptionTime;
+	private volatile long closeDeadline;
+	
+	public NIOConnectionHandler(SocketChannel socketChannel, NIOEventLoop eventLoop) {
+		super();
+		
+		setSocketChannel(socketChannel);
+		setEventLoop(eventLoop);
+		setAddress(socketChannel.socket().getInetAddress().getHostAddress());
+		setPort(socketChannel.socket().getPort());
+		setPendingWrites(new ConcurrentLinkedQueue<ByteBuffer>());
+	}
+	
+	
+	/**
+	 * Starts reading from the channel by registering it with the event loop. Unlike for the blocking 
+	 * ConnectionHandler, no thread needs to be started.
+	 */
+	@Override
+	public void run() {
+		getEventLoop().register(this);
+	}
+	
+	
+	/**
+	 * Reads the bytes available on the channel and publishes a FrameReceivedEvent for every complete V2GTP 
+	 * message. Called by the event loop whenever the channel is readable.
+	 */
+	void processReadableChannel() {
+		int bytesRead;
+		
+		try {
+			bytesRead = getFrameDecoder().readFrom(getSocketChannel());
+		} catch (IOException e) {
+			if (!isCloseScheduled()) stopAndNotify("IOException occurred", e);
+			close();
+			return;
+		}
+		
+		if (bytesRead < 0) {
+			// If the closing of the connection has already been initiated, the EVCC closed the connection as expected
+			if (!isCloseScheduled()) stopAndNotify("No bytes read from input stream, client socket seems to be closed", null);
+			close();
+			return;
+		}
+		
+		setLastReceptionTime(System.currentTimeMillis());
+		
+		try {
+			V2GTPMessage v2gTpMessage;
+			
+			while (!isCloseScheduled() && (v2gTpMessage = getFrameDecoder().nextMessage()) != null) {
+				setPayloadLength(v2gTpMessage.getPayloadSize());
+				getLogger().debug("Message received (V2GTP payload length: " + getPayloadLength() + " bytes)");
+				V2GEventBus.getInstance().publish(new FrameReceivedEvent(this, v2gTpMessage));
+			}
+		} catch (ProtocolException e) {
+			stopAndNotify(e.getMessage(), null);
+			close();
+		}
+	}
+	
+	
+	/**
+	 * Writes the queued messages to the channel. If the socket's send buffer is full, the event loop is told 
+	 * to call this method again as soon as the channel is writable.
+	 */
+	void flushPendingWrites() {
+		if (getSelectionKey() == null || isStopAlreadyInitiated()) return;
+		
+		try {
+			ByteBuffer pendingWrite;
+			
+			while ((pendingWrite = getPendingWrites().peek()) != null) {
+				getSocketChannel().write(pendingWrite);
+				
+				if (pendingWrite.hasRemaining()) {
+					getSelectionKey().interestOps(getSelectionKey().interestOps() | SelectionKey.OP_WRITE);
+					return;
+				}
+				
+				getPendingWrites().poll();
+			}
+			
+			getSelectionKey().interestOps(getSelectionKey().interestOps() & ~SelectionKey.OP_WRITE);
+		} catch (IOException e) {
+			// The partially written message cannot be completed, so the connection is of no further use
+			getPendingWrites().clear();
+			stopAndNotify("Error occurred while trying to send V2GTPMessage (IOException)!", e);
+			close();
+		}
+	}
+	
+	
+	/**
+	 * Checks the sequence timeout and whether a scheduled closing of the connection is due. Called 
+	 * regularly by the event loop.
+	 * 
+	 * @param now The current time in milliseconds
+	 */
+	void checkTimers(long now) {
+		if (isCloseScheduled()) {
+			if (now >= getCloseDeadline()) close();
+		} else if (now - getLastReceptionTime() >= TimeRestrictions.V2G_SECC_SEQUENCE_TIMEOUT) {
+			stopAndNotify("A sequence timeout occurred", null);
+		}
+	}
+	
+	
+	@Override
+	public boolean send(V2GTPMessage message) {
+		getPendingWrites().add(ByteBuffer.wrap(message.getMessage()));
+		
+		if (getEventLoop().inEventLoop()) flushPendingWrites();
+		else getEventLoop().execute(this::flushPendingWrites);
+		
+		getLogger().debug("Message sent");
+		
+		return false;
+	}
+	
+	
+	/**
+	 * Schedules the closing of the connection. Instead of blocking the event loop (and thus all other 
+	 * connections served by it), the connection is closed by the event loop after CLOSE_DELAY or as soon as 
+	 * the EVCC closes the connection, whichever happens first.
+	 */
+	@Override
+	public void stop() {
+		if (isCloseScheduled() || isStopAlreadyInitiated()) return;
+		
+		// See ISO 15118 User Group issue http://extmgmt.kn.e-technik.tu-dortmund.de/issues/50
+		getLogger().debug("Waiting 5 seconds for EVCC to process response and close TCP/TLS connection ...");
+		setCloseDeadline(System.currentTimeMillis() + CLOSE_DELAY);
+	}
+	
+	
+	@Override
+	protected void close() {
+		if (isStopAlreadyInitiated()) return;
+		
+		getLogger().debug("Closing connection to client ...");
+		logReceptionStatistics();
+		setStopAlreadyInitiated(true);
+		
+		try {
+			if (getSelectionKey() != null) getSelectionKey().cancel();
+			getSocketChannel().close();
+			
+			getLogger().debug("Connection to client closed");
+		} catch (IOException e) {
+			getLogger().error("Error occurred while trying to close socket to client", e);
+		}
+	}
+	
+	
+	@Override
+	protected boolean isCloseScheduled() {
+		return getCloseDeadline() != 0;
+	}
+	
+	public SocketChannel getSocketChannel() {
+		return socketChannel;
+	}
+
+	private void setSocketChannel(SocketChannel socketChannel) {
+		this.socketChannel = socketChannel;
+	}
+
+	public NIOEventLoop getEventLoop() {
+		return eventLoop;
+	}
+
+	private void setEventLoop(NIOEventLoop eventLoop) {
+		this.eventLoop = eventLoop;
+	}
+
+	SelectionKey getSelectionKey() {
+		return selectionKey;
+	}
+
+	void setSelectionKey(SelectionKey selectionKey) {
+		this.selectionKey = selectionKey;
+	}
+
+	private ConcurrentLinkedQueue<ByteBuffer> getPendingWrites() {
+		return pendingWrites;
+	}
+
+	private void setPendingWrites(ConcurrentLinkedQueue<ByteBuffer> pendingWrites) {
+		this.pendingWrites = pendingWrites;
+	}
+
+	long getLastReceptionTime() {
+		return lastReceptionTime;
+	}
+
+	void setLastReceptionTime(long lastReceptionTime) {
+		this.lastReceptionTime = lastReceptionTime;
+	}
+
+	private long getCloseDeadline() {
+		return closeDeadline;
+	}
+
+	private void setCloseDeadline(long closeDeadline) {
+		this.closeDeadline = closeDeadline;
+	}
+}
@@ -0,0 +1,220 @@
+/*******************************************************************************
+ *  The MIT License (MIT)
+ *
+ *  Copyright (c) 2015 - 2019  Dr. Marc Mültin (V2G Clarity)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ *******************************************************************************/
+package com.v2gclarity.risev2g.secc.transportLayer;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A single thread which serves any number of NIOConnectionHandlers with one selector. Reading, framing 
+ * and writing of all connections assigned to this event loop happens here, no thread per connection is needed. 
+ * The received messages are published on the V2GEventBus, the communication sessions process them on the 
+ * bus's dispatcher threads.
+ * 
+ * Besides the I/O events, the event loop regularly checks the timers of its connections (sequence timeout
+ * and delayed closing of the connection).
+ */
+public class NIOEventLoop implements Runnable {
+
+	// Interval (in milliseconds) in which the connection timers are checked
+	private static final long TIMER_CHECK_INTERVAL = 250;
+	
+	private Logger logger = LogManager.getLogger(this.getClass().getSimpleName());
+	private Selector selector;
+	private ConcurrentLinkedQueue<Runnable> pendingTasks;
+	private Thread eventLoopThread;
+	private String name;
+	
+	public NIOEventLoop(String name) throws IOException {
+		setName(name);
+		setSelector(Selector.open());
+		setPendingTasks(new ConcurrentLinkedQueue<Runnable>());
+	}
+	
+	
+	public void start() {
+		setEventLoopThread(new Thread(this));
+		getEventLoopThread().setDaemon(true);
+		getEventLoopThread().setName(getName());
+		getEventLoopThread().start();
+	}
+	
+	
+	@Override
+	public void run() {
+		long nextTimerCheck = System.currentTimeMillis() + TIMER_CHECK_INTERVAL;
+		
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				getSelector().select(TIMER_CHECK_INTERVAL);
+			} catch (IOException e) {
+				getLogger().error(e.getClass().getSimpleName() + " occurred while selecting ready channels", e);
+				break;
+			}
+			
+			runPendingTasks();
+			
+			Iterator<SelectionKey> selectedKeys = getSelector().selectedKeys().iterator();
+			while (selectedKeys.hasNext()) {
+				SelectionKey key = selectedKeys.next();
+				selectedKeys.remove();
+				
+				NIOConnectionHandler connectionHandler = (NIOConnectionHandler) key.attachment();
+				
+				if (key.isValid() && key.isReadable()) connectionHandler.processReadableChannel();
+				if (key.isValid() && key.isWritable()) connectionHandler.flushPendingWrites();
+			}
+			
+			long now = System.currentTimeMillis();
+			if (now >= nextTimerCheck) {
+				for (SelectionKey key : getSelector().keys()) {
+					if (key.isValid()) ((NIOConnectionHandler) key.attachment()).checkTimers(now);
+				}
+				
+				nextTimerCheck = now + TIMER_CHECK_INTERVAL;
+			}
+		}
+		
+		closeAllConnections();
+	}
+	
+	
+	/**
+	 * Executes the given task on the event loop thread. If called from the event loop thread itself, the task
+	 * is executed after the currently processed events.
+	 * 
+	 * @param task The task to be executed
+	 */
+	public void execute(Runnable task) {
+		getPendingTasks().add(task);
+		if (!inEventLoop()) getSelector().wakeup();
+	}
+	
+	
+	public boolean inEventLoop() {
+		return Thread.currentThread() == getEventLoopThread();
+	}
+	
+	
+	/**
+	 * Registers the channel of the given connection handler with this event loop's selector. From then on, 
+	 * incoming messages of the connection are read and forwarded to the observers of the connection handler. 
+	 * 
+	 * @param connectionHandler The connection handler whose channel is to be served by this event loop
+	 */
+	public void register(NIOConnectionHandler connectionHandler) {
+		execute(() -> {
+			try {
+				connectionHandler.setSelectionKey(
+						connectionHandler.getSocketChannel().register(getSelector(), SelectionKey.OP_READ, connectionHandler));
+				connectionHandler.setLastReceptionTime(System.currentTimeMillis());
+				connectionHandler.flushPendingWrites();
+			} catch (ClosedChannelException e) {
+				connectionHandler.stopAndNotify("Channel has been closed before it could be registered", e);
+			}
+		});
+	}
+	
+	
+	public void stop() {
+		if (getEventLoopThread() != null) getEventLoopThread().interrupt();
+		getSelector().wakeup();
+	}
+	
+	
+	private void runPendingTasks() {
+		Runnable task;
+		
+		while ((task = getPendingTasks().poll()) != null) {
+			try {
+				task.run();
+			} catch (RuntimeException e) {
+				getLogger().error(e.getClass().getSimpleName() + " occurred while running task on " + getName(), e);
+			}
+		}
+	}
+	
+	
+	private void closeAllConnections() {
+		for (SelectionKey key : getSelector().keys()) {
+			((NIOConnectionHandler) key.attachment()).close();
+		}
+		
+		try {
+			getSelector().close();
+		} catch (IOException e) {
+			getLogger().error(e.getClass().getSimpleName() + " occurred while closing selector of " + getName(), e);
+		}
+		
+		getLogger().debug(getName() + " stopped");
+	}
+	
+	
+	public Logger getLogger() {
+		return logger;
+	}
+
+	public void setLogger(Logger logger) {
+		this.logger = logger;
+	}
+
+	private Selector getSelector() {
+		return selector;
+	}
+
+	private void setSelector(Selector selector) {
+		this.selector = selector;
+	}
+
+	private ConcurrentLinkedQueue<Runnable> getPendingTasks() {
+		return pendingTasks;
+	}
+
+	private void setPendingTasks(ConcurrentLinkedQueue<Runnable> pendingTasks) {
+		this.pendingTasks = pendingTasks;
+	}
+
+	private Thread getEventLoopThread() {
+		return eventLoopThread;
+	}
+
+	private void setEventLoopThread(Thread eventLoopThread) {
+		this.eventLoopThread = eventLoopThread;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+}
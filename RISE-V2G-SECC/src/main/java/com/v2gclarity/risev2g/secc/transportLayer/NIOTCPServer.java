@@ -0,0 +1,177 @@
+/*******************************************************************************
+ *  The MIT License (MIT)
+ *
+ *  Copyright (c) 2015 - 2019  Dr. Marc Mültin (V2G Clarity)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ *******************************************************************************/
+package com.v2gclarity.risev2g.secc.transportLayer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+
+import com.v2gclarity.risev2g.shared.events.V2GEventBus;
+import com.v2gclarity.risev2g.shared.utils.MiscUtils;
+
+/**
+ * Non-blocking alternative to the TCPServer (see property 'network.transport' of the SECC properties file).
+ * Accepted connections are distributed round robin among a small number of NIOEventLoops, each of them serving
+ * the connections assigned to it with one selector instead of a thread per connection.
+ */
+public final class NIOTCPServer extends StatefulTransportLayerServer {
+
+	private ServerSocketChannel serverSocketChannel;
+	private Selector acceptSelector;
+	private NIOEventLoop[] eventLoops;
+	private int nextEventLoopIndex;
+	
+	public NIOTCPServer(String networkInterface) {
+		super(networkInterface);
+	}
+	
+	/**
+	 * Checks if the non-blocking TCP server is to be used instead of the TCPServer.
+	 * 
+	 * @return True, if the property 'network.transport' is set to 'nio'
+	 */
+	public static boolean isEnabled() {
+		return "nio".equals(MiscUtils.getPropertyValue("network.transport"));
+	}
+
+	public boolean initialize() {
+		if (!super.initialize()) return false;
+
+		try {
+			setServerSocketChannel(ServerSocketChannel.open());
+			getServerSocketChannel().configureBlocking(false);
+			getServerSocketChannel().bind(new InetSocketAddress(getServerAddress(), getServerPort()), 50);
+			
+			setAcceptSelector(Selector.open());
+			getServerSocketChannel().register(getAcceptSelector(), SelectionKey.OP_ACCEPT);
+			
+			Object numberOfEventLoops = MiscUtils.getPropertyValue("network.transport.nio.eventloops");
+			setEventLoops(new NIOEventLoop[(numberOfEventLoops != null) ? (int) numberOfEventLoops : 1]);
+			
+			for (int i = 0; i < getEventLoops().length; i++) {
+				getEventLoops()[i] = new NIOEventLoop("NIOEventLoop " + getNetworkInterface() + " " + i);
+			}
+			
+			getLogger().info("Non-blocking TCP server initialized at link-local address " + 
+					  		  getServerSocketChannel().socket().getInetAddress().getHostAddress() +
+					  		  " and port " + getServerSocketChannel().socket().getLocalPort() + 
+					  		  " with " + getEventLoops().length + " event loop(s)");
+		} catch (IOException e) {
+			getLogger().fatal("IOException while trying to initialize non-blocking TCP server", e);
+			return false;
+		}
+	
+		return true;
+	}
+	
+	@Override
+	public void run() {
+		for (NIOEventLoop eventLoop : getEventLoops()) eventLoop.start();
+		
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				getLogger().info("Waiting for new TCP client connection ...");
+				getAcceptSelector().select();
+				
+				Iterator<SelectionKey> selectedKeys = getAcceptSelector().selectedKeys().iterator();
+				while (selectedKeys.hasNext()) {
+					selectedKeys.next();
+					selectedKeys.remove();
+					
+					SocketChannel clientChannel = getServerSocketChannel().accept();
+					if (clientChannel == null) continue;
+					
+					clientChannel.configureBlocking(false);
+					
+					getLogger().info("TCP client connection with IP address " + 
+									  clientChannel.socket().getInetAddress().getHostAddress() + " and port " +
+									  clientChannel.socket().getPort());
+					
+					NIOConnectionHandler connectionHandler = new NIOConnectionHandler(clientChannel, getNextEventLoop());
+					
+					// Notify the V2GCommunicationSessionHandlerSECC about a newly connected TCP client channel
+					V2GEventBus.getInstance().publish(new ConnectionAcceptedEvent(this, connectionHandler));
+				}
+			}
+		} catch (IOException e) {
+			getLogger().error(e.getClass().getSimpleName() + " occurred while running non-blocking TCP server");
+		} finally {
+			stop();
+		}
+	}
+	
+	
+	private NIOEventLoop getNextEventLoop() {
+		NIOEventLoop eventLoop = getEventLoops()[nextEventLoopIndex];
+		nextEventLoopIndex = (nextEventLoopIndex + 1) % getEventLoops().length;
+		
+		return eventLoop;
+	}
+	
+
+	@Override
+	public void stop() {
+		getLogger().debug("Non-blocking TCP server will be stopped now");
+		
+		try {
+			getServerSocketChannel().close();
+			getAcceptSelector().close();
+		} catch (IOException e) {
+			getLogger().error("Error occurred while trying to close ServerSocketChannel (IOException)", e);
+		}
+		
+		for (NIOEventLoop eventLoop : getEventLoops()) eventLoop.stop();
+		
+		getLogger().debug("Non-blocking TCP server stopped");
+	}
+	
+	
+	public ServerSocketChannel getServerSocketChannel() {
+		return serverSocketChannel;
+	}
+
+	private void setServerSocketChannel(ServerSocketChannel serverSocketChannel) {
+		this.serverSocketChannel = serverSocketChannel;
+	}
+
+	private Selector getAcceptSelector() {
+		return acceptSelector;
+	}
+
+	private void setAcceptSelector(Selector acceptSelector) {
+		this.acceptSelector = acceptSelector;
+	}
+
+	public NIOEventLoop[] getEventLoops() {
+		return eventLoops;
+	}
+
+	private void setEventLoops(NIOEventLoop[] eventLoops) {
+		this.eventLoops = eventLoops;
+	}
+}
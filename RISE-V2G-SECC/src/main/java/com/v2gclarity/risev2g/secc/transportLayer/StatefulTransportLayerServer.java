@@ -24,24 +24,32 @@
 package com.v2gclarity.risev2g.secc.transportLayer;
 
 import java.net.Inet6Address;
-import java.util.Observable;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import com.v2gclarity.risev2g.shared.utils.MiscUtils;
 
-public abstract class StatefulTransportLayerServer extends Observable implements Runnable {
+public abstract class StatefulTransportLayerServer implements Runnable {
 	
 	private Logger logger = LogManager.getLogger(this.getClass().getSimpleName());
+	private String networkInterface;
 	private int serverPort;
 	private Inet6Address serverAddress;
 	
+	/**
+	 * @param networkInterface The name (or index on Windows) of the network interface on whose link-local 
+	 * 		  address the server is to listen
+	 */
+	protected StatefulTransportLayerServer(String networkInterface) {
+		setNetworkInterface(networkInterface);
+	}
+	
 	
-	protected boolean initialize() {
+	public boolean initialize() {
 		setServerPort(MiscUtils.getRandomPortNumber());
-		setServerAddress(MiscUtils.getLinkLocalAddress());
+		setServerAddress(MiscUtils.getLinkLocalAddress(getNetworkInterface()));
 		
-		return true;
+		return getServerAddress() != null;
 	}
 	
 	public abstract void stop();
@@ -54,6 +62,14 @@ public abstract class StatefulTransportLayerServer extends Observable implements
 		this.logger = logger;
 	}
 
+	public String getNetworkInterface() {
+		return networkInterface;
+	}
+
+	private void setNetworkInterface(String networkInterface) {
+		this.networkInterface = networkInterface;
+	}
+
 	public int getServerPort() {
 		return serverPort;
 	}
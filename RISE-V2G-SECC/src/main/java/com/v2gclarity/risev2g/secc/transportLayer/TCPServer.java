@@ -28,22 +28,20 @@ import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
 
+import com.v2gclarity.risev2g.shared.events.V2GEventBus;
+
 
 public final class TCPServer extends StatefulTransportLayerServer {
 	
-	// Eager instantiation of the Singleton TCPClient.
-	private static final TCPServer uniqueTCPServerInstance = new TCPServer();
 	private Socket tcpClientSocket; 
 	private ServerSocket tcpServerSocket;
 	
-	private TCPServer() {}
-	
-	public static TCPServer getInstance() {
-		return uniqueTCPServerInstance;
+	public TCPServer(String networkInterface) {
+		super(networkInterface);
 	}
 
 	public boolean initialize() {
-		super.initialize();
+		if (!super.initialize()) return false;
 
 		try {
 			setTcpServerSocket(new ServerSocket(getServerPort(), 50, getServerAddress()));
@@ -72,8 +70,7 @@ public final class TCPServer extends StatefulTransportLayerServer {
 				ConnectionHandler connectionHandler = new ConnectionHandler(tcpClientSocket);
 				
 				// Notify the V2GCommunicationSessionHandlerSECC about a newly connected TCP client Socket
-				setChanged();
-				notifyObservers(connectionHandler);
+				V2GEventBus.getInstance().publish(new ConnectionAcceptedEvent(this, connectionHandler));
 			}
 		} catch (IOException e) {
 			getLogger().error(e.getClass().getSimpleName() + " occurred while running TCP server");
@@ -30,18 +30,18 @@ import javax.net.ssl.SSLServerSocketFactory;
 import javax.net.ssl.SSLSocket;
 
 import com.v2gclarity.risev2g.shared.enumerations.GlobalValues;
+import com.v2gclarity.risev2g.shared.events.V2GEventBus;
 import com.v2gclarity.risev2g.shared.utils.SecurityUtils;
 
 public final class TLSServer extends StatefulTransportLayerServer {
 
-	private static final TLSServer uniqueTLSServerInstance = new TLSServer();
+	// The SSL context is shared by the TLS servers of all network interfaces and thus set up only once
+	private static boolean sslContextInitialized;
 	private SSLSocket tlsClientSocket; 
 	private SSLServerSocket tlsServerSocket;
 	
-	private TLSServer() {}
-	
-	public static TLSServer getInstance() {
-		return uniqueTLSServerInstance;
+	public TLSServer(String networkInterface) {
+		super(networkInterface);
 	}
 	
 	/**
@@ -50,21 +50,10 @@ public final class TLSServer extends StatefulTransportLayerServer {
 	 * @return True if the initialization of the TCP server was successful, false otherwise
 	 */
 	public boolean initialize() {
-		super.initialize();
+		if (!super.initialize()) return false;
 		
 		try {
-			/*
-			 * Setting the system property for the keystore and truststore via 
-			 * - System.setProperty("javax.net.ssl.keyStore", [filePath given as a String])
-			 * - System.setProperty("javax.net.ssl.trustStore", [filePath given as a String])
-			 * does not work in a JAR file since only getResourceAsStream works there (which on the other
-			 * hand only returns an InputStream, not a file resource). Thus use setSSLContext()
-			 */
-			
-			SecurityUtils.setSSLContext(
-					GlobalValues.SECC_KEYSTORE_FILEPATH.toString(), 
-					GlobalValues.SECC_TRUSTSTORE_FILEPATH.toString(),
-					GlobalValues.PASSPHRASE_FOR_CERTIFICATES_AND_KEYS.toString());
+			initSSLContext();
 
 			SSLServerSocketFactory tlsServerSocketFactory =
 				(SSLServerSocketFactory) SSLServerSocketFactory.getDefault();
@@ -111,6 +100,25 @@ public final class TLSServer extends StatefulTransportLayerServer {
 	}
 	
 	
+	private static synchronized void initSSLContext() {
+		if (sslContextInitialized) return;
+		
+		/*
+		 * Setting the system property for the keystore and truststore via 
+		 * - System.setProperty("javax.net.ssl.keyStore", [filePath given as a String])
+		 * - System.setProperty("javax.net.ssl.trustStore", [filePath given as a String])
+		 * does not work in a JAR file since only getResourceAsStream works there (which on the other
+		 * hand only returns an InputStream, not a file resource). Thus use setSSLContext()
+		 */
+		SecurityUtils.setSSLContext(
+				GlobalValues.SECC_KEYSTORE_FILEPATH.toString(), 
+				GlobalValues.SECC_TRUSTSTORE_FILEPATH.toString(),
+				GlobalValues.PASSPHRASE_FOR_CERTIFICATES_AND_KEYS.toString());
+		
+		sslContextInitialized = true;
+	}
+	
+	
 	@Override
 	public void run() {
 		try {
@@ -125,8 +133,7 @@ public final class TLSServer extends StatefulTransportLayerServer {
 				ConnectionHandler connectionHandler = new ConnectionHandler(tlsClientSocket);
 				
 				// Notify the V2GCommunicationSessionHandlerSECC about a newly connected TLS client socket
-				setChanged();
-				notifyObservers(connectionHandler);
+				V2GEventBus.getInstance().publish(new ConnectionAcceptedEvent(this, connectionHandler));
 			}
 		} catch (IOException e) {
 			getLogger().error(e.getClass().getSimpleName() + " occurred while running TLSServer");
@@ -26,15 +26,20 @@ package com.v2gclarity.risev2g.secc.transportLayer;
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.MulticastSocket;
+import java.net.NetworkInterface;
 import java.net.SocketException;
 import java.net.UnknownHostException;
-import java.util.Observable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import com.v2gclarity.risev2g.shared.enumerations.GlobalValues;
-import com.v2gclarity.risev2g.shared.misc.V2GTPMessage;
+import com.v2gclarity.risev2g.shared.misc.TransportLayerExecutor;
 import com.v2gclarity.risev2g.shared.utils.MiscUtils;
 
 /**
@@ -42,23 +47,45 @@ import com.v2gclarity.risev2g.shared.utils.MiscUtils;
  * foresee any further communication to be done via UDP but TCP. 
  * Therefore, the size of the UPD packet to be received is restricted to 10 bytes 
  * (8 bytes header of V2GTP message + 2 byte SECCDiscoveryReq payload).
+ * 
+ * If the SECC serves several EVSEs, there is one UDP server per network interface. All of them are bound to 
+ * the SDP server port, each one joins the SDP multicast group on its own network interface only.
+ * 
+ * The receiving thread only receives the datagrams into pooled packets and queues them. The packet handler 
+ * (see setPacketHandler()) is called by a processing thread of its own, so that a slow response does not delay 
+ * receiving. If the queue is full, the oldest queued packet is dropped, as the EVCC repeats its 
+ * SECCDiscoveryReq anyway.
  */
-public class UDPServer extends Observable implements Runnable {
+public class UDPServer implements Runnable {
 
-	/*
-	 *  Eager instantiation of the Singleton, since a UDP server is always needed up front. 
-	 *  The JVM creates the unique instance when the class is loaded and before any thread tries to 
-	 *  access the instance variable -> thread safe.
-	 */
 	private Logger logger = LogManager.getLogger(this.getClass().getSimpleName());
-	private static final UDPServer uniqueUDPServerInstance = new UDPServer();
+	private String networkInterface;
+	private NetworkInterface udpServerInterface;
 	private Inet6Address multicastAddress;
 	private MulticastSocket udpServerSocket;
-	private byte[] udpClientRequest;
-	private DatagramPacket udpClientPacket;
+	private static final int UDP_CLIENT_REQUEST_LENGTH = 10;
+	private static final int RECEIVE_QUEUE_CAPACITY = 32;
+	// The received packets waiting to be processed
+	private ArrayBlockingQueue<DatagramPacket> receiveQueue;
+	// The packets (each with its own buffer) which are currently neither queued nor being received or processed
+	private ArrayBlockingQueue<DatagramPacket> packetPool;
+	private Future<?> processingTask;
+	private Consumer<DatagramPacket> packetHandler;
+	// Each counter is written by one thread only (receiving or processing thread)
+	private volatile long receivedPackets;
+	private volatile long droppedPackets;
+	private volatile long processedPackets;
+	// Reused for every response, see send()
+	private DatagramPacket udpServerPacket;
 	private Inet6Address udpServerAddress;
     
-	private UDPServer() {}
+	/**
+	 * @param networkInterface The name (or index on Windows) of the network interface on which the 
+	 * 		  SECCDiscoveryReq messages are to be received
+	 */
+	public UDPServer(String networkInterface) {
+		setNetworkInterface(networkInterface);
+	}
 	
 	/**
 	 * Used to check the correct initialization of a UDP server which is a prerequisite for establishing
@@ -66,21 +93,29 @@ public class UDPServer extends Observable implements Runnable {
 	 * @return True if the initialization of the UDP server was successful, false otherwise
 	 */
 	public boolean initialize() {
-		setUdpClientRequest(new byte[10]);
+		setReceiveQueue(new ArrayBlockingQueue<DatagramPacket>(RECEIVE_QUEUE_CAPACITY));
+		setUdpServerPacket(new DatagramPacket(new byte[0], 0));
+		
+		// Besides the queued packets, one packet is being received and one is being processed
+		setPacketPool(new ArrayBlockingQueue<DatagramPacket>(RECEIVE_QUEUE_CAPACITY + 2));
+		while (getPacketPool().remainingCapacity() > 0) getPacketPool().offer(newUdpClientPacket());
 		
 		try {
-			setUdpServerAddress(MiscUtils.getLinkLocalAddress());
+			setUdpServerAddress(MiscUtils.getLinkLocalAddress(getNetworkInterface()));
 			
 			if (getUdpServerAddress() == null) return false;
 			
+			setUdpServerInterface(NetworkInterface.getByInetAddress(getUdpServerAddress()));
 			setMulticastAddress((Inet6Address) Inet6Address.getByName(GlobalValues.SDP_MULTICAST_ADDRESS.toString()));
+			
+			// A MulticastSocket enables SO_REUSEADDR before binding, so the UDP servers of all network interfaces can share the port
 			setUdpServerSocket(new MulticastSocket(GlobalValues.V2G_UDP_SDP_SERVER_PORT.getShortValue()));
 			getUdpServerSocket().setReuseAddress(true);
 			
 			// Without setting the interface, the server might not react to client requests
 			getUdpServerSocket().setInterface(getUdpServerAddress());
 			
-			getUdpServerSocket().joinGroup(getMulticastAddress());
+			getUdpServerSocket().joinGroup(new InetSocketAddress(getMulticastAddress(), 0), getUdpServerInterface());
 			
 			getLogger().info("UDP server initialized at link-local address " +
 							 getUdpServerAddress().getHostAddress() + " and port 15118");
@@ -95,58 +130,144 @@ public class UDPServer extends Observable implements Runnable {
 		return true;
 	}
 	
-	public static UDPServer getInstance() {
-		return uniqueUDPServerInstance;
-	}
-
-
 	public void run() {
+		setProcessingTask(TransportLayerExecutor.getInstance().execute(
+				this::processReceivedPackets, "UDPProcessingThread " + getNetworkInterface()));
+		
 		while (!Thread.currentThread().isInterrupted()) {
-	        setUdpClientPacket(new DatagramPacket(udpClientRequest, udpClientRequest.length));
-	        
-	        try {
-				getUdpServerSocket().receive(getUdpClientPacket());
-				getLogger().debug("Message received");
+			DatagramPacket udpClientPacket = getPacketPool().poll();
+			if (udpClientPacket == null) udpClientPacket = newUdpClientPacket();
+			
+			// A reused packet's length has been reduced to the length of the datagram received before
+			udpClientPacket.setLength(UDP_CLIENT_REQUEST_LENGTH);
+			
+			try {
+				getUdpServerSocket().receive(udpClientPacket);
+			} catch (SocketException e) {
+				if (getUdpServerSocket().isClosed()) break;
 				
-				// Notify the session handler about a new incoming SECCDiscoveryReq message
-				setChanged();
-				notifyObservers(getUdpClientPacket());
-	        } catch (SocketException e) {
-	        	getLogger().error("SocketException", e);
-	        } catch (IOException e) {
-	        	getLogger().error("IOException", e);
+				getLogger().error("SocketException", e);
+				getPacketPool().offer(udpClientPacket);
+				continue;
+			} catch (IOException e) {
+				getLogger().error("IOException", e);
 				getUdpServerSocket().close();
+				break;
 			}  
-	    }
+			
+			if (isReceivedOnUdpServerInterface(udpClientPacket)) {
+				receivedPackets++;
+				enqueue(udpClientPacket);
+			} else {
+				getPacketPool().offer(udpClientPacket);
+			}
+		}
 		
 		stop();
 	}
-
+	
+	
+	/**
+	 * Queues the received packet for processing. If the queue is full, the oldest queued packet is dropped.
+	 */
+	private void enqueue(DatagramPacket udpClientPacket) {
+		while (!getReceiveQueue().offer(udpClientPacket)) {
+			DatagramPacket droppedPacket = getReceiveQueue().poll();
+			
+			if (droppedPacket != null) {
+				droppedPackets++;
+				getPacketPool().offer(droppedPacket);
+				getLogger().debug("Receive queue is full, oldest received packet has been dropped");
+			}
+		}
+	}
+	
+	
+	/**
+	 * Passes the queued packets one after the other to the packet handler. A packet is only valid during the 
+	 * call of the packet handler, afterwards it is reused for receiving further datagrams.
+	 */
+	private void processReceivedPackets() {
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				DatagramPacket udpClientPacket = getReceiveQueue().take();
+				
+				try {
+					getLogger().debug("Message received");
+					
+					// Let the session handler answer the new incoming SECCDiscoveryReq message
+					if (getPacketHandler() != null) getPacketHandler().accept(udpClientPacket);
+					processedPackets++;
+				} catch (RuntimeException e) {
+					getLogger().error(e.getClass().getSimpleName() + " occurred while processing received UDP packet", e);
+				} finally {
+					getPacketPool().offer(udpClientPacket);
+				}
+			}
+		} catch (InterruptedException e) {
+			getLogger().debug("Processing of received UDP packets has been stopped");
+		}
+	}
+	
+	
+	private DatagramPacket newUdpClientPacket() {
+		return new DatagramPacket(new byte[UDP_CLIENT_REQUEST_LENGTH], UDP_CLIENT_REQUEST_LENGTH);
+	}
+	
+	
+	/**
+	 * The UDP servers of all network interfaces are bound to the same port, which is why a UDP server might also 
+	 * receive the multicast packets sent to another network interface. The link-local address of the EVCC 
+	 * reveals (with its scope ID) on which network interface a packet has been received. 
+	 */
+	private boolean isReceivedOnUdpServerInterface(DatagramPacket udpClientPacket) {
+		if (!(udpClientPacket.getAddress() instanceof Inet6Address)) return true;
+		
+		int clientScopeID = ((Inet6Address) udpClientPacket.getAddress()).getScopeId();
+		
+		return clientScopeID == 0 || getUdpServerInterface() == null || clientScopeID == getUdpServerInterface().getIndex();
+	}
+	
 	
 	public void stop() {
 		getLogger().debug("UDP server will be stopped now");
 		
-		try {
-			getUdpServerSocket().leaveGroup(multicastAddress);
-		} catch (IOException e) {
-			getLogger().error("Error occurred while trying to close TCPServerSocket (IOException)", e);
+		if (getProcessingTask() != null) getProcessingTask().cancel(true);
+		
+		if (!getUdpServerSocket().isClosed()) {
+			try {
+				getUdpServerSocket().leaveGroup(new InetSocketAddress(getMulticastAddress(), 0), getUdpServerInterface());
+			} catch (IOException e) {
+				getLogger().error("Error occurred while trying to close TCPServerSocket (IOException)", e);
+			}
+			
+			getUdpServerSocket().close();
 		}
 		
-		getUdpServerSocket().close();
-		getLogger().debug("UDP server stopped (socket closed)");
+		getLogger().debug("UDP server stopped (socket closed). " + getReceivedPackets() + " packet(s) received, " + 
+						  getDroppedPackets() + " dropped because of a full receive queue, " + 
+						  getProcessedPackets() + " processed");
 	}
 	
-	public boolean send(V2GTPMessage message, Inet6Address udpClientAddress, int udpClientPort) {
-		 byte[] v2gTPMessage = message.getMessage();
+	/**
+	 * Sends the given V2GTP message (header and payload) to the UDP client. The datagram packet is reused for 
+	 * every response, which is why this method must only be called by the thread processing the received 
+	 * packets of this UDP server.
+	 * 
+	 * @param v2gTPMessage The V2GTP message given as a byte array, which is not copied
+	 * @param udpClientAddress The address of the UDP client
+	 * @param udpClientPort The port of the UDP client
+	 * @return True, if the message could be sent, false otherwise
+	 */
+	public boolean send(byte[] v2gTPMessage, InetAddress udpClientAddress, int udpClientPort) {
 		// Set up the UDP packet containing the V2GTP message to be sent to the UDP client
-		DatagramPacket udpServerPacket = new DatagramPacket(v2gTPMessage, 
-															v2gTPMessage.length,
-															udpClientAddress,
-															udpClientPort);
+		getUdpServerPacket().setData(v2gTPMessage);
+		getUdpServerPacket().setAddress(udpClientAddress);
+		getUdpServerPacket().setPort(udpClientPort);
 		
 		// Send the response to the UDP client
 		try {
-			udpServerSocket.send(udpServerPacket);
+			getUdpServerSocket().send(getUdpServerPacket());
 			getLogger().debug("Message sent");
 			
 			return true;
@@ -156,6 +277,18 @@ public class UDPServer extends Observable implements Runnable {
 		}
 	}
 	
+	public Consumer<DatagramPacket> getPacketHandler() {
+		return packetHandler;
+	}
+
+	/**
+	 * @param packetHandler The handler of the received packets, which is called on the processing thread of this 
+	 * 		  UDP server. The packet must not be used after the handler returned.
+	 */
+	public void setPacketHandler(Consumer<DatagramPacket> packetHandler) {
+		this.packetHandler = packetHandler;
+	}
+
 	public Logger getLogger() {
 		return logger;
 	}
@@ -164,6 +297,22 @@ public class UDPServer extends Observable implements Runnable {
 		this.logger = logger;
 	}
 
+	public String getNetworkInterface() {
+		return networkInterface;
+	}
+
+	private void setNetworkInterface(String networkInterface) {
+		this.networkInterface = networkInterface;
+	}
+
+	public NetworkInterface getUdpServerInterface() {
+		return udpServerInterface;
+	}
+
+	private void setUdpServerInterface(NetworkInterface udpServerInterface) {
+		this.udpServerInterface = udpServerInterface;
+	}
+
 	public Inet6Address getMulticastAddress() {
 		return multicastAddress;
 	}
@@ -180,20 +329,58 @@ public class UDPServer extends Observable implements Runnable {
 		this.udpServerSocket = udpServerSocket;
 	}
 
-	public byte[] getUdpClientRequest() {
-		return udpClientRequest;
+	private ArrayBlockingQueue<DatagramPacket> getReceiveQueue() {
+		return receiveQueue;
 	}
 
-	public void setUdpClientRequest(byte[] udpClientRequest) {
-		this.udpClientRequest = udpClientRequest;
+	private void setReceiveQueue(ArrayBlockingQueue<DatagramPacket> receiveQueue) {
+		this.receiveQueue = receiveQueue;
+	}
+
+	private ArrayBlockingQueue<DatagramPacket> getPacketPool() {
+		return packetPool;
+	}
+
+	private void setPacketPool(ArrayBlockingQueue<DatagramPacket> packetPool) {
+		this.packetPool = packetPool;
+	}
+
+	private Future<?> getProcessingTask() {
+		return processingTask;
+	}
+
+	private void setProcessingTask(Future<?> processingTask) {
+		this.processingTask = processingTask;
+	}
+
+	/**
+	 * @return The number of SECCDiscoveryReq candidates received on this UDP server's network interface
+	 */
+	public long getReceivedPackets() {
+		return receivedPackets;
+	}
+
+	/**
+	 * @return The number of received packets which have been dropped because the receive queue was full
+	 */
+	public long getDroppedPackets() {
+		return droppedPackets;
+	}
+
+	/**
+	 * @return The number of received packets which the processing thread took from the receive queue and which 
+	 * 		   the packet handler processed without throwing an exception
+	 */
+	public long getProcessedPackets() {
+		return processedPackets;
 	}
 
-	public DatagramPacket getUdpClientPacket() {
-		return udpClientPacket;
+	private DatagramPacket getUdpServerPacket() {
+		return udpServerPacket;
 	}
 
-	public void setUdpClientPacket(DatagramPacket udpClientPacket) {
-		this.udpClientPacket = udpClientPacket;
+	private void setUdpServerPacket(DatagramPacket udpServerPacket) {
+		this.udpServerPacket = udpServerPacket;
 	}
 
 	public Inet6Address getUdpServerAddress() {
@@ -0,0 +1,50 @@
+/*******************************************************************************
+ *  The MIT License (MIT)
+ *
+ *  Copyright (c) 2015 - 2019  Dr. Marc Mültin (V2G Clarity)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ *******************************************************************************/
+package com.v2gclarity.risev2g.shared.events;
+
+import com.v2gclarity.risev2g.shared.misc.V2GTPMessage;
+
+/**
+ * Published by a TCP/TLS connection whenever a complete V2GTP message has been received. 
+ * 
+ * The message is not copied. It owns the buffer it has been received in (see V2GTPFrameDecoder), so it stays 
+ * valid while the event is dispatched asynchronously. The listener processing the message releases it.
+ */
+public class FrameReceivedEvent extends V2GEvent {
+
+	private final V2GTPMessage v2gTpMessage;
+	
+	/**
+	 * @param source The connection which received the message
+	 * @param v2gTpMessage The received message, handed over to the listener together with its receive buffer
+	 */
+	public FrameReceivedEvent(Object source, V2GTPMessage v2gTpMessage) {
+		super(source);
+		this.v2gTpMessage = v2gTpMessage;
+	}
+
+	public V2GTPMessage getV2gTpMessage() {
+		return v2gTpMessage;
+	}
+}
@@ -0,0 +1,64 @@
+/*******************************************************************************
+ *  The MIT License (MIT)
+ *
+ *  Copyright (c) 2015 - 2019  Dr. Marc Mültin (V2G Clarity)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ *******************************************************************************/
+package com.v2gclarity.risev2g.shared.events;
+
+/**
+ * Base class of all events which are published on the V2GEventBus. 
+ * 
+ * Each event has a source (the transport layer component or session which published it) and an ordering key. 
+ * Events with the same ordering key are dispatched one after the other in the order they have been published, 
+ * events with different ordering keys may be dispatched concurrently. The ordering key of all events belonging to 
+ * a communication session is the connection of that session (see V2GCommunicationSession.getEventOrderingKey()).
+ */
+public abstract class V2GEvent {
+
+	private final Object source;
+	private final Object orderingKey;
+	
+	/**
+	 * Creates an event which is dispatched in the order of the events published by the same source.
+	 * 
+	 * @param source The object which publishes the event
+	 */
+	protected V2GEvent(Object source) {
+		this(source, source);
+	}
+	
+	/**
+	 * @param source The object which publishes the event
+	 * @param orderingKey The key of the events which are to be dispatched in publishing order together with this event
+	 */
+	protected V2GEvent(Object source, Object orderingKey) {
+		this.source = source;
+		this.orderingKey = orderingKey;
+	}
+
+	public Object getSource() {
+		return source;
+	}
+
+	public Object getOrderingKey() {
+		return orderingKey;
+	}
+}
@@ -0,0 +1,274 @@
+/*******************************************************************************
+ *  The MIT License (MIT)
+ *
+ *  Copyright (c) 2015 - 2019  Dr. Marc Mültin (V2G Clarity)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ *******************************************************************************/
+package com.v2gclarity.risev2g.shared.events;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Dispatches the events of the transport layer and the communication sessions (see V2GEvent) to the listeners 
+ * which subscribed to the events of the respective source. 
+ * 
+ * The events are never handled on the publishing thread. Instead, they are appended to the queue of the event's 
+ * ordering key (see EventQueue). A queue with pending events is drained by one of a small, fixed number of 
+ * long-lived dispatcher threads, and never by two of them at the same time. This way, the threads reading from 
+ * the sockets (or the NIO event loops) do not run any business logic, while the events of one communication 
+ * session are still handled one after the other in the order of publishing. Events of different sessions are 
+ * handled by whichever dispatcher thread is free, so a session which takes long to handle an event does not 
+ * delay the events of other sessions as long as there are free dispatcher threads. 
+ * 
+ * As the dispatcher threads are platform threads which live as long as the application, the per-thread caches 
+ * (e.g. the JAXB marshallers and the JCA engines) are reused across all messages handled by them.
+ */
+public final class V2GEventBus {
+	
+	// -- BEGIN: SINGLETON DEFINITION --
+	/*
+	 *  Eager instantiation of the singleton. The JVM creates the unique instance when the class is loaded and 
+	 *  before any thread tries to access the instance variable -> thread safe.
+	 */
+	private static final V2GEventBus instance = new V2GEventBus();
+	
+	private Logger logger = LogManager.getLogger(this.getClass().getSimpleName());
+	// The listeners per source, the lists are only read while dispatching
+	private ConcurrentHashMap<Object, CopyOnWriteArrayList<Subscription<?>>> subscriptions;
+	/*
+	 * The queues of pending events per ordering key. A queue is only kept as long as it has pending events or is 
+	 * being drained, it is added and removed within compute() of the map, i.e. under the lock of its key.
+	 */
+	private ConcurrentHashMap<Object, EventQueue> eventQueues;
+	// The dispatcher threads draining the event queues, shared by all ordering keys
+	private ExecutorService dispatchers;
+	
+	/*
+	 * The maximum number of events a dispatcher thread handles from one queue before it lets the other queues 
+	 * waiting for a dispatcher go first
+	 */
+	private static final int MAX_EVENTS_PER_DRAIN = 16;
+	
+	private V2GEventBus() {
+		setSubscriptions(new ConcurrentHashMap<Object, CopyOnWriteArrayList<Subscription<?>>>());
+		setEventQueues(new ConcurrentHashMap<Object, EventQueue>());
+		
+		AtomicInteger threadCounter = new AtomicInteger();
+		
+		setDispatchers(Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), runnable -> {
+			Thread thread = new Thread(runnable, "V2GEventDispatcher-" + threadCounter.incrementAndGet());
+			thread.setDaemon(true);
+			
+			return thread;
+		}));
+	}
+	
+	public static V2GEventBus getInstance() {
+		return instance;
+	}
+	// -- END: SINGLETON DEFINITION --
+	
+	
+	/**
+	 * Subscribes the given listener to the events of the given type (including its subtypes) which are 
+	 * published by the given source.
+	 * 
+	 * @param source The object publishing the events, e.g. a ConnectionHandler or a V2GCommunicationSession
+	 * @param eventType The type of events to be received
+	 * @param listener The listener to be called for each of these events
+	 */
+	public <E extends V2GEvent> void subscribe(Object source, Class<E> eventType, V2GEventListener<? super E> listener) {
+		getSubscriptions().computeIfAbsent(source, key -> new CopyOnWriteArrayList<Subscription<?>>())
+						  .add(new Subscription<E>(eventType, listener));
+	}
+	
+	
+	/**
+	 * Removes all listeners of the events published by the given source. Events of this source which are 
+	 * still queued are discarded when it is their turn to be dispatched.
+	 * 
+	 * @param source The object publishing the events
+	 */
+	public void unsubscribe(Object source) {
+		getSubscriptions().remove(source);
+	}
+	
+	
+	/**
+	 * Appends the given event to the queue of the event's ordering key. Returns immediately, the listeners 
+	 * are called on a dispatcher thread.
+	 * 
+	 * @param event The event to be dispatched
+	 */
+	public void publish(V2GEvent event) {
+		EventQueue[] queueToDrain = new EventQueue[1];
+		
+		getEventQueues().compute(event.getOrderingKey(), (orderingKey, queue) -> {
+			if (queue == null) queue = new EventQueue(orderingKey);
+			
+			queue.getEvents().add(event);
+			
+			if (!queue.isScheduled()) {
+				queue.setScheduled(true);
+				queueToDrain[0] = queue;
+			}
+			
+			return queue;
+		});
+		
+		// The queue was idle, hand it to a dispatcher thread (outside of compute(), which must not block)
+		if (queueToDrain[0] != null) getDispatchers().execute(queueToDrain[0]);
+	}
+	
+	
+	private void dispatchEvent(V2GEvent event) {
+		CopyOnWriteArrayList<Subscription<?>> listeners = getSubscriptions().get(event.getSource());
+		
+		if (listeners == null) {
+			getLogger().debug(event.getClass().getSimpleName() + " of " + event.getSource().getClass().getSimpleName() + 
+							  " discarded, no listener subscribed");
+			return;
+		}
+		
+		for (Subscription<?> subscription : listeners) {
+			try {
+				subscription.dispatch(event);
+			} catch (RuntimeException e) {
+				getLogger().error(e.getClass().getSimpleName() + " occurred while dispatching " + 
+								  event.getClass().getSimpleName(), e);
+			}
+		}
+	}
+	
+	
+	/**
+	 * The pending events of one ordering key. The queue is scheduled for draining (i.e. handed to the dispatcher 
+	 * threads) whenever it receives an event while not scheduled, and stays scheduled until it is empty. So at 
+	 * most one dispatcher thread drains a queue at any time, which keeps the order of its events. The scheduled 
+	 * flag is only read and written within compute() of the event queue map.
+	 */
+	private final class EventQueue implements Runnable {
+		
+		private final Object orderingKey;
+		private final ConcurrentLinkedQueue<V2GEvent> events;
+		private boolean scheduled;
+		
+		private EventQueue(Object orderingKey) {
+			this.orderingKey = orderingKey;
+			this.events = new ConcurrentLinkedQueue<>();
+		}
+		
+		@Override
+		public void run() {
+			for (int i = 0; i < MAX_EVENTS_PER_DRAIN; i++) {
+				V2GEvent event = getEvents().poll();
+				if (event == null) break;
+				
+				dispatchEvent(event);
+			}
+			
+			boolean[] eventsLeft = new boolean[1];
+			
+			getEventQueues().compute(orderingKey, (key, queue) -> {
+				eventsLeft[0] = !getEvents().isEmpty();
+				
+				if (eventsLeft[0]) return queue;
+				
+				setScheduled(false);
+				return null;
+			});
+			
+			// Queue again behind the queues of other ordering keys which are waiting for a dispatcher thread
+			if (eventsLeft[0]) getDispatchers().execute(this);
+		}
+		
+		private ConcurrentLinkedQueue<V2GEvent> getEvents() {
+			return events;
+		}
+		
+		private boolean isScheduled() {
+			return scheduled;
+		}
+		
+		private void setScheduled(boolean scheduled) {
+			this.scheduled = scheduled;
+		}
+	}
+	
+	
+	/**
+	 * A listener together with the type of events it subscribed to.
+	 */
+	private static final class Subscription<E extends V2GEvent> {
+		
+		private final Class<E> eventType;
+		private final V2GEventListener<? super E> listener;
+		
+		private Subscription(Class<E> eventType, V2GEventListener<? super E> listener) {
+			this.eventType = eventType;
+			this.listener = listener;
+		}
+		
+		private void dispatch(V2GEvent event) {
+			if (eventType.isInstance(event)) listener.handleEvent(eventType.cast(event));
+		}
+	}
+	
+	
+	public Logger getLogger() {
+		return logger;
+	}
+
+	public void setLogger(Logger logger) {
+		this.logger = logger;
+	}
+
+	private ConcurrentHashMap<Object, CopyOnWriteArrayList<Subscription<?>>> getSubscriptions() {
+		return subscriptions;
+	}
+
+	private void setSubscriptions(ConcurrentHashMap<Object, CopyOnWriteArrayList<Subscription<?>>> subscriptions) {
+		this.subscriptions = subscriptions;
+	}
+
+	private ConcurrentHashMap<Object, EventQueue> getEventQueues() {
+		return eventQueues;
+	}
+
+	private void setEventQueues(ConcurrentHashMap<Object, EventQueue> eventQueues) {
+		this.eventQueues = eventQueues;
+	}
+
+	private ExecutorService getDispatchers() {
+		return dispatchers;
+	}
+
+	private void setDispatchers(ExecutorService dispatchers) {
+		this.dispatchers = dispatchers;
+	}
+}
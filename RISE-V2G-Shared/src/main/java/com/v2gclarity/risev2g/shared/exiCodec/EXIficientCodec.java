@@ -25,24 +25,17 @@ package com.v2gclarity.risev2g.shared.exiCodec;
  *******************************************************************************/
 
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.StringWriter;
+import java.nio.ByteBuffer;
 
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerConfigurationException;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.sax.SAXSource;
-import javax.xml.transform.stream.StreamResult;
+import javax.xml.bind.UnmarshallerHandler;
 
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
-import org.xml.sax.helpers.XMLReaderFactory;
 
 import com.siemens.ct.exi.EXIFactory;
 import com.siemens.ct.exi.GrammarFactory;
@@ -52,7 +45,6 @@ import com.siemens.ct.exi.exceptions.EXIException;
 import com.siemens.ct.exi.grammars.Grammars;
 import com.siemens.ct.exi.helpers.DefaultEXIFactory;
 import com.v2gclarity.risev2g.shared.enumerations.GlobalValues;
-import com.v2gclarity.risev2g.shared.utils.ByteUtils;
 
 public final class EXIficientCodec extends ExiCodec {
 	// -- BEGIN: SINGLETON DEFINITION --
@@ -64,6 +56,12 @@ public final class EXIficientCodec extends ExiCodec {
 	private static final EXIficientCodec instance = new EXIficientCodec();
 	
 	private EXIFactory exiFactory;
+	/*
+	 * Separate EXI factories, configured once with the fragment grammar option and their own instance of the 
+	 * respective grammar, which are used for the EXI encodings needed for the header's signature (see encodeFragment())
+	 */
+	private EXIFactory fragmentExiFactoryMsgDef;
+	private EXIFactory fragmentExiFactoryXMLDSig;
 	private GrammarFactory grammarFactory;
 	private Grammars grammarAppProtocol;
 	private Grammars grammarMsgDef;
@@ -84,22 +82,60 @@ public final class EXIficientCodec extends ExiCodec {
 		 * are serialized versions of the respective XSD schema files.
 		 * These serializations have been created using a tool available at
 		 * https://github.com/EXIficient/exificient-grammars/blob/master/src/main/java/com/siemens/ct/exi/grammars/persistency/Grammars2JavaSourceCode.java
+		 * 
+		 * EXIficient keeps coding state in the grammar objects, so they must not be used by two encoders or 
+		 * decoders at the same time. Each codec instance therefore builds its own grammars.
 		 */
 		setGrammarAppProtocol(new EXIficient_V2G_CI_AppProtocol());
 		setGrammarMsgDef(new EXIficient_V2G_CI_MsgDef());
 		setGrammarXMLDSig(new EXIficient_xmldsig_core_schema());
 		
-		// Non-default settings to fulfill requirements [V2G2-099] and [V2G2-600]
-		getExiFactory().setValuePartitionCapacity(0);
-		getExiFactory().setMaximumNumberOfBuiltInElementGrammars(0);
-		getExiFactory().setMaximumNumberOfBuiltInProductions(0);
+		setV2GOptions(getExiFactory());
+		
+		/*
+		 * The fragment encodings are not synchronized with the encodings of complete messages and thus 
+		 * must not use the grammars of getExiFactory()
+		 */
+		setFragmentExiFactoryMsgDef(newFragmentExiFactory(new EXIficient_V2G_CI_MsgDef()));
+		setFragmentExiFactoryXMLDSig(newFragmentExiFactory(new EXIficient_xmldsig_core_schema()));
 	}
 	
 	public static EXIficientCodec getInstance() {
 		return instance;
 	}
 	// -- END: SINGLETON DEFINITION --
-
+	
+	
+	/**
+	 * Creates a new codec instance which is independent of the singleton returned by getInstance(). 
+	 * The new instance has its own EXIFactory and its own grammars, so it shares no coding state with 
+	 * other instances. Such instances are used by the ExiCodecPool 
+	 * to let concurrent communication sessions encode and decode in parallel.
+	 * 
+	 * @return A new EXIficientCodec instance
+	 */
+	public static EXIficientCodec newInstance() {
+		return new EXIficientCodec();
+	}
+	
+	
+	private static EXIFactory newFragmentExiFactory(Grammars grammar) {
+		EXIFactory fragmentExiFactory = DefaultEXIFactory.newInstance();
+		fragmentExiFactory.setGrammars(grammar);
+		fragmentExiFactory.setFragment(true);
+		setV2GOptions(fragmentExiFactory);
+		
+		return fragmentExiFactory;
+	}
+	
+	
+	private static void setV2GOptions(EXIFactory exiFactory) {
+		// Non-default settings to fulfill requirements [V2G2-099] and [V2G2-600]
+		exiFactory.setValuePartitionCapacity(0);
+		exiFactory.setMaximumNumberOfBuiltInElementGrammars(0);
+		exiFactory.setMaximumNumberOfBuiltInProductions(0);
+	}
+	
 	
 	@Override
 	public synchronized byte[] encodeEXI(Object jaxbObject, String xsdSchemaPath) {
@@ -116,9 +152,8 @@ public final class EXIficientCodec extends ExiCodec {
 			return null;
 		}
 			
-		InputStream inStream = marshalToInputStream(jaxbObject);
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		baos = ((ByteArrayOutputStream) encode(inStream, grammar));
+		ByteArrayOutputStream baos = ((ByteArrayOutputStream) encode(jaxbObject, grammar));
+		if (baos == null) return null;
 		
 		if (isHexAndBase64MsgRepresentation()) 
 			showHexAndBase64RepresentationOfMessage(jaxbObject, baos.toByteArray());
@@ -126,7 +161,7 @@ public final class EXIficientCodec extends ExiCodec {
 		return baos.toByteArray();
 	}
 
-	private synchronized OutputStream encode(InputStream jaxbXML, Grammars grammar) {
+	private synchronized OutputStream encode(Object jaxbObject, Grammars grammar) {
 		EXIResult exiResult = null;
 		
 		try {
@@ -134,14 +169,12 @@ public final class EXIficientCodec extends ExiCodec {
 			encodeOS = new ByteArrayOutputStream();
 			exiResult = new EXIResult(exiFactory);
 			exiResult.setOutputStream(encodeOS);
-			XMLReader xmlReader = XMLReaderFactory.createXMLReader();
-			xmlReader.setContentHandler(exiResult.getHandler());
-
-			// parse xml file
-			xmlReader.parse(new InputSource(jaxbXML));
+			
+			// The JAXB object is marshalled straight into the EXI encoder, no XML text needs to be parsed
+			if (!marshalToContentHandler(jaxbObject, exiResult.getHandler())) return null;
 			
 			encodeOS.close();
-		} catch (SAXException | IOException | EXIException e) {
+		} catch (IOException | EXIException e) {
 			getLogger().error(e.getClass().getSimpleName() + " occurred while trying to encode", e);
 		}  
 		
@@ -149,44 +182,73 @@ public final class EXIficientCodec extends ExiCodec {
 	}
 	
 	
+	/*
+	 * Not synchronized on the codec instance, the encodings of complete messages are not blocked by the 
+	 * signature related encodings and vice versa
+	 */
 	@Override
-	public synchronized Object decodeEXI(byte[] exiEncodedMessage, boolean supportedAppProtocolHandshake) {
-		getLogger().debug("Received EXI stream: " + ByteUtils.toHexString(exiEncodedMessage));
+	public byte[] encodeFragment(Object jaxbObject, String xsdSchemaPath) {
+		EXIFactory fragmentExiFactory = null;
 		
-		ByteArrayInputStream bais = new ByteArrayInputStream(exiEncodedMessage);
-		setDecodedExi(decode(bais, supportedAppProtocolHandshake));
+		if (xsdSchemaPath.equals(GlobalValues.SCHEMA_PATH_MSG_DEF.toString()))
+			fragmentExiFactory = getFragmentExiFactoryMsgDef();
+		else if (xsdSchemaPath.equals(GlobalValues.SCHEMA_PATH_XMLDSIG.toString()))
+			fragmentExiFactory = getFragmentExiFactoryXMLDSig();
+		else {
+			getLogger().error("False schema path provided for encoding jaxbObject into an EXI fragment");
+			return null;
+		}
+		
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		
+		// A fragment factory is used by one thread at a time only
+		synchronized (fragmentExiFactory) {
+			try {
+				EXIResult exiResult = new EXIResult(fragmentExiFactory);
+				exiResult.setOutputStream(baos);
+				
+				// A partially encoded fragment must never be signed or digested
+				if (!marshalToContentHandler(jaxbObject, exiResult.getHandler())) return null;
+			} catch (IOException | EXIException e) {
+				getLogger().error(e.getClass().getSimpleName() + " occurred while trying to encode fragment", e);
+				return null;
+			}
+		}
+		
+		if (isHexAndBase64MsgRepresentation()) 
+			showHexAndBase64RepresentationOfMessage(jaxbObject, baos.toByteArray());
 		
-		return unmarshallToMessage(getDecodedExi());
+		return baos.toByteArray();
 	}
 	
 	
-	private synchronized String decode(InputStream exiInputStream, boolean supportedAppProtocolHandshake) {
-		TransformerFactory tf = TransformerFactory.newInstance();
-		Transformer transformer = null;
-		StringWriter stringWriter = new StringWriter();
-
-		try {
-			transformer = tf.newTransformer();
-		} catch (TransformerConfigurationException e) {
-			getLogger().error("Error occurred while trying to decode (TransformerConfigurationException)", e);
-		}
+	@Override
+	public synchronized Object decodeEXI(ByteBuffer exiEncodedMessage, boolean supportedAppProtocolHandshake) {
+		logReceivedExiStream(exiEncodedMessage);
 		
+		return decode(toInputStream(exiEncodedMessage), supportedAppProtocolHandshake);
+	}
+	
+	
+	private synchronized Object decode(InputStream exiInputStream, boolean supportedAppProtocolHandshake) {
 		if (supportedAppProtocolHandshake) exiFactory.setGrammars(grammarAppProtocol);
 		else exiFactory.setGrammars(grammarMsgDef);
 		
 		try {
-			EXISource saxSource = new EXISource(exiFactory);
-			SAXSource exiSource = new SAXSource(new InputSource(exiInputStream));
-			XMLReader exiReader = saxSource.getXMLReader();
-			exiSource.setXMLReader(exiReader);
-			transformer.transform(exiSource, new StreamResult(stringWriter));
-		} catch (EXIException e) {
-			getLogger().error("Error occurred while trying to decode (EXIException)", e);
-		} catch (TransformerException e) {
-			getLogger().error("Error occurred while trying to decode (TransformerException)", e);
+			/*
+			 * The SAX events of the EXI decoder are fed directly into the JAXB unmarshaller, no XML text 
+			 * needs to be written and parsed again
+			 */
+			UnmarshallerHandler unmarshallerHandler = getUnmarshaller().getUnmarshallerHandler();
+			XMLReader exiReader = new EXISource(exiFactory).getXMLReader();
+			exiReader.setContentHandler(unmarshallerHandler);
+			exiReader.parse(new InputSource(exiInputStream));
+			
+			return unmarshallToMessage(unmarshallerHandler);
+		} catch (EXIException | SAXException | IOException | RuntimeException e) {
+			getLogger().error(e.getClass().getSimpleName() + " occurred while trying to decode", e);
+			return null;
 		}
-		
-		return stringWriter.toString();
 	}
 
 	private Grammars getGrammarAppProtocol() {
@@ -222,6 +284,22 @@ public final class EXIficientCodec extends ExiCodec {
 		this.exiFactory = exiFactory;
 	}
 
+	private EXIFactory getFragmentExiFactoryMsgDef() {
+		return fragmentExiFactoryMsgDef;
+	}
+
+	private void setFragmentExiFactoryMsgDef(EXIFactory fragmentExiFactoryMsgDef) {
+		this.fragmentExiFactoryMsgDef = fragmentExiFactoryMsgDef;
+	}
+
+	private EXIFactory getFragmentExiFactoryXMLDSig() {
+		return fragmentExiFactoryXMLDSig;
+	}
+
+	private void setFragmentExiFactoryXMLDSig(EXIFactory fragmentExiFactoryXMLDSig) {
+		this.fragmentExiFactoryXMLDSig = fragmentExiFactoryXMLDSig;
+	}
+
 	@SuppressWarnings("unused")
 	private GrammarFactory getGrammarFactory() {
 		return grammarFactory;
@@ -0,0 +1,192 @@
+/*******************************************************************************
+ *  The MIT License (MIT)
+ *
+ *  Copyright (c) 2015 - 2019  Dr. Marc Mültin (V2G Clarity)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ *******************************************************************************/
+package com.v2gclarity.risev2g.shared.exiCodec;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads events and values from the EXI bit-packed representation held in a ByteBuffer. This is the 
+ * counterpart of the ExiBitWriter. Values which are not representable with the respective Java type or 
+ * which are not allowed with value partition capacity 0 (string table hits) lead to an ExiFallbackException.
+ */
+final class ExiBitReader {
+
+	private ByteBuffer buffer;
+	private int currentByte;
+	private int remainingBits;
+	
+	ExiBitReader(ByteBuffer buffer) {
+		setBuffer(buffer);
+	}
+	
+	
+	/**
+	 * Reads the given number of bits, most significant bit first.
+	 * 
+	 * @param numberOfBits The number of bits (between 0 and 31)
+	 * @return The value represented by the bits
+	 * @throws ExiFallbackException If the end of the EXI stream has been reached
+	 */
+	int readBits(int numberOfBits) throws ExiFallbackException {
+		int value = 0;
+		
+		while (numberOfBits > 0) {
+			if (remainingBits == 0) {
+				if (!getBuffer().hasRemaining()) throw new ExiFallbackException("Unexpected end of EXI stream");
+				currentByte = getBuffer().get() & 0xFF;
+				remainingBits = 8;
+			}
+			
+			int bits = Math.min(numberOfBits, remainingBits);
+			remainingBits -= bits;
+			numberOfBits -= bits;
+			value = (value << bits) | ((currentByte >>> remainingBits) & ((1 << bits) - 1));
+		}
+		
+		return value;
+	}
+	
+	
+	/**
+	 * Reads the event code of a schema-informed grammar in non-strict mode (see ExiBitWriter.writeEventCode()).
+	 * 
+	 * @param numberOfEvents The number of declared productions of the current grammar
+	 * @return The event code of the declared production
+	 * @throws ExiFallbackException If the event code refers to the second level (undeclared) productions
+	 */
+	int readEventCode(int numberOfEvents) throws ExiFallbackException {
+		int eventCode = readBits(ExiBitWriter.getCodingLength(numberOfEvents + 1));
+		
+		if (eventCode >= numberOfEvents) throw new ExiFallbackException("Second level event code found");
+		return eventCode;
+	}
+	
+	
+	/**
+	 * Reads the event code of a grammar which must continue with the production having the given event code.
+	 */
+	void readEventCode(int expectedEventCode, int numberOfEvents) throws ExiFallbackException {
+		if (readEventCode(numberOfEvents) != expectedEventCode) 
+			throw new ExiFallbackException("Unexpected event code found");
+	}
+	
+	
+	boolean readBoolean() throws ExiFallbackException {
+		return readBits(1) == 1;
+	}
+	
+	
+	int readEnumeration(int numberOfValues) throws ExiFallbackException {
+		int index = readBits(ExiBitWriter.getCodingLength(numberOfValues));
+		
+		if (index >= numberOfValues) throw new ExiFallbackException("Enumeration index " + index + " out of range");
+		return index;
+	}
+	
+	
+	int readNBitUnsignedInteger(int minInclusive, int maxInclusive) throws ExiFallbackException {
+		return readBits(ExiBitWriter.getCodingLength(maxInclusive - minInclusive + 1)) + minInclusive;
+	}
+	
+	
+	/**
+	 * Reads an unsigned integer which must not exceed the given maximum value.
+	 */
+	long readUnsignedInteger(long maxValue) throws ExiFallbackException {
+		long value = 0;
+		int shift = 0;
+		int octet;
+		
+		do {
+			octet = readBits(8);
+			if (shift > 56) throw new ExiFallbackException("Unsigned integer exceeds value range");
+			value |= (long) (octet & 0x7F) << shift;
+			shift += 7;
+		} while ((octet & 0x80) != 0);
+		
+		if (value < 0 || value > maxValue) throw new ExiFallbackException("Unsigned integer exceeds value range");
+		return value;
+	}
+	
+	
+	BigInteger readUnsignedBigInteger() throws ExiFallbackException {
+		BigInteger value = BigInteger.ZERO;
+		int shift = 0;
+		int octet;
+		
+		do {
+			octet = readBits(8);
+			value = value.or(BigInteger.valueOf(octet & 0x7F).shiftLeft(shift));
+			shift += 7;
+		} while ((octet & 0x80) != 0);
+		
+		return value;
+	}
+	
+	
+	/**
+	 * Reads a signed integer whose value must be within the given range.
+	 */
+	long readInteger(long minValue, long maxValue) throws ExiFallbackException {
+		long value = readBoolean() ? -readUnsignedInteger(Long.MAX_VALUE) - 1 : readUnsignedInteger(Long.MAX_VALUE);
+		
+		if (value < minValue || value > maxValue) throw new ExiFallbackException("Integer exceeds value range");
+		return value;
+	}
+	
+	
+	String readString() throws ExiFallbackException {
+		long length = readUnsignedInteger(Integer.MAX_VALUE);
+		
+		if (length < 2) throw new ExiFallbackException("String table hits are not supported");
+		if (length - 2 > getBuffer().remaining() + 1) throw new ExiFallbackException("String length exceeds EXI stream");
+		
+		StringBuilder value = new StringBuilder((int) length - 2);
+		for (long i = 2; i < length; i++) {
+			value.appendCodePoint((int) readUnsignedInteger(Character.MAX_CODE_POINT));
+		}
+		
+		return value.toString();
+	}
+	
+	
+	byte[] readBinary() throws ExiFallbackException {
+		int length = (int) readUnsignedInteger(getBuffer().remaining() + 1);
+		byte[] value = new byte[length];
+		
+		for (int i = 0; i < length; i++) value[i] = (byte) readBits(8);
+		
+		return value;
+	}
+	
+
+	private ByteBuffer getBuffer() {
+		return buffer;
+	}
+
+	private void setBuffer(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+}
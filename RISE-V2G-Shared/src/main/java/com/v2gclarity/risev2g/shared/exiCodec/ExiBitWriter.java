@@ -0,0 +1,219 @@
+/*******************************************************************************
+ *  The MIT License (MIT)
+ *
+ *  Copyright (c) 2015 - 2019  Dr. Marc Mültin (V2G Clarity)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ *******************************************************************************/
+package com.v2gclarity.risev2g.shared.exiCodec;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes the EXI bit-packed representation of events and values into a ByteBuffer which grows as needed.
+ * Only the subset of the EXI datatype representations needed for the ISO 15118-2 message set is supported, 
+ * with value partition capacity 0 as required by [V2G2-099] (i.e. strings are always written as literals).
+ */
+final class ExiBitWriter {
+
+	private static final int INITIAL_CAPACITY = 256;
+	private ByteBuffer buffer;
+	private int currentByte;
+	private int freeBits;
+	
+	ExiBitWriter() {
+		setBuffer(ByteBuffer.allocate(INITIAL_CAPACITY));
+		freeBits = 8;
+	}
+	
+	
+	/**
+	 * Writes the given value using the given number of bits, most significant bit first.
+	 * 
+	 * @param value The value to be written
+	 * @param numberOfBits The number of bits (between 0 and 32) 
+	 */
+	void writeBits(int value, int numberOfBits) {
+		while (numberOfBits > 0) {
+			if (numberOfBits >= freeBits) {
+				numberOfBits -= freeBits;
+				currentByte |= (value >>> numberOfBits) & ((1 << freeBits) - 1);
+				putByte(currentByte);
+				currentByte = 0;
+				freeBits = 8;
+			} else {
+				freeBits -= numberOfBits;
+				currentByte |= (value & ((1 << numberOfBits) - 1)) << freeBits;
+				numberOfBits = 0;
+			}
+		}
+	}
+	
+	
+	/**
+	 * Writes the event code of a production of a schema-informed grammar in non-strict mode. The first level
+	 * event code of a non-strict grammar with n declared productions has n+1 possible values, the additional 
+	 * one being reserved for the second level (undeclared) productions.
+	 * 
+	 * @param eventCode The event code of the production, counting from 0
+	 * @param numberOfEvents The number of declared productions of the current grammar
+	 */
+	void writeEventCode(int eventCode, int numberOfEvents) {
+		writeBits(eventCode, getCodingLength(numberOfEvents + 1));
+	}
+	
+	
+	void writeBoolean(boolean value) {
+		writeBits(value ? 1 : 0, 1);
+	}
+	
+	
+	/**
+	 * Writes an enumeration value as its index in the list of enumerated values (given in schema order).
+	 */
+	void writeEnumeration(int index, int numberOfValues) {
+		writeBits(index, getCodingLength(numberOfValues));
+	}
+	
+	
+	/**
+	 * Writes an integer whose value space is bounded to a range of at most 4096 values as n-bit unsigned 
+	 * offset from the lower bound.
+	 */
+	void writeNBitUnsignedInteger(int value, int minInclusive, int maxInclusive) {
+		writeBits(value - minInclusive, getCodingLength(maxInclusive - minInclusive + 1));
+	}
+	
+	
+	/**
+	 * Writes a non-negative integer as a sequence of octets, 7 bits each, least significant group first. 
+	 * The most significant bit of each octet signals whether another octet follows.
+	 */
+	void writeUnsignedInteger(long value) {
+		while ((value & ~0x7FL) != 0) {
+			writeBits((int) ((value & 0x7F) | 0x80), 8);
+			value >>>= 7;
+		}
+		
+		writeBits((int) value, 8);
+	}
+	
+	
+	void writeUnsignedInteger(BigInteger value) {
+		if (value.bitLength() < 64) {
+			writeUnsignedInteger(value.longValue());
+		} else {
+			while (value.bitLength() > 7) {
+				writeBits(value.intValue() & 0x7F | 0x80, 8);
+				value = value.shiftRight(7);
+			}
+			
+			writeBits(value.intValue(), 8);
+		}
+	}
+	
+	
+	/**
+	 * Writes a signed integer as sign bit followed by the magnitude as unsigned integer. Negative values
+	 * are written as -(value + 1).
+	 */
+	void writeInteger(long value) {
+		if (value < 0) {
+			writeBoolean(true);
+			writeUnsignedInteger(-(value + 1));
+		} else {
+			writeBoolean(false);
+			writeUnsignedInteger(value);
+		}
+	}
+	
+	
+	/**
+	 * Writes a string value as literal, i.e. its length (in code points) plus 2 followed by the code points. 
+	 * The values 0 and 1 are reserved for string table hits which do not occur with value partition capacity 0.
+	 */
+	void writeString(String value) {
+		writeUnsignedInteger(value.codePointCount(0, value.length()) + 2);
+		
+		for (int i = 0; i < value.length(); ) {
+			int codePoint = value.codePointAt(i);
+			writeUnsignedInteger(codePoint);
+			i += Character.charCount(codePoint);
+		}
+	}
+	
+	
+	/**
+	 * Writes a binary value (hexBinary or base64Binary) as its length followed by the bytes.
+	 */
+	void writeBinary(byte[] value) {
+		writeUnsignedInteger(value.length);
+		for (byte b : value) writeBits(b & 0xFF, 8);
+	}
+	
+	
+	/**
+	 * Pads the last byte with zero bits and provides the written EXI stream.
+	 * 
+	 * @return The EXI stream as byte array
+	 */
+	byte[] toByteArray() {
+		if (freeBits < 8) {
+			putByte(currentByte);
+			currentByte = 0;
+			freeBits = 8;
+		}
+		
+		byte[] exiStream = new byte[getBuffer().position()];
+		getBuffer().flip();
+		getBuffer().get(exiStream);
+		getBuffer().clear();
+		
+		return exiStream;
+	}
+	
+	
+	/**
+	 * Returns the number of bits needed to represent the given number of distinct values.
+	 */
+	static int getCodingLength(int numberOfValues) {
+		return numberOfValues <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(numberOfValues - 1);
+	}
+	
+	
+	private void putByte(int value) {
+		if (!getBuffer().hasRemaining()) {
+			ByteBuffer largerBuffer = ByteBuffer.allocate(getBuffer().capacity() * 2);
+			getBuffer().flip();
+			largerBuffer.put(getBuffer());
+			setBuffer(largerBuffer);
+		}
+		
+		getBuffer().put((byte) value);
+	}
+	
+	private ByteBuffer getBuffer() {
+		return buffer;
+	}
+
+	private void setBuffer(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+}
@@ -24,19 +24,21 @@
 package com.v2gclarity.risev2g.shared.exiCodec;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringWriter;
+import java.nio.ByteBuffer;
 import java.util.Base64;
 
 import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
+import javax.xml.bind.UnmarshallerHandler;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.xml.sax.ContentHandler;
+
 import com.v2gclarity.risev2g.shared.enumerations.GlobalValues;
 import com.v2gclarity.risev2g.shared.utils.ByteUtils;
 import com.v2gclarity.risev2g.shared.utils.MiscUtils;
@@ -48,11 +50,8 @@ import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.V2GMessage;
 public abstract class ExiCodec {
 
 	private Logger logger = LogManager.getLogger(this.getClass().getSimpleName());
-	private Marshaller marshaller;
-	private Unmarshaller unmarshaller;
-	private InputStream inStream;
+	private JaxbMarshallerProvider marshallerProvider;
 	private Object decodedMessage;
-	private String decodedExi;
 	private boolean xmlMsgRepresentation;
 	private boolean hexAndBase64MsgRepresentation;
 	
@@ -71,34 +70,43 @@ public abstract class ExiCodec {
 	}
 	
 	
-	public InputStream marshalToInputStream(Object jaxbObject) {	
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		
+	/**
+	 * Marshals the given JAXB object directly into the given SAX content handler, which is usually the 
+	 * content handler of an EXI encoder. This way, no intermediate XML text is written and parsed again 
+	 * before the EXI encoding takes place.
+	 * 
+	 * @param jaxbObject The JAXB object (message or JAXBElement) to be marshalled
+	 * @param contentHandler The SAX content handler which receives the events of the marshalled object
+	 * @return True, if the object could be marshalled, false otherwise
+	 */
+	public boolean marshalToContentHandler(Object jaxbObject, ContentHandler contentHandler) {	
 		try {
-			if (getInStream() != null) getInStream().reset();
-			getMarshaller().marshal(jaxbObject, baos);
-			
-			setInStream(new ByteArrayInputStream(baos.toByteArray()));
-			baos.close();
+			getMarshaller().marshal(jaxbObject, contentHandler);
 			
 			if (isXMLMsgRepresentation()) showXMLRepresentationOfMessage(jaxbObject);
-			return getInStream();
-		} catch (JAXBException | IOException e) {
-			getLogger().error(e.getClass().getSimpleName() + " occurred while trying to marshal to InputStream from JAXBElement", e);
-			return null;
+			return true;
+		} catch (JAXBException e) {
+			getLogger().error(e.getClass().getSimpleName() + " occurred while trying to marshal JAXBElement to ContentHandler", e);
+			return false;
 		}
 	}
 	
 	
-	public Object unmarshallToMessage(String decodedExiString) {
+	/**
+	 * Provides the JAXB object which has been built by the given unmarshaller handler. The handler must have 
+	 * been fed with the SAX events of a complete document before, which is done by using it as content handler 
+	 * of an EXI decoder. This way, no intermediate XML text is written and parsed again after the EXI decoding.
+	 * 
+	 * @param unmarshallerHandler The unmarshaller handler which received the SAX events of the decoded message
+	 * @return The unmarshalled message object, or null if the message could not be unmarshalled
+	 */
+	public Object unmarshallToMessage(UnmarshallerHandler unmarshallerHandler) {
 		try {
-			if (getInStream() != null) getInStream().reset();
-			setInStream(new ByteArrayInputStream(decodedExiString.getBytes()));
-			Object unmarhalledObject = getUnmarshaller().unmarshal(getInStream());
+			Object unmarhalledObject = unmarshallerHandler.getResult();
 			
 			if (isXMLMsgRepresentation()) showXMLRepresentationOfMessage(unmarhalledObject);
 			return unmarhalledObject;
-		} catch (IOException | JAXBException | RuntimeException e) {
+		} catch (JAXBException | RuntimeException e) {
 			getLogger().error(e.getClass().getSimpleName() + " occurred while trying to unmarshall decoded message", e);
 			return null;
 		}
@@ -162,46 +170,104 @@ public abstract class ExiCodec {
 	 * Provides the EXI encoding of the header's SignedInfo element. The resulting byte array can then be used to
 	 * verify a signature.
 	 * 
+	 * The SignedInfo element is encoded with the schema-informed fragment grammar (see encodeFragment()), which 
+	 * leaves the encoding of message bodies done with the same codec instance at the same time untouched.
+	 * 
 	 * @param jaxbSignedInfo The SignedInfo element of the V2GMessage header, given as a JAXB element
 	 * @return The EXI encoding of the SignedInfo element given as a byte array
 	 */
 	public byte[] getExiEncodedSignedInfo(JAXBElement<SignedInfoType> jaxbSignedInfo) {
-		// The schema-informed fragment grammar option needs to be used for EXI encodings in the header's signature
-		setFragment(true);
-		
-		// The SignedInfo element must be encoded
-		byte[] encodedSignedInfo = encodeEXI(
-										jaxbSignedInfo, 
-										GlobalValues.SCHEMA_PATH_XMLDSIG.toString()
-								   );
-		
-		// Do not use the schema-informed fragment grammar option for other EXI encodings (message bodies)
-		setFragment(false);
-		
-		return encodedSignedInfo;
+		return encodeFragment(jaxbSignedInfo, GlobalValues.SCHEMA_PATH_XMLDSIG.toString());
 	}
 	
 	
 	public abstract byte[] encodeEXI(Object jaxbXML, String xsdSchemaPath);
 	
-	public abstract Object decodeEXI(byte[] exiEncodedMessage, boolean supportedAppProtocolHandshake);
+	/**
+	 * Encodes the given JAXB element with the schema-informed fragment grammar of the given schema, as needed 
+	 * for the reference elements (message bodies or fields) and the SignedInfo element of the header's signature.
+	 * 
+	 * The fragment encodings are done by encoders which are configured for the fragment grammar once and kept 
+	 * apart from the ones encoding complete messages. Unlike switching the fragment option via setFragment(), 
+	 * this is therefore thread-safe and never affects concurrent encodings of message bodies.
+	 * 
+	 * @param jaxbObject The JAXB element to be encoded
+	 * @param xsdSchemaPath The schema path, either the one of V2G_CI_MsgDef.xsd or of xmldsig-core-schema.xsd
+	 * @return The EXI encoding of the fragment, or null if the JAXB element could not be encoded
+	 */
+	public abstract byte[] encodeFragment(Object jaxbObject, String xsdSchemaPath);
+	
+	/**
+	 * Decodes the given EXI stream. The array is wrapped, not copied.
+	 */
+	public Object decodeEXI(byte[] exiEncodedMessage, boolean supportedAppProtocolHandshake) {
+		return decodeEXI(ByteBuffer.wrap(exiEncodedMessage), supportedAppProtocolHandshake);
+	}
+	
+	/**
+	 * Decodes the remaining bytes of the given buffer, which is usually the payload view of a received 
+	 * V2GTPMessage. The buffer's position is left untouched.
+	 * 
+	 * @param exiEncodedMessage The buffer holding the EXI stream
+	 * @param supportedAppProtocolHandshake True, if the supportedAppProtocol grammar is to be used
+	 * @return The decoded message, or null if the EXI stream could not be decoded
+	 */
+	public abstract Object decodeEXI(ByteBuffer exiEncodedMessage, boolean supportedAppProtocolHandshake);
+	
+	
+	/**
+	 * Provides an input stream over the remaining bytes of the given buffer without copying them, 
+	 * as long as the buffer is backed by an accessible array.
+	 */
+	protected InputStream toInputStream(ByteBuffer buffer) {
+		if (buffer.hasArray())
+			return new ByteArrayInputStream(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+		
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.duplicate().get(bytes);
+		
+		return new ByteArrayInputStream(bytes);
+	}
+	
+	
+	/**
+	 * Logs the received EXI stream in hexadecimal representation if debug logging is enabled.
+	 */
+	protected void logReceivedExiStream(ByteBuffer exiEncodedMessage) {
+		if (!getLogger().isDebugEnabled()) return;
+		
+		byte[] bytes = new byte[exiEncodedMessage.remaining()];
+		exiEncodedMessage.duplicate().get(bytes);
+		
+		getLogger().debug("Received EXI stream: " + ByteUtils.toHexString(bytes));
+	}
 
+	/**
+	 * Switches the fragment grammar option on or off for subsequent encodings with encodeEXI(). The signature 
+	 * related encodings do not need this any more, they use encodeFragment().
+	 */
 	public abstract void setFragment(boolean useFragmentGrammar);
 	
+	/**
+	 * Provides the JAXB marshaller of the calling thread (see JaxbMarshallerProvider).
+	 */
 	public Marshaller getMarshaller() {
-		return marshaller;
-	}
-
-	public void setMarshaller(Marshaller marshaller) {
-		this.marshaller = marshaller;
+		return getMarshallerProvider().getMarshaller();
 	}
 
+	/**
+	 * Provides the JAXB unmarshaller of the calling thread (see JaxbMarshallerProvider).
+	 */
 	public Unmarshaller getUnmarshaller() {
-		return unmarshaller;
+		return getMarshallerProvider().getUnmarshaller();
+	}
+	
+	public JaxbMarshallerProvider getMarshallerProvider() {
+		return marshallerProvider;
 	}
 
-	public void setUnmarshaller(Unmarshaller unmarshaller) {
-		this.unmarshaller = unmarshaller;
+	public void setMarshallerProvider(JaxbMarshallerProvider marshallerProvider) {
+		this.marshallerProvider = marshallerProvider;
 	}
 	
 	public Logger getLogger() {
@@ -218,26 +284,6 @@ public abstract class ExiCodec {
 	}
 
 
-	public String getDecodedExi() {
-		return decodedExi;
-	}
-
-
-	public void setDecodedExi(String decodedExi) {
-		this.decodedExi = decodedExi;
-	}
-
-
-	public InputStream getInStream() {
-		return inStream;
-	}
-
-
-	public void setInStream(InputStream inStream) {
-		this.inStream = inStream;
-	}
-	
-	
 	private void setXMLMsgRepresentation(boolean xmlMsgRepresentation) {
 		this.xmlMsgRepresentation = xmlMsgRepresentation;
 	}
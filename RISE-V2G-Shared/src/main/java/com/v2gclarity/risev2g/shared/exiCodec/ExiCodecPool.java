@@ -0,0 +1,119 @@
+/*******************************************************************************
+ *  The MIT License (MIT)
+ *
+ *  Copyright (c) 2015 - 2019  Dr. Marc Mültin (V2G Clarity)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ *******************************************************************************/
+package com.v2gclarity.risev2g.shared.exiCodec;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A bounded pool of independent EXI codec instances. Each codec instance has its own EXI factory and 
+ * thus its own grammar selection and fragment state, so that concurrent communication sessions can 
+ * encode and decode EXI messages in parallel instead of queuing up at the monitor of the singleton codec.
+ * 
+ * A codec taken from the pool via acquire() is exclusively used by the calling thread until it is handed 
+ * back via release(). If all codecs are in use, acquire() blocks until another caller releases its codec.
+ */
+public final class ExiCodecPool {
+
+	private Logger logger = LogManager.getLogger(this.getClass().getSimpleName());
+	private ArrayList<ExiCodec> codecs;
+	private BlockingQueue<ExiCodec> idleCodecs;
+	
+	/**
+	 * Creates a pool holding the given codec instances. The codecs must not be shared with any other 
+	 * pool or be used directly by any other component.
+	 * 
+	 * @param codecs The codec instances to be managed by this pool
+	 */
+	public ExiCodecPool(List<? extends ExiCodec> codecs) {
+		setCodecs(new ArrayList<ExiCodec>(codecs));
+		setIdleCodecs(new ArrayBlockingQueue<ExiCodec>(codecs.size(), false, codecs));
+		
+		getLogger().debug("EXI codec pool initialized with " + codecs.size() + " codec instances");
+	}
+	
+	
+	/**
+	 * Takes an idle codec from the pool. Blocks if all codecs are currently in use.
+	 * 
+	 * @return A codec which is exclusively used by the caller until it is released
+	 */
+	public ExiCodec acquire() {
+		try {
+			return getIdleCodecs().take();
+		} catch (InterruptedException e) {
+			getLogger().warn("Interrupted while waiting for an idle EXI codec");
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+	
+	
+	/**
+	 * Hands a codec which has been taken via acquire() back to the pool.
+	 * 
+	 * @param exiCodec The codec to be released
+	 */
+	public void release(ExiCodec exiCodec) {
+		if (exiCodec != null && !getIdleCodecs().offer(exiCodec)) {
+			getLogger().error("EXI codec could not be released, pool is already full");
+		}
+	}
+	
+	
+	/**
+	 * Provides all codec instances of this pool, regardless of whether they are currently in use or not.
+	 * Is used to configure the codecs (e.g. JAXB marshaller and unmarshaller) after pool creation.
+	 * 
+	 * @return The list of all pooled codecs
+	 */
+	public ArrayList<ExiCodec> getCodecs() {
+		return codecs;
+	}
+
+	private void setCodecs(ArrayList<ExiCodec> codecs) {
+		this.codecs = codecs;
+	}
+
+	private BlockingQueue<ExiCodec> getIdleCodecs() {
+		return idleCodecs;
+	}
+
+	private void setIdleCodecs(BlockingQueue<ExiCodec> idleCodecs) {
+		this.idleCodecs = idleCodecs;
+	}
+
+	public int getSize() {
+		return getCodecs().size();
+	}
+	
+	public Logger getLogger() {
+		return logger;
+	}
+}
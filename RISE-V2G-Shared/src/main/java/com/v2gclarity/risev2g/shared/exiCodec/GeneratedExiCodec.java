@@ -0,0 +1,179 @@
+/*******************************************************************************
+ *  The MIT License (MIT)
+ *
+ *  Copyright (c) 2015 - 2019  Dr. Marc Mültin (V2G Clarity)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ *******************************************************************************/
+package com.v2gclarity.risev2g.shared.exiCodec;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.v2gclarity.risev2g.shared.enumerations.GlobalValues;
+import com.v2gclarity.risev2g.shared.utils.ByteUtils;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.V2GMessage;
+
+/**
+ * EXI codec which en-/decodes the messages of the charge loop (CurrentDemandReq/-Res, ChargingStatusReq/-Res, 
+ * PowerDeliveryReq/-Res and MeteringReceiptReq/-Res) with code that is specialized on the schema-informed 
+ * grammars of V2G_CI_MsgDef.xsd (see MsgDefExiEncoder and MsgDefExiDecoder). These messages are exchanged 
+ * several times per second during a charging session, whereas all other messages, signed messages and 
+ * signature fragments are en-/decoded by an EXIficientCodec. The resulting EXI streams are identical 
+ * to the ones created by the EXIficientCodec.
+ */
+public final class GeneratedExiCodec extends ExiCodec {
+	// -- BEGIN: SINGLETON DEFINITION --
+	/*
+	 *  Eager instantiation of the singleton, since a GeneratedExiCodec is always needed if configured. 
+	 *  The JVM creates the unique instance when the class is loaded and before any thread tries to 
+	 *  access the instance variable -> thread safe.
+	 */
+	private static final GeneratedExiCodec instance = new GeneratedExiCodec();
+	
+	private EXIficientCodec fallbackCodec;
+	private boolean fragment;
+	// The number of messages the specialized encoder and decoder handed to the fallback codec
+	private final AtomicLong encodeFallbacks = new AtomicLong();
+	private final AtomicLong decodeFallbacks = new AtomicLong();
+	
+	private GeneratedExiCodec() {
+		super();
+		
+		// An own EXIficient instance, so that switching its fragment option via setFragment() does not affect other users
+		setFallbackCodec(EXIficientCodec.newInstance());
+	}
+	
+	public static GeneratedExiCodec getInstance() {
+		return instance;
+	}
+	// -- END: SINGLETON DEFINITION --
+	
+	
+	/**
+	 * Creates a new codec instance which is independent of the singleton returned by getInstance(), 
+	 * to be used by the ExiCodecPool.
+	 * 
+	 * @return A new GeneratedExiCodec instance
+	 */
+	public static GeneratedExiCodec newInstance() {
+		return new GeneratedExiCodec();
+	}
+	
+	
+	@Override
+	public byte[] encodeEXI(Object jaxbObject, String xsdSchemaPath) {
+		int bodyEventCode = MsgDefExiEncoder.getBodyEventCode(jaxbObject);
+		
+		if (bodyEventCode >= 0 && !isFragment() && 
+			xsdSchemaPath.equals(GlobalValues.SCHEMA_PATH_MSG_DEF.toString())) {
+			try {
+				byte[] encodedMessage = MsgDefExiEncoder.encode((V2GMessage) jaxbObject, bodyEventCode);
+				
+				if (isXMLMsgRepresentation()) showXMLRepresentationOfMessage(jaxbObject);
+				if (isHexAndBase64MsgRepresentation()) showHexAndBase64RepresentationOfMessage(jaxbObject, encodedMessage);
+				
+				return encodedMessage;
+			} catch (ExiFallbackException e) {
+				encodeFallbacks.incrementAndGet();
+				getLogger().debug("Message is encoded with EXIficient: " + e.getMessage());
+			}
+		}
+		
+		synchronized (this) {
+			return getFallbackCodec().encodeEXI(jaxbObject, xsdSchemaPath);
+		}
+	}
+	
+	
+	/*
+	 * The fragments for the header's signature are not covered by the specialized encoder. The fallback codec 
+	 * encodes them with its own fragment encoders, which does not need to block the fallback codec itself.
+	 */
+	@Override
+	public byte[] encodeFragment(Object jaxbObject, String xsdSchemaPath) {
+		return getFallbackCodec().encodeFragment(jaxbObject, xsdSchemaPath);
+	}
+	
+	
+	@Override
+	public Object decodeEXI(ByteBuffer exiEncodedMessage, boolean supportedAppProtocolHandshake) {
+		if (!supportedAppProtocolHandshake) {
+			try {
+				// Decode from a duplicate so that the fallback codec still sees the complete EXI stream
+				V2GMessage decodedMessage = MsgDefExiDecoder.decode(exiEncodedMessage.duplicate());
+				
+				logReceivedExiStream(exiEncodedMessage);
+				if (isXMLMsgRepresentation()) showXMLRepresentationOfMessage(decodedMessage);
+				
+				return decodedMessage;
+			} catch (ExiFallbackException e) {
+				decodeFallbacks.incrementAndGet();
+				getLogger().debug("Message is decoded with EXIficient: " + e.getMessage());
+			}
+		}
+		
+		synchronized (this) {
+			return getFallbackCodec().decodeEXI(exiEncodedMessage, supportedAppProtocolHandshake);
+		}
+	}
+	
+	
+	@Override
+	public synchronized void setFragment(boolean useFragmentGrammar) {
+		this.fragment = useFragmentGrammar;
+		getFallbackCodec().setFragment(useFragmentGrammar);
+	}
+	
+	private synchronized boolean isFragment() {
+		return fragment;
+	}
+	
+	/**
+	 * @return The number of supported V2G messages which the specialized encoder handed to the fallback codec
+	 */
+	long getEncodeFallbacks() {
+		return encodeFallbacks.get();
+	}
+	
+	/**
+	 * @return The number of V2G messages which the specialized decoder handed to the fallback codec
+	 */
+	long getDecodeFallbacks() {
+		return decodeFallbacks.get();
+	}
+	
+	
+	/*
+	 * The marshallers and unmarshallers are also needed by the fallback codec
+	 */
+	@Override
+	public void setMarshallerProvider(JaxbMarshallerProvider marshallerProvider) {
+		super.setMarshallerProvider(marshallerProvider);
+		getFallbackCodec().setMarshallerProvider(marshallerProvider);
+	}
+	
+	public EXIficientCodec getFallbackCodec() {
+		return fallbackCodec;
+	}
+
+	private void setFallbackCodec(EXIficientCodec fallbackCodec) {
+		this.fallbackCodec = fallbackCodec;
+	}
+}
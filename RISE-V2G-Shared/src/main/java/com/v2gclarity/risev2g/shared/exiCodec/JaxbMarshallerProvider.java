@@ -0,0 +1,138 @@
+/*******************************************************************************
+ *  The MIT License (MIT)
+ *
+ *  Copyright (c) 2015 - 2019  Dr. Marc Mültin (V2G Clarity)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ *******************************************************************************/
+package com.v2gclarity.risev2g.shared.exiCodec;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.bind.ValidationEvent;
+import javax.xml.bind.ValidationEventHandler;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Hands out JAXB marshallers and unmarshallers which are bound to the calling thread. 
+ * 
+ * The JAXBContext is thread-safe and expensive to create, so it is created only once and shared. Marshallers 
+ * and unmarshallers on the other hand are not thread-safe. Each thread therefore gets its own instances, 
+ * which are created on first use and then reused for all subsequent messages of that thread. This way, 
+ * concurrent communication sessions can marshal and unmarshal messages at the same time with the same codec.
+ */
+public final class JaxbMarshallerProvider {
+
+	private Logger logger = LogManager.getLogger(this.getClass().getSimpleName());
+	private JAXBContext jaxbContext;
+	private ThreadLocal<Marshaller> marshaller;
+	private ThreadLocal<Unmarshaller> unmarshaller;
+	
+	/**
+	 * Creates a provider for marshallers and unmarshallers of the given JAXB context.
+	 * 
+	 * @param jaxbContext The shared JAXB context 
+	 */
+	public JaxbMarshallerProvider(JAXBContext jaxbContext) {
+		setJaxbContext(jaxbContext);
+		setMarshaller(new ThreadLocal<Marshaller>());
+		setUnmarshaller(new ThreadLocal<Unmarshaller>());
+	}
+	
+	
+	/**
+	 * Provides the marshaller of the calling thread.
+	 * 
+	 * @return The marshaller, or null if it could not be created
+	 */
+	public Marshaller getMarshaller() {
+		Marshaller threadMarshaller = marshaller.get();
+		
+		if (threadMarshaller == null) {
+			try {
+				threadMarshaller = getJaxbContext().createMarshaller();
+				marshaller.set(threadMarshaller);
+			} catch (JAXBException e) {
+				getLogger().error(e.getClass().getSimpleName() + " occurred while trying to create marshaller", e);
+			}
+		}
+		
+		return threadMarshaller;
+	}
+	
+	
+	/**
+	 * Provides the unmarshaller of the calling thread. 
+	 * 
+	 * @return The unmarshaller, or null if it could not be created
+	 */
+	public Unmarshaller getUnmarshaller() {
+		Unmarshaller threadUnmarshaller = unmarshaller.get();
+		
+		if (threadUnmarshaller == null) {
+			try {
+				threadUnmarshaller = getJaxbContext().createUnmarshaller();
+				
+				/*
+				 * JAXB by default silently ignores errors. Adding this code to throw an exception if 
+				 * something goes wrong.
+				 */
+				threadUnmarshaller.setEventHandler(
+					    new ValidationEventHandler() {
+					        @Override
+							public boolean handleEvent(ValidationEvent event ) {
+					            throw new RuntimeException(event.getMessage(),
+					                                       event.getLinkedException());
+					        }
+					});
+				
+				unmarshaller.set(threadUnmarshaller);
+			} catch (JAXBException e) {
+				getLogger().error(e.getClass().getSimpleName() + " occurred while trying to create unmarshaller", e);
+			}
+		}
+		
+		return threadUnmarshaller;
+	}
+	
+	
+	public JAXBContext getJaxbContext() {
+		return jaxbContext;
+	}
+
+	private void setJaxbContext(JAXBContext jaxbContext) {
+		this.jaxbContext = jaxbContext;
+	}
+
+	private void setMarshaller(ThreadLocal<Marshaller> marshaller) {
+		this.marshaller = marshaller;
+	}
+
+	private void setUnmarshaller(ThreadLocal<Unmarshaller> unmarshaller) {
+		this.unmarshaller = unmarshaller;
+	}
+	
+	public Logger getLogger() {
+		return logger;
+	}
+}
@@ -0,0 +1,657 @@
+/*******************************************************************************
+ *  The MIT License (MIT)
+ *
+ *  Copyright (c) 2015 - 2019  Dr. Marc Mültin (V2G Clarity)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ *******************************************************************************/
+package com.v2gclarity.risev2g.shared.exiCodec;
+
+import java.nio.ByteBuffer;
+
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.annotation.adapters.CollapsedStringAdapter;
+
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.ACEVSEStatusType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.BodyType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.ChargeProgressType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.ChargingProfileType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.ChargingStatusReqType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.ChargingStatusResType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.CurrentDemandReqType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.CurrentDemandResType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.DCEVErrorCodeType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.DCEVPowerDeliveryParameterType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.DCEVSEStatusCodeType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.DCEVSEStatusType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.DCEVStatusType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.EVSENotificationType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.EVSEStatusType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.FaultCodeType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.IsolationLevelType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.MessageHeaderType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.MeterInfoType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.MeteringReceiptReqType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.MeteringReceiptResType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.NotificationType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.ObjectFactory;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.PhysicalValueType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.PowerDeliveryReqType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.PowerDeliveryResType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.ProfileEntryType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.ResponseCodeType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.UnitSymbolType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.V2GMessage;
+
+/**
+ * Decodes the charge loop messages of ISO 15118-2 (see MsgDefExiEncoder) directly from an EXI stream into 
+ * the JAXB objects which the JAXB unmarshaller would create for the same message. 
+ * 
+ * Any other message, a header containing a signature, and any event which is only reachable via a second 
+ * level event code lead to an ExiFallbackException, in which case the message is decoded by EXIficient.
+ */
+final class MsgDefExiDecoder {
+	
+	// Enumeration values in schema order
+	private static final FaultCodeType[] FAULT_CODES = FaultCodeType.values();
+	private static final ResponseCodeType[] RESPONSE_CODES = ResponseCodeType.values();
+	private static final UnitSymbolType[] UNIT_SYMBOLS = UnitSymbolType.values();
+	private static final DCEVErrorCodeType[] DC_EV_ERROR_CODES = DCEVErrorCodeType.values();
+	private static final EVSENotificationType[] EVSE_NOTIFICATIONS = EVSENotificationType.values();
+	private static final IsolationLevelType[] ISOLATION_LEVELS = IsolationLevelType.values();
+	private static final DCEVSEStatusCodeType[] DC_EVSE_STATUS_CODES = DCEVSEStatusCodeType.values();
+	private static final ChargeProgressType[] CHARGE_PROGRESS_VALUES = ChargeProgressType.values();
+	
+	private static final ObjectFactory objectFactory = new ObjectFactory();
+	private static final CollapsedStringAdapter collapsedStringAdapter = new CollapsedStringAdapter();
+	
+	private MsgDefExiDecoder() {
+	}
+	
+	
+	/**
+	 * Decodes the given EXI stream into a V2GMessage.
+	 * 
+	 * @param exiStream The EXI encoded message
+	 * @return The decoded V2GMessage
+	 * @throws ExiFallbackException If the EXI stream does not contain a charge loop message or contains events 
+	 * 								which are not covered by this decoder
+	 */
+	static V2GMessage decode(ByteBuffer exiStream) throws ExiFallbackException {
+		ExiBitReader reader = new ExiBitReader(exiStream);
+		
+		// EXI header without options and EXI cookie
+		if (reader.readBits(8) != 0x80) throw new ExiFallbackException("EXI header not supported");
+		
+		// DocContent: SE(V2G_Message)
+		reader.readEventCode(MsgDefExiEncoder.DOC_CONTENT_V2G_MESSAGE, MsgDefExiEncoder.DOC_CONTENT_EVENTS);
+		
+		// V2G_Message: SE(Header)
+		reader.readEventCode(0, 1);
+		V2GMessage v2gMessage = new V2GMessage();
+		v2gMessage.setHeader(decodeHeader(reader));
+		
+		// SE(Body), Body: SE(<message>)
+		reader.readEventCode(0, 1);
+		BodyType body = new BodyType();
+		
+		switch (reader.readEventCode(MsgDefExiEncoder.BODY_EVENTS)) {
+		case MsgDefExiEncoder.BODY_CHARGING_STATUS_REQ:
+			reader.readEventCode(0, 1); // EE
+			body.setBodyElement(objectFactory.createChargingStatusReq(new ChargingStatusReqType()));
+			break;
+		case MsgDefExiEncoder.BODY_CHARGING_STATUS_RES:
+			body.setBodyElement(objectFactory.createChargingStatusRes(decodeChargingStatusRes(reader)));
+			break;
+		case MsgDefExiEncoder.BODY_CURRENT_DEMAND_REQ:
+			body.setBodyElement(objectFactory.createCurrentDemandReq(decodeCurrentDemandReq(reader)));
+			break;
+		case MsgDefExiEncoder.BODY_CURRENT_DEMAND_RES:
+			body.setBodyElement(objectFactory.createCurrentDemandRes(decodeCurrentDemandRes(reader)));
+			break;
+		case MsgDefExiEncoder.BODY_METERING_RECEIPT_REQ:
+			body.setBodyElement(objectFactory.createMeteringReceiptReq(decodeMeteringReceiptReq(reader)));
+			break;
+		case MsgDefExiEncoder.BODY_METERING_RECEIPT_RES:
+			MeteringReceiptResType meteringReceiptRes = new MeteringReceiptResType();
+			meteringReceiptRes.setResponseCode(decodeResponseCode(reader));
+			meteringReceiptRes.setEVSEStatus(decodeEVSEStatusElement(reader));
+			body.setBodyElement(objectFactory.createMeteringReceiptRes(meteringReceiptRes));
+			break;
+		case MsgDefExiEncoder.BODY_POWER_DELIVERY_REQ:
+			body.setBodyElement(objectFactory.createPowerDeliveryReq(decodePowerDeliveryReq(reader)));
+			break;
+		case MsgDefExiEncoder.BODY_POWER_DELIVERY_RES:
+			PowerDeliveryResType powerDeliveryRes = new PowerDeliveryResType();
+			powerDeliveryRes.setResponseCode(decodeResponseCode(reader));
+			powerDeliveryRes.setEVSEStatus(decodeEVSEStatusElement(reader));
+			body.setBodyElement(objectFactory.createPowerDeliveryRes(powerDeliveryRes));
+			break;
+		default:
+			throw new ExiFallbackException("Message not supported");
+		}
+		
+		v2gMessage.setBody(body);
+		
+		// EE(Body), EE(V2G_Message), ED (event code without bits, see MsgDefExiEncoder)
+		reader.readEventCode(0, 1);
+		reader.readEventCode(0, 1);
+		
+		return v2gMessage;
+	}
+	
+	
+	private static MessageHeaderType decodeHeader(ExiBitReader reader) throws ExiFallbackException {
+		MessageHeaderType header = new MessageHeaderType();
+		
+		// SE(SessionID)
+		reader.readEventCode(0, 1);
+		header.setSessionID(decodeBinaryContent(reader));
+		
+		// Optional Notification followed by the optional Signature (not supported) and EE
+		int eventCode = reader.readEventCode(3);
+		
+		if (eventCode == 0) {
+			header.setNotification(decodeNotification(reader));
+			eventCode = reader.readEventCode(2) + 1;
+		}
+		
+		if (eventCode != 2) throw new ExiFallbackException("Signature not supported");
+		
+		return header;
+	}
+	
+	
+	private static NotificationType decodeNotification(ExiBitReader reader) throws ExiFallbackException {
+		NotificationType notification = new NotificationType();
+		
+		// SE(FaultCode)
+		reader.readEventCode(0, 1);
+		notification.setFaultCode(FAULT_CODES[decodeEnumerationContent(reader, MsgDefExiEncoder.FAULT_CODE_VALUES)]);
+		
+		// Optional FaultMsg followed by EE
+		if (reader.readEventCode(2) == 0) {
+			notification.setFaultMsg(decodeStringContent(reader));
+			reader.readEventCode(0, 1);
+		}
+		
+		return notification;
+	}
+	
+	
+	private static CurrentDemandReqType decodeCurrentDemandReq(ExiBitReader reader) throws ExiFallbackException {
+		CurrentDemandReqType req = new CurrentDemandReqType();
+		
+		// SE(DC_EVStatus), SE(EVTargetCurrent)
+		reader.readEventCode(0, 1);
+		req.setDCEVStatus(decodeDCEVStatus(reader));
+		reader.readEventCode(0, 1);
+		req.setEVTargetCurrent(decodePhysicalValue(reader));
+		
+		// Four optional elements followed by the mandatory ChargingComplete (see MsgDefExiEncoder)
+		int position = reader.readEventCode(5);
+		
+		if (position == 0) {
+			req.setEVMaximumVoltageLimit(decodePhysicalValue(reader));
+			position = 1 + reader.readEventCode(4);
+		}
+		
+		if (position == 1) {
+			req.setEVMaximumCurrentLimit(decodePhysicalValue(reader));
+			position = 2 + reader.readEventCode(3);
+		}
+		
+		if (position == 2) {
+			req.setEVMaximumPowerLimit(decodePhysicalValue(reader));
+			position = 3 + reader.readEventCode(2);
+		}
+		
+		if (position == 3) {
+			req.setBulkChargingComplete(decodeBooleanContent(reader));
+			reader.readEventCode(0, 1);
+		}
+		
+		req.setChargingComplete(decodeBooleanContent(reader));
+		
+		// Two optional elements followed by the mandatory EVTargetVoltage
+		position = reader.readEventCode(3);
+		
+		if (position == 0) {
+			req.setRemainingTimeToFullSoC(decodePhysicalValue(reader));
+			position = 1 + reader.readEventCode(2);
+		}
+		
+		if (position == 1) {
+			req.setRemainingTimeToBulkSoC(decodePhysicalValue(reader));
+			reader.readEventCode(0, 1);
+		}
+		
+		req.setEVTargetVoltage(decodePhysicalValue(reader));
+		
+		reader.readEventCode(0, 1); // EE
+		
+		return req;
+	}
+	
+	
+	private static CurrentDemandResType decodeCurrentDemandRes(ExiBitReader reader) throws ExiFallbackException {
+		CurrentDemandResType res = new CurrentDemandResType();
+		
+		// SE(ResponseCode), SE(DC_EVSEStatus), SE(EVSEPresentVoltage), SE(EVSEPresentCurrent)
+		res.setResponseCode(decodeResponseCode(reader));
+		reader.readEventCode(0, 1);
+		res.setDCEVSEStatus(decodeDCEVSEStatus(reader));
+		reader.readEventCode(0, 1);
+		res.setEVSEPresentVoltage(decodePhysicalValue(reader));
+		reader.readEventCode(0, 1);
+		res.setEVSEPresentCurrent(decodePhysicalValue(reader));
+		
+		// SE(EVSECurrentLimitAchieved), SE(EVSEVoltageLimitAchieved), SE(EVSEPowerLimitAchieved)
+		reader.readEventCode(0, 1);
+		res.setEVSECurrentLimitAchieved(decodeBooleanContent(reader));
+		reader.readEventCode(0, 1);
+		res.setEVSEVoltageLimitAchieved(decodeBooleanContent(reader));
+		reader.readEventCode(0, 1);
+		res.setEVSEPowerLimitAchieved(decodeBooleanContent(reader));
+		
+		// Three optional limits followed by the mandatory EVSEID
+		int position = reader.readEventCode(4);
+		
+		if (position == 0) {
+			res.setEVSEMaximumVoltageLimit(decodePhysicalValue(reader));
+			position = 1 + reader.readEventCode(3);
+		}
+		
+		if (position == 1) {
+			res.setEVSEMaximumCurrentLimit(decodePhysicalValue(reader));
+			position = 2 + reader.readEventCode(2);
+		}
+		
+		if (position == 2) {
+			res.setEVSEMaximumPowerLimit(decodePhysicalValue(reader));
+			reader.readEventCode(0, 1);
+		}
+		
+		res.setEVSEID(decodeStringContent(reader));
+		
+		// SE(SAScheduleTupleID)
+		reader.readEventCode(0, 1);
+		res.setSAScheduleTupleID((short) decodeSAIDContent(reader));
+		
+		// Optional MeterInfo and ReceiptRequired followed by EE
+		position = reader.readEventCode(3);
+		
+		if (position == 0) {
+			res.setMeterInfo(decodeMeterInfo(reader));
+			position = 1 + reader.readEventCode(2);
+		}
+		
+		if (position == 1) {
+			res.setReceiptRequired(decodeBooleanContent(reader));
+			reader.readEventCode(0, 1);
+		}
+		
+		return res;
+	}
+	
+	
+	private static ChargingStatusResType decodeChargingStatusRes(ExiBitReader reader) throws ExiFallbackException {
+		ChargingStatusResType res = new ChargingStatusResType();
+		
+		// SE(ResponseCode), SE(EVSEID), SE(SAScheduleTupleID)
+		res.setResponseCode(decodeResponseCode(reader));
+		reader.readEventCode(0, 1);
+		res.setEVSEID(decodeStringContent(reader));
+		reader.readEventCode(0, 1);
+		res.setSAScheduleTupleID((short) decodeSAIDContent(reader));
+		
+		// Three optional elements followed by the mandatory AC_EVSEStatus
+		int position = reader.readEventCode(4);
+		
+		if (position == 0) {
+			res.setEVSEMaxCurrent(decodePhysicalValue(reader));
+			position = 1 + reader.readEventCode(3);
+		}
+		
+		if (position == 1) {
+			res.setMeterInfo(decodeMeterInfo(reader));
+			position = 2 + reader.readEventCode(2);
+		}
+		
+		if (position == 2) {
+			res.setReceiptRequired(decodeBooleanContent(reader));
+			reader.readEventCode(0, 1);
+		}
+		
+		res.setACEVSEStatus(decodeACEVSEStatus(reader));
+		
+		reader.readEventCode(0, 1); // EE
+		
+		return res;
+	}
+	
+	
+	private static PowerDeliveryReqType decodePowerDeliveryReq(ExiBitReader reader) throws ExiFallbackException {
+		PowerDeliveryReqType req = new PowerDeliveryReqType();
+		
+		// SE(ChargeProgress), SE(SAScheduleTupleID)
+		reader.readEventCode(0, 1);
+		req.setChargeProgress(CHARGE_PROGRESS_VALUES[decodeEnumerationContent(reader, MsgDefExiEncoder.CHARGE_PROGRESS_VALUES)]);
+		reader.readEventCode(0, 1);
+		req.setSAScheduleTupleID((short) decodeSAIDContent(reader));
+		
+		// Optional ChargingProfile, optional SE(DC_EVPowerDeliveryParameter) or SE(EVPowerDeliveryParameter), EE
+		int position = reader.readEventCode(4);
+		
+		if (position == 0) {
+			req.setChargingProfile(decodeChargingProfile(reader));
+			position = 1 + reader.readEventCode(3);
+		}
+		
+		if (position == 1) {
+			req.setEVPowerDeliveryParameter(
+					objectFactory.createDCEVPowerDeliveryParameter(decodeDCEVPowerDeliveryParameter(reader)));
+			reader.readEventCode(0, 1); // EE
+		} else if (position == 2) {
+			throw new ExiFallbackException("Abstract EVPowerDeliveryParameter not supported");
+		}
+		
+		return req;
+	}
+	
+	
+	private static MeteringReceiptReqType decodeMeteringReceiptReq(ExiBitReader reader) throws ExiFallbackException {
+		MeteringReceiptReqType req = new MeteringReceiptReqType();
+		
+		// Optional attribute Id followed by the mandatory SessionID
+		if (reader.readEventCode(2) == 0) {
+			// The JAXB binding of the xs:ID attribute collapses whitespace
+			req.setId(collapsedStringAdapter.unmarshal(reader.readString()));
+			reader.readEventCode(0, 1);
+		}
+		
+		req.setSessionID(decodeBinaryContent(reader));
+		
+		// Optional SAScheduleTupleID followed by the mandatory MeterInfo
+		if (reader.readEventCode(2) == 0) {
+			req.setSAScheduleTupleID((short) decodeSAIDContent(reader));
+			reader.readEventCode(0, 1);
+		}
+		
+		req.setMeterInfo(decodeMeterInfo(reader));
+		
+		reader.readEventCode(0, 1); // EE
+		
+		return req;
+	}
+	
+	
+	private static ResponseCodeType decodeResponseCode(ExiBitReader reader) throws ExiFallbackException {
+		// SE(ResponseCode)
+		reader.readEventCode(0, 1);
+		return RESPONSE_CODES[decodeEnumerationContent(reader, MsgDefExiEncoder.RESPONSE_CODE_VALUES)];
+	}
+	
+	
+	/**
+	 * Decodes the abstract EVSEStatus element of PowerDeliveryRes and MeteringReceiptRes, followed by EE.
+	 */
+	private static JAXBElement<? extends EVSEStatusType> decodeEVSEStatusElement(ExiBitReader reader) 
+			throws ExiFallbackException {
+		JAXBElement<? extends EVSEStatusType> evseStatus;
+		
+		switch (reader.readEventCode(3)) {
+		case 0:
+			evseStatus = objectFactory.createACEVSEStatus(decodeACEVSEStatus(reader));
+			break;
+		case 1:
+			evseStatus = objectFactory.createDCEVSEStatus(decodeDCEVSEStatus(reader));
+			break;
+		default:
+			throw new ExiFallbackException("Abstract EVSEStatus not supported");
+		}
+		
+		reader.readEventCode(0, 1); // EE
+		
+		return evseStatus;
+	}
+	
+	
+	private static DCEVStatusType decodeDCEVStatus(ExiBitReader reader) throws ExiFallbackException {
+		DCEVStatusType status = new DCEVStatusType();
+		
+		// SE(EVReady), SE(EVErrorCode), SE(EVRESSSOC), EE
+		reader.readEventCode(0, 1);
+		status.setEVReady(decodeBooleanContent(reader));
+		reader.readEventCode(0, 1);
+		status.setEVErrorCode(DC_EV_ERROR_CODES[decodeEnumerationContent(reader, MsgDefExiEncoder.DC_EV_ERROR_CODE_VALUES)]);
+		reader.readEventCode(0, 1);
+		status.setEVRESSSOC((byte) decodeNBitUnsignedIntegerContent(reader, 0, 100));
+		reader.readEventCode(0, 1);
+		
+		return status;
+	}
+	
+	
+	private static DCEVSEStatusType decodeDCEVSEStatus(ExiBitReader reader) throws ExiFallbackException {
+		DCEVSEStatusType status = new DCEVSEStatusType();
+		decodeEVSEStatus(reader, status);
+		
+		// Optional EVSEIsolationStatus followed by the mandatory EVSEStatusCode
+		if (reader.readEventCode(2) == 0) {
+			status.setEVSEIsolationStatus(ISOLATION_LEVELS[decodeEnumerationContent(reader, MsgDefExiEncoder.ISOLATION_LEVEL_VALUES)]);
+			reader.readEventCode(0, 1);
+		}
+		
+		status.setEVSEStatusCode(DC_EVSE_STATUS_CODES[decodeEnumerationContent(reader, MsgDefExiEncoder.DC_EVSE_STATUS_CODE_VALUES)]);
+		reader.readEventCode(0, 1); // EE
+		
+		return status;
+	}
+	
+	
+	private static ACEVSEStatusType decodeACEVSEStatus(ExiBitReader reader) throws ExiFallbackException {
+		ACEVSEStatusType status = new ACEVSEStatusType();
+		decodeEVSEStatus(reader, status);
+		
+		// SE(RCD), EE
+		reader.readEventCode(0, 1);
+		status.setRCD(decodeBooleanContent(reader));
+		reader.readEventCode(0, 1);
+		
+		return status;
+	}
+	
+	
+	private static void decodeEVSEStatus(ExiBitReader reader, EVSEStatusType status) throws ExiFallbackException {
+		// SE(NotificationMaxDelay), SE(EVSENotification)
+		reader.readEventCode(0, 1);
+		status.setNotificationMaxDelay((int) decodeUnsignedIntegerContent(reader, 0xFFFF));
+		reader.readEventCode(0, 1);
+		status.setEVSENotification(EVSE_NOTIFICATIONS[decodeEnumerationContent(reader, MsgDefExiEncoder.EVSE_NOTIFICATION_VALUES)]);
+	}
+	
+	
+	private static MeterInfoType decodeMeterInfo(ExiBitReader reader) throws ExiFallbackException {
+		MeterInfoType meterInfo = new MeterInfoType();
+		
+		// SE(MeterID)
+		reader.readEventCode(0, 1);
+		meterInfo.setMeterID(decodeStringContent(reader));
+		
+		// Four optional elements followed by EE
+		int position = reader.readEventCode(5);
+		
+		if (position == 0) {
+			reader.readEventCode(0, 1);
+			meterInfo.setMeterReading(reader.readUnsignedBigInteger());
+			reader.readEventCode(0, 1);
+			position = 1 + reader.readEventCode(4);
+		}
+		
+		if (position == 1) {
+			meterInfo.setSigMeterReading(decodeBinaryContent(reader));
+			position = 2 + reader.readEventCode(3);
+		}
+		
+		if (position == 2) {
+			meterInfo.setMeterStatus((short) decodeIntegerContent(reader, Short.MIN_VALUE, Short.MAX_VALUE));
+			position = 3 + reader.readEventCode(2);
+		}
+		
+		if (position == 3) {
+			meterInfo.setTMeter(decodeIntegerContent(reader, Long.MIN_VALUE, Long.MAX_VALUE));
+			reader.readEventCode(0, 1); // EE
+		}
+		
+		return meterInfo;
+	}
+	
+	
+	private static ChargingProfileType decodeChargingProfile(ExiBitReader reader) throws ExiFallbackException {
+		ChargingProfileType chargingProfile = new ChargingProfileType();
+		
+		// The first SE(ProfileEntry) is mandatory, then the grammar loops between SE(ProfileEntry) and EE
+		int eventCode = reader.readEventCode(1);
+		
+		while (eventCode == 0) {
+			ProfileEntryType profileEntry = new ProfileEntryType();
+			
+			// SE(ChargingProfileEntryStart), SE(ChargingProfileEntryMaxPower)
+			reader.readEventCode(0, 1);
+			profileEntry.setChargingProfileEntryStart(decodeUnsignedIntegerContent(reader, 0xFFFFFFFFL));
+			reader.readEventCode(0, 1);
+			profileEntry.setChargingProfileEntryMaxPower(decodePhysicalValue(reader));
+			
+			// Optional ChargingProfileEntryMaxNumberOfPhasesInUse followed by EE
+			if (reader.readEventCode(2) == 0) {
+				profileEntry.setChargingProfileEntryMaxNumberOfPhasesInUse((byte) decodeNBitUnsignedIntegerContent(reader, 1, 3));
+				reader.readEventCode(0, 1);
+			}
+			
+			chargingProfile.getProfileEntry().add(profileEntry);
+			eventCode = reader.readEventCode(2);
+		}
+		
+		return chargingProfile;
+	}
+	
+	
+	private static DCEVPowerDeliveryParameterType decodeDCEVPowerDeliveryParameter(ExiBitReader reader) 
+			throws ExiFallbackException {
+		DCEVPowerDeliveryParameterType parameter = new DCEVPowerDeliveryParameterType();
+		
+		// SE(DC_EVStatus)
+		reader.readEventCode(0, 1);
+		parameter.setDCEVStatus(decodeDCEVStatus(reader));
+		
+		// Optional BulkChargingComplete followed by the mandatory ChargingComplete
+		if (reader.readEventCode(2) == 0) {
+			parameter.setBulkChargingComplete(decodeBooleanContent(reader));
+			reader.readEventCode(0, 1);
+		}
+		
+		parameter.setChargingComplete(decodeBooleanContent(reader));
+		reader.readEventCode(0, 1); // EE
+		
+		return parameter;
+	}
+	
+	
+	private static PhysicalValueType decodePhysicalValue(ExiBitReader reader) throws ExiFallbackException {
+		PhysicalValueType physicalValue = new PhysicalValueType();
+		
+		// SE(Multiplier), SE(Unit), SE(Value), EE
+		reader.readEventCode(0, 1);
+		physicalValue.setMultiplier((byte) decodeNBitUnsignedIntegerContent(reader, -3, 3));
+		reader.readEventCode(0, 1);
+		physicalValue.setUnit(UNIT_SYMBOLS[decodeEnumerationContent(reader, MsgDefExiEncoder.UNIT_SYMBOL_VALUES)]);
+		reader.readEventCode(0, 1);
+		physicalValue.setValue((short) decodeIntegerContent(reader, Short.MIN_VALUE, Short.MAX_VALUE));
+		reader.readEventCode(0, 1);
+		
+		return physicalValue;
+	}
+	
+	
+	/*
+	 * The following methods decode the content of a simple-typed element: CH, the typed value and EE.
+	 */
+	
+	private static boolean decodeBooleanContent(ExiBitReader reader) throws ExiFallbackException {
+		reader.readEventCode(0, 1);
+		boolean value = reader.readBoolean();
+		reader.readEventCode(0, 1);
+		
+		return value;
+	}
+	
+	private static int decodeEnumerationContent(ExiBitReader reader, int numberOfValues) throws ExiFallbackException {
+		reader.readEventCode(0, 1);
+		int index = reader.readEnumeration(numberOfValues);
+		reader.readEventCode(0, 1);
+		
+		return index;
+	}
+	
+	private static int decodeNBitUnsignedIntegerContent(ExiBitReader reader, int minInclusive, int maxInclusive) 
+			throws ExiFallbackException {
+		reader.readEventCode(0, 1);
+		int value = reader.readNBitUnsignedInteger(minInclusive, maxInclusive);
+		reader.readEventCode(0, 1);
+		
+		return value;
+	}
+	
+	private static int decodeSAIDContent(ExiBitReader reader) throws ExiFallbackException {
+		return decodeNBitUnsignedIntegerContent(reader, 1, 255);
+	}
+	
+	private static long decodeUnsignedIntegerContent(ExiBitReader reader, long maxValue) throws ExiFallbackException {
+		reader.readEventCode(0, 1);
+		long value = reader.readUnsignedInteger(maxValue);
+		reader.readEventCode(0, 1);
+		
+		return value;
+	}
+	
+	private static long decodeIntegerContent(ExiBitReader reader, long minValue, long maxValue) throws ExiFallbackException {
+		reader.readEventCode(0, 1);
+		long value = reader.readInteger(minValue, maxValue);
+		reader.readEventCode(0, 1);
+		
+		return value;
+	}
+	
+	private static String decodeStringContent(ExiBitReader reader) throws ExiFallbackException {
+		reader.readEventCode(0, 1);
+		String value = reader.readString();
+		reader.readEventCode(0, 1);
+		
+		return value;
+	}
+	
+	private static byte[] decodeBinaryContent(ExiBitReader reader) throws ExiFallbackException {
+		reader.readEventCode(0, 1);
+		byte[] value = reader.readBinary();
+		reader.readEventCode(0, 1);
+		
+		return value;
+	}
+}
@@ -0,0 +1,759 @@
+/*******************************************************************************
+ *  The MIT License (MIT)
+ *
+ *  Copyright (c) 2015 - 2019  Dr. Marc Mültin (V2G Clarity)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ *******************************************************************************/
+package com.v2gclarity.risev2g.shared.exiCodec;
+
+import java.util.List;
+
+import javax.xml.bind.JAXBElement;
+
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.ACEVSEStatusType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.ChargingProfileType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.ChargingStatusReqType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.ChargingStatusResType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.CurrentDemandReqType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.CurrentDemandResType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.DCEVPowerDeliveryParameterType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.DCEVSEStatusType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.DCEVStatusType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.EVSEStatusType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.MessageHeaderType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.MeterInfoType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.MeteringReceiptReqType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.MeteringReceiptResType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.NotificationType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.PhysicalValueType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.PowerDeliveryReqType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.PowerDeliveryResType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.ProfileEntryType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.V2GMessage;
+
+/**
+ * Encodes the charge loop messages of ISO 15118-2 (CurrentDemandReq/-Res, ChargingStatusReq/-Res, 
+ * PowerDeliveryReq/-Res and MeteringReceiptReq/-Res) directly from the JAXB objects into EXI, without 
+ * SAX events and generic grammar processing. 
+ * 
+ * The event codes and their lengths follow the schema-informed grammars of V2G_CI_MsgDef.xsd in non-strict 
+ * mode as built by EXIficient (see EXIficient_V2G_CI_MsgDef). The comments name the respective grammar states.
+ * The resulting EXI stream is bit-for-bit identical to the one created by the EXIficientCodec.
+ */
+final class MsgDefExiEncoder {
+	
+	/*
+	 * Event codes of the global elements in the document grammar and of the message elements in the
+	 * BodyElement substitution group (sorted by local name, including the abstract BodyElement itself)
+	 */
+	static final int DOC_CONTENT_EVENTS = 81;
+	static final int DOC_CONTENT_V2G_MESSAGE = 76;
+	static final int BODY_EVENTS = 36;
+	static final int BODY_CHARGING_STATUS_REQ = 11;
+	static final int BODY_CHARGING_STATUS_RES = 12;
+	static final int BODY_CURRENT_DEMAND_REQ = 13;
+	static final int BODY_CURRENT_DEMAND_RES = 14;
+	static final int BODY_METERING_RECEIPT_REQ = 15;
+	static final int BODY_METERING_RECEIPT_RES = 16;
+	static final int BODY_POWER_DELIVERY_REQ = 21;
+	static final int BODY_POWER_DELIVERY_RES = 22;
+	
+	// Number of enumerated values of the simple types (the Java enum constants are declared in schema order)
+	static final int FAULT_CODE_VALUES = 3;
+	static final int RESPONSE_CODE_VALUES = 26;
+	static final int UNIT_SYMBOL_VALUES = 7;
+	static final int DC_EV_ERROR_CODE_VALUES = 12;
+	static final int EVSE_NOTIFICATION_VALUES = 3;
+	static final int ISOLATION_LEVEL_VALUES = 5;
+	static final int DC_EVSE_STATUS_CODE_VALUES = 12;
+	static final int CHARGE_PROGRESS_VALUES = 3;
+	
+	static final String NAMESPACE_MSG_BODY = "urn:iso:15118:2:2013:MsgBody";
+	static final String NAMESPACE_MSG_DATA_TYPES = "urn:iso:15118:2:2013:MsgDataTypes";
+	
+	private MsgDefExiEncoder() {
+	}
+	
+	
+	/**
+	 * Checks whether the given object is a V2GMessage which can be encoded by this encoder, i.e. an 
+	 * unsigned charge loop message.
+	 * 
+	 * @param jaxbObject The object to be encoded
+	 * @return The event code of the message element in the body grammar, or -1 if the message is not supported
+	 */
+	static int getBodyEventCode(Object jaxbObject) {
+		if (!(jaxbObject instanceof V2GMessage)) return -1;
+		
+		V2GMessage v2gMessage = (V2GMessage) jaxbObject;
+		
+		if (v2gMessage.getHeader() == null || v2gMessage.getHeader().getSignature() != null ||
+			v2gMessage.getBody() == null || v2gMessage.getBody().getBodyElement() == null) return -1;
+		
+		JAXBElement<?> bodyElement = v2gMessage.getBody().getBodyElement();
+		Object value = bodyElement.getValue();
+		
+		if (bodyElement.isNil() || value == null || 
+			!NAMESPACE_MSG_BODY.equals(bodyElement.getName().getNamespaceURI())) return -1;
+		
+		// The value must exactly match the declared type of the element, otherwise an xsi:type attribute is needed
+		switch (bodyElement.getName().getLocalPart()) {
+		case "ChargingStatusReq": 
+			return value.getClass() == ChargingStatusReqType.class ? BODY_CHARGING_STATUS_REQ : -1;
+		case "ChargingStatusRes": 
+			return value.getClass() == ChargingStatusResType.class ? BODY_CHARGING_STATUS_RES : -1;
+		case "CurrentDemandReq": 
+			return value.getClass() == CurrentDemandReqType.class ? BODY_CURRENT_DEMAND_REQ : -1;
+		case "CurrentDemandRes": 
+			return value.getClass() == CurrentDemandResType.class ? BODY_CURRENT_DEMAND_RES : -1;
+		case "MeteringReceiptReq": 
+			return value.getClass() == MeteringReceiptReqType.class ? BODY_METERING_RECEIPT_REQ : -1;
+		case "MeteringReceiptRes": 
+			return value.getClass() == MeteringReceiptResType.class ? BODY_METERING_RECEIPT_RES : -1;
+		case "PowerDeliveryReq": 
+			return value.getClass() == PowerDeliveryReqType.class ? BODY_POWER_DELIVERY_REQ : -1;
+		case "PowerDeliveryRes": 
+			return value.getClass() == PowerDeliveryResType.class ? BODY_POWER_DELIVERY_RES : -1;
+		default:
+			return -1;
+		}
+	}
+	
+	
+	/**
+	 * Encodes the given V2GMessage into an EXI stream.
+	 * 
+	 * @param v2gMessage The V2GMessage to be encoded
+	 * @param bodyEventCode The event code of the message element as returned by getBodyEventCode()
+	 * @return The EXI encoded message
+	 * @throws ExiFallbackException If the message contains a value which cannot be encoded with the declared 
+	 * 								productions (e.g. a missing mandatory element)
+	 */
+	static byte[] encode(V2GMessage v2gMessage, int bodyEventCode) throws ExiFallbackException {
+		ExiBitWriter writer = new ExiBitWriter();
+		
+		// EXI header: distinguishing bits '10', no options, final version 1
+		writer.writeBits(0x80, 8);
+		
+		// Document: SD, DocContent: SE(V2G_Message)
+		writer.writeEventCode(DOC_CONTENT_V2G_MESSAGE, DOC_CONTENT_EVENTS);
+		
+		// V2G_Message: SE(Header)
+		writer.writeEventCode(0, 1);
+		encodeHeader(writer, v2gMessage.getHeader());
+		
+		// SE(Body), Body: SE(<message>)
+		writer.writeEventCode(0, 1);
+		writer.writeEventCode(bodyEventCode, BODY_EVENTS);
+		
+		Object message = v2gMessage.getBody().getBodyElement().getValue();
+		
+		switch (bodyEventCode) {
+		case BODY_CHARGING_STATUS_REQ:
+			writer.writeEventCode(0, 1); // EE, the message has no content
+			break;
+		case BODY_CHARGING_STATUS_RES:
+			encodeChargingStatusRes(writer, (ChargingStatusResType) message);
+			break;
+		case BODY_CURRENT_DEMAND_REQ:
+			encodeCurrentDemandReq(writer, (CurrentDemandReqType) message);
+			break;
+		case BODY_CURRENT_DEMAND_RES:
+			encodeCurrentDemandRes(writer, (CurrentDemandResType) message);
+			break;
+		case BODY_METERING_RECEIPT_REQ:
+			encodeMeteringReceiptReq(writer, (MeteringReceiptReqType) message);
+			break;
+		case BODY_METERING_RECEIPT_RES:
+			encodeEVSEStatusRes(writer, ((MeteringReceiptResType) message).getResponseCode(), 
+								((MeteringReceiptResType) message).getEVSEStatus());
+			break;
+		case BODY_POWER_DELIVERY_REQ:
+			encodePowerDeliveryReq(writer, (PowerDeliveryReqType) message);
+			break;
+		case BODY_POWER_DELIVERY_RES:
+			encodeEVSEStatusRes(writer, ((PowerDeliveryResType) message).getResponseCode(), 
+								((PowerDeliveryResType) message).getEVSEStatus());
+			break;
+		default:
+			throw new ExiFallbackException("Message not supported");
+		}
+		
+		/*
+		 * EE(Body), EE(V2G_Message). The event code of ED takes no bits since DocEnd has no undeclared productions 
+		 * (comments and processing instructions are not preserved).
+		 */
+		writer.writeEventCode(0, 1);
+		writer.writeEventCode(0, 1);
+		
+		return writer.toByteArray();
+	}
+	
+	
+	private static void encodeHeader(ExiBitWriter writer, MessageHeaderType header) throws ExiFallbackException {
+		// SE(SessionID)
+		writer.writeEventCode(0, 1);
+		encodeBinaryContent(writer, header.getSessionID());
+		
+		// Optional Notification, Signature is not supported (see getBodyEventCode())
+		if (header.getNotification() != null) {
+			writer.writeEventCode(0, 3);
+			encodeNotification(writer, header.getNotification());
+			writer.writeEventCode(1, 2); // EE
+		} else {
+			writer.writeEventCode(2, 3); // EE
+		}
+	}
+	
+	
+	private static void encodeNotification(ExiBitWriter writer, NotificationType notification) throws ExiFallbackException {
+		// SE(FaultCode)
+		writer.writeEventCode(0, 1);
+		encodeEnumerationContent(writer, ordinal(notification.getFaultCode()), FAULT_CODE_VALUES);
+		
+		if (notification.getFaultMsg() != null) {
+			writer.writeEventCode(0, 2); // SE(FaultMsg)
+			encodeStringContent(writer, notification.getFaultMsg());
+			writer.writeEventCode(0, 1); // EE
+		} else {
+			writer.writeEventCode(1, 2); // EE
+		}
+	}
+	
+	
+	private static void encodeCurrentDemandReq(ExiBitWriter writer, CurrentDemandReqType req) throws ExiFallbackException {
+		// SE(DC_EVStatus), SE(EVTargetCurrent)
+		writer.writeEventCode(0, 1);
+		encodeDCEVStatus(writer, req.getDCEVStatus());
+		writer.writeEventCode(0, 1);
+		encodePhysicalValue(writer, req.getEVTargetCurrent());
+		
+		/*
+		 * Four optional elements followed by the mandatory ChargingComplete. Each grammar state offers the 
+		 * remaining elements up to and including ChargingComplete, the event code is the distance to the 
+		 * current position.
+		 */
+		int position = 0;
+		
+		if (req.getEVMaximumVoltageLimit() != null) {
+			writer.writeEventCode(0 - position, 5 - position);
+			encodePhysicalValue(writer, req.getEVMaximumVoltageLimit());
+			position = 1;
+		}
+		
+		if (req.getEVMaximumCurrentLimit() != null) {
+			writer.writeEventCode(1 - position, 5 - position);
+			encodePhysicalValue(writer, req.getEVMaximumCurrentLimit());
+			position = 2;
+		}
+		
+		if (req.getEVMaximumPowerLimit() != null) {
+			writer.writeEventCode(2 - position, 5 - position);
+			encodePhysicalValue(writer, req.getEVMaximumPowerLimit());
+			position = 3;
+		}
+		
+		if (req.isBulkChargingComplete() != null) {
+			writer.writeEventCode(3 - position, 5 - position);
+			encodeBooleanContent(writer, req.isBulkChargingComplete());
+			position = 4;
+		}
+		
+		writer.writeEventCode(4 - position, 5 - position);
+		encodeBooleanContent(writer, req.isChargingComplete());
+		
+		// Two optional elements followed by the mandatory EVTargetVoltage
+		position = 0;
+		
+		if (req.getRemainingTimeToFullSoC() != null) {
+			writer.writeEventCode(0, 3);
+			encodePhysicalValue(writer, req.getRemainingTimeToFullSoC());
+			position = 1;
+		}
+		
+		if (req.getRemainingTimeToBulkSoC() != null) {
+			writer.writeEventCode(1 - position, 3 - position);
+			encodePhysicalValue(writer, req.getRemainingTimeToBulkSoC());
+			position = 2;
+		}
+		
+		writer.writeEventCode(2 - position, 3 - position);
+		encodePhysicalValue(writer, req.getEVTargetVoltage());
+		
+		writer.writeEventCode(0, 1); // EE
+	}
+	
+	
+	private static void encodeCurrentDemandRes(ExiBitWriter writer, CurrentDemandResType res) throws ExiFallbackException {
+		// SE(ResponseCode), SE(DC_EVSEStatus), SE(EVSEPresentVoltage), SE(EVSEPresentCurrent)
+		writer.writeEventCode(0, 1);
+		encodeEnumerationContent(writer, ordinal(res.getResponseCode()), RESPONSE_CODE_VALUES);
+		writer.writeEventCode(0, 1);
+		encodeDCEVSEStatus(writer, res.getDCEVSEStatus());
+		writer.writeEventCode(0, 1);
+		encodePhysicalValue(writer, res.getEVSEPresentVoltage());
+		writer.writeEventCode(0, 1);
+		encodePhysicalValue(writer, res.getEVSEPresentCurrent());
+		
+		// SE(EVSECurrentLimitAchieved), SE(EVSEVoltageLimitAchieved), SE(EVSEPowerLimitAchieved)
+		writer.writeEventCode(0, 1);
+		encodeBooleanContent(writer, res.isEVSECurrentLimitAchieved());
+		writer.writeEventCode(0, 1);
+		encodeBooleanContent(writer, res.isEVSEVoltageLimitAchieved());
+		writer.writeEventCode(0, 1);
+		encodeBooleanContent(writer, res.isEVSEPowerLimitAchieved());
+		
+		// Three optional limits followed by the mandatory EVSEID
+		int position = 0;
+		
+		if (res.getEVSEMaximumVoltageLimit() != null) {
+			writer.writeEventCode(0, 4);
+			encodePhysicalValue(writer, res.getEVSEMaximumVoltageLimit());
+			position = 1;
+		}
+		
+		if (res.getEVSEMaximumCurrentLimit() != null) {
+			writer.writeEventCode(1 - position, 4 - position);
+			encodePhysicalValue(writer, res.getEVSEMaximumCurrentLimit());
+			position = 2;
+		}
+		
+		if (res.getEVSEMaximumPowerLimit() != null) {
+			writer.writeEventCode(2 - position, 4 - position);
+			encodePhysicalValue(writer, res.getEVSEMaximumPowerLimit());
+			position = 3;
+		}
+		
+		writer.writeEventCode(3 - position, 4 - position);
+		encodeStringContent(writer, res.getEVSEID());
+		
+		// SE(SAScheduleTupleID)
+		writer.writeEventCode(0, 1);
+		encodeSAIDContent(writer, res.getSAScheduleTupleID());
+		
+		// Optional MeterInfo and ReceiptRequired followed by EE
+		encodeMeterInfoAndReceiptRequired(writer, res.getMeterInfo(), res.isReceiptRequired());
+	}
+	
+	
+	private static void encodeChargingStatusRes(ExiBitWriter writer, ChargingStatusResType res) throws ExiFallbackException {
+		// SE(ResponseCode), SE(EVSEID), SE(SAScheduleTupleID)
+		writer.writeEventCode(0, 1);
+		encodeEnumerationContent(writer, ordinal(res.getResponseCode()), RESPONSE_CODE_VALUES);
+		writer.writeEventCode(0, 1);
+		encodeStringContent(writer, res.getEVSEID());
+		writer.writeEventCode(0, 1);
+		encodeSAIDContent(writer, res.getSAScheduleTupleID());
+		
+		// Three optional elements followed by the mandatory AC_EVSEStatus
+		int position = 0;
+		
+		if (res.getEVSEMaxCurrent() != null) {
+			writer.writeEventCode(0, 4);
+			encodePhysicalValue(writer, res.getEVSEMaxCurrent());
+			position = 1;
+		}
+		
+		if (res.getMeterInfo() != null) {
+			writer.writeEventCode(1 - position, 4 - position);
+			encodeMeterInfo(writer, res.getMeterInfo());
+			position = 2;
+		}
+		
+		if (res.isReceiptRequired() != null) {
+			writer.writeEventCode(2 - position, 4 - position);
+			encodeBooleanContent(writer, res.isReceiptRequired());
+			position = 3;
+		}
+		
+		writer.writeEventCode(3 - position, 4 - position);
+		encodeACEVSEStatus(writer, res.getACEVSEStatus());
+		
+		writer.writeEventCode(0, 1); // EE
+	}
+	
+	
+	private static void encodePowerDeliveryReq(ExiBitWriter writer, PowerDeliveryReqType req) throws ExiFallbackException {
+		// SE(ChargeProgress), SE(SAScheduleTupleID)
+		writer.writeEventCode(0, 1);
+		encodeEnumerationContent(writer, ordinal(req.getChargeProgress()), CHARGE_PROGRESS_VALUES);
+		writer.writeEventCode(0, 1);
+		encodeSAIDContent(writer, req.getSAScheduleTupleID());
+		
+		/*
+		 * Optional ChargingProfile and optional EVPowerDeliveryParameter followed by EE. The latter is an abstract 
+		 * element whose substitution group members are SE(DC_EVPowerDeliveryParameter) and SE(EVPowerDeliveryParameter).
+		 */
+		int position = 0;
+		
+		if (req.getChargingProfile() != null) {
+			writer.writeEventCode(0, 4);
+			encodeChargingProfile(writer, req.getChargingProfile());
+			position = 1;
+		}
+		
+		JAXBElement<?> parameter = req.getEVPowerDeliveryParameter();
+		
+		if (parameter != null) {
+			if (parameter.isNil() || 
+				!NAMESPACE_MSG_DATA_TYPES.equals(parameter.getName().getNamespaceURI()) ||
+				!"DC_EVPowerDeliveryParameter".equals(parameter.getName().getLocalPart()) ||
+				parameter.getValue() == null ||
+				parameter.getValue().getClass() != DCEVPowerDeliveryParameterType.class) 
+				throw new ExiFallbackException("EVPowerDeliveryParameter not supported");
+			
+			writer.writeEventCode(1 - position, 4 - position);
+			encodeDCEVPowerDeliveryParameter(writer, (DCEVPowerDeliveryParameterType) parameter.getValue());
+			writer.writeEventCode(0, 1); // EE
+		} else {
+			writer.writeEventCode(3 - position, 4 - position); // EE
+		}
+	}
+	
+	
+	private static void encodeMeteringReceiptReq(ExiBitWriter writer, MeteringReceiptReqType req) throws ExiFallbackException {
+		// Optional attribute Id followed by the mandatory SessionID
+		if (req.getId() != null) {
+			writer.writeEventCode(0, 2); // AT(Id)
+			writer.writeString(req.getId());
+			writer.writeEventCode(0, 1); 
+		} else {
+			writer.writeEventCode(1, 2);
+		}
+		
+		encodeBinaryContent(writer, req.getSessionID());
+		
+		// Optional SAScheduleTupleID followed by the mandatory MeterInfo
+		if (req.getSAScheduleTupleID() != null) {
+			writer.writeEventCode(0, 2);
+			encodeSAIDContent(writer, req.getSAScheduleTupleID());
+			writer.writeEventCode(0, 1);
+		} else {
+			writer.writeEventCode(1, 2);
+		}
+		
+		encodeMeterInfo(writer, req.getMeterInfo());
+		
+		writer.writeEventCode(0, 1); // EE
+	}
+	
+	
+	/**
+	 * Encodes the content of PowerDeliveryRes and MeteringReceiptRes which both consist of the ResponseCode and 
+	 * the abstract EVSEStatus element, substituted by SE(AC_EVSEStatus), SE(DC_EVSEStatus) or SE(EVSEStatus).
+	 */
+	private static void encodeEVSEStatusRes(
+			ExiBitWriter writer, 
+			Object responseCode, 
+			JAXBElement<? extends EVSEStatusType> evseStatus) throws ExiFallbackException {
+		// SE(ResponseCode)
+		writer.writeEventCode(0, 1);
+		encodeEnumerationContent(writer, ordinal((Enum<?>) responseCode), RESPONSE_CODE_VALUES);
+		
+		if (evseStatus == null || evseStatus.isNil() || evseStatus.getValue() == null ||
+			!NAMESPACE_MSG_DATA_TYPES.equals(evseStatus.getName().getNamespaceURI())) 
+			throw new ExiFallbackException("EVSEStatus not supported");
+		
+		if ("AC_EVSEStatus".equals(evseStatus.getName().getLocalPart()) && 
+			evseStatus.getValue().getClass() == ACEVSEStatusType.class) {
+			writer.writeEventCode(0, 3);
+			encodeACEVSEStatus(writer, (ACEVSEStatusType) evseStatus.getValue());
+		} else if ("DC_EVSEStatus".equals(evseStatus.getName().getLocalPart()) && 
+				   evseStatus.getValue().getClass() == DCEVSEStatusType.class) {
+			writer.writeEventCode(1, 3);
+			encodeDCEVSEStatus(writer, (DCEVSEStatusType) evseStatus.getValue());
+		} else {
+			throw new ExiFallbackException("EVSEStatus not supported");
+		}
+		
+		writer.writeEventCode(0, 1); // EE
+	}
+	
+	
+	private static void encodeMeterInfoAndReceiptRequired(
+			ExiBitWriter writer, 
+			MeterInfoType meterInfo, 
+			Boolean receiptRequired) throws ExiFallbackException {
+		int position = 0;
+		
+		if (meterInfo != null) {
+			writer.writeEventCode(0, 3);
+			encodeMeterInfo(writer, meterInfo);
+			position = 1;
+		}
+		
+		if (receiptRequired != null) {
+			writer.writeEventCode(1 - position, 3 - position);
+			encodeBooleanContent(writer, receiptRequired);
+			writer.writeEventCode(0, 1); // EE
+		} else {
+			writer.writeEventCode(2 - position, 3 - position); // EE
+		}
+	}
+	
+	
+	private static void encodeDCEVStatus(ExiBitWriter writer, DCEVStatusType status) throws ExiFallbackException {
+		checkNotNull(status);
+		
+		// SE(EVReady), SE(EVErrorCode), SE(EVRESSSOC), EE
+		writer.writeEventCode(0, 1);
+		encodeBooleanContent(writer, status.isEVReady());
+		writer.writeEventCode(0, 1);
+		encodeEnumerationContent(writer, ordinal(status.getEVErrorCode()), DC_EV_ERROR_CODE_VALUES);
+		writer.writeEventCode(0, 1);
+		encodeNBitUnsignedIntegerContent(writer, status.getEVRESSSOC(), 0, 100);
+		writer.writeEventCode(0, 1);
+	}
+	
+	
+	private static void encodeDCEVSEStatus(ExiBitWriter writer, DCEVSEStatusType status) throws ExiFallbackException {
+		encodeEVSEStatus(writer, status);
+		
+		// Optional EVSEIsolationStatus followed by the mandatory EVSEStatusCode
+		if (status.getEVSEIsolationStatus() != null) {
+			writer.writeEventCode(0, 2);
+			encodeEnumerationContent(writer, ordinal(status.getEVSEIsolationStatus()), ISOLATION_LEVEL_VALUES);
+			writer.writeEventCode(0, 1);
+		} else {
+			writer.writeEventCode(1, 2);
+		}
+		
+		encodeEnumerationContent(writer, ordinal(status.getEVSEStatusCode()), DC_EVSE_STATUS_CODE_VALUES);
+		writer.writeEventCode(0, 1); // EE
+	}
+	
+	
+	private static void encodeACEVSEStatus(ExiBitWriter writer, ACEVSEStatusType status) throws ExiFallbackException {
+		encodeEVSEStatus(writer, status);
+		
+		// SE(RCD), EE
+		writer.writeEventCode(0, 1);
+		encodeBooleanContent(writer, status.isRCD());
+		writer.writeEventCode(0, 1);
+	}
+	
+	
+	private static void encodeEVSEStatus(ExiBitWriter writer, EVSEStatusType status) throws ExiFallbackException {
+		checkNotNull(status);
+		
+		// SE(NotificationMaxDelay), SE(EVSENotification)
+		writer.writeEventCode(0, 1);
+		encodeUnsignedIntegerContent(writer, status.getNotificationMaxDelay(), 0xFFFF);
+		writer.writeEventCode(0, 1);
+		encodeEnumerationContent(writer, ordinal(status.getEVSENotification()), EVSE_NOTIFICATION_VALUES);
+	}
+	
+	
+	private static void encodeMeterInfo(ExiBitWriter writer, MeterInfoType meterInfo) throws ExiFallbackException {
+		checkNotNull(meterInfo);
+		
+		// SE(MeterID)
+		writer.writeEventCode(0, 1);
+		encodeStringContent(writer, meterInfo.getMeterID());
+		
+		// Four optional elements followed by EE
+		int position = 0;
+		
+		if (meterInfo.getMeterReading() != null) {
+			if (meterInfo.getMeterReading().signum() < 0 || meterInfo.getMeterReading().bitLength() > 64)
+				throw new ExiFallbackException("MeterReading exceeds value range");
+			
+			writer.writeEventCode(0, 5);
+			writer.writeEventCode(0, 1);
+			writer.writeUnsignedInteger(meterInfo.getMeterReading());
+			writer.writeEventCode(0, 1);
+			position = 1;
+		}
+		
+		if (meterInfo.getSigMeterReading() != null) {
+			writer.writeEventCode(1 - position, 5 - position);
+			encodeBinaryContent(writer, meterInfo.getSigMeterReading());
+			position = 2;
+		}
+		
+		if (meterInfo.getMeterStatus() != null) {
+			writer.writeEventCode(2 - position, 5 - position);
+			encodeIntegerContent(writer, meterInfo.getMeterStatus());
+			position = 3;
+		}
+		
+		if (meterInfo.getTMeter() != null) {
+			writer.writeEventCode(3 - position, 5 - position);
+			encodeIntegerContent(writer, meterInfo.getTMeter());
+			writer.writeEventCode(0, 1); // EE
+		} else {
+			writer.writeEventCode(4 - position, 5 - position); // EE
+		}
+	}
+	
+	
+	private static void encodeChargingProfile(ExiBitWriter writer, ChargingProfileType chargingProfile) throws ExiFallbackException {
+		List<ProfileEntryType> profileEntries = chargingProfile.getProfileEntry();
+		
+		if (profileEntries.isEmpty()) throw new ExiFallbackException("ChargingProfile without ProfileEntry");
+		
+		// The first SE(ProfileEntry) is mandatory, then the grammar loops between SE(ProfileEntry) and EE
+		for (int i = 0; i < profileEntries.size(); i++) {
+			ProfileEntryType profileEntry = profileEntries.get(i);
+			checkNotNull(profileEntry);
+			
+			if (i == 0) writer.writeEventCode(0, 1);
+			else writer.writeEventCode(0, 2);
+			
+			// SE(ChargingProfileEntryStart), SE(ChargingProfileEntryMaxPower)
+			writer.writeEventCode(0, 1);
+			encodeUnsignedIntegerContent(writer, profileEntry.getChargingProfileEntryStart(), 0xFFFFFFFFL);
+			writer.writeEventCode(0, 1);
+			encodePhysicalValue(writer, profileEntry.getChargingProfileEntryMaxPower());
+			
+			// Optional ChargingProfileEntryMaxNumberOfPhasesInUse followed by EE
+			if (profileEntry.getChargingProfileEntryMaxNumberOfPhasesInUse() != null) {
+				writer.writeEventCode(0, 2);
+				encodeNBitUnsignedIntegerContent(writer, profileEntry.getChargingProfileEntryMaxNumberOfPhasesInUse(), 1, 3);
+				writer.writeEventCode(0, 1);
+			} else {
+				writer.writeEventCode(1, 2);
+			}
+		}
+		
+		writer.writeEventCode(1, 2); // EE
+	}
+	
+	
+	private static void encodeDCEVPowerDeliveryParameter(
+			ExiBitWriter writer, 
+			DCEVPowerDeliveryParameterType parameter) throws ExiFallbackException {
+		// SE(DC_EVStatus)
+		writer.writeEventCode(0, 1);
+		encodeDCEVStatus(writer, parameter.getDCEVStatus());
+		
+		// Optional BulkChargingComplete followed by the mandatory ChargingComplete
+		if (parameter.isBulkChargingComplete() != null) {
+			writer.writeEventCode(0, 2);
+			encodeBooleanContent(writer, parameter.isBulkChargingComplete());
+			writer.writeEventCode(0, 1);
+		} else {
+			writer.writeEventCode(1, 2);
+		}
+		
+		encodeBooleanContent(writer, parameter.isChargingComplete());
+		writer.writeEventCode(0, 1); // EE
+	}
+	
+	
+	private static void encodePhysicalValue(ExiBitWriter writer, PhysicalValueType physicalValue) throws ExiFallbackException {
+		checkNotNull(physicalValue);
+		
+		// SE(Multiplier), SE(Unit), SE(Value), EE
+		writer.writeEventCode(0, 1);
+		encodeNBitUnsignedIntegerContent(writer, physicalValue.getMultiplier(), -3, 3);
+		writer.writeEventCode(0, 1);
+		encodeEnumerationContent(writer, ordinal(physicalValue.getUnit()), UNIT_SYMBOL_VALUES);
+		writer.writeEventCode(0, 1);
+		encodeIntegerContent(writer, physicalValue.getValue());
+		writer.writeEventCode(0, 1);
+	}
+	
+	
+	/*
+	 * The following methods encode the content of a simple-typed element: CH (the only declared production of 
+	 * the type grammar), the typed value and EE.
+	 */
+	
+	private static void encodeBooleanContent(ExiBitWriter writer, boolean value) {
+		writer.writeEventCode(0, 1);
+		writer.writeBoolean(value);
+		writer.writeEventCode(0, 1);
+	}
+	
+	private static void encodeEnumerationContent(ExiBitWriter writer, int index, int numberOfValues) {
+		writer.writeEventCode(0, 1);
+		writer.writeEnumeration(index, numberOfValues);
+		writer.writeEventCode(0, 1);
+	}
+	
+	private static void encodeNBitUnsignedIntegerContent(ExiBitWriter writer, int value, int minInclusive, int maxInclusive) 
+			throws ExiFallbackException {
+		// Values outside the facets are encoded by EXIficient as untyped characters (second level event code)
+		if (value < minInclusive || value > maxInclusive) 
+			throw new ExiFallbackException("Value " + value + " exceeds value range");
+		
+		writer.writeEventCode(0, 1);
+		writer.writeNBitUnsignedInteger(value, minInclusive, maxInclusive);
+		writer.writeEventCode(0, 1);
+	}
+	
+	private static void encodeSAIDContent(ExiBitWriter writer, int saScheduleTupleID) throws ExiFallbackException {
+		encodeNBitUnsignedIntegerContent(writer, saScheduleTupleID, 1, 255);
+	}
+	
+	private static void encodeUnsignedIntegerContent(ExiBitWriter writer, long value, long maxInclusive) 
+			throws ExiFallbackException {
+		if (value < 0 || value > maxInclusive) 
+			throw new ExiFallbackException("Value " + value + " exceeds value range");
+		
+		writer.writeEventCode(0, 1);
+		writer.writeUnsignedInteger(value);
+		writer.writeEventCode(0, 1);
+	}
+	
+	private static void encodeIntegerContent(ExiBitWriter writer, long value) {
+		writer.writeEventCode(0, 1);
+		writer.writeInteger(value);
+		writer.writeEventCode(0, 1);
+	}
+	
+	private static void encodeStringContent(ExiBitWriter writer, String value) throws ExiFallbackException {
+		checkNotNull(value);
+		
+		writer.writeEventCode(0, 1);
+		writer.writeString(value);
+		writer.writeEventCode(0, 1);
+	}
+	
+	private static void encodeBinaryContent(ExiBitWriter writer, byte[] value) throws ExiFallbackException {
+		checkNotNull(value);
+		
+		// EXIficient encodes an empty value with a second level event code instead of an empty binary
+		if (value.length == 0) throw new ExiFallbackException("Empty binary values are encoded by EXIficient");
+		
+		writer.writeEventCode(0, 1);
+		writer.writeBinary(value);
+		writer.writeEventCode(0, 1);
+	}
+	
+	
+	/**
+	 * Returns the index of the given enumeration value which equals its position in the schema.
+	 */
+	private static int ordinal(Enum<?> value) throws ExiFallbackException {
+		checkNotNull(value);
+		return value.ordinal();
+	}
+	
+	
+	/**
+	 * A missing mandatory element is omitted by the JAXB marshaller, which cannot be expressed with the declared 
+	 * productions of the grammar.
+	 */
+	private static void checkNotNull(Object value) throws ExiFallbackException {
+		if (value == null) throw new ExiFallbackException("Mandatory element missing");
+	}
+}
@@ -23,18 +23,14 @@
  *******************************************************************************/
 package com.v2gclarity.risev2g.shared.exiCodec;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
+import javax.xml.bind.UnmarshallerHandler;
 import javax.xml.parsers.SAXParserFactory;
-import javax.xml.transform.TransformerConfigurationException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.sax.SAXTransformerFactory;
-import javax.xml.transform.sax.TransformerHandler;
-import javax.xml.transform.stream.StreamResult;
 
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
@@ -44,7 +40,6 @@ import org.openexi.proc.common.GrammarOptions;
 import org.openexi.proc.grammars.GrammarCache;
 import org.openexi.sax.EXIReader;
 import org.openexi.sax.Transmogrifier;
-import org.openexi.sax.TransmogrifierException;
 import org.openexi.schema.EXISchema;
 import org.openexi.scomp.EXISchemaFactory;
 import org.openexi.scomp.EXISchemaFactoryException;
@@ -60,8 +55,31 @@ public final class OpenEXICodec extends ExiCodec {
 	 *  access the instance variable -> thread safe.
 	 */
 	private static final OpenEXICodec instance = new OpenEXICodec();
+	
+	/*
+	 * Encodings are serialized (see encode()), so a single Transmogrifier (encoder) is used under the codec's 
+	 * lock. EXIReaders (decoders) keep state while processing a message and are used concurrently, therefore 
+	 * each caller takes an idle EXIReader from the queue and hands it back afterwards. New EXIReaders are only 
+	 * created if all existing ones are in use by concurrent communication sessions.
+	 */
 	private Transmogrifier transmogrifier;
-	private GrammarCache grammarCache;
+	private ConcurrentLinkedQueue<EXIReader> idleExiReaders;
+	
+	/*
+	 * The grammar caches are immutable and therefore built once per schema and shared by the 
+	 * Transmogrifier and all EXIReaders. Each grammar cache holds the document grammar as well as the 
+	 * fragment grammar of its schema, the latter one is chosen if the fragment option is set.
+	 */
+	private GrammarCache grammarCacheAppProtocol;
+	private GrammarCache grammarCacheMsgDef;
+	private GrammarCache grammarCacheXMLDSig;
+	
+	/*
+	 * The fragment option set via setFragment() must not affect the encodings done by other threads at the 
+	 * same time. The signature related encodings do not use it, they pass the fragment option directly 
+	 * (see encodeFragment()).
+	 */
+	private ThreadLocal<Boolean> fragmentOption;
 	private EXISchemaFactory exiSchemaFactory;
 	private InputStream schemaMsgDefIS;
 	private InputStream schemaMsgBodyIS;
@@ -74,10 +92,7 @@ public final class OpenEXICodec extends ExiCodec {
 	private EXISchema exiSchemaMsgDataTypes;
 	private EXISchema exiSchemaXMLDSig;
 	private short options;
-	private SAXTransformerFactory saxTransformerFactory;
 	private SAXParserFactory saxParserFactory;
-	private TransformerHandler transformerHandler;
-	private EXIReader exiReader;
 	
 	private OpenEXICodec() {
 		super();
@@ -85,26 +100,19 @@ public final class OpenEXICodec extends ExiCodec {
 		// All EXI options can expressed in a single short integer
         setOptions(GrammarOptions.DEFAULT_OPTIONS);
         
-        // The Transmogrifier performs the translation from XML to EXI format
-        setTransmogrifier(new Transmogrifier());
-        getTransmogrifier().setValuePartitionCapacity(0);
-        getTransmogrifier().setFragment(false);
-//      getTransmogrifier().setDivertBuiltinGrammarToAnyType(true); // enable V2G's built-in grammar usage
-        
         // Standard SAX methods parse content and lexical values
-        setSaxTransformerFactory((SAXTransformerFactory) TransformerFactory.newInstance());
         setSaxParserFactory(SAXParserFactory.newInstance());
         getSaxParserFactory().setNamespaceAware(true);
-
-        try {
-			setTransformerHandler(getSaxTransformerFactory().newTransformerHandler());
-		} catch (TransformerConfigurationException e) {
-			getLogger().error(e.getClass().getSimpleName() + " occurred while trying to instantiate OpenEXICodec");
-		}
         
-        // EXIReader infers and reconstructs the XML file structure
-        setExiReader(new EXIReader());
-        getExiReader().setValuePartitionCapacity(0);
+        // The Transmogrifier performs the translation from XML to EXI format
+        setTransmogrifier(new Transmogrifier(getSaxParserFactory()));
+        getTransmogrifier().setValuePartitionCapacity(0);
+        getTransmogrifier().setFragment(false);
+//		getTransmogrifier().setDivertBuiltinGrammarToAnyType(true); // enable V2G's built-in grammar usage
+        
+        // EXIReaders (EXI to XML) are created on demand, see newExiReader()
+        setIdleExiReaders(new ConcurrentLinkedQueue<EXIReader>());
+        setFragmentOption(new ThreadLocal<Boolean>());
         
         setExiSchemaFactory(new EXISchemaFactory());
         EXISchemaFactoryExceptionHandler esfe = new EXISchemaFactoryExceptionHandler();
@@ -126,6 +134,14 @@ public final class OpenEXICodec extends ExiCodec {
 			setExiSchemaAppProtocol(getExiSchemaFactory().compile(new InputSource(getSchemaAppProtocolIS())));
 			setExiSchemaMsgDef(new EXISchemaReader().parse(getClass().getResourceAsStream("/schemas/V2G_CI_MsgDef.exig")));
 			setExiSchemaXMLDSig(getExiSchemaFactory().compile(new InputSource(getSchemaXMLDSigIS())));
+			
+			/*
+			 * The Grammar Cache stores the XML schema and options used to encode an EXI file. 
+			 * The settings must match when encoding and subsequently decoding a data set.
+			 */
+			setGrammarCacheAppProtocol(new GrammarCache(getExiSchemaAppProtocol(), getOptions()));
+			setGrammarCacheMsgDef(new GrammarCache(getExiSchemaMsgDef(), getOptions()));
+			setGrammarCacheXMLDSig(new GrammarCache(getExiSchemaXMLDSig(), getOptions()));
         } catch (IOException | EXISchemaFactoryException | EXIOptionsException e) {
         	getLogger().error(e.getClass().getSimpleName() + " occurred while trying to set EXI schema", e);
 		}
@@ -139,33 +155,53 @@ public final class OpenEXICodec extends ExiCodec {
 	
 	@Override
 	public byte[] encodeEXI(Object jaxbObject, String xsdSchemaPath) {
+		return encode(jaxbObject, xsdSchemaPath, isFragment());
+	}
+	
+	
+	/*
+	 * The Transmogrifier is configured for each encoding anyway, so a fragment is encoded with the fragment 
+	 * option set for this encoding only
+	 */
+	@Override
+	public byte[] encodeFragment(Object jaxbObject, String xsdSchemaPath) {
+		return encode(jaxbObject, xsdSchemaPath, true);
+	}
+	
+	
+	/*
+	 * Synchronized, because OpenEXI's value scribers keep state which is shared by all Transmogrifiers. 
+	 * Concurrent encodings corrupt each other even with separate Transmogrifiers and grammar caches, so the 
+	 * one Transmogrifier of this codec is only used under its lock. Decoding with separate EXIReaders is not 
+	 * affected and thus remains concurrent.
+	 */
+	private synchronized byte[] encode(Object jaxbObject, String xsdSchemaPath, boolean fragment) {
+		GrammarCache grammarCache = null;
+		
+		if (xsdSchemaPath.equals(GlobalValues.SCHEMA_PATH_APP_PROTOCOL.toString()))
+			grammarCache = getGrammarCacheAppProtocol();
+		else if (xsdSchemaPath.equals(GlobalValues.SCHEMA_PATH_MSG_DEF.toString()))
+			grammarCache = getGrammarCacheMsgDef();
+		else if (xsdSchemaPath.equals(GlobalValues.SCHEMA_PATH_XMLDSIG.toString()))
+			grammarCache = getGrammarCacheXMLDSig();
+		else {
+			getLogger().error("False schema path provided for encoding jaxbObject into EXI");
+			return null;
+		}
+		
 		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		Transmogrifier transmogrifier = getTransmogrifier();
 		
 		try {
-			/*
-			 * Set the schema and EXI options in the Grammar Cache.
-			 * The Grammar Cache stores the XML schema and options used to encode an EXI file. 
-			 * The settings must match when encoding and subsequently decoding a data set.
-			 */
-			if (xsdSchemaPath.equals(GlobalValues.SCHEMA_PATH_APP_PROTOCOL.toString()))
-				setGrammarCache(new GrammarCache(getExiSchemaAppProtocol(), getOptions()));
-			else if (xsdSchemaPath.equals(GlobalValues.SCHEMA_PATH_MSG_DEF.toString()))
-				setGrammarCache(new GrammarCache(getExiSchemaMsgDef(), getOptions()));
-			else if (xsdSchemaPath.equals(GlobalValues.SCHEMA_PATH_XMLDSIG.toString()))
-				setGrammarCache(new GrammarCache(getExiSchemaXMLDSig(), getOptions()));
-			else {
-				getLogger().error("False schema path provided for encoding jaxbObject into EXI");
-				return null;
-			}
-			
 			// Set the configuration options in the Transmogrifier
-			getTransmogrifier().setGrammarCache(getGrammarCache());
+			transmogrifier.setGrammarCache(grammarCache);
+			transmogrifier.setFragment(fragment);
 
 			// Set the output stream
-			getTransmogrifier().setOutputStream(baos);
+			transmogrifier.setOutputStream(baos);
 			
-			// Encode the input stream
-			getTransmogrifier().encode(new InputSource(marshalToInputStream(jaxbObject)));
+			// Encode the JAXB object by marshalling it straight into the Transmogrifier's SAX content handler
+			if (!marshalToContentHandler(jaxbObject, transmogrifier.getSAXTransmogrifier())) return null;
 
 			byte[] encodedExi = baos.toByteArray();
 			
@@ -175,67 +211,97 @@ public final class OpenEXICodec extends ExiCodec {
 			baos.close();
 			
 			return encodedExi;
-		} catch (IOException | EXIOptionsException | TransmogrifierException e) {
+		} catch (IOException | EXIOptionsException e) {
 			getLogger().error(e.getClass().getSimpleName() + " occurred while trying to encode EXI", e);
 			return null;
-		} 
+		} finally {
+			transmogrifier.setOutputStream(null);
+		}
 	}
 	
 	
 	@Override
-	public Object decodeEXI(byte[] exiEncodedMessage, boolean supportedAppProtocolHandshake) {
-		getLogger().debug("Received EXI stream: " + ByteUtils.toHexString(exiEncodedMessage));
+	public Object decodeEXI(ByteBuffer exiEncodedMessage, boolean supportedAppProtocolHandshake) {
+		logReceivedExiStream(exiEncodedMessage);
 		
-		StringWriter stringWriter = new StringWriter();
+		EXIReader exiReader = acquireExiReader();
 		
 		try {
-			/*
-			 * Set the schema and EXI options in the Grammar Cache.
-			 * The Grammar Cache stores the XML schema and options used to encode an EXI file. 
-			 * The settings must match when encoding and subsequently decoding a data set.
-			 */
-			if (supportedAppProtocolHandshake)
-				setGrammarCache(new GrammarCache(getExiSchemaAppProtocol(), getOptions()));
-			else 
-				setGrammarCache(new GrammarCache(getExiSchemaMsgDef(), getOptions()));
-
 			// Use the Grammar Cache to set the schema and grammar options for EXIReader
-			getExiReader().setGrammarCache(getGrammarCache());
+			if (supportedAppProtocolHandshake) exiReader.setGrammarCache(getGrammarCacheAppProtocol());
+			else exiReader.setGrammarCache(getGrammarCacheMsgDef());
 
-			// Prepare to send the results from the transformer to an OutputStream object
-			getTransformerHandler().setResult(new StreamResult(stringWriter));
-			
-			// Assign the transformer handler to interpret XML content
-			getExiReader().setContentHandler(getTransformerHandler());
+			// Feed the SAX events of the EXIReader directly into the JAXB unmarshaller
+			UnmarshallerHandler unmarshallerHandler = getUnmarshaller().getUnmarshallerHandler();
+			exiReader.setContentHandler(unmarshallerHandler);
 			
 			// Parse the information from exiEncodedMessage
-			getExiReader().parse(new InputSource(new ByteArrayInputStream(exiEncodedMessage)));
-			
-			// Get the resulting string
-			setDecodedExi(stringWriter.getBuffer().toString());
+			exiReader.parse(new InputSource(toInputStream(exiEncodedMessage)));
 			
-			return unmarshallToMessage(getDecodedExi());
-		} catch (IOException | EXIOptionsException | SAXException e) {
+			return unmarshallToMessage(unmarshallerHandler);
+		} catch (IOException | EXIOptionsException | SAXException | RuntimeException e) {
 			getLogger().error(e.getClass().getSimpleName() + " occurred while trying to decode EXI", e);
 			return null;
-		} 
+		} finally {
+			exiReader.setContentHandler(null);
+			getIdleExiReaders().offer(exiReader);
+		}
+	}
+	
+	
+	private EXIReader acquireExiReader() {
+		EXIReader exiReader = getIdleExiReaders().poll();
+		return (exiReader != null) ? exiReader : newExiReader();
+	}
+	
+	
+	private EXIReader newExiReader() {
+		// EXIReader infers and reconstructs the XML file structure
+		EXIReader exiReader = new EXIReader();
+		exiReader.setValuePartitionCapacity(0);
+		
+		return exiReader;
 	}
 	
 
-	public Transmogrifier getTransmogrifier() {
+	private Transmogrifier getTransmogrifier() {
 		return transmogrifier;
 	}
 
-	public void setTransmogrifier(Transmogrifier transmogrifier) {
+	private void setTransmogrifier(Transmogrifier transmogrifier) {
 		this.transmogrifier = transmogrifier;
 	}
 
-	public GrammarCache getGrammarCache() {
-		return grammarCache;
+	private ConcurrentLinkedQueue<EXIReader> getIdleExiReaders() {
+		return idleExiReaders;
+	}
+
+	private void setIdleExiReaders(ConcurrentLinkedQueue<EXIReader> idleExiReaders) {
+		this.idleExiReaders = idleExiReaders;
+	}
+
+	public GrammarCache getGrammarCacheAppProtocol() {
+		return grammarCacheAppProtocol;
+	}
+
+	private void setGrammarCacheAppProtocol(GrammarCache grammarCacheAppProtocol) {
+		this.grammarCacheAppProtocol = grammarCacheAppProtocol;
+	}
+
+	public GrammarCache getGrammarCacheMsgDef() {
+		return grammarCacheMsgDef;
 	}
 
-	public void setGrammarCache(GrammarCache grammarCache) {
-		this.grammarCache = grammarCache;
+	private void setGrammarCacheMsgDef(GrammarCache grammarCacheMsgDef) {
+		this.grammarCacheMsgDef = grammarCacheMsgDef;
+	}
+
+	public GrammarCache getGrammarCacheXMLDSig() {
+		return grammarCacheXMLDSig;
+	}
+
+	private void setGrammarCacheXMLDSig(GrammarCache grammarCacheXMLDSig) {
+		this.grammarCacheXMLDSig = grammarCacheXMLDSig;
 	}
 
 	public EXISchemaFactory getExiSchemaFactory() {
@@ -279,14 +345,6 @@ public final class OpenEXICodec extends ExiCodec {
 		this.options = options;
 	}
 
-	public SAXTransformerFactory getSaxTransformerFactory() {
-		return saxTransformerFactory;
-	}
-
-	public void setSaxTransformerFactory(SAXTransformerFactory saxTransformerFactory) {
-		this.saxTransformerFactory = saxTransformerFactory;
-	}
-
 	private SAXParserFactory getSaxParserFactory() {
 		return saxParserFactory;
 	}
@@ -295,22 +353,6 @@ public final class OpenEXICodec extends ExiCodec {
 		this.saxParserFactory = saxParserFactory;
 	}
 
-	public TransformerHandler getTransformerHandler() {
-		return transformerHandler;
-	}
-
-	public void setTransformerHandler(TransformerHandler transformerHandler) {
-		this.transformerHandler = transformerHandler;
-	}
-
-	public EXIReader getExiReader() {
-		return exiReader;
-	}
-
-	public void setExiReader(EXIReader exiReader) {
-		this.exiReader = exiReader;
-	}
-
 	public EXISchema getExiSchemaMsgDef() {
 		return exiSchemaMsgDef;
 	}
@@ -329,7 +371,19 @@ public final class OpenEXICodec extends ExiCodec {
 
 	@Override
 	public void setFragment(boolean useFragmentGrammar) {
-		getTransmogrifier().setFragment(useFragmentGrammar);
+		getFragmentOption().set(useFragmentGrammar);
+	}
+	
+	private boolean isFragment() {
+		return Boolean.TRUE.equals(getFragmentOption().get());
+	}
+
+	private ThreadLocal<Boolean> getFragmentOption() {
+		return fragmentOption;
+	}
+
+	private void setFragmentOption(ThreadLocal<Boolean> fragmentOption) {
+		this.fragmentOption = fragmentOption;
 	}
 
 	public EXISchema getExiSchemaMsgBody() {
@@ -23,15 +23,15 @@
  *******************************************************************************/
 package com.v2gclarity.risev2g.shared.messageHandling;
 
+import java.nio.ByteBuffer;
 import java.security.interfaces.ECPrivateKey;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
-import javax.xml.bind.ValidationEvent;
-import javax.xml.bind.ValidationEventHandler;
 import javax.xml.namespace.QName;
 
 import org.apache.logging.log4j.LogManager;
@@ -39,6 +39,9 @@ import org.apache.logging.log4j.Logger;
 import com.v2gclarity.risev2g.shared.enumerations.GlobalValues;
 import com.v2gclarity.risev2g.shared.exiCodec.EXIficientCodec;
 import com.v2gclarity.risev2g.shared.exiCodec.ExiCodec;
+import com.v2gclarity.risev2g.shared.exiCodec.ExiCodecPool;
+import com.v2gclarity.risev2g.shared.exiCodec.GeneratedExiCodec;
+import com.v2gclarity.risev2g.shared.exiCodec.JaxbMarshallerProvider;
 import com.v2gclarity.risev2g.shared.exiCodec.OpenEXICodec;
 import com.v2gclarity.risev2g.shared.misc.V2GTPMessage;
 import com.v2gclarity.risev2g.shared.utils.ByteUtils;
@@ -72,24 +75,53 @@ public final class MessageHandler {
 	
 	private Logger logger = LogManager.getLogger(this.getClass().getSimpleName()); 
 	private ExiCodec exiCodec;
+	private ExiCodecPool exiCodecPool;
 	private JAXBContext jaxbContext;
+	private ConcurrentHashMap<Class<?>, QName> elementNames;
 	
 	
 	/**
 	 * This constructor is used by V2GCommunicationSessionHandlerEVCC and -SECC
 	 */
 	public MessageHandler() {
+		setElementNames(new ConcurrentHashMap<Class<?>, QName>());
+		
 		// Choose which implementation of an EXI codec to use in the respective properties file
 		String exiCodecChoice = (String) MiscUtils.getPropertyValue("exi.codec");
 		
 		if (exiCodecChoice.equals("open_exi")) setExiCodec(OpenEXICodec.getInstance());
+		else if (exiCodecChoice.equals("generated")) setExiCodec(GeneratedExiCodec.getInstance());
 		else setExiCodec(EXIficientCodec.getInstance());
 		
+		/*
+		 * Optionally, message bodies are en-/decoded with a pool of independent codec instances instead of the
+		 * shared codec singleton whose methods are synchronized. This way, concurrent communication sessions
+		 * (e.g. on an SECC with multiple charging points) do not serialize on one codec.
+		 * A pool size of 0 (or a missing property) keeps using the shared codec.
+		 */
+		Object exiCodecPoolSize = MiscUtils.getPropertyValue("exi.codec.pool.size");
+		
+		if (exiCodecPoolSize != null && (int) exiCodecPoolSize > 0) {
+			if (getExiCodec() instanceof EXIficientCodec) {
+				ArrayList<EXIficientCodec> pooledCodecs = new ArrayList<EXIficientCodec>();
+				for (int i = 0; i < (int) exiCodecPoolSize; i++) pooledCodecs.add(EXIficientCodec.newInstance());
+				
+				setExiCodecPool(new ExiCodecPool(pooledCodecs));
+			} else if (getExiCodec() instanceof GeneratedExiCodec) {
+				ArrayList<GeneratedExiCodec> pooledCodecs = new ArrayList<GeneratedExiCodec>();
+				for (int i = 0; i < (int) exiCodecPoolSize; i++) pooledCodecs.add(GeneratedExiCodec.newInstance());
+				
+				setExiCodecPool(new ExiCodecPool(pooledCodecs));
+			} else {
+				getLogger().warn("A pool of EXI codecs is only supported for EXIficient and the generated codec, the shared codec will be used instead");
+			}
+		}
+		
 		// Setting the JAXBContext is a very time-consuming action and should only be done once during startup
 		setJaxbContext(SupportedAppProtocolReq.class, SupportedAppProtocolRes.class, V2GMessage.class);
 	} 
 	
-	public synchronized boolean isV2GTPMessageValid(V2GTPMessage v2gTpMessage) {
+	public boolean isV2GTPMessageValid(V2GTPMessage v2gTpMessage) {
 		if (isVersionAndInversionFieldCorrect(v2gTpMessage) && 
 			isPayloadTypeCorrect(v2gTpMessage) && 
 			isPayloadLengthCorrect(v2gTpMessage)) 
@@ -97,7 +129,7 @@ public final class MessageHandler {
 		return false;
 	}
 	
-	public synchronized boolean isVersionAndInversionFieldCorrect(V2GTPMessage v2gTpMessage) {
+	public boolean isVersionAndInversionFieldCorrect(V2GTPMessage v2gTpMessage) {
 		if (v2gTpMessage.getProtocolVersion() != GlobalValues.V2GTP_VERSION_1_IS.getByteValue()) {
 			getLogger().error("Protocol version (" + ByteUtils.toStringFromByte(v2gTpMessage.getProtocolVersion()) + 
 							  ") is not supported!");
@@ -113,31 +145,30 @@ public final class MessageHandler {
 		return true;
 	}
 	
-	public synchronized boolean isPayloadTypeCorrect(V2GTPMessage v2gTpMessage) {
-		byte[] payloadType = v2gTpMessage.getPayloadType();
-
-		if (Arrays.equals(payloadType, GlobalValues.V2GTP_PAYLOAD_TYPE_EXI_ENCODED_V2G_MESSAGE.getByteArrayValue()) ||
-			Arrays.equals(payloadType, GlobalValues.V2GTP_PAYLOAD_TYPE_SDP_REQUEST_MESSAGE.getByteArrayValue()) ||
-			Arrays.equals(payloadType, GlobalValues.V2GTP_PAYLOAD_TYPE_SDP_RESPONSE_MESSAGE.getByteArrayValue())) return true;
+	public boolean isPayloadTypeCorrect(V2GTPMessage v2gTpMessage) {
+		if (v2gTpMessage.hasPayloadType(GlobalValues.V2GTP_PAYLOAD_TYPE_EXI_ENCODED_V2G_MESSAGE.getByteArrayValue()) ||
+			v2gTpMessage.hasPayloadType(GlobalValues.V2GTP_PAYLOAD_TYPE_SDP_REQUEST_MESSAGE.getByteArrayValue()) ||
+			v2gTpMessage.hasPayloadType(GlobalValues.V2GTP_PAYLOAD_TYPE_SDP_RESPONSE_MESSAGE.getByteArrayValue())) return true;
 		
 		getLogger().error("Payload type not supported! Proposed payload type: " + ByteUtils.toStringFromByteArray(v2gTpMessage.getPayloadType()));
 		
 		return false;
 	}
 	
-	public synchronized boolean isPayloadLengthCorrect(V2GTPMessage v2gTpMessage) {
-		if (ByteUtils.toLongFromByteArray(v2gTpMessage.getPayloadLength()) > GlobalValues.V2GTP_HEADER_MAX_PAYLOAD_LENGTH.getLongValue() ||
-			ByteUtils.toLongFromByteArray(v2gTpMessage.getPayloadLength()) < 0L) {
-			getLogger().error("Payload length (" + ByteUtils.toLongFromByteArray(v2gTpMessage.getPayloadLength()) + 
+	public boolean isPayloadLengthCorrect(V2GTPMessage v2gTpMessage) {
+		long payloadLengthField = v2gTpMessage.getPayloadLengthValue();
+		
+		if (payloadLengthField > GlobalValues.V2GTP_HEADER_MAX_PAYLOAD_LENGTH.getLongValue() ||
+			payloadLengthField < 0L) {
+			getLogger().error("Payload length (" + payloadLengthField + 
 							  " bytes) not supported! Must be between 0 and " + 
 							  GlobalValues.V2GTP_HEADER_MAX_PAYLOAD_LENGTH.getLongValue() + " bytes");
 			return false;
 		}
 		
-		int payLoadLengthField = ByteUtils.toIntFromByteArray(v2gTpMessage.getPayloadLength());
-		if (v2gTpMessage.getPayload().length != payLoadLengthField) {
-			getLogger().error("Length of payload (" + v2gTpMessage.getPayload().length + " bytes) does not match value of " +
-							  "field payloadLength (" + payLoadLengthField + " bytes)");
+		if (v2gTpMessage.getPayloadSize() != payloadLengthField) {
+			getLogger().error("Length of payload (" + v2gTpMessage.getPayloadSize() + " bytes) does not match value of " +
+							  "field payloadLength (" + payloadLengthField + " bytes)");
 			return false;
 		}
 		
@@ -146,27 +177,87 @@ public final class MessageHandler {
 	
 	
 
-	public synchronized Object suppAppProtocolMsgToExi(Object suppAppProtocolObject) {
-		return getExiCodec().encodeEXI(suppAppProtocolObject, GlobalValues.SCHEMA_PATH_APP_PROTOCOL.toString());
+	public Object suppAppProtocolMsgToExi(Object suppAppProtocolObject) {
+		ExiCodec codec = acquireExiCodec();
+		
+		try {
+			return codec.encodeEXI(suppAppProtocolObject, GlobalValues.SCHEMA_PATH_APP_PROTOCOL.toString());
+		} finally {
+			releaseExiCodec(codec);
+		}
 	}
 	
 
-	public synchronized Object v2gMsgToExi(Object jaxbObject) {
-		byte[] encodedEXI = getExiCodec().encodeEXI(jaxbObject, GlobalValues.SCHEMA_PATH_MSG_DEF.toString());
-		return encodedEXI;
+	public Object v2gMsgToExi(Object jaxbObject) {
+		ExiCodec codec = acquireExiCodec();
+		
+		try {
+			byte[] encodedEXI = codec.encodeEXI(jaxbObject, GlobalValues.SCHEMA_PATH_MSG_DEF.toString());
+			return encodedEXI;
+		} finally {
+			releaseExiCodec(codec);
+		}
 	}
 	
 
-	public synchronized Object exiToSuppAppProtocolMsg(byte[] exiEncodedMessage) {
-		return getExiCodec().decodeEXI(exiEncodedMessage, true);
+	public Object exiToSuppAppProtocolMsg(byte[] exiEncodedMessage) {
+		return exiToSuppAppProtocolMsg(ByteBuffer.wrap(exiEncodedMessage));
+	}
+	
+	/**
+	 * Decodes a supportedAppProtocol message from the given buffer (e.g. the payload view of a received 
+	 * V2GTPMessage) without copying it.
+	 */
+	public Object exiToSuppAppProtocolMsg(ByteBuffer exiEncodedMessage) {
+		ExiCodec codec = acquireExiCodec();
+		
+		try {
+			return codec.decodeEXI(exiEncodedMessage, true);
+		} finally {
+			releaseExiCodec(codec);
+		}
+	}
+	
+	public Object exiToV2gMsg(byte[] exiEncodedMessage) {
+		return exiToV2gMsg(ByteBuffer.wrap(exiEncodedMessage));
+	}
+	
+	/**
+	 * Decodes a V2GMessage from the given buffer (e.g. the payload view of a received V2GTPMessage) 
+	 * without copying it.
+	 */
+	public Object exiToV2gMsg(ByteBuffer exiEncodedMessage) {
+		ExiCodec codec = acquireExiCodec();
+		
+		try {
+			return codec.decodeEXI(exiEncodedMessage, false);
+		} finally {
+			releaseExiCodec(codec);
+		}
+	}
+	
+	
+	/**
+	 * Provides the codec to be used for the next en-/decoding. This is either an idle codec taken from the 
+	 * EXI codec pool (if configured) or the shared codec singleton.
+	 * 
+	 * @return The codec to be used, must be handed back via releaseExiCodec() afterwards
+	 */
+	private ExiCodec acquireExiCodec() {
+		if (getExiCodecPool() != null) {
+			ExiCodec pooledCodec = getExiCodecPool().acquire();
+			if (pooledCodec != null) return pooledCodec;
+		}
+		
+		return getExiCodec();
 	}
 	
-	public synchronized Object exiToV2gMsg(byte[] exiEncodedMessage) {
-		return getExiCodec().decodeEXI(exiEncodedMessage, false);
+	private void releaseExiCodec(ExiCodec codec) {
+		if (getExiCodecPool() != null && codec != getExiCodec()) getExiCodecPool().release(codec);
 	}
 	
 	
-	public synchronized V2GMessage getV2GMessage(
+	public V2GMessage getV2GMessage(
 			byte[] sessionID, 
 			HashMap<String, byte[]> xmlSignatureRefElements,
 			ECPrivateKey signaturePrivateKey,
@@ -175,7 +266,7 @@ public final class MessageHandler {
 	}
 
 	
-	public synchronized V2GMessage getV2GMessage(
+	public V2GMessage getV2GMessage(
 			byte[] sessionID,
 			NotificationType notification, 
 			HashMap<String, byte[]> xmlSignatureRefElements, 
@@ -192,7 +283,7 @@ public final class MessageHandler {
 	}
 	
 	
-	private synchronized MessageHeaderType getHeader(
+	private MessageHeaderType getHeader(
 			byte[] sessionID,
 			NotificationType notification,
 			JAXBElement<? extends BodyBaseType> v2gMessageInstance,
@@ -204,11 +295,16 @@ public final class MessageHandler {
 		
 		if (xmlSignatureRefElements != null && xmlSignatureRefElements.size() != 0) {
 			SignedInfoType signedInfo = SecurityUtils.getSignedInfo(xmlSignatureRefElements);
+			byte[] exiEncodedSignedInfo = null;
+			ExiCodec codec = acquireExiCodec();
 			
-			byte[] signature = SecurityUtils.signSignedInfoElement(
-									getExiCodec().getExiEncodedSignedInfo(getJaxbElement(signedInfo)), 
-									signaturePrivateKey
-							   );
+			try {
+				exiEncodedSignedInfo = codec.getExiEncodedSignedInfo(getJaxbElement(signedInfo));
+			} finally {
+				releaseExiCodec(codec);
+			}
+			
+			byte[] signature = SecurityUtils.signSignedInfoElement(exiEncodedSignedInfo, signaturePrivateKey);
 			
 			SignatureValueType signatureValue = new SignatureValueType();
 			signatureValue.setValue(signature);
@@ -236,10 +332,28 @@ public final class MessageHandler {
 	 * @return The JAXBElement of the provided message or field
 	 */
 	@SuppressWarnings({ "unchecked" })
-	public synchronized <T> JAXBElement<T> getJaxbElement(T messageOrField) {
+	public <T> JAXBElement<T> getJaxbElement(T messageOrField) {
+		QName elementName = getElementNames().get(messageOrField.getClass());
+		
+		if (elementName == null) {
+			elementName = getElementName(messageOrField);
+			getElementNames().putIfAbsent(messageOrField.getClass(), elementName);
+		}
+		
+		return new JAXBElement<T>(elementName, (Class<T>) messageOrField.getClass(), messageOrField);
+	}
+	
+	
+	/**
+	 * Derives the XML element name of the given message or field from its class. The result only depends on 
+	 * the class and is therefore cached by getJaxbElement().
+	 * 
+	 * @param messageOrField The message or field for which the XML element name is needed
+	 * @return The qualified name of the XML element
+	 */
+	private QName getElementName(Object messageOrField) {
 		String messageName = messageOrField.getClass().getSimpleName().replace("Type", "");
 		String namespace = "";
-		JAXBElement<T> jaxbElement = null;
 		
 		if (messageOrField instanceof SignedInfoType) {
 			namespace = GlobalValues.V2G_CI_XMLDSIG_NAMESPACE.toString();
@@ -272,11 +386,7 @@ public final class MessageHandler {
 			}
 		}
 		
-		jaxbElement = new JAXBElement<T>(new QName(namespace, messageName), 
-				(Class<T>) messageOrField.getClass(), 
-				messageOrField);
-		
-		return jaxbElement; 
+		return new QName(namespace, messageName);
 	}
 	
 	
@@ -293,6 +403,22 @@ public final class MessageHandler {
 		SecurityUtils.setExiCodec(exiCodec);
 	}
 	
+	public ExiCodecPool getExiCodecPool() {
+		return exiCodecPool;
+	}
+
+	private void setExiCodecPool(ExiCodecPool exiCodecPool) {
+		this.exiCodecPool = exiCodecPool;
+	}
+	
+	private ConcurrentHashMap<Class<?>, QName> getElementNames() {
+		return elementNames;
+	}
+
+	private void setElementNames(ConcurrentHashMap<Class<?>, QName> elementNames) {
+		this.elementNames = elementNames;
+	}
+	
 	public JAXBContext getJaxbContext() {
 		return jaxbContext;
 	}
@@ -305,22 +431,17 @@ public final class MessageHandler {
 		try {
 			setJaxbContext(JAXBContext.newInstance(classesToBeBound));
 			
-			// Every time we set the JAXBContext, we need to also set the marshaller and unmarshaller for EXICodec
-			getExiCodec().setUnmarshaller(getJaxbContext().createUnmarshaller());
-			getExiCodec().setMarshaller(getJaxbContext().createMarshaller());
-			
 			/*
-			 * JAXB by default silently ignores errors. Adding this code to throw an exception if 
-			 * something goes wrong.
+			 * Every time we set the JAXBContext, we need to also set the marshallers and unmarshallers for EXICodec.
+			 * They are not thread-safe and therefore handed out per thread by the provider, which is shared by 
+			 * the codec singleton and all pooled codecs.
 			 */
-			getExiCodec().getUnmarshaller().setEventHandler(
-				    new ValidationEventHandler() {
-				        @Override
-						public boolean handleEvent(ValidationEvent event ) {
-				            throw new RuntimeException(event.getMessage(),
-				                                       event.getLinkedException());
-				        }
-				});
+			JaxbMarshallerProvider marshallerProvider = new JaxbMarshallerProvider(getJaxbContext());
+			getExiCodec().setMarshallerProvider(marshallerProvider);
+			
+			if (getExiCodecPool() != null) {
+				for (ExiCodec pooledCodec : getExiCodecPool().getCodecs()) pooledCodec.setMarshallerProvider(marshallerProvider);
+			}
 		} catch (JAXBException e) {
 			getLogger().error("A JAXBException occurred while trying to set JAXB context", e);
 		}
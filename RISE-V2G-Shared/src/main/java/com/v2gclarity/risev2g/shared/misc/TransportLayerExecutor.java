@@ -0,0 +1,208 @@
+/*******************************************************************************
+ *  The MIT License (MIT)
+ *
+ *  Copyright (c) 2015 - 2019  Dr. Marc Mültin (V2G Clarity)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ *******************************************************************************/
+package com.v2gclarity.risev2g.shared.misc;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.v2gclarity.risev2g.shared.utils.MiscUtils;
+
+/**
+ * Runs the long-lived transport layer tasks (the SECC's ConnectionHandlers and the EVCC's TCP/TLS clients) 
+ * which block while reading from their sockets. 
+ * 
+ * Depending on the property 'transport.threads', the tasks run either on (pooled) platform threads or each 
+ * on a virtual thread of its own. Virtual threads require a Java 21 runtime and are looked up via reflection, 
+ * so that the code still compiles for and runs on Java 8. If they are not available, platform threads are used.
+ * 
+ * Tasks are stopped by the stop() method of the respective ConnectionHandler or client, which closes the 
+ * socket and ends the task's read loop. No thread is interrupted.
+ * 
+ * Short actions which are due after a delay, like the delayed closing of a connection, are run by one shared 
+ * scheduler thread instead of sleeping on the calling thread.
+ */
+public final class TransportLayerExecutor {
+	
+	// -- BEGIN: SINGLETON DEFINITION --
+	/*
+	 *  Eager instantiation of the singleton. The JVM creates the unique instance when the class is loaded, 
+	 *  which happens at the first call of getInstance() after the properties file has been loaded.
+	 */
+	private static final TransportLayerExecutor instance = new TransportLayerExecutor();
+	
+	private Logger logger = LogManager.getLogger(this.getClass().getSimpleName());
+	private ExecutorService executorService;
+	private ScheduledThreadPoolExecutor scheduler;
+	private boolean virtualThreads;
+	
+	private TransportLayerExecutor() {
+		if ("virtual".equals(MiscUtils.getPropertyValue("transport.threads"))) {
+			setExecutorService(newVirtualThreadPerTaskExecutor());
+			setVirtualThreads(getExecutorService() != null);
+		}
+		
+		if (getExecutorService() == null) setExecutorService(Executors.newCachedThreadPool(new PlatformThreadFactory("TransportLayerThread-")));
+		
+		setScheduler(new ScheduledThreadPoolExecutor(1, new PlatformThreadFactory("TransportLayerScheduler-")));
+		
+		// Scheduled actions are often cancelled (e.g. if the EVCC closes the connection first), don't keep them queued
+		getScheduler().setRemoveOnCancelPolicy(true);
+		
+		getLogger().debug("Transport layer tasks run on " + ((isVirtualThreads()) ? "virtual" : "platform") + " threads");
+	}
+	
+	public static TransportLayerExecutor getInstance() {
+		return instance;
+	}
+	// -- END: SINGLETON DEFINITION --
+	
+	
+	/**
+	 * Executes the given transport layer task. The thread executing the task is named after the given name for
+	 * as long as the task is running.
+	 * 
+	 * @param task The task to be executed, e.g. a ConnectionHandler or a TCP/TLS client
+	 * @param threadName The name of the thread while executing the task
+	 * @return A Future which completes when the task has finished
+	 */
+	public Future<?> execute(Runnable task, String threadName) {
+		return getExecutorService().submit(() -> {
+			Thread currentThread = Thread.currentThread();
+			String previousThreadName = currentThread.getName();
+			currentThread.setName(threadName);
+			
+			try {
+				task.run();
+			} catch (RuntimeException e) {
+				getLogger().error(e.getClass().getSimpleName() + " occurred while running '" + threadName + "'", e);
+				throw e;
+			} finally {
+				currentThread.setName(previousThreadName);
+			}
+		});
+	}
+	
+	
+	/**
+	 * Runs the given action once after the given delay on the shared scheduler thread. The action must not 
+	 * block, as it would delay all other scheduled actions.
+	 * 
+	 * @param action The action to be run, e.g. the closing of a connection
+	 * @param delay The delay after which the action is run
+	 * @param unit The time unit of the delay
+	 * @return A ScheduledFuture which can be used to cancel the action
+	 */
+	public ScheduledFuture<?> schedule(Runnable action, long delay, TimeUnit unit) {
+		return getScheduler().schedule(() -> {
+			try {
+				action.run();
+			} catch (RuntimeException e) {
+				getLogger().error(e.getClass().getSimpleName() + " occurred while running scheduled action", e);
+			}
+		}, delay, unit);
+	}
+	
+	
+	/**
+	 * Creates the executor of Executors.newVirtualThreadPerTaskExecutor() (available since Java 21).
+	 * 
+	 * @return The executor, or null if virtual threads are not supported by the Java runtime
+	 */
+	private ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			Method newVirtualThreadPerTaskExecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) newVirtualThreadPerTaskExecutor.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			getLogger().warn("Virtual threads are not supported by this Java runtime (Java 21 or newer is needed), " +
+							 "platform threads will be used instead");
+			return null;
+		}
+	}
+	
+	
+	/**
+	 * Creates daemon threads, just like the dedicated threads which have been started for each transport 
+	 * layer task before.
+	 */
+	private static final class PlatformThreadFactory implements ThreadFactory {
+		
+		private final String threadNamePrefix;
+		private final AtomicInteger threadCounter = new AtomicInteger();
+		
+		private PlatformThreadFactory(String threadNamePrefix) {
+			this.threadNamePrefix = threadNamePrefix;
+		}
+		
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, threadNamePrefix + threadCounter.incrementAndGet());
+			thread.setDaemon(true);
+			
+			return thread;
+		}
+	}
+	
+
+	public Logger getLogger() {
+		return logger;
+	}
+
+	public void setLogger(Logger logger) {
+		this.logger = logger;
+	}
+
+	private ExecutorService getExecutorService() {
+		return executorService;
+	}
+
+	private void setExecutorService(ExecutorService executorService) {
+		this.executorService = executorService;
+	}
+
+	private ScheduledThreadPoolExecutor getScheduler() {
+		return scheduler;
+	}
+
+	private void setScheduler(ScheduledThreadPoolExecutor scheduler) {
+		this.scheduler = scheduler;
+	}
+
+	public boolean isVirtualThreads() {
+		return virtualThreads;
+	}
+
+	private void setVirtualThreads(boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+	}
+}
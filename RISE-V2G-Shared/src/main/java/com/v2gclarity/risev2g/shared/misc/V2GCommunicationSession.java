@@ -26,11 +26,13 @@ package com.v2gclarity.risev2g.shared.misc;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Observable;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import com.v2gclarity.risev2g.shared.enumerations.V2GMessages;
+import com.v2gclarity.risev2g.shared.events.SessionPausedEvent;
+import com.v2gclarity.risev2g.shared.events.SessionTerminatedEvent;
+import com.v2gclarity.risev2g.shared.events.V2GEventBus;
 import com.v2gclarity.risev2g.shared.messageHandling.MessageHandler;
 import com.v2gclarity.risev2g.shared.messageHandling.PauseSession;
 import com.v2gclarity.risev2g.shared.messageHandling.TerminateSession;
@@ -42,7 +44,7 @@ import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.PaymentOptionListType;
 import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.PaymentOptionType;
 import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.V2GMessage;
 
-public abstract class V2GCommunicationSession extends Observable {
+public abstract class V2GCommunicationSession {
 
 	private Logger logger = LogManager.getLogger(this.getClass().getSimpleName());
 	private HashMap<V2GMessages, State> states;
@@ -79,8 +81,7 @@ public abstract class V2GCommunicationSession extends Observable {
 	
 	protected void pauseSession(PauseSession pauseObject) {
 		getLogger().info("Pausing V2G communication session");
-		setChanged();
-		notifyObservers(pauseObject);
+		V2GEventBus.getInstance().publish(new SessionPausedEvent(this, pauseObject));
 	}
 	
 	
@@ -93,8 +94,7 @@ public abstract class V2GCommunicationSession extends Observable {
 			getLogger().warn(terminationPrefix + termination.getReasonForSessionStop());
 		}
 		
-		setChanged();
-		notifyObservers(termination);
+		V2GEventBus.getInstance().publish(new SessionTerminatedEvent(this, termination));
 	}
 	
 	/**
@@ -111,11 +111,22 @@ public abstract class V2GCommunicationSession extends Observable {
 		if (successful)	getLogger().debug(terminationPrefix + reason);
 		else getLogger().error(terminationPrefix + reason);
 		
-		setChanged();
-		notifyObservers(termination);
+		V2GEventBus.getInstance().publish(new SessionTerminatedEvent(this, termination));
 	}
 
 	
+	/**
+	 * Provides the ordering key of the events published by this session (see V2GEvent). Subclasses return the 
+	 * connection the session is bound to, so that the session's events are dispatched in order with the frames 
+	 * received on this connection.
+	 * 
+	 * @return The ordering key of this session's events
+	 */
+	public Object getEventOrderingKey() {
+		return this;
+	}
+	
+	
 	public ArrayList<EnergyTransferModeType> getSupportedEnergyTransferModes() {
 		@SuppressWarnings("unchecked")
 		ArrayList<EnergyTransferModeType> energyTransferModes = 
@@ -0,0 +1,300 @@
+/*******************************************************************************
+ *  The MIT License (MIT)
+ *
+ *  Copyright (c) 2015 - 2019  Dr. Marc Mültin (V2G Clarity)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ *******************************************************************************/
+package com.v2gclarity.risev2g.shared.misc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Splits the byte stream of a TCP/TLS connection into V2GTP messages. The received bytes are accumulated in one
+ * buffer per connection until a complete message (header and payload according to the header's payload length) 
+ * is available. A read may as well provide several messages, which are then returned one after the other 
+ * without reading again.
+ * 
+ * The returned V2GTPMessages are views over the buffer the message has been received in, the bytes are not copied. 
+ * Along with each message, the decoder hands over the ownership of its buffer to the message and continues with 
+ * a buffer taken from a pool shared by all decoders (only the bytes already received beyond the message, if any, 
+ * are moved to the new buffer). The message thus stays valid after the next read, e.g. while it is processed 
+ * asynchronously. Once the message has been decoded, its buffer is to be handed back to the pool with 
+ * V2GTPMessage.release(). 
+ * 
+ * The decoder counts the reads which did not complete a message (short reads), e.g. because of TLS record 
+ * fragmentation or a congested link. 
+ */
+public class V2GTPFrameDecoder {
+
+	/*
+	 * The biggest ISO 15118 message in size is the CertificateInstallationRes, which in EXI consumes usually 
+	 * 3.000 to 4.000 bytes max. Let's use a threshold of 10.000 just to be safe to check for unreasonably high 
+	 * payload lengths.
+	 * 
+	 * Use the constructor with a maximum payload length if you use a V2GTP payload type for a proprietary, 
+	 * manufacturer-specific use (see Table 10 of ISO 15118-2) that requires bigger payloads! 
+	 */
+	public static final int DEFAULT_MAX_PAYLOAD_LENGTH = 10000;
+	private static final int INITIAL_PAYLOAD_CAPACITY = 1024;
+	private static final int POOLED_BUFFER_CAPACITY = V2GTPMessage.HEADER_LENGTH + INITIAL_PAYLOAD_CAPACITY;
+	// Enough for the messages being processed by all dispatcher threads at a time, further buffers are discarded
+	private static final int MAX_POOLED_BUFFERS = 256;
+	
+	// The receive buffers handed back by released messages, all of them with the capacity POOLED_BUFFER_CAPACITY
+	private static final ConcurrentLinkedQueue<ByteBuffer> idleBuffers = new ConcurrentLinkedQueue<>();
+	private static final AtomicInteger idleBufferCount = new AtomicInteger();
+	
+	// The bytes between position and limit have been received, but not yet returned as V2GTPMessage
+	private ByteBuffer buffer;
+	private int maxPayloadLength;
+	private int requiredMessageLength;
+	private long receivedMessages;
+	private long shortReads;
+	
+	public V2GTPFrameDecoder() {
+		this(DEFAULT_MAX_PAYLOAD_LENGTH);
+	}
+	
+	public V2GTPFrameDecoder(int maxPayloadLength) {
+		setMaxPayloadLength(maxPayloadLength);
+		setBuffer(acquireBuffer());
+		getBuffer().limit(0);
+	}
+	
+	
+	/**
+	 * Reads from the given (blocking) input stream until a complete V2GTPMessage is available. If a previous 
+	 * read already provided the next message, it is returned without reading.
+	 * 
+	 * @param inStream The input stream of the socket
+	 * @return The next V2GTPMessage, or null if the end of the stream has been reached
+	 * @throws ProtocolException If the payload length given in the V2GTP header exceeds the maximum payload length
+	 * @throws IOException If reading from the input stream fails (e.g. a SocketTimeoutException)
+	 */
+	public V2GTPMessage readMessage(InputStream inStream) throws IOException {
+		V2GTPMessage message = nextMessage();
+		
+		while (message == null) {
+			if (readFrom(inStream) < 0) return null;
+			
+			message = nextMessage();
+			if (message == null) shortReads++;
+		}
+		
+		return message;
+	}
+	
+	
+	/**
+	 * Reads the bytes which are currently available on the given (non-blocking) channel. The messages which are 
+	 * complete afterwards are to be retrieved with nextMessage().
+	 * 
+	 * @param channel The channel to read from
+	 * @return The number of bytes read, or -1 if the end of the stream has been reached
+	 * @throws IOException If reading from the channel fails
+	 */
+	public int readFrom(ReadableByteChannel channel) throws IOException {
+		prepareBuffer();
+		
+		int receivedBytes = getBuffer().limit();
+		getBuffer().position(receivedBytes).limit(getBuffer().capacity());
+		
+		int bytesRead = channel.read(getBuffer());
+		
+		getBuffer().limit(getBuffer().position()).position(0);
+		
+		if (bytesRead > 0 && !isMessageComplete()) shortReads++;
+		
+		return bytesRead;
+	}
+	
+	
+	/**
+	 * Provides the next complete V2GTPMessage out of the bytes received so far.
+	 * 
+	 * @return The next V2GTPMessage, or null if more bytes need to be read
+	 * @throws ProtocolException If the payload length given in the V2GTP header exceeds the maximum payload length
+	 */
+	public V2GTPMessage nextMessage() throws ProtocolException {
+		if (getBuffer().remaining() < V2GTPMessage.HEADER_LENGTH) {
+			setRequiredMessageLength(V2GTPMessage.HEADER_LENGTH);
+			return null;
+		}
+		
+		int messageStart = getBuffer().position();
+		
+		// The payload length is written to the last 4 bytes of the V2GTP header (unsigned integer)
+		long payloadLength = getBuffer().getInt(messageStart + 4) & 0xFFFFFFFFL;
+		
+		if (payloadLength > getMaxPayloadLength()) {
+			throw new ProtocolException("Payload length of V2GTP message is inappropiately high (" + payloadLength + " bytes)! " +
+										"There must be an error in the V2GTP message header!");
+		}
+		
+		int messageLength = V2GTPMessage.HEADER_LENGTH + (int) payloadLength;
+		
+		if (getBuffer().remaining() < messageLength) {
+			setRequiredMessageLength(messageLength);
+			return null;
+		}
+		
+		ByteBuffer receiveBuffer = getBuffer();
+		int messageEnd = messageStart + messageLength;
+		
+		// Continue with another buffer, the bytes received beyond this message are moved to it
+		ByteBuffer nextBuffer = (receiveBuffer.limit() - messageEnd <= POOLED_BUFFER_CAPACITY) ? 
+								acquireBuffer() : ByteBuffer.allocate(receiveBuffer.capacity());
+		ByteBuffer bytesBeyondMessage = receiveBuffer.duplicate();
+		bytesBeyondMessage.position(messageEnd);
+		nextBuffer.put(bytesBeyondMessage);
+		nextBuffer.flip();
+		setBuffer(nextBuffer);
+		
+		ByteBuffer message = receiveBuffer.duplicate();
+		message.position(messageStart).limit(messageEnd);
+		
+		setRequiredMessageLength(0);
+		receivedMessages++;
+		
+		return new V2GTPMessage(message, receiveBuffer);
+	}
+	
+	
+	/**
+	 * Checks if the received bytes contain a complete V2GTPMessage (or a header with a payload length 
+	 * which is too high, which is reported by nextMessage()).
+	 */
+	private boolean isMessageComplete() {
+		if (getBuffer().remaining() < V2GTPMessage.HEADER_LENGTH) return false;
+		
+		long payloadLength = getBuffer().getInt(getBuffer().position() + 4) & 0xFFFFFFFFL;
+		
+		return payloadLength > getMaxPayloadLength() || 
+			   getBuffer().remaining() >= V2GTPMessage.HEADER_LENGTH + payloadLength;
+	}
+	
+	
+	private int readFrom(InputStream inStream) throws IOException {
+		prepareBuffer();
+		
+		int receivedBytes = getBuffer().limit();
+		int bytesRead = inStream.read(getBuffer().array(), receivedBytes, getBuffer().capacity() - receivedBytes);
+		
+		if (bytesRead > 0) getBuffer().limit(receivedBytes + bytesRead);
+		
+		return bytesRead;
+	}
+	
+	
+	/**
+	 * Moves the bytes not yet returned as V2GTPMessage to the beginning of the buffer and grows the buffer if the 
+	 * message currently being received does not fit. The buffer is never bigger than the header plus the maximum 
+	 * payload length.
+	 */
+	private void prepareBuffer() {
+		if (getBuffer().position() > 0) {
+			getBuffer().compact();
+			getBuffer().flip();
+		}
+		
+		if (getBuffer().capacity() < getRequiredMessageLength()) {
+			int newCapacity = Math.min(Math.max(2 * getBuffer().capacity(), getRequiredMessageLength()), 
+									   V2GTPMessage.HEADER_LENGTH + getMaxPayloadLength());
+			ByteBuffer biggerBuffer = ByteBuffer.allocate(newCapacity);
+			biggerBuffer.put(getBuffer());
+			biggerBuffer.flip();
+			setBuffer(biggerBuffer);
+		}
+	}
+	
+	
+	/**
+	 * Provides an empty receive buffer out of the pool, or a new one if the pool is empty.
+	 */
+	private static ByteBuffer acquireBuffer() {
+		ByteBuffer buffer = idleBuffers.poll();
+		
+		if (buffer == null) return ByteBuffer.allocate(POOLED_BUFFER_CAPACITY);
+		
+		idleBufferCount.decrementAndGet();
+		buffer.clear();
+		
+		return buffer;
+	}
+	
+	
+	/**
+	 * Hands the receive buffer of a processed message back to the pool. Buffers which have been grown for a 
+	 * big message are not pooled, neither are buffers beyond the maximum number of pooled buffers.
+	 * 
+	 * @param buffer The buffer which is no longer used by any V2GTPMessage
+	 */
+	static void releaseBuffer(ByteBuffer buffer) {
+		if (buffer.capacity() != POOLED_BUFFER_CAPACITY) return;
+		
+		if (idleBufferCount.incrementAndGet() <= MAX_POOLED_BUFFERS) idleBuffers.offer(buffer);
+		else idleBufferCount.decrementAndGet();
+	}
+	
+	
+	/**
+	 * @return The number of complete V2GTPMessages received so far
+	 */
+	public long getReceivedMessages() {
+		return receivedMessages;
+	}
+
+	/**
+	 * @return The number of reads which did not complete the V2GTPMessage being received
+	 */
+	public long getShortReads() {
+		return shortReads;
+	}
+
+	private ByteBuffer getBuffer() {
+		return buffer;
+	}
+
+	private void setBuffer(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	public int getMaxPayloadLength() {
+		return maxPayloadLength;
+	}
+
+	private void setMaxPayloadLength(int maxPayloadLength) {
+		this.maxPayloadLength = maxPayloadLength;
+	}
+
+	private int getRequiredMessageLength() {
+		return requiredMessageLength;
+	}
+
+	private void setRequiredMessageLength(int requiredMessageLength) {
+		this.requiredMessageLength = requiredMessageLength;
+	}
+}
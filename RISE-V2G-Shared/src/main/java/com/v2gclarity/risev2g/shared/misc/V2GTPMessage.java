@@ -23,24 +23,34 @@
  *******************************************************************************/
 package com.v2gclarity.risev2g.shared.misc;
 
-import java.nio.Buffer;
 import java.nio.ByteBuffer;
-import java.util.Arrays;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import com.v2gclarity.risev2g.shared.utils.ByteUtils;
 
+/**
+ * A V2G Transfer Protocol message, i.e. the 8 byte header (protocol version, inverse protocol version, 
+ * payload type and payload length) followed by the payload. 
+ * 
+ * The message is a view over one ByteBuffer holding the complete frame. The header fields are read from
+ * their offsets and the payload is provided as a slice of the frame, so that neither receiving nor 
+ * validating a message requires to copy the frame into separate arrays. A message received by a 
+ * V2GTPFrameDecoder owns the receive buffer it is a view over, which is to be handed back with release() 
+ * once the message has been decoded.
+ */
 public class V2GTPMessage {
 
+	public static final int HEADER_LENGTH = 8;
+	private static final int OFFSET_PROTOCOL_VERSION = 0;
+	private static final int OFFSET_INVERSE_PROTOCOL_VERSION = 1;
+	private static final int OFFSET_PAYLOAD_TYPE = 2;
+	private static final int OFFSET_PAYLOAD_LENGTH = 4;
+	
 	private Logger logger = LogManager.getLogger(this.getClass().getSimpleName());
-	private byte protocolVersion;
-	private byte inverseProtocolVersion;
-	private byte[] payload;
-	private byte[] payloadType;
-	private byte[] payloadLength;
-	private byte[] header = new byte[8];
-	private byte[] message;
+	private ByteBuffer frame;
+	// The pooled receive buffer the frame is a view over, null if the message does not own a pooled buffer
+	private ByteBuffer receiveBuffer;
 	
 	/**
 	 * Constructs a V2G Transfer Protocol message containing the header (which consists of the protocol version,
@@ -48,120 +58,175 @@ public class V2GTPMessage {
 	 * 
 	 * @param protocolVersion The protocol version to be used
 	 * @param payloadType 	  The type of the payload (EXI encoded message, SDP request or response)
+	 * @param payloadLength	  The value of the payload length field
 	 * @param payload		  The payload of the message to be sent
 	 */
 	public V2GTPMessage(byte protocolVersion, byte[] payloadType, byte[] payloadLength, byte[] payload) {
-		setProtocolVersion(protocolVersion);
-		setInverseProtocolVersion((byte) (protocolVersion ^ 0xFF)); 
-		setPayloadType(payloadType);
-		setPayloadLength(payloadLength);
-		setPayload(payload);
+		// Remark: The order of a newly created byte buffer is always big endian (see [V2G2-085] on page 27)
+		setFrame(ByteBuffer.allocate(HEADER_LENGTH + payload.length));
+		getFrame().put(protocolVersion)
+				  .put((byte) (protocolVersion ^ 0xFF))
+				  .put(payloadType, 0, 2)
+				  .put(payloadLength, 0, 4)
+				  .put(payload)
+				  .rewind();
 	}
 	
 	/**
+	 * Constructs a V2G Transfer Protocol message whose payload length field is set to the length of the 
+	 * given payload.
 	 * 
-	 * 
-	 * @param protocolVersion
-	 * @param payloadType
-	 * @param payload
+	 * @param protocolVersion The protocol version to be used
+	 * @param payloadType 	  The type of the payload (EXI encoded message, SDP request or response)
+	 * @param payload		  The payload of the message to be sent
 	 */
 	public V2GTPMessage(byte protocolVersion, byte[] payloadType, byte[] payload) {
-		setProtocolVersion(protocolVersion);
-		setInverseProtocolVersion((byte) (protocolVersion ^ 0xFF)); 
-		setPayloadType(payloadType);
-		setPayloadLength(ByteUtils.toByteArrayFromInt(payload.length, false));
-		setPayload(payload);
+		this(protocolVersion, payloadType, ByteUtils.toByteArrayFromInt(payload.length, false), payload);
 	}
 	
 	/**
 	 * Constructs a V2G Transfer Protocol message containing the header (which consists of the protocol version,
 	 * the inverse protocol version, the payload type and payload length) and the payload. 
 	 * 
-	 * @param byteArray The respective fields of the V2G Transfer Protocol message are set by assigning the
-	 * 					respective bytes from the array to the fields.
+	 * @param byteArray The received V2G Transfer Protocol message. The array is used as is, without copying it.
 	 */
 	public V2GTPMessage(byte[] byteArray) {
+		this(byteArray != null ? ByteBuffer.wrap(byteArray) : null);
+	}
+	
+	/**
+	 * Constructs a view over a received V2G Transfer Protocol message without copying it.
+	 * 
+	 * @param frame The buffer whose remaining bytes hold the header followed by the payload
+	 */
+	public V2GTPMessage(ByteBuffer frame) {
 		// Check if this could be a real V2GTPMessage which has 8 bytes of header
-		if (byteArray != null && byteArray.length >= 8) {
-			setProtocolVersion(Arrays.copyOfRange(byteArray, 0, 1)[0]);
-			setInverseProtocolVersion(Arrays.copyOfRange(byteArray, 1, 2)[0]);
-			setPayloadType(Arrays.copyOfRange(byteArray, 2, 4));
-			setPayloadLength(Arrays.copyOfRange(byteArray, 4, 8));
-			// TODO make sure the byteArray is not too long to not generate a Java heap space OutOfMemoryError
-			setPayload(Arrays.copyOfRange(byteArray, 8, byteArray.length));
+		if (frame != null && frame.remaining() >= HEADER_LENGTH) {
+			setFrame(frame.slice());
 		} else {
 			getLogger().error("Received byte array does not match a V2GTPMessage");
+			
+			// An all-zero header is rejected by the header validation due to the unsupported protocol version
+			setFrame(ByteBuffer.allocate(HEADER_LENGTH));
 		}
 	}
 	
-	public byte getProtocolVersion() {
-		return protocolVersion;
+	/**
+	 * Constructs a view over a message received by the V2GTPFrameDecoder, which hands over the ownership of 
+	 * its receive buffer.
+	 * 
+	 * @param frame The view over the header followed by the payload
+	 * @param receiveBuffer The receive buffer to be handed back to the decoder's pool by release()
+	 */
+	V2GTPMessage(ByteBuffer frame, ByteBuffer receiveBuffer) {
+		this(frame);
+		this.receiveBuffer = receiveBuffer;
 	}
-
-	public void setProtocolVersion(byte protocolVersion) {
-		this.protocolVersion = protocolVersion;
-		
-		setInverseProtocolVersion(protocolVersion);
+	
+	public byte getProtocolVersion() {
+		return getFrame().get(OFFSET_PROTOCOL_VERSION);
 	}
 
 	public byte getInverseProtocolVersion() {
-		return inverseProtocolVersion;
-	}
-	
-	private void setInverseProtocolVersion(byte inverseProtocolVersion) {
-		this.inverseProtocolVersion = inverseProtocolVersion;
+		return getFrame().get(OFFSET_INVERSE_PROTOCOL_VERSION);
 	}
 
-
+	/**
+	 * Provides a copy of the payload. Use getPayloadBuffer() to access the payload without copying it.
+	 * 
+	 * @return The payload as byte array
+	 */
 	public byte[] getPayload() {
+		byte[] payload = new byte[getFrame().limit() - HEADER_LENGTH];
+		
+		ByteBuffer payloadBuffer = getPayloadBuffer();
+		payloadBuffer.get(payload);
+		
 		return payload;
 	}
-
-	public void setPayload(byte[] payload) {
-		this.payload = payload;
+	
+	/**
+	 * Provides the payload as a slice of the frame, i.e. without copying it.
+	 * 
+	 * @return The payload, the buffer's position is 0 and its limit the payload's length
+	 */
+	public ByteBuffer getPayloadBuffer() {
+		ByteBuffer payloadBuffer = getFrame().duplicate();
+		payloadBuffer.position(HEADER_LENGTH);
+		
+		return payloadBuffer.slice();
 	}
 	
 	public byte[] getPayloadType() {
-		return payloadType;
+		return new byte[] {getFrame().get(OFFSET_PAYLOAD_TYPE), getFrame().get(OFFSET_PAYLOAD_TYPE + 1)};
 	}
-
-	public void setPayloadType(byte[] payloadType) {
-		this.payloadType = payloadType;
+	
+	/**
+	 * Checks the payload type field without copying it.
+	 * 
+	 * @param payloadType The 2 byte payload type to compare with (see GlobalValues.V2GTP_PAYLOAD_TYPE_...)
+	 * @return True, if the message has the given payload type
+	 */
+	public boolean hasPayloadType(byte[] payloadType) {
+		return getFrame().get(OFFSET_PAYLOAD_TYPE) == payloadType[0] && 
+			   getFrame().get(OFFSET_PAYLOAD_TYPE + 1) == payloadType[1];
 	}
 
 	public byte[] getPayloadLength() {
-		return payloadLength;
+		return ByteUtils.toByteArrayFromInt(getFrame().getInt(OFFSET_PAYLOAD_LENGTH), false);
+	}
+	
+	/**
+	 * Provides the value of the payload length field, interpreted as unsigned integer (see [V2G2-085]).
+	 * 
+	 * @return The payload length according to the header
+	 */
+	public long getPayloadLengthValue() {
+		return getFrame().getInt(OFFSET_PAYLOAD_LENGTH) & 0xFFFFFFFFL;
 	}
 	
-	private void setPayloadLength(byte[] payloadLength) {
-		this.payloadLength = payloadLength;
+	/**
+	 * Provides the actual length of the payload held by this message.
+	 * 
+	 * @return The number of bytes following the header
+	 */
+	public int getPayloadSize() {
+		return getFrame().limit() - HEADER_LENGTH;
 	}
 	
 	/**
 	 * Returns a byte array representation of the V2GTPMessage. This byte array contains the 
 	 * protocolVersion, inverseProtocolVersion, payloadType, payloadLength and the payload itself.
+	 * If the frame exactly spans its backing array (which is the case for messages to be sent), the 
+	 * backing array itself is returned.
 	 * <p>
 	 * @return byte[] The V2GTPMessage byte array
 	 */
 	public byte[] getMessage() {
-		// Remark: The order of a newly created byte buffer is always big endian (see [V2G2-085] on page 27)
-		ByteBuffer messageBuffer = ByteBuffer.allocate(8 + this.getPayload().length);
-		messageBuffer.put(this.protocolVersion)
-			  		 .put(this.inverseProtocolVersion)
-			  		 .put(this.payloadType)
-				     .put(this.payloadLength)
-					 .put(this.getPayload());
-		this.message = new byte[messageBuffer.capacity()];
+		if (getFrame().hasArray() && getFrame().arrayOffset() == 0 && getFrame().array().length == getFrame().limit()) 
+			return getFrame().array();
 		
-		// Sets the messageBuffers's position in order for the .get() message to work without 
-		// throwing a BufferUnderflowException
-		((Buffer)messageBuffer).position(0);
+		byte[] message = new byte[getFrame().limit()];
+		getFrame().duplicate().get(message);
 		
-		messageBuffer.get(this.message);
-
-		return this.message; 
+		return message; 
 	}
 
+	/**
+	 * Hands the receive buffer of this message back to the pool of the V2GTPFrameDecoder. The message must 
+	 * not be accessed anymore afterwards, as the buffer is reused for receiving other messages. Has no 
+	 * effect for messages which do not own a pooled buffer, and for messages which have already been released.
+	 * 
+	 * The release is not synchronized, a message is to be released by the thread processing it.
+	 */
+	public void release() {
+		if (receiveBuffer == null) return;
+		
+		ByteBuffer buffer = receiveBuffer;
+		receiveBuffer = null;
+		V2GTPFrameDecoder.releaseBuffer(buffer);
+	}
+	
 	public Logger getLogger() {
 		return logger;
 	}
@@ -171,11 +236,17 @@ public class V2GTPMessage {
 	}
 
 	public byte[] getHeader() {
+		byte[] header = new byte[HEADER_LENGTH];
+		getFrame().duplicate().get(header);
+		
 		return header;
 	}
 
-	public void setHeader(byte[] header) {
-		this.header = header;
+	private ByteBuffer getFrame() {
+		return frame;
 	}
 
+	private void setFrame(ByteBuffer frame) {
+		this.frame = frame;
+	}
 }
@@ -26,7 +26,6 @@ package com.v2gclarity.risev2g.shared.utils;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.BufferOverflowException;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
 
@@ -187,35 +186,29 @@ public final class ByteUtils {
 	}
 	
 	/**
-	 * Returns a long value out of a byte array.
+	 * Returns a long value out of a byte array (Big Endian). The value is computed without allocating a buffer, 
+	 * as this method is used for every session ID lookup.
 	 * 
 	 * @param byteArray The byte array to be converted into its decimal representation
 	 * @return The long value representing the byte array
 	 */
 	public static long toLongFromByteArray(byte[] byteArray) {
-		// Allocating a byte buffer holding 8 bytes for the long value
-		ByteBuffer bb = ByteBuffer.allocate(8);
-			
-		// In case the provided byte array is smaller than 8 bytes (e.g. int has 4 bytes), take care that they are placed at the right-most position
-		if (byteArray.length < 8) {
-			((Buffer)bb).position(8-byteArray.length);
-			bb.put(byteArray);
-		} else {
-			try {
-				bb.put(byteArray);
-			} catch (BufferOverflowException e) {
-				getLogger().warn("Byte array length is too big (" + byteArray.length + " bytes) to be converted " +
-								 "into a long value. Only the right-most 8 bytes (least significant bytes " +
-								 "according to Big Endian) are used.", e);
-				((Buffer)bb).position(0);
-				bb.put(byteArray, byteArray.length - 8, byteArray.length);
-			}
+		int start = 0;
+		
+		if (byteArray.length > 8) {
+			getLogger().warn("Byte array length is too big (" + byteArray.length + " bytes) to be converted " +
+							 "into a long value. Only the right-most 8 bytes (least significant bytes " +
+							 "according to Big Endian) are used.");
+			start = byteArray.length - 8;
 		}
 		
-		// Setting the current position to 0, otherwise getLong() would throw a BufferUnderflowException
-		((Buffer)bb).position(0);
+		// In case the provided byte array is smaller than 8 bytes (e.g. int has 4 bytes), the bytes end up at the right-most position
+		long value = 0;
+		for (int i = start; i < byteArray.length; i++) {
+			value = (value << 8) | (byteArray[i] & 0xFF);
+		}
 		
-		return bb.getLong();
+		return value;
 	}
 	
 	
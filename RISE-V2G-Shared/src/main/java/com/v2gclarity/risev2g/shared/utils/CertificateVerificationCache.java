@@ -0,0 +1,217 @@
+/*******************************************************************************
+ *  The MIT License (MIT)
+ *
+ *  Copyright (c) 2015 - 2019  Dr. Marc Mültin (V2G Clarity)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ *******************************************************************************/
+package com.v2gclarity.risev2g.shared.utils;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Memoizes the expensive parts of a certificate chain verification: the parsing of DER encoded certificates and 
+ * the signature verifications between a certificate and its issuing certificate. The same contract and OEM 
+ * provisioning certificate chains are presented over and over again (e.g. with each PaymentDetailsReq), so a 
+ * repeated verification only needs to check the validity periods and the leaf certificate attributes.
+ * 
+ * Both caches are keyed by the SHA-256 fingerprint of the DER encoded certificates. An entry is dropped as soon as 
+ * one of the involved certificates expired (notAfter) and the least recently used entry is evicted once a cache 
+ * reaches its maximum size. Only successful signature verifications are remembered, a failed verification is 
+ * repeated (and logged) every time.
+ */
+public final class CertificateVerificationCache {
+	
+	// -- BEGIN: SINGLETON DEFINITION --
+	/*
+	 *  Eager instantiation of the singleton. The JVM creates the unique instance when the class is loaded and 
+	 *  before any thread tries to access the instance variable -> thread safe.
+	 */
+	private static final CertificateVerificationCache instance = new CertificateVerificationCache();
+	
+	/*
+	 * A certificate chain consists of up to three certificates plus the root certificate. Some hundred entries 
+	 * are sufficient for the chains of all contracts and vehicles seen by a charging station on a busy day.
+	 */
+	public static final int MAX_CERTIFICATES = 512;
+	public static final int MAX_VERIFIED_SIGNATURES = 512;
+	
+	private Logger logger = LogManager.getLogger(this.getClass().getSimpleName());
+	// The parsed certificates per fingerprint of their DER encoding
+	private Map<String, X509Certificate> certificates;
+	// The expiry (in ms) of a successfully verified signature per fingerprints of certificate and issuing certificate
+	private Map<String, Long> verifiedSignatures;
+	
+	private CertificateVerificationCache() {
+		setCertificates(Collections.synchronizedMap(new LruMap<String, X509Certificate>(MAX_CERTIFICATES)));
+		setVerifiedSignatures(Collections.synchronizedMap(new LruMap<String, Long>(MAX_VERIFIED_SIGNATURES)));
+	}
+	
+	public static CertificateVerificationCache getInstance() {
+		return instance;
+	}
+	// -- END: SINGLETON DEFINITION --
+	
+	
+	/**
+	 * Provides the cached certificate with the given DER encoding, or parses it with the given parser if it has 
+	 * not been cached yet or if it has expired.
+	 * 
+	 * @param encodedCertificate The DER encoded X.509 certificate
+	 * @param parser Creates the X.509 certificate from its DER encoding, returns null if the encoding is invalid
+	 * @return The X.509 certificate, or null if it could not be parsed
+	 */
+	public X509Certificate getCertificate(byte[] encodedCertificate, Function<byte[], X509Certificate> parser) {
+		if (encodedCertificate == null) return parser.apply(encodedCertificate);
+		
+		String fingerprint = getFingerprint(encodedCertificate);
+		X509Certificate certificate = getCertificates().get(fingerprint);
+		
+		if (certificate != null && !isExpired(certificate.getNotAfter().getTime())) return certificate;
+		
+		certificate = parser.apply(encodedCertificate);
+		
+		if (certificate != null && !isExpired(certificate.getNotAfter().getTime())) 
+			getCertificates().put(fingerprint, certificate);
+		else 
+			getCertificates().remove(fingerprint);
+		
+		return certificate;
+	}
+	
+	
+	/**
+	 * Checks if the signature of the given certificate has already been verified successfully with the public key 
+	 * of the given issuing certificate, or verifies it with the given verifier otherwise.
+	 * 
+	 * @param certificate The X.509 certificate whose signature is to be verified
+	 * @param issuingCertificate The X.509 certificate holding the public key of the issuer
+	 * @param verifier Verifies the signature, returns true if the verification was successful
+	 * @return True, if the signature is valid, false otherwise
+	 */
+	public boolean verifySignature(X509Certificate certificate, X509Certificate issuingCertificate, BooleanSupplier verifier) {
+		String key = getFingerprint(certificate) + ":" + getFingerprint(issuingCertificate);
+		Long expiry = getVerifiedSignatures().get(key);
+		
+		if (expiry != null && !isExpired(expiry)) return true;
+		
+		if (!verifier.getAsBoolean()) {
+			getVerifiedSignatures().remove(key);
+			return false;
+		}
+		
+		expiry = Math.min(certificate.getNotAfter().getTime(), issuingCertificate.getNotAfter().getTime());
+		if (!isExpired(expiry)) getVerifiedSignatures().put(key, expiry);
+		
+		return true;
+	}
+	
+	
+	/**
+	 * Removes all cached certificates and verified signatures, e.g. after a root certificate has been revoked.
+	 */
+	public void clear() {
+		getCertificates().clear();
+		getVerifiedSignatures().clear();
+	}
+	
+	
+	private boolean isExpired(long notAfter) {
+		return System.currentTimeMillis() > notAfter;
+	}
+	
+	
+	/**
+	 * @return The SHA-256 fingerprint of the given certificate, or a key which is never cached if the 
+	 * 		   certificate cannot be encoded
+	 */
+	private String getFingerprint(X509Certificate certificate) {
+		try {
+			return getFingerprint(certificate.getEncoded());
+		} catch (CertificateEncodingException e) {
+			getLogger().warn("CertificateEncodingException occurred while trying to get fingerprint of certificate", e);
+			return "unencodable@" + System.identityHashCode(certificate);
+		}
+	}
+	
+	
+	private String getFingerprint(byte[] encodedCertificate) {
+		try {
+			return ByteUtils.toHexString(JcaEngines.getSHA256MessageDigest().digest(encodedCertificate));
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	
+	/**
+	 * A map in access order which removes the least recently used entry once its maximum size is exceeded.
+	 */
+	private static final class LruMap<K, V> extends LinkedHashMap<K, V> {
+		
+		private static final long serialVersionUID = 1L;
+		private final int maxSize;
+		
+		private LruMap(int maxSize) {
+			super(16, 0.75f, true);
+			this.maxSize = maxSize;
+		}
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+			return size() > maxSize;
+		}
+	}
+	
+	
+	public Logger getLogger() {
+		return logger;
+	}
+
+	public void setLogger(Logger logger) {
+		this.logger = logger;
+	}
+
+	private Map<String, X509Certificate> getCertificates() {
+		return certificates;
+	}
+
+	private void setCertificates(Map<String, X509Certificate> certificates) {
+		this.certificates = certificates;
+	}
+
+	private Map<String, Long> getVerifiedSignatures() {
+		return verifiedSignatures;
+	}
+
+	private void setVerifiedSignatures(Map<String, Long> verifiedSignatures) {
+		this.verifiedSignatures = verifiedSignatures;
+	}
+}
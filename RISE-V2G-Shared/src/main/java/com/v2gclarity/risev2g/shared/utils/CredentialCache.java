@@ -0,0 +1,300 @@
+/*******************************************************************************
+ *  The MIT License (MIT)
+ *
+ *  Copyright (c) 2015 - 2019  Dr. Marc Mültin (V2G Clarity)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ *******************************************************************************/
+package com.v2gclarity.risev2g.shared.utils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.KeyStore;
+import java.security.interfaces.ECPrivateKey;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Keeps the keystores, truststores, PKCS#12 containers and PKCS#8 private key files in memory once they have been 
+ * loaded from disk, as well as the private keys which have been recovered from the cached keystores and the trust 
+ * anchor indexes built for the cached truststores. Loading a 
+ * keystore and recovering a private key involves password-based decryption, which is far too expensive to be 
+ * done for every message to be signed (e.g. the MeteringReceiptReq during the charging loop).
+ * 
+ * A cached file is loaded again as soon as its modification time or size changed, e.g. after a new contract 
+ * certificate has been saved to the EVCC keystore. Checking this costs one file system access per lookup.
+ * 
+ * The cached keystores are shared by all callers and must therefore not be modified. The loading itself is 
+ * done by the given loader of the caller (see SecurityUtils), which also logs the errors. Failed loads are 
+ * not cached.
+ */
+public final class CredentialCache {
+	
+	// -- BEGIN: SINGLETON DEFINITION --
+	/*
+	 *  Eager instantiation of the singleton. The JVM creates the unique instance when the class is loaded and 
+	 *  before any thread tries to access the instance variable -> thread safe.
+	 */
+	private static final CredentialCache instance = new CredentialCache();
+	
+	private Logger logger = LogManager.getLogger(this.getClass().getSimpleName());
+	// The keystores per type and file path
+	private ConcurrentHashMap<String, CachedFile<KeyStore>> keyStores;
+	// The private keys read from PKCS#8 files per file path
+	private ConcurrentHashMap<String, CachedFile<ECPrivateKey>> pkcs8PrivateKeys;
+	/*
+	 * The private keys already recovered from a cached keystore per alias. The keystores are only weakly 
+	 * referenced, so the recovered keys are dropped together with a replaced keystore.
+	 */
+	private Map<KeyStore, ConcurrentHashMap<String, ECPrivateKey>> recoveredPrivateKeys;
+	// The trust anchor indexes built for the cached truststores, again with weakly referenced keystores
+	private Map<KeyStore, TrustAnchorIndex> trustAnchorIndexes;
+	
+	private CredentialCache() {
+		setKeyStores(new ConcurrentHashMap<String, CachedFile<KeyStore>>());
+		setPkcs8PrivateKeys(new ConcurrentHashMap<String, CachedFile<ECPrivateKey>>());
+		setRecoveredPrivateKeys(Collections.synchronizedMap(new WeakHashMap<KeyStore, ConcurrentHashMap<String, ECPrivateKey>>()));
+		setTrustAnchorIndexes(Collections.synchronizedMap(new WeakHashMap<KeyStore, TrustAnchorIndex>()));
+	}
+	
+	public static CredentialCache getInstance() {
+		return instance;
+	}
+	// -- END: SINGLETON DEFINITION --
+	
+	
+	/**
+	 * Provides the cached keystore of the given file, or loads it with the given loader if it has not been 
+	 * cached yet, if the file has been modified since or if a different password is given.
+	 * 
+	 * @param filePath The relative path and file name of the keystore
+	 * @param password The password which protects the keystore
+	 * @param keyStoreType The type of the keystore, either "jks" or "pkcs12"
+	 * @param loader Loads the keystore from the file, returns null if the keystore cannot be loaded
+	 * @return The keystore, which must not be modified, or null if it could not be loaded
+	 */
+	public KeyStore getKeyStore(String filePath, String password, String keyStoreType, Supplier<KeyStore> loader) {
+		String key = keyStoreType + ":" + toAbsolutePath(filePath);
+		CachedFile<KeyStore> cachedKeyStore = getKeyStores().get(key);
+		BasicFileAttributes fileAttributes = readFileAttributes(filePath);
+		
+		if (cachedKeyStore != null && cachedKeyStore.isValid(fileAttributes, password)) 
+			return cachedKeyStore.getValue();
+		
+		KeyStore keyStore = loader.get();
+		
+		if (keyStore != null && fileAttributes != null) {
+			getRecoveredPrivateKeys().put(keyStore, new ConcurrentHashMap<String, ECPrivateKey>());
+			getKeyStores().put(key, new CachedFile<KeyStore>(keyStore, password, fileAttributes));
+			getLogger().debug("Keystore '" + filePath + "' loaded and cached");
+		} else {
+			getKeyStores().remove(key);
+		}
+		
+		return keyStore;
+	}
+	
+	
+	/**
+	 * Provides the cached private key of the given PKCS#8 file, or reads it with the given loader if it has not 
+	 * been cached yet or if the file has been modified since.
+	 * 
+	 * @param keyFilePath The relative path and file name of the PKCS#8 file
+	 * @param loader Reads the private key from the file, returns null if the private key cannot be read
+	 * @return The private key, or null if it could not be read
+	 */
+	public ECPrivateKey getPrivateKey(String keyFilePath, Supplier<ECPrivateKey> loader) {
+		String key = toAbsolutePath(keyFilePath);
+		CachedFile<ECPrivateKey> cachedPrivateKey = getPkcs8PrivateKeys().get(key);
+		BasicFileAttributes fileAttributes = readFileAttributes(keyFilePath);
+		
+		if (cachedPrivateKey != null && cachedPrivateKey.isValid(fileAttributes, null)) 
+			return cachedPrivateKey.getValue();
+		
+		ECPrivateKey privateKey = loader.get();
+		
+		if (privateKey != null && fileAttributes != null) 
+			getPkcs8PrivateKeys().put(key, new CachedFile<ECPrivateKey>(privateKey, null, fileAttributes));
+		else getPkcs8PrivateKeys().remove(key);
+		
+		return privateKey;
+	}
+	
+	
+	/**
+	 * Provides the private key with the given alias which has already been recovered from the given keystore, 
+	 * or recovers it with the given loader. The recovered key is only kept if the keystore is one of the cached 
+	 * keystores, for any other keystore the loader is called every time.
+	 * 
+	 * @param keyStore The keystore holding the private key
+	 * @param alias The alias of the private key entry, or null if the keystore holds only one private key 
+	 * @param loader Recovers the private key from the keystore, returns null if it cannot be recovered
+	 * @return The private key, or null if it could not be recovered
+	 */
+	public ECPrivateKey getPrivateKey(KeyStore keyStore, String alias, Supplier<ECPrivateKey> loader) {
+		ConcurrentHashMap<String, ECPrivateKey> privateKeys = (keyStore != null) ? getRecoveredPrivateKeys().get(keyStore) : null;
+		
+		if (privateKeys == null) return loader.get();
+		
+		String key = (alias != null) ? alias : "";
+		ECPrivateKey privateKey = privateKeys.get(key);
+		
+		if (privateKey == null) {
+			privateKey = loader.get();
+			if (privateKey != null) privateKeys.put(key, privateKey);
+		}
+		
+		return privateKey;
+	}
+	
+	
+	/**
+	 * Provides the trust anchor index which has already been built for the given truststore, or builds it with 
+	 * the given builder. As with the recovered private keys, the index is only kept if the truststore is one of 
+	 * the cached keystores.
+	 * 
+	 * @param trustStore The truststore holding the root certificates
+	 * @param builder Builds the index over the truststore, returns null if the index cannot be built
+	 * @return The trust anchor index, or null if it could not be built
+	 */
+	public TrustAnchorIndex getTrustAnchorIndex(KeyStore trustStore, Supplier<TrustAnchorIndex> builder) {
+		if (trustStore == null || !getRecoveredPrivateKeys().containsKey(trustStore)) return builder.get();
+		
+		TrustAnchorIndex trustAnchorIndex = getTrustAnchorIndexes().get(trustStore);
+		
+		if (trustAnchorIndex == null) {
+			trustAnchorIndex = builder.get();
+			if (trustAnchorIndex != null) getTrustAnchorIndexes().put(trustStore, trustAnchorIndex);
+		}
+		
+		return trustAnchorIndex;
+	}
+	
+	
+	/**
+	 * Removes the given file from the cache, e.g. after it has been written. The next lookup loads it again.
+	 * 
+	 * @param filePath The relative path and file name of a keystore or PKCS#8 file
+	 */
+	public void invalidate(String filePath) {
+		String absolutePath = toAbsolutePath(filePath);
+		
+		getKeyStores().keySet().removeIf(key -> key.endsWith(":" + absolutePath));
+		getPkcs8PrivateKeys().remove(absolutePath);
+	}
+	
+	
+	private String toAbsolutePath(String filePath) {
+		return Paths.get(filePath).toAbsolutePath().normalize().toString();
+	}
+	
+	
+	/**
+	 * @return The attributes of the given file, or null if the file does not exist or cannot be accessed
+	 */
+	private BasicFileAttributes readFileAttributes(String filePath) {
+		try {
+			Path path = Paths.get(filePath);
+			return Files.readAttributes(path, BasicFileAttributes.class);
+		} catch (IOException | RuntimeException e) {
+			return null;
+		}
+	}
+	
+	
+	/**
+	 * A value loaded from a file together with the file's modification time and size at the time of loading.
+	 */
+	private static final class CachedFile<T> {
+		
+		private final T value;
+		private final String password;
+		private final long lastModified;
+		private final long size;
+		
+		private CachedFile(T value, String password, BasicFileAttributes fileAttributes) {
+			this.value = value;
+			this.password = password;
+			this.lastModified = fileAttributes.lastModifiedTime().toMillis();
+			this.size = fileAttributes.size();
+		}
+		
+		private boolean isValid(BasicFileAttributes fileAttributes, String password) {
+			return fileAttributes != null &&
+				   fileAttributes.lastModifiedTime().toMillis() == lastModified &&
+				   fileAttributes.size() == size &&
+				   Objects.equals(this.password, password);
+		}
+		
+		private T getValue() {
+			return value;
+		}
+	}
+	
+	
+	public Logger getLogger() {
+		return logger;
+	}
+
+	public void setLogger(Logger logger) {
+		this.logger = logger;
+	}
+
+	private ConcurrentHashMap<String, CachedFile<KeyStore>> getKeyStores() {
+		return keyStores;
+	}
+
+	private void setKeyStores(ConcurrentHashMap<String, CachedFile<KeyStore>> keyStores) {
+		this.keyStores = keyStores;
+	}
+
+	private ConcurrentHashMap<String, CachedFile<ECPrivateKey>> getPkcs8PrivateKeys() {
+		return pkcs8PrivateKeys;
+	}
+
+	private void setPkcs8PrivateKeys(ConcurrentHashMap<String, CachedFile<ECPrivateKey>> pkcs8PrivateKeys) {
+		this.pkcs8PrivateKeys = pkcs8PrivateKeys;
+	}
+
+	private Map<KeyStore, ConcurrentHashMap<String, ECPrivateKey>> getRecoveredPrivateKeys() {
+		return recoveredPrivateKeys;
+	}
+
+	private void setRecoveredPrivateKeys(Map<KeyStore, ConcurrentHashMap<String, ECPrivateKey>> recoveredPrivateKeys) {
+		this.recoveredPrivateKeys = recoveredPrivateKeys;
+	}
+
+	private Map<KeyStore, TrustAnchorIndex> getTrustAnchorIndexes() {
+		return trustAnchorIndexes;
+	}
+
+	private void setTrustAnchorIndexes(Map<KeyStore, TrustAnchorIndex> trustAnchorIndexes) {
+		this.trustAnchorIndexes = trustAnchorIndexes;
+	}
+}
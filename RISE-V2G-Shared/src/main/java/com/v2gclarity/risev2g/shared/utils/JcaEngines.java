@@ -0,0 +1,144 @@
+/*******************************************************************************
+ *  The MIT License (MIT)
+ *
+ *  Copyright (c) 2015 - 2019  Dr. Marc Mültin (V2G Clarity)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ *******************************************************************************/
+package com.v2gclarity.risev2g.shared.utils;
+
+import java.security.AlgorithmParameters;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.InvalidParameterSpecException;
+
+/**
+ * Provides the JCA engines (MessageDigest, Signature, KeyFactory) needed for the XML signatures of the 
+ * V2G messages. Looking up an engine via getInstance() iterates over the installed security providers, which 
+ * is expensive compared to e.g. hashing a message body, and even more so if several threads do it at the 
+ * same time. The engines are not thread-safe, therefore each thread gets its own instances which are reused 
+ * for all subsequent calls of that thread.
+ * 
+ * The returned engine must only be used by the calling thread and must not be handed over to other threads. 
+ * A Signature needs to be initialized with initSign() or initVerify() before each use, which also resets any 
+ * state of a previous (failed) use. A MessageDigest is returned reset.
+ */
+public final class JcaEngines {
+	
+	private static final ThreadLocal<MessageDigest> sha256MessageDigest = new ThreadLocal<>();
+	// Signature engine used for signing, explicitly taken from the SunEC provider
+	private static final ThreadLocal<Signature> sunECSignature = new ThreadLocal<>();
+	// Signature engine used for verifying, taken from the most preferred provider supporting the algorithm
+	private static final ThreadLocal<Signature> signature = new ThreadLocal<>();
+	private static final ThreadLocal<KeyFactory> ecKeyFactory = new ThreadLocal<>();
+	// Immutable, therefore shared by all threads
+	private static volatile ECParameterSpec secp256r1ParameterSpec;
+	
+	private JcaEngines() {
+	}
+	
+	
+	/**
+	 * @return The SHA-256 message digest of the calling thread, reset to its initial state
+	 * @throws NoSuchAlgorithmException If no provider supports SHA-256
+	 */
+	public static MessageDigest getSHA256MessageDigest() throws NoSuchAlgorithmException {
+		MessageDigest md = sha256MessageDigest.get();
+		
+		if (md == null) {
+			md = MessageDigest.getInstance("SHA-256");
+			sha256MessageDigest.set(md);
+		} else md.reset();
+		
+		return md;
+	}
+	
+	
+	/**
+	 * @return The SHA256withECDSA signature engine of the SunEC provider of the calling thread, used for signing
+	 * @throws NoSuchAlgorithmException If the SunEC provider does not support SHA256withECDSA
+	 * @throws NoSuchProviderException If the SunEC provider is not installed
+	 */
+	public static Signature getSHA256withECDSASignatureSunEC() throws NoSuchAlgorithmException, NoSuchProviderException {
+		Signature ecdsa = sunECSignature.get();
+		
+		if (ecdsa == null) {
+			ecdsa = Signature.getInstance("SHA256withECDSA", "SunEC");
+			sunECSignature.set(ecdsa);
+		}
+		
+		return ecdsa;
+	}
+	
+	
+	/**
+	 * @return The SHA256withECDSA signature engine of the calling thread, used for verifying
+	 * @throws NoSuchAlgorithmException If no provider supports SHA256withECDSA
+	 */
+	public static Signature getSHA256withECDSASignature() throws NoSuchAlgorithmException {
+		Signature ecdsa = signature.get();
+		
+		if (ecdsa == null) {
+			ecdsa = Signature.getInstance("SHA256withECDSA");
+			signature.set(ecdsa);
+		}
+		
+		return ecdsa;
+	}
+	
+	
+	/**
+	 * @return The elliptic curve key factory of the calling thread
+	 * @throws NoSuchAlgorithmException If no provider supports EC keys
+	 */
+	public static KeyFactory getECKeyFactory() throws NoSuchAlgorithmException {
+		KeyFactory kf = ecKeyFactory.get();
+		
+		if (kf == null) {
+			kf = KeyFactory.getInstance("EC");
+			ecKeyFactory.set(kf);
+		}
+		
+		return kf;
+	}
+	
+	
+	/**
+	 * @return The domain parameters of the named elliptic curve secp256r1, the only curve allowed by ISO 15118-2
+	 * @throws NoSuchAlgorithmException If no provider supports EC parameters
+	 * @throws InvalidParameterSpecException If the curve secp256r1 is not supported
+	 */
+	public static ECParameterSpec getSecp256r1ParameterSpec() throws NoSuchAlgorithmException, InvalidParameterSpecException {
+		ECParameterSpec ecParameterSpec = secp256r1ParameterSpec;
+		
+		if (ecParameterSpec == null) {
+			AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+			parameters.init(new ECGenParameterSpec("secp256r1"));
+			ecParameterSpec = parameters.getParameterSpec(ECParameterSpec.class);
+			secp256r1ParameterSpec = ecParameterSpec;
+		}
+		
+		return ecParameterSpec;
+	}
+}
@@ -57,12 +57,21 @@ public final class MiscUtils {
 	
 	/**
 	 * Determines the link-local IPv6 address which is configured on the network interface provided
-	 * in the properties file.
+	 * in the properties file. If several network interfaces are listed (SECC serving several EVSEs), the 
+	 * first one is used.
 	 * @return The link-local address given as a String
 	 */
 	public static Inet6Address getLinkLocalAddress() {
-		String networkInterfaceConfig = getPropertyValue("network.interface").toString();
-		
+		return getLinkLocalAddress(getPropertyValue("network.interface").toString().split(",")[0]);
+	}
+	
+	
+	/**
+	 * Determines the link-local IPv6 address which is configured on the given network interface.
+	 * @param networkInterfaceConfig The name (or index on Windows) of the network interface
+	 * @return The link-local address, or null if none could be found
+	 */
+	public static Inet6Address getLinkLocalAddress(String networkInterfaceConfig) {
 		NetworkInterface nif = null;
 		
 		try {
@@ -151,6 +160,58 @@ public final class MiscUtils {
 		case "network.interface": // EV + EVSE property
 			returnValue = propertyValue;
 			break;
+		case "evse.id": // EVSE property
+			// One EVSE ID per network interface listed in property 'network.interface'
+			ArrayList<String> evseIDs = new ArrayList<String>();
+			if (!propertyValue.equals("")) {
+				for (String evseID : propertyValue.split(",")) evseIDs.add(evseID);
+			}
+			returnValue = evseIDs;
+			break;
+		case "network.transport": // EVSE property
+			if (propertyValue.equals("nio")) returnValue = "nio";
+			else returnValue = "socket";
+			break;
+		case "network.transport.nio.eventloops": // EVSE property
+			try {
+				returnValue = Integer.parseInt(propertyValue);
+				if ((int) returnValue < 1) throw new NumberFormatException("At least one event loop is needed");
+			} catch (NumberFormatException e) {
+				getLogger().warn("Number of event loops '" + propertyValue + "' listed in properties file is not supported. " +
+							     "Setting default value to 1.", e);
+				getProperties().setProperty("network.transport.nio.eventloops", "1");
+				returnValue = 1;
+			}
+			break;
+		case "transport.threads": // EV + EVSE property
+			if (propertyValue.equals("virtual")) returnValue = "virtual";
+			else returnValue = "platform";
+			break;
+		case "session.paused.ttl": // EVSE property
+			try {
+				returnValue = Long.parseLong(propertyValue);
+				if ((long) returnValue < 0) throw new NumberFormatException("The time to live must not be negative");
+			} catch (NumberFormatException e) {
+				getLogger().warn("Time to live of paused sessions '" + propertyValue + "' listed in properties file is not supported. " +
+							     "Setting default value to 86400 seconds.", e);
+				getProperties().setProperty("session.paused.ttl", "86400");
+				returnValue = 86400L;
+			}
+			break;
+		case "session.paused.maxsessions": // EVSE property
+			try {
+				returnValue = Integer.parseInt(propertyValue);
+				if ((int) returnValue < 1) throw new NumberFormatException("At least one paused session must be kept");
+			} catch (NumberFormatException e) {
+				getLogger().warn("Maximum number of paused sessions '" + propertyValue + "' listed in properties file is not supported. " +
+							     "Setting default value to 1000.", e);
+				getProperties().setProperty("session.paused.maxsessions", "1000");
+				returnValue = 1000;
+			}
+			break;
+		case "session.paused.file": // EVSE property
+			returnValue = propertyValue;
+			break;
 		case "session.id": // EV property
 			returnValue = propertyValue;  // a hexadecimal string representing a byte array
 			break;
@@ -237,8 +298,19 @@ public final class MiscUtils {
 			break;
 		case "exi.codec": // EV + EVSE property
 			if (propertyValue.equals("open_exi")) returnValue = "open_exi";
+			else if (propertyValue.equals("generated")) returnValue = "generated";
 			else returnValue = "exificient";
 			break;
+		case "exi.codec.pool.size": // EV + EVSE property
+			try {
+				returnValue = Integer.parseInt(propertyValue);
+			} catch (NumberFormatException e) {
+				getLogger().warn("EXI codec pool size '" + propertyValue + "' listed in properties file is not supported. " +
+							     "Setting default value to 0 (shared codec).", e);
+				getProperties().setProperty("exi.codec.pool.size", "0");
+				returnValue = 0;
+			}
+			break;
 		case "voltage.accuracy": // EV property
 			try {
 				returnValue = Integer.parseInt(propertyValue);
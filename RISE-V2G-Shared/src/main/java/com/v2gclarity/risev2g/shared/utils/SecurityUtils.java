@@ -34,7 +34,6 @@ import java.math.BigInteger;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.security.AlgorithmParameters;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.Key;
@@ -96,7 +95,6 @@ import javax.net.ssl.KeyManager;
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManager;
-import javax.net.ssl.TrustManagerFactory;
 import javax.security.auth.x500.X500Principal;
 import javax.xml.bind.JAXBElement;
 
@@ -120,7 +118,6 @@ import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.SignedInfoType;
 import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.SubCertificatesType;
 import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.TransformType;
 import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.TransformsType;
-import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.X509IssuerSerialType;
 
 import java.util.Base64;
 
@@ -155,11 +152,27 @@ public final class SecurityUtils {
 	 * b) it is very likely that private keys and certificate chains might be stored separately in a secure hardware module.
 	 * Therefore, the file is not loaded with getResourceAsStream(), but with a FileInputStream.
 	 * 
+	 * The keystore is only loaded from the file again once the file has been modified (see CredentialCache). 
+	 * The returned keystore is shared and must not be modified.
+	 * 
 	 * @param keyStorePath The relative path and file name of the keystore 
 	 * @param keyStorePassword The password which protects the keystore
 	 * @return The respective keystore
 	 */
 	public static KeyStore getKeyStore(String keyStorePath, String keyStorePassword) {
+		return CredentialCache.getInstance().getKeyStore(keyStorePath, keyStorePassword, "jks", 
+				() -> loadKeyStore(keyStorePath, keyStorePassword));
+	}
+	
+	
+	/**
+	 * Loads the JKS keystore from the given file without caching it. Needed if the keystore is to be modified.
+	 * 
+	 * @param keyStorePath The relative path and file name of the keystore 
+	 * @param keyStorePassword The password which protects the keystore
+	 * @return The respective keystore
+	 */
+	private static KeyStore loadKeyStore(String keyStorePath, String keyStorePassword) {
 		FileInputStream keyStore;
 		
 		try {
@@ -181,41 +194,70 @@ public final class SecurityUtils {
 	 * b) it is very likely that private keys and certificate chains might be stored separately in a secure hardware module.
 	 * Therefore, the file is not loaded with getResourceAsStream(), but with a FileInputStream.
 	 * 
+	 * The truststore is only loaded from the file again once the file has been modified (see CredentialCache). 
+	 * The returned truststore is shared and must not be modified.
+	 * 
 	 * @param trustStorePath The relative path and file name of the truststore
 	 * @param trustStorePassword The password which protects the truststore
 	 * @return The respective truststore
 	 */
 	public static KeyStore getTrustStore(String trustStorePath, String trustStorePassword) {
-		FileInputStream trustStore;
+		return CredentialCache.getInstance().getKeyStore(trustStorePath, trustStorePassword, "jks", () -> {
+			try {
+				return getKeyStore(new FileInputStream(trustStorePath), trustStorePassword, "jks");
+			} catch (FileNotFoundException e) {
+				getLogger().error("Truststore file location '" + trustStorePath + "' not found (FileNotFoundException).");
+				return null;
+			}
+		});
+	}
+	
+	
+	/**
+	 * Returns the index over the root certificates of the given truststore, which is built once per loaded 
+	 * truststore and therefore only built again once the truststore file has been modified (see CredentialCache).
+	 * 
+	 * @param trustStorePath The relative path and file name of the truststore
+	 * @param trustStorePassword The password which protects the truststore
+	 * @return The trust anchor index, or null if the truststore could not be loaded
+	 */
+	public static TrustAnchorIndex getTrustAnchorIndex(String trustStorePath, String trustStorePassword) {
+		KeyStore trustStore = getTrustStore(trustStorePath, trustStorePassword);
 		
-		try {
-			trustStore = new FileInputStream(trustStorePath);
-			return getKeyStore(trustStore, trustStorePassword, "jks");
-		} catch (FileNotFoundException e) {
-			getLogger().error("Truststore file location '" + trustStorePath + "' not found (FileNotFoundException).");
-			return null;
-		}
+		if (trustStore == null) return null;
+		
+		return CredentialCache.getInstance().getTrustAnchorIndex(trustStore, () -> {
+			try {
+				return new TrustAnchorIndex(trustStore);
+			} catch (KeyStoreException | NoSuchAlgorithmException e) {
+				getLogger().error(e.getClass().getSimpleName() + " occurred while trying to build trust anchor index " +
+								  "of truststore at location '" + trustStorePath + "'", e);
+				return null;
+			}
+		});
 	}
 	
 	
 	/**
 	 * Returns a PKCS#12 container which holds the respective credentials (private key and certificate chain)
 	 * 
+	 * The container is only loaded from the file again once the file has been modified (see CredentialCache). 
+	 * The returned keystore is shared and must not be modified.
+	 * 
 	 * @param pkcs12Path The relative path and file name of the PKCS#12 container
 	 * @param password The password which protects the PKCS#12 container
 	 * @return The respective keystore
 	 */
 	public static KeyStore getPKCS12KeyStore(String pkcs12Path, String password) {
-		FileInputStream fis = null;
-		
-		try {
-			fis = new FileInputStream(pkcs12Path);
-			return getKeyStore(fis, password, "pkcs12");
-		} catch (FileNotFoundException e) {
-			getLogger().error("FileNotFoundException occurred while trying to access PKCS#12 container at " +
-							  "location '" + pkcs12Path + "'");
-			return null;
-		}
+		return CredentialCache.getInstance().getKeyStore(pkcs12Path, password, "pkcs12", () -> {
+			try {
+				return getKeyStore(new FileInputStream(pkcs12Path), password, "pkcs12");
+			} catch (FileNotFoundException e) {
+				getLogger().error("FileNotFoundException occurred while trying to access PKCS#12 container at " +
+								  "location '" + pkcs12Path + "'");
+				return null;
+			}
+		});
 	}
 
 
@@ -326,6 +368,9 @@ public final class SecurityUtils {
 	 *    anchor. Certificates in certificate chain must be in the right order (leaf -> Sub-CA2 -> Sub-CA1) <br/>
 	 * 2. Verifies whether the given certificate is currently valid with regards to date and time.<br/>
 	 * 3. Verifies that certificate attributes are set correctly, depending on the PKI the certificate chain belongs to
+	 * <br/><br/>
+	 * The parsed certificates and the successful signature verifications are cached (see CertificateVerificationCache), 
+	 * so that for a chain which has already been verified only steps 2 and 3 are executed again.
 	 * 
 	 * @param certChain The certificate chain to iterate over to check for validity
 	 * @param trustStoreFileName The relative path and file name of the truststore 
@@ -490,16 +535,46 @@ public final class SecurityUtils {
 	 * Verifies that the given certificate was signed using the private key that corresponds to the 
 	 * public key of the provided certificate.
 	 * 
+	 * Successful verifications are remembered by the CertificateVerificationCache until one of the two 
+	 * certificates expires.
+	 * 
 	 * @param certificate The X509Certificate which is to be checked
 	 * @param issuingCertificate The X.509 certificate which holds the public key corresponding to the private 
 	 * 		  key with which the given certificate should have been signed
 	 * @return True, if the verification was successful, false otherwise
 	 */
 	public static boolean verifySignature(X509Certificate certificate, X509Certificate issuingCertificate) {
+		return CertificateVerificationCache.getInstance().verifySignature(
+					certificate, 
+					issuingCertificate, 
+					() -> verifyCertificateSignature(certificate, issuingCertificate.getSubjectX500Principal(), issuingCertificate.getPublicKey())
+			   );
+	}
+	
+	
+	/**
+	 * Verifies that the given certificate was signed by the given root certificate of a truststore. The 
+	 * signature is checked with the public key which the TrustAnchorIndex extracted when loading the truststore.
+	 * 
+	 * Successful verifications are remembered by the CertificateVerificationCache until one of the two 
+	 * certificates expires.
+	 * 
+	 * @param certificate The X509Certificate which is to be checked
+	 * @param trustAnchor The root certificate which should have issued the given certificate
+	 * @return True, if the verification was successful, false otherwise
+	 */
+	public static boolean verifySignature(X509Certificate certificate, TrustAnchorIndex.TrustAnchor trustAnchor) {
+		return CertificateVerificationCache.getInstance().verifySignature(
+					certificate, 
+					trustAnchor.getCertificate(), 
+					() -> verifyCertificateSignature(certificate, trustAnchor.getCertificate().getSubjectX500Principal(), trustAnchor.getPublicKey())
+			   );
+	}
+	
+	
+	private static boolean verifyCertificateSignature(X509Certificate certificate, X500Principal issuerSubject, PublicKey publicKeyForSignature) {
 		X500Principal subject = certificate.getSubjectX500Principal();
 		X500Principal expectedIssuerSubject = certificate.getIssuerX500Principal();
-		X500Principal issuerSubject = issuingCertificate.getSubjectX500Principal();
-		PublicKey publicKeyForSignature = issuingCertificate.getPublicKey();
 		
 		try {
 			certificate.verify(publicKeyForSignature);
@@ -520,7 +595,8 @@ public final class SecurityUtils {
 	
 	
 	/**
-	 * Iterates over the certificates stored in the truststore to verify the signature of the provided certificate
+	 * Looks up the root certificates of the truststore which may have issued the provided certificate (see 
+	 * TrustAnchorIndex) to verify the signature of the provided certificate
 	 * 
 	 * @param trustStoreFilename The relative path and file name of the truststore
 	 * @param certificate The certificate whose signature needs to be verified
@@ -528,21 +604,17 @@ public final class SecurityUtils {
 	 * 		   truststore, false otherwise
 	 */
 	public static boolean verifySignature(X509Certificate certificate, String trustStoreFilename) {
-		KeyStore trustStore = SecurityUtils.getTrustStore(trustStoreFilename, GlobalValues.PASSPHRASE_FOR_CERTIFICATES_AND_KEYS.toString());
-		X500Principal expectedIssuer = certificate.getIssuerX500Principal();
+		TrustAnchorIndex trustAnchorIndex = getTrustAnchorIndex(trustStoreFilename, GlobalValues.PASSPHRASE_FOR_CERTIFICATES_AND_KEYS.toString());
 		
-		try {
-			Enumeration<String> aliases = trustStore.aliases();
-			while (aliases.hasMoreElements()) {
-				X509Certificate rootCA = (X509Certificate) trustStore.getCertificate(aliases.nextElement());
-				if (rootCA.getSubjectX500Principal().getName().equals(expectedIssuer.getName()) &&
-					verifySignature(certificate, rootCA)) return true;
-			}
-		} catch (KeyStoreException | NullPointerException e) {
-			getLogger().error(e.getClass().getSimpleName() + " occurred while trying to verify trust " +
-							  "status of certificate with distinguished name '" + 
-							  certificate.getSubjectX500Principal().getName() + "' with truststore at " +
-							  "location '" + trustStoreFilename + "'", e);
+		if (trustAnchorIndex == null) {
+			getLogger().error("Trust status of certificate with distinguished name '" + 
+							  certificate.getSubjectX500Principal().getName() + "' could not be verified with " +
+							  "truststore at location '" + trustStoreFilename + "'");
+			return false;
+		}
+		
+		for (TrustAnchorIndex.TrustAnchor rootCA : trustAnchorIndex.getIssuerCandidates(certificate)) {
+			if (verifySignature(certificate, rootCA)) return true;
 		}
 		
 		return false;
@@ -607,35 +679,31 @@ public final class SecurityUtils {
 	public static ListOfRootCertificateIDsType getListOfRootCertificateIDs(
 			String trustStoreFileName,
 			String trustStorePassword) {
-		KeyStore evccTrustStore = getTrustStore(trustStoreFileName, trustStorePassword);
-		ListOfRootCertificateIDsType rootCertificateIDs = new ListOfRootCertificateIDsType();
+		TrustAnchorIndex trustAnchorIndex = getTrustAnchorIndex(trustStoreFileName, trustStorePassword);
 		
-		X509Certificate cert = null;
-		try {
-			Enumeration<String> aliases = evccTrustStore.aliases();
-			while (aliases.hasMoreElements()) {
-				cert = (X509Certificate) evccTrustStore.getCertificate(aliases.nextElement());
-				X509IssuerSerialType serialType = new X509IssuerSerialType();
-				serialType.setX509IssuerName(cert.getIssuerX500Principal().getName());
-				serialType.setX509SerialNumber(cert.getSerialNumber());
-				rootCertificateIDs.getRootCertificateID().add(serialType);
-			}
-		} catch (KeyStoreException | NullPointerException e) {
-			getLogger().error(e.getClass().getSimpleName() + " occurred while trying to get list of " +
-							  "root certificate IDs from truststore at location '" + trustStoreFileName + "'", e);
+		if (trustAnchorIndex == null) {
+			getLogger().error("List of root certificate IDs could not be read from truststore at location '" + 
+							  trustStoreFileName + "'");
+			return new ListOfRootCertificateIDsType();
 		}
 		
-		return rootCertificateIDs;
+		return trustAnchorIndex.getListOfRootCertificateIDs();
 	}
 	
 	
 	/**
-	 * Returns an instance of a X.509 certificate created from its raw byte array
+	 * Returns an instance of a X.509 certificate created from its raw byte array. Certificates which have 
+	 * already been parsed are provided by the CertificateVerificationCache.
 	 * 
 	 * @param certificate The byte array representing a X.509 certificate
 	 * @return The X.509 certificate
 	 */
 	public static X509Certificate getCertificate(byte[] certificate) {
+		return CertificateVerificationCache.getInstance().getCertificate(certificate, SecurityUtils::parseCertificate);
+	}
+	
+	
+	private static X509Certificate parseCertificate(byte[] certificate) {
 		X509Certificate cert = null;
 		
 		try {
@@ -699,11 +767,8 @@ public final class SecurityUtils {
 	    System.arraycopy(publicKeyBytes, 33, y, 0, 32);
 	    
 	    try {
-			KeyFactory kf = KeyFactory.getInstance("EC");
-			
-			AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
-			parameters.init(new ECGenParameterSpec("secp256r1"));
-			ECParameterSpec ecParameterSpec = parameters.getParameterSpec(ECParameterSpec.class);
+			KeyFactory kf = JcaEngines.getECKeyFactory();
+			ECParameterSpec ecParameterSpec = JcaEngines.getSecp256r1ParameterSpec();
 			
 			ECPublicKeySpec ecPublicKeySpec = new ECPublicKeySpec(new ECPoint(new BigInteger(1, x), new BigInteger(1, y)), ecParameterSpec);
 			ECPublicKey ecPublicKey = (ECPublicKey) kf.generatePublic(ecPublicKeySpec);
@@ -749,13 +814,10 @@ public final class SecurityUtils {
 	 */
 	public static ECPrivateKey getPrivateKey(byte[] privateKeyBytes) {
 		try {
-			AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
-			parameters.init(new ECGenParameterSpec("secp256r1"));
-			
-			ECParameterSpec ecParameterSpec = parameters.getParameterSpec(ECParameterSpec.class);
+			ECParameterSpec ecParameterSpec = JcaEngines.getSecp256r1ParameterSpec();
 			ECPrivateKeySpec ecPrivateKeySpec = new ECPrivateKeySpec(new BigInteger(privateKeyBytes), ecParameterSpec);
 			
-			ECPrivateKey privateKey = (ECPrivateKey) KeyFactory.getInstance("EC").generatePrivate(ecPrivateKeySpec);
+			ECPrivateKey privateKey = (ECPrivateKey) JcaEngines.getECKeyFactory().generatePrivate(ecPrivateKeySpec);
 
 			return privateKey;
 		} catch (NoSuchAlgorithmException | InvalidKeySpecException | InvalidParameterSpecException e) {
@@ -771,10 +833,17 @@ public final class SecurityUtils {
 	 * installation when the SECC uses a PKCS#12 container encapsulating the 
 	 * contract certificate, its private key and an optional chain of intermediate CAs.
 	 * 
+	 * The private key is recovered only once from a cached keystore (see CredentialCache).
+	 * 
 	 * @param keyStore The PKCS#12 keystore 
 	 * @return The private key contained in the given keystore as an ECPrivateKey
 	 */
 	public static ECPrivateKey getPrivateKey(KeyStore keyStore) {
+		return CredentialCache.getInstance().getPrivateKey(keyStore, null, () -> recoverPrivateKey(keyStore));
+	}
+	
+	
+	private static ECPrivateKey recoverPrivateKey(KeyStore keyStore) {
 		ECPrivateKey privateKey = null;
 		
 		try {
@@ -807,10 +876,17 @@ public final class SecurityUtils {
 	 * Example: '-v1 PBE-SHA1-3DES' (see https://www.openssl.org/docs/man1.0.2/man1/openssl-pkcs8.html).
 	 * -----
 	 * 
+	 * The private key is only read from the file again once the file has been modified (see CredentialCache).
+	 * 
 	 * @param A PKCS#8 (.key) file containing the private key with value "s"
 	 * @return The private key as an ECPrivateKey instance
 	 */
 	public static ECPrivateKey getPrivateKey(String keyFilePath) {
+		return CredentialCache.getInstance().getPrivateKey(keyFilePath, () -> readPrivateKey(keyFilePath));
+	}
+	
+	
+	private static ECPrivateKey readPrivateKey(String keyFilePath) {
 		Path fileLocation = Paths.get(keyFilePath);
 		byte[] pkcs8ByteArray;
 		
@@ -834,7 +910,7 @@ public final class SecurityUtils {
 		    PKCS8EncodedKeySpec pkcs8PrivKeySpec = encryptedPrivKeyInfo.getKeySpec(decryptKey);
 		    
 		    // Generate the EC private key
-			ECPrivateKey privateKey = (ECPrivateKey) KeyFactory.getInstance("EC").generatePrivate(pkcs8PrivKeySpec);
+			ECPrivateKey privateKey = (ECPrivateKey) JcaEngines.getECKeyFactory().generatePrivate(pkcs8PrivKeySpec);
 
 			return privateKey;
 		} catch (IOException | InvalidKeySpecException | NoSuchAlgorithmException | InvalidKeyException e) {
@@ -852,11 +928,18 @@ public final class SecurityUtils {
 	 * OEM provisioning certificate is needed. During certificate update, the private key of the 
 	 * existing contract certificate is needed.
 	 * 
+	 * The private key is recovered only once from a cached keystore (see CredentialCache).
+	 * 
 	 * @param keyStore The keystore of EVCC or SECC
 	 * @param alias The alias of a specific private key entry
 	 * @return The private key corresponding to the respective alias in the given keystore
 	 */
 	public static ECPrivateKey getPrivateKey(KeyStore keyStore, String alias) {
+		return CredentialCache.getInstance().getPrivateKey(keyStore, alias, () -> recoverPrivateKey(keyStore, alias));
+	}
+	
+	
+	private static ECPrivateKey recoverPrivateKey(KeyStore keyStore, String alias) {
 		ECPrivateKey privateKey = null;
 		
 		try {
@@ -997,7 +1080,8 @@ public final class SecurityUtils {
 			String keyStorePassword, 
 			CertificateChainType contractCertChain,
 			ECPrivateKey contractCertPrivateKey) {
-		KeyStore keyStore = getKeyStore(GlobalValues.EVCC_KEYSTORE_FILEPATH.toString(), keyStorePassword);
+		// The keystore is modified, so the shared cached keystore must not be used
+		KeyStore keyStore = loadKeyStore(GlobalValues.EVCC_KEYSTORE_FILEPATH.toString(), keyStorePassword);
 
 		try {
 			if (isPrivateKeyValid(contractCertPrivateKey, contractCertChain)) {
@@ -1010,6 +1094,8 @@ public final class SecurityUtils {
 				// Save the keystore persistently
 				try(FileOutputStream fos = new FileOutputStream(GlobalValues.EVCC_KEYSTORE_FILEPATH.toString())){
 					keyStore.store(fos, GlobalValues.PASSPHRASE_FOR_CERTIFICATES_AND_KEYS.toString().toCharArray());
+				} finally {
+					CredentialCache.getInstance().invalidate(GlobalValues.EVCC_KEYSTORE_FILEPATH.toString());
 				}
 				
 				X509Certificate contractCert = getCertificate(contractCertChain.getCertificate());
@@ -1042,13 +1128,8 @@ public final class SecurityUtils {
 	 * @return True, if the private key is a valid key, false otherwise.
 	 */
 	private static boolean isPrivateKeyValid(ECPrivateKey privateKey, CertificateChainType contractCertChain) {
-		AlgorithmParameters parameters;
-		
 		try {
-			parameters = AlgorithmParameters.getInstance("EC");
-			parameters.init(new ECGenParameterSpec("secp256r1"));
-			
-			ECParameterSpec ecParameterSpec = parameters.getParameterSpec(ECParameterSpec.class);
+			ECParameterSpec ecParameterSpec = JcaEngines.getSecp256r1ParameterSpec();
 			
 			// Now we need to check if the private key is correct (see requirement [V2G2-823]) 
 			BigInteger order = ecParameterSpec.getOrder();
@@ -1299,7 +1380,7 @@ public final class SecurityUtils {
 	    byte[] suppPrivInfo = null;
 	    
 		try {
-			md = MessageDigest.getInstance("SHA-256");
+			md = JcaEngines.getSHA256MessageDigest();
 		} catch (NoSuchAlgorithmException e1) {
 			getLogger().error("Message digest algorithm SHA-256 not supported");
 			return null;
@@ -1742,19 +1823,17 @@ public final class SecurityUtils {
 	public static byte[] generateDigest(String id, JAXBElement jaxbMessageOrField) {
 		byte[] encoded; 
 		
-		// The schema-informed fragment grammar option needs to be used for EXI encodings in the header's signature
-		getExiCodec().setFragment(true);
-		
 		/*
+		 * The schema-informed fragment grammar needs to be used for EXI encodings in the header's signature. 
+		 * The codec is shared between all communication sessions, encodeFragment() uses encoders which are 
+		 * dedicated to fragments and therefore does not interfere with other sessions' message encodings.
+		 * 
 		 * When creating the signature value for the SignedInfoElement, we need to use the XMLdsig schema,
 		 * whereas for creating the reference elements of the signature, we need to use the V2G_CI_MsgDef schema.
 		 */
 		if (jaxbMessageOrField.getValue() instanceof SignedInfoType) {
-			encoded = getExiCodec().encodeEXI(jaxbMessageOrField, GlobalValues.SCHEMA_PATH_XMLDSIG.toString());
-		} else encoded = getExiCodec().encodeEXI(jaxbMessageOrField, GlobalValues.SCHEMA_PATH_MSG_DEF.toString());
-		
-		// Do not use the schema-informed fragment grammar option for other EXI encodings (message bodies)
-		getExiCodec().setFragment(false);
+			encoded = getExiCodec().encodeFragment(jaxbMessageOrField, GlobalValues.SCHEMA_PATH_XMLDSIG.toString());
+		} else encoded = getExiCodec().encodeFragment(jaxbMessageOrField, GlobalValues.SCHEMA_PATH_MSG_DEF.toString());
 		
 		if (encoded == null) {
 			getLogger().error("Digest could not be generated because of EXI encoding problem");
@@ -1762,7 +1841,7 @@ public final class SecurityUtils {
 		}
 		
 		try {
-			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			MessageDigest md = JcaEngines.getSHA256MessageDigest();
 			md.update(encoded);
 			byte[] digest = md.digest();
 			
@@ -1794,8 +1873,13 @@ public final class SecurityUtils {
 	 * @return The signature value for the SignedInfo element given as a byte array
 	 */
 	public static byte[] signSignedInfoElement(byte[] signedInfoElementExi, ECPrivateKey ecPrivateKey) {
+		if (signedInfoElementExi == null) {
+			getLogger().error("SignedInfo element could not be signed because of EXI encoding problem");
+			return null;
+		}
+		
 		try {
-			Signature ecdsa = Signature.getInstance("SHA256withECDSA", "SunEC");
+			Signature ecdsa = JcaEngines.getSHA256withECDSASignatureSunEC();
 		
 			getLogger().debug("EXI encoded SignedInfo: " + ByteUtils.toHexString(signedInfoElementExi));
 			
@@ -1925,12 +2009,18 @@ public final class SecurityUtils {
 			
 			if (showSignatureVerificationLog) showSignatureVerificationLog(verifyCert, signature, jaxbSignedInfo, ecPublicKey);
 			
-			ecdsa = Signature.getInstance("SHA256withECDSA");
+			ecdsa = JcaEngines.getSHA256withECDSASignature();
 			// The Signature object needs to be initialized by setting it into the VERIFY state with the public key
 			ecdsa.initVerify(ecPublicKey);
 			
 			// The data to be signed needs to be supplied to the Signature object
 			byte[] exiEncodedSignedInfo = getExiCodec().getExiEncodedSignedInfo(jaxbSignedInfo);
+			
+			if (exiEncodedSignedInfo == null) {
+				getLogger().error("Signature could not be verified because of EXI encoding problem");
+				return false;
+			}
+			
 			ecdsa.update(exiEncodedSignedInfo);
 			
 			// Java operates on DER encoded signature values, but the sent signature consists of the raw r and s value 
@@ -2214,7 +2304,7 @@ public final class SecurityUtils {
 			String trustStorePath,
 			String keyStorePassword) {
 	    KeyStore keyStore = SecurityUtils.getKeyStore(keyStorePath, keyStorePassword);
-	    KeyStore trustStore = SecurityUtils.getKeyStore(trustStorePath, keyStorePassword);
+	    TrustAnchorIndex trustAnchorIndex = SecurityUtils.getTrustAnchorIndex(trustStorePath, keyStorePassword);
 
 		try {
 			// Initialize a key manager factory with the keystore
@@ -2222,10 +2312,8 @@ public final class SecurityUtils {
 			keyFactory.init(keyStore, keyStorePassword.toCharArray());
 		    KeyManager[] keyManagers = keyFactory.getKeyManagers();
 
-		    // Initialize a trust manager factory with the truststore
-		    TrustManagerFactory trustFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());    
-		    trustFactory.init(trustStore);
-		    TrustManager[] trustManagers = trustFactory.getTrustManagers();
+		    // The trust managers are initialized only once per truststore (see TrustAnchorIndex)
+		    TrustManager[] trustManagers = (trustAnchorIndex != null) ? trustAnchorIndex.getTrustManagers() : null;
 
 		    // Initialize an SSL context to use these managers and set as default
 		    SSLContext sslContext = SSLContext.getInstance("TLS");
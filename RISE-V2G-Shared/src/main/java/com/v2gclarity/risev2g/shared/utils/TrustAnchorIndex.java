@@ -0,0 +1,260 @@
+/*******************************************************************************
+ *  The MIT License (MIT)
+ *
+ *  Copyright (c) 2015 - 2019  Dr. Marc Mültin (V2G Clarity)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ *******************************************************************************/
+package com.v2gclarity.risev2g.shared.utils;
+
+import java.math.BigInteger;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.ListOfRootCertificateIDsType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.X509IssuerSerialType;
+
+/**
+ * An index over the root certificates (trust anchors) of a truststore, built once per loaded truststore 
+ * (see SecurityUtils.getTrustAnchorIndex()). It provides 
+ * - the candidate root certificates for a given certificate by its issuer distinguished name (and its 
+ *   authority key identifier if several root certificates have this name), 
+ * - the issuer names and serial numbers of all root certificates for the ListOfRootCertificateIDs, and 
+ * - the trust managers for the TLS context, 
+ * without iterating over the truststore's aliases again.
+ * 
+ * The index is immutable. A new index is built as soon as the truststore file has been modified and is 
+ * therefore loaded again by the CredentialCache.
+ */
+public final class TrustAnchorIndex {
+	
+	// Object identifiers of the X.509 extensions used for the lookup
+	private static final String SUBJECT_KEY_IDENTIFIER_OID = "2.5.29.14";
+	private static final String AUTHORITY_KEY_IDENTIFIER_OID = "2.5.29.35";
+	
+	private final List<TrustAnchor> trustAnchors;
+	// The trust anchors per subject distinguished name (as given by X500Principal.getName())
+	private final HashMap<String, List<TrustAnchor>> trustAnchorsBySubject;
+	private final TrustManager[] trustManagers;
+	
+	/**
+	 * Builds the index over all certificates contained in the given truststore.
+	 * 
+	 * @param trustStore The truststore holding the root certificates
+	 * @throws KeyStoreException If the truststore has not been loaded
+	 * @throws NoSuchAlgorithmException If the default trust manager algorithm is not available
+	 */
+	public TrustAnchorIndex(KeyStore trustStore) throws KeyStoreException, NoSuchAlgorithmException {
+		List<TrustAnchor> trustAnchors = new ArrayList<>();
+		trustAnchorsBySubject = new HashMap<>();
+		
+		Enumeration<String> aliases = trustStore.aliases();
+		while (aliases.hasMoreElements()) {
+			Certificate certificate = trustStore.getCertificate(aliases.nextElement());
+			if (!(certificate instanceof X509Certificate)) continue;
+			
+			TrustAnchor trustAnchor = new TrustAnchor((X509Certificate) certificate, getSubjectKeyIdentifier((X509Certificate) certificate));
+			trustAnchors.add(trustAnchor);
+			
+			trustAnchorsBySubject.computeIfAbsent(
+					trustAnchor.getCertificate().getSubjectX500Principal().getName(), 
+					subject -> new ArrayList<>()).add(trustAnchor);
+		}
+		
+		this.trustAnchors = Collections.unmodifiableList(trustAnchors);
+		
+		TrustManagerFactory trustFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());    
+		trustFactory.init(trustStore);
+		this.trustManagers = trustFactory.getTrustManagers();
+	}
+	
+	
+	/**
+	 * Provides the root certificates which may have issued the given certificate, i.e. the root certificates 
+	 * whose subject distinguished name equals the certificate's issuer distinguished name. If there are several 
+	 * of them (e.g. after a root certificate has been renewed), the certificate's authority key identifier is used 
+	 * to narrow them down to the ones with a matching subject key identifier. A root certificate with a different 
+	 * subject distinguished name is never a candidate. The signature still needs to be verified.
+	 * 
+	 * @param certificate The certificate whose issuing root certificate is to be found
+	 * @return The candidate root certificates, an empty list if none is found
+	 */
+	public List<TrustAnchor> getIssuerCandidates(X509Certificate certificate) {
+		List<TrustAnchor> candidates = trustAnchorsBySubject.get(certificate.getIssuerX500Principal().getName());
+		
+		if (candidates == null) return Collections.<TrustAnchor>emptyList();
+		if (candidates.size() == 1) return Collections.unmodifiableList(candidates);
+		
+		String authorityKeyIdentifier = getAuthorityKeyIdentifier(certificate);
+		
+		if (authorityKeyIdentifier != null) {
+			List<TrustAnchor> matchingCandidates = new ArrayList<>();
+			
+			for (TrustAnchor candidate : candidates) {
+				if (authorityKeyIdentifier.equals(candidate.getSubjectKeyIdentifier())) matchingCandidates.add(candidate);
+			}
+			
+			if (!matchingCandidates.isEmpty()) return matchingCandidates;
+		}
+		
+		return Collections.unmodifiableList(candidates);
+	}
+	
+	
+	/**
+	 * Returns a new ListOfRootCertificateIDs element listing the issuer name and serial number of each root 
+	 * certificate of the truststore.
+	 * 
+	 * @return The list of X509IssuerSerialType instances of the root CAs
+	 */
+	public ListOfRootCertificateIDsType getListOfRootCertificateIDs() {
+		ListOfRootCertificateIDsType rootCertificateIDs = new ListOfRootCertificateIDsType();
+		
+		for (TrustAnchor trustAnchor : getTrustAnchors()) {
+			X509IssuerSerialType serialType = new X509IssuerSerialType();
+			serialType.setX509IssuerName(trustAnchor.getIssuerName());
+			serialType.setX509SerialNumber(trustAnchor.getSerialNumber());
+			rootCertificateIDs.getRootCertificateID().add(serialType);
+		}
+		
+		return rootCertificateIDs;
+	}
+	
+	
+	private String getSubjectKeyIdentifier(X509Certificate certificate) {
+		byte[] extension = certificate.getExtensionValue(SUBJECT_KEY_IDENTIFIER_OID);
+		if (extension == null) return null;
+		
+		// OCTET STRING (extension value) { OCTET STRING (keyIdentifier) }
+		byte[] keyIdentifier = getContent(getContent(extension, 0, (byte) 0x04), 0, (byte) 0x04);
+		
+		return (keyIdentifier != null) ? ByteUtils.toHexString(keyIdentifier) : null;
+	}
+	
+	
+	private String getAuthorityKeyIdentifier(X509Certificate certificate) {
+		byte[] extension = certificate.getExtensionValue(AUTHORITY_KEY_IDENTIFIER_OID);
+		if (extension == null) return null;
+		
+		// OCTET STRING (extension value) { SEQUENCE { [0] IMPLICIT keyIdentifier OPTIONAL, ... } }
+		byte[] sequence = getContent(getContent(extension, 0, (byte) 0x04), 0, (byte) 0x30);
+		byte[] keyIdentifier = getContent(sequence, 0, (byte) 0x80);
+		
+		return (keyIdentifier != null) ? ByteUtils.toHexString(keyIdentifier) : null;
+	}
+	
+	
+	/**
+	 * Returns the content of the DER encoded element at the given offset if it has the expected tag.
+	 * 
+	 * @return The content octets, or null if the element is missing, has a different tag or is malformed
+	 */
+	private static byte[] getContent(byte[] der, int offset, byte expectedTag) {
+		if (der == null || der.length < offset + 2 || der[offset] != expectedTag) return null;
+		
+		int length = der[offset + 1] & 0xFF;
+		int contentOffset = offset + 2;
+		
+		if (length > 0x7F) {
+			int numberOfLengthBytes = length & 0x7F;
+			if (numberOfLengthBytes > 3 || der.length < contentOffset + numberOfLengthBytes) return null;
+			
+			length = 0;
+			for (int i = 0; i < numberOfLengthBytes; i++) length = (length << 8) | (der[contentOffset++] & 0xFF);
+		}
+		
+		if (der.length < contentOffset + length) return null;
+		
+		byte[] content = new byte[length];
+		System.arraycopy(der, contentOffset, content, 0, length);
+		
+		return content;
+	}
+	
+	
+	/**
+	 * @return All root certificates of the truststore
+	 */
+	public List<TrustAnchor> getTrustAnchors() {
+		return trustAnchors;
+	}
+	
+	/**
+	 * @return The trust managers initialized with the truststore, to be used for the TLS context
+	 */
+	public TrustManager[] getTrustManagers() {
+		return trustManagers.clone();
+	}
+	
+	
+	/**
+	 * A root certificate of the truststore together with the values which are read from it over and over again.
+	 */
+	public static final class TrustAnchor {
+		
+		private final X509Certificate certificate;
+		private final PublicKey publicKey;
+		private final String issuerName;
+		private final BigInteger serialNumber;
+		private final String subjectKeyIdentifier;
+		
+		private TrustAnchor(X509Certificate certificate, String subjectKeyIdentifier) {
+			this.certificate = certificate;
+			this.subjectKeyIdentifier = subjectKeyIdentifier;
+			this.publicKey = certificate.getPublicKey();
+			this.issuerName = certificate.getIssuerX500Principal().getName();
+			this.serialNumber = certificate.getSerialNumber();
+		}
+		
+		public X509Certificate getCertificate() {
+			return certificate;
+		}
+		
+		public PublicKey getPublicKey() {
+			return publicKey;
+		}
+		
+		public String getIssuerName() {
+			return issuerName;
+		}
+		
+		public BigInteger getSerialNumber() {
+			return serialNumber;
+		}
+		
+		/**
+		 * @return The subject key identifier as hexadecimal string, or null if the certificate has none
+		 */
+		public String getSubjectKeyIdentifier() {
+			return subjectKeyIdentifier;
+		}
+	}
+}
@@ -0,0 +1,401 @@
+/*******************************************************************************
+ *  The MIT License (MIT)
+ *
+ *  Copyright (c) 2015 - 2019  Dr. Marc Mültin (V2G Clarity)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ *******************************************************************************/
+package com.v2gclarity.risev2g.shared.exiCodec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Properties;
+import java.util.Random;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.v2gclarity.risev2g.shared.enumerations.GlobalValues;
+import com.v2gclarity.risev2g.shared.utils.MiscUtils;
+import com.v2gclarity.risev2g.shared.v2gMessages.appProtocol.SupportedAppProtocolReq;
+import com.v2gclarity.risev2g.shared.v2gMessages.appProtocol.SupportedAppProtocolRes;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.ACEVSEStatusType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.BodyBaseType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.BodyType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.ChargeProgressType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.ChargingProfileType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.ChargingStatusReqType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.ChargingStatusResType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.CurrentDemandReqType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.CurrentDemandResType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.DCEVErrorCodeType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.DCEVPowerDeliveryParameterType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.DCEVSEStatusCodeType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.DCEVSEStatusType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.DCEVStatusType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.EVSENotificationType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.IsolationLevelType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.MessageHeaderType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.MeterInfoType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.MeteringReceiptReqType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.MeteringReceiptResType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.ObjectFactory;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.PhysicalValueType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.PowerDeliveryReqType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.PowerDeliveryResType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.ProfileEntryType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.ResponseCodeType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.UnitSymbolType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.V2GMessage;
+
+/**
+ * Checks that the GeneratedExiCodec produces exactly the EXI streams of the EXIficient codec, whether a 
+ * message is handled by the specialized encoder and decoder or handed to the fallback codec. The fallback 
+ * counters of the GeneratedExiCodec tell which of both paths has been taken.
+ */
+public class GeneratedExiCodecEquivalenceTest {
+
+	private static final int RANDOM_MESSAGES = 2000;
+	private static final String MSG_DEF = GlobalValues.SCHEMA_PATH_MSG_DEF.toString();
+	
+	private static File propertiesFile;
+	private static EXIficientCodec exificientCodec;
+	private static GeneratedExiCodec generatedCodec;
+	private static Marshaller xmlMarshaller;
+	private static ObjectFactory objectFactory = new ObjectFactory();
+	
+	@BeforeClass
+	public static void setUpClass() throws IOException, JAXBException {
+		Properties properties = new Properties();
+		properties.setProperty("exi.messages.showxml", "false");
+		properties.setProperty("exi.messages.showhex", "false");
+		
+		propertiesFile = File.createTempFile("GeneratedExiCodecEquivalenceTest", ".properties");
+		FileOutputStream out = new FileOutputStream(propertiesFile);
+		try {
+			properties.store(out, null);
+		} finally {
+			out.close();
+		}
+		
+		assertTrue(MiscUtils.loadProperties(propertiesFile.getAbsolutePath()));
+		
+		JAXBContext jaxbContext = JAXBContext.newInstance(SupportedAppProtocolReq.class, SupportedAppProtocolRes.class, V2GMessage.class);
+		JaxbMarshallerProvider marshallerProvider = new JaxbMarshallerProvider(jaxbContext);
+		
+		exificientCodec = EXIficientCodec.newInstance();
+		exificientCodec.setMarshallerProvider(marshallerProvider);
+		generatedCodec = GeneratedExiCodec.newInstance();
+		generatedCodec.setMarshallerProvider(marshallerProvider);
+		
+		xmlMarshaller = jaxbContext.createMarshaller();
+	}
+	
+	@AfterClass
+	public static void tearDownClass() {
+		propertiesFile.delete();
+	}
+	
+	
+	@Test
+	public void emptySessionID() throws Exception {
+		assertEquivalent(getV2GMessage(new byte[0], objectFactory.createChargingStatusReq(new ChargingStatusReqType())), true);
+	}
+	
+	@Test
+	public void emptySigMeterReading() throws Exception {
+		MeterInfoType meterInfo = new MeterInfoType();
+		meterInfo.setMeterID("METER-1");
+		meterInfo.setSigMeterReading(new byte[0]);
+		
+		MeteringReceiptReqType meteringReceiptReq = new MeteringReceiptReqType();
+		meteringReceiptReq.setSessionID(new byte[] {0x01, 0x02, 0x03, 0x04});
+		meteringReceiptReq.setMeterInfo(meterInfo);
+		
+		assertEquivalent(getV2GMessage(new byte[] {0x01, 0x02, 0x03, 0x04}, objectFactory.createMeteringReceiptReq(meteringReceiptReq)), true);
+	}
+	
+	@Test
+	public void emptyMeteringReceiptSessionID() throws Exception {
+		MeterInfoType meterInfo = new MeterInfoType();
+		meterInfo.setMeterID("METER-1");
+		
+		MeteringReceiptReqType meteringReceiptReq = new MeteringReceiptReqType();
+		meteringReceiptReq.setSessionID(new byte[0]);
+		meteringReceiptReq.setMeterInfo(meterInfo);
+		
+		assertEquivalent(getV2GMessage(new byte[] {0x01, 0x02, 0x03, 0x04}, objectFactory.createMeteringReceiptReq(meteringReceiptReq)), true);
+	}
+	
+	@Test
+	public void randomChargeLoopMessages() throws Exception {
+		Random random = new Random(15118);
+		
+		for (int i = 0; i < RANDOM_MESSAGES; i++) {
+			assertEquivalent(getRandomV2GMessage(random), false);
+		}
+	}
+	
+	
+	/**
+	 * Compares the encodings of both codecs and the messages they decode from the EXIficient stream.
+	 * 
+	 * @param v2gMessage The message to be checked
+	 * @param expectFallback True, if the specialized encoder must hand the message to the fallback codec. 
+	 * 		  Otherwise, the message must be encoded and decoded by the specialized encoder and decoder.
+	 */
+	private void assertEquivalent(V2GMessage v2gMessage, boolean expectFallback) throws Exception {
+		assertTrue("Body not covered by the specialized encoder", MsgDefExiEncoder.getBodyEventCode(v2gMessage) >= 0);
+		
+		long encodeFallbacks = generatedCodec.getEncodeFallbacks();
+		long decodeFallbacks = generatedCodec.getDecodeFallbacks();
+		
+		byte[] expected = exificientCodec.encodeEXI(v2gMessage, MSG_DEF);
+		byte[] encoded = generatedCodec.encodeEXI(v2gMessage, MSG_DEF);
+		assertArrayEquals("Encodings differ for message\n" + toXml(v2gMessage), expected, encoded);
+		assertEquals("Unexpected encoder for message\n" + toXml(v2gMessage), 
+					 encodeFallbacks + ((expectFallback) ? 1 : 0), generatedCodec.getEncodeFallbacks());
+		
+		Object decodedByExificient = exificientCodec.decodeEXI(ByteBuffer.wrap(expected), false);
+		Object decodedByGenerated = generatedCodec.decodeEXI(ByteBuffer.wrap(expected), false);
+		assertEquals(toXml(decodedByExificient), toXml(decodedByGenerated));
+		
+		// Streams of messages the specialized encoder does not handle may or may not be covered by the specialized decoder
+		if (!expectFallback) {
+			assertEquals("Message was decoded by the fallback codec\n" + toXml(v2gMessage), 
+						 decodeFallbacks, generatedCodec.getDecodeFallbacks());
+		}
+	}
+	
+	
+	private static V2GMessage getV2GMessage(byte[] sessionID, JAXBElement<? extends BodyBaseType> bodyElement) {
+		MessageHeaderType header = new MessageHeaderType();
+		header.setSessionID(sessionID);
+		
+		BodyType body = new BodyType();
+		body.setBodyElement(bodyElement);
+		
+		V2GMessage v2gMessage = new V2GMessage();
+		v2gMessage.setHeader(header);
+		v2gMessage.setBody(body);
+		
+		return v2gMessage;
+	}
+	
+	
+	/**
+	 * Provides a random charge loop message which is covered by the specialized encoder and decoder, i.e. 
+	 * all values are within the value ranges of the schema and no binary value is empty.
+	 */
+	private static V2GMessage getRandomV2GMessage(Random random) {
+		byte[] sessionID = getRandomBytes(random, 8);
+		
+		switch (random.nextInt(8)) {
+		case 0:
+			return getV2GMessage(sessionID, objectFactory.createChargingStatusReq(new ChargingStatusReqType()));
+		case 1:
+			ChargingStatusResType chargingStatusRes = new ChargingStatusResType();
+			chargingStatusRes.setResponseCode(pick(random, ResponseCodeType.values()));
+			chargingStatusRes.setEVSEID(getRandomString(random));
+			chargingStatusRes.setSAScheduleTupleID((short) (1 + random.nextInt(255)));
+			if (random.nextBoolean()) chargingStatusRes.setEVSEMaxCurrent(getRandomPhysicalValue(random));
+			if (random.nextBoolean()) chargingStatusRes.setMeterInfo(getRandomMeterInfo(random));
+			if (random.nextBoolean()) chargingStatusRes.setReceiptRequired(random.nextBoolean());
+			chargingStatusRes.setACEVSEStatus(getRandomACEVSEStatus(random));
+			return getV2GMessage(sessionID, objectFactory.createChargingStatusRes(chargingStatusRes));
+		case 2:
+			MeteringReceiptReqType meteringReceiptReq = new MeteringReceiptReqType();
+			if (random.nextBoolean()) meteringReceiptReq.setId("id" + random.nextInt(100));
+			meteringReceiptReq.setSessionID(getRandomBytes(random, 8));
+			if (random.nextBoolean()) meteringReceiptReq.setSAScheduleTupleID((short) (1 + random.nextInt(255)));
+			meteringReceiptReq.setMeterInfo(getRandomMeterInfo(random));
+			return getV2GMessage(sessionID, objectFactory.createMeteringReceiptReq(meteringReceiptReq));
+		case 3:
+			MeteringReceiptResType meteringReceiptRes = new MeteringReceiptResType();
+			meteringReceiptRes.setResponseCode(pick(random, ResponseCodeType.values()));
+			meteringReceiptRes.setEVSEStatus((random.nextBoolean()) ? 
+					objectFactory.createACEVSEStatus(getRandomACEVSEStatus(random)) : 
+					objectFactory.createDCEVSEStatus(getRandomDCEVSEStatus(random)));
+			return getV2GMessage(sessionID, objectFactory.createMeteringReceiptRes(meteringReceiptRes));
+		case 4:
+			CurrentDemandReqType currentDemandReq = new CurrentDemandReqType();
+			currentDemandReq.setDCEVStatus(getRandomDCEVStatus(random));
+			currentDemandReq.setEVTargetCurrent(getRandomPhysicalValue(random));
+			if (random.nextBoolean()) currentDemandReq.setEVMaximumVoltageLimit(getRandomPhysicalValue(random));
+			if (random.nextBoolean()) currentDemandReq.setBulkChargingComplete(random.nextBoolean());
+			currentDemandReq.setChargingComplete(random.nextBoolean());
+			if (random.nextBoolean()) currentDemandReq.setRemainingTimeToFullSoC(getRandomPhysicalValue(random));
+			currentDemandReq.setEVTargetVoltage(getRandomPhysicalValue(random));
+			return getV2GMessage(sessionID, objectFactory.createCurrentDemandReq(currentDemandReq));
+		case 5:
+			CurrentDemandResType currentDemandRes = new CurrentDemandResType();
+			currentDemandRes.setResponseCode(pick(random, ResponseCodeType.values()));
+			currentDemandRes.setDCEVSEStatus(getRandomDCEVSEStatus(random));
+			currentDemandRes.setEVSEPresentVoltage(getRandomPhysicalValue(random));
+			currentDemandRes.setEVSEPresentCurrent(getRandomPhysicalValue(random));
+			currentDemandRes.setEVSECurrentLimitAchieved(random.nextBoolean());
+			currentDemandRes.setEVSEVoltageLimitAchieved(random.nextBoolean());
+			currentDemandRes.setEVSEPowerLimitAchieved(random.nextBoolean());
+			if (random.nextBoolean()) currentDemandRes.setEVSEMaximumVoltageLimit(getRandomPhysicalValue(random));
+			if (random.nextBoolean()) currentDemandRes.setEVSEMaximumCurrentLimit(getRandomPhysicalValue(random));
+			if (random.nextBoolean()) currentDemandRes.setEVSEMaximumPowerLimit(getRandomPhysicalValue(random));
+			currentDemandRes.setEVSEID(getRandomString(random));
+			currentDemandRes.setSAScheduleTupleID((short) (1 + random.nextInt(255)));
+			if (random.nextBoolean()) currentDemandRes.setMeterInfo(getRandomMeterInfo(random));
+			if (random.nextBoolean()) currentDemandRes.setReceiptRequired(random.nextBoolean());
+			return getV2GMessage(sessionID, objectFactory.createCurrentDemandRes(currentDemandRes));
+		case 6:
+			PowerDeliveryReqType powerDeliveryReq = new PowerDeliveryReqType();
+			powerDeliveryReq.setChargeProgress(pick(random, ChargeProgressType.values()));
+			powerDeliveryReq.setSAScheduleTupleID((short) (1 + random.nextInt(255)));
+			
+			if (random.nextBoolean()) {
+				ChargingProfileType chargingProfile = new ChargingProfileType();
+				
+				for (int i = random.nextInt(4); i >= 0; i--) {
+					ProfileEntryType profileEntry = new ProfileEntryType();
+					profileEntry.setChargingProfileEntryStart((random.nextBoolean()) ? random.nextInt(100000) : 0xFFFFFFFFL);
+					profileEntry.setChargingProfileEntryMaxPower(getRandomPhysicalValue(random));
+					if (random.nextBoolean()) profileEntry.setChargingProfileEntryMaxNumberOfPhasesInUse((byte) (1 + random.nextInt(3)));
+					chargingProfile.getProfileEntry().add(profileEntry);
+				}
+				
+				powerDeliveryReq.setChargingProfile(chargingProfile);
+			}
+			
+			if (random.nextBoolean()) {
+				DCEVPowerDeliveryParameterType dcEVPowerDeliveryParameter = new DCEVPowerDeliveryParameterType();
+				dcEVPowerDeliveryParameter.setDCEVStatus(getRandomDCEVStatus(random));
+				if (random.nextBoolean()) dcEVPowerDeliveryParameter.setBulkChargingComplete(random.nextBoolean());
+				dcEVPowerDeliveryParameter.setChargingComplete(random.nextBoolean());
+				powerDeliveryReq.setEVPowerDeliveryParameter(objectFactory.createDCEVPowerDeliveryParameter(dcEVPowerDeliveryParameter));
+			}
+			
+			return getV2GMessage(sessionID, objectFactory.createPowerDeliveryReq(powerDeliveryReq));
+		default:
+			PowerDeliveryResType powerDeliveryRes = new PowerDeliveryResType();
+			powerDeliveryRes.setResponseCode(pick(random, ResponseCodeType.values()));
+			powerDeliveryRes.setEVSEStatus(objectFactory.createDCEVSEStatus(getRandomDCEVSEStatus(random)));
+			return getV2GMessage(sessionID, objectFactory.createPowerDeliveryRes(powerDeliveryRes));
+		}
+	}
+	
+	
+	/**
+	 * Provides 1 to maxLength random bytes.
+	 */
+	private static byte[] getRandomBytes(Random random, int maxLength) {
+		byte[] bytes = new byte[1 + random.nextInt(maxLength)];
+		random.nextBytes(bytes);
+		
+		return bytes;
+	}
+	
+	/**
+	 * Provides a random string of letters and digits, including characters outside the ASCII range and the 
+	 * Basic Multilingual Plane. One in ten strings is empty.
+	 */
+	private static String getRandomString(Random random) {
+		StringBuilder string = new StringBuilder();
+		
+		for (int i = (random.nextInt(10) == 0) ? 0 : 1 + random.nextInt(40); i > 0; i--) {
+			switch (random.nextInt(10)) {
+			case 0: string.append('\u00E4'); break;
+			case 1: string.appendCodePoint(0x1F50C); break;
+			case 2: string.append((char) ('0' + random.nextInt(10))); break;
+			default: string.append((char) ('A' + random.nextInt(26)));
+			}
+		}
+		
+		return string.toString();
+	}
+	
+	private static MeterInfoType getRandomMeterInfo(Random random) {
+		MeterInfoType meterInfo = new MeterInfoType();
+		meterInfo.setMeterID(getRandomString(random));
+		if (random.nextBoolean()) meterInfo.setMeterReading((random.nextBoolean()) ? BigInteger.valueOf(random.nextInt(100000)) : new BigInteger(64, random));
+		if (random.nextBoolean()) meterInfo.setSigMeterReading(getRandomBytes(random, 64));
+		if (random.nextBoolean()) meterInfo.setMeterStatus((short) random.nextInt());
+		if (random.nextBoolean()) meterInfo.setTMeter(random.nextLong());
+		
+		return meterInfo;
+	}
+	
+	private static DCEVStatusType getRandomDCEVStatus(Random random) {
+		DCEVStatusType dcEVStatus = new DCEVStatusType();
+		dcEVStatus.setEVReady(random.nextBoolean());
+		dcEVStatus.setEVErrorCode(pick(random, DCEVErrorCodeType.values()));
+		dcEVStatus.setEVRESSSOC((byte) random.nextInt(101));
+		
+		return dcEVStatus;
+	}
+	
+	private static DCEVSEStatusType getRandomDCEVSEStatus(Random random) {
+		DCEVSEStatusType dcEVSEStatus = new DCEVSEStatusType();
+		dcEVSEStatus.setNotificationMaxDelay(random.nextInt(65536));
+		dcEVSEStatus.setEVSENotification(pick(random, EVSENotificationType.values()));
+		if (random.nextBoolean()) dcEVSEStatus.setEVSEIsolationStatus(pick(random, IsolationLevelType.values()));
+		dcEVSEStatus.setEVSEStatusCode(pick(random, DCEVSEStatusCodeType.values()));
+		
+		return dcEVSEStatus;
+	}
+	
+	private static ACEVSEStatusType getRandomACEVSEStatus(Random random) {
+		ACEVSEStatusType acEVSEStatus = new ACEVSEStatusType();
+		acEVSEStatus.setNotificationMaxDelay(random.nextInt(65536));
+		acEVSEStatus.setEVSENotification(pick(random, EVSENotificationType.values()));
+		acEVSEStatus.setRCD(random.nextBoolean());
+		
+		return acEVSEStatus;
+	}
+	
+	private static PhysicalValueType getRandomPhysicalValue(Random random) {
+		PhysicalValueType physicalValue = new PhysicalValueType();
+		physicalValue.setMultiplier((byte) (random.nextInt(7) - 3));
+		physicalValue.setUnit(pick(random, UnitSymbolType.values()));
+		physicalValue.setValue((short) random.nextInt());
+		
+		return physicalValue;
+	}
+	
+	private static <T> T pick(Random random, T[] values) {
+		return values[random.nextInt(values.length)];
+	}
+	
+	private static String toXml(Object jaxbObject) throws JAXBException {
+		StringWriter xml = new StringWriter();
+		xmlMarshaller.marshal(jaxbObject, xml);
+		
+		return xml.toString();
+	}
+}
@@ -0,0 +1,346 @@
+/*******************************************************************************
+ *  The MIT License (MIT)
+ *
+ *  Copyright (c) 2015 - 2019  Dr. Marc Mültin (V2G Clarity)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ *******************************************************************************/
+package com.v2gclarity.risev2g.shared.messageHandling;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.bind.JAXBElement;
+
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.v2gclarity.risev2g.shared.utils.MiscUtils;
+import com.v2gclarity.risev2g.shared.utils.SecurityUtils;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.ChargingSessionType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.ChargingStatusReqType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.MeterInfoType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.MeteringReceiptReqType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.SessionSetupReqType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.SessionStopReqType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.SignedInfoType;
+import com.v2gclarity.risev2g.shared.v2gMessages.msgDef.V2GMessage;
+
+/**
+ * Stress test for the shared EXI codecs and the per-thread JAXB marshallers. Several threads en- and 
+ * decode different V2G messages at the same time through one MessageHandler, just like concurrent 
+ * communication sessions on an SECC do. Every thread must get exactly the bytes a single thread gets 
+ * for the same message, and every decoded message must encode to those bytes again. The digests and 
+ * SignedInfo elements of the XML signature are EXI encoded (as fragments) at the same time.
+ * 
+ * Besides, the throughput of pooled codecs must increase with the number of threads.
+ */
+public class MessageHandlerConcurrencyTest {
+
+	private static final int THREADS = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+	private static final int ITERATIONS_PER_THREAD = 200;
+	private static final int DISTINCT_MESSAGES = 32;
+	private static final int SCALING_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
+	private static final int SCALING_ITERATIONS = 1000;
+	private static final int SCALING_WARMUP_ROUNDS = 3;
+	private static final int SCALING_ROUNDS = 3;
+	// Deliberately low, the test is to detect codecs which serialize all threads rather than to benchmark them
+	private static final double MIN_SPEEDUP = 1.2;
+	
+	private static File propertiesFile;
+	
+	@BeforeClass
+	public static void setUpClass() throws IOException {
+		propertiesFile = File.createTempFile("MessageHandlerConcurrencyTest", ".properties");
+		writeProperties("exificient", 0);
+	}
+	
+	@AfterClass
+	public static void tearDownClass() {
+		propertiesFile.delete();
+	}
+	
+	@Test
+	public void sharedEXIficientCodec() throws Exception {
+		runConcurrentRoundTrips("exificient", 0);
+	}
+	
+	@Test
+	public void pooledEXIficientCodecs() throws Exception {
+		runConcurrentRoundTrips("exificient", 4);
+	}
+	
+	@Test
+	public void sharedGeneratedCodec() throws Exception {
+		runConcurrentRoundTrips("generated", 0);
+	}
+	
+	@Test
+	public void pooledGeneratedCodecs() throws Exception {
+		runConcurrentRoundTrips("generated", 4);
+	}
+	
+	@Test
+	public void sharedOpenEXICodec() throws Exception {
+		runConcurrentRoundTrips("open_exi", 0);
+	}
+	
+	@Test
+	public void pooledCodecsScaleWithThreads() throws Exception {
+		Assume.assumeTrue("Scaling can only be measured with at least two processors", SCALING_THREADS >= 2);
+		
+		writeProperties("generated", SCALING_THREADS);
+		MessageHandler messageHandler = new MessageHandler();
+		ReferenceEncodings reference = new ReferenceEncodings(messageHandler);
+		
+		/*
+		 * The same number of round trips, once on one thread and once spread over all threads. The first rounds 
+		 * only warm up (JIT compilation, per-thread marshallers and the codec pool), of the others the fastest 
+		 * one counts in order to rule out hiccups like garbage collections.
+		 */
+		long singleThreadDuration = Long.MAX_VALUE;
+		long multiThreadDuration = Long.MAX_VALUE;
+		
+		for (int round = 0; round < SCALING_WARMUP_ROUNDS + SCALING_ROUNDS; round++) {
+			long singleThreadRound = runRoundTrips(messageHandler, reference, 1, SCALING_THREADS * SCALING_ITERATIONS);
+			long multiThreadRound = runRoundTrips(messageHandler, reference, SCALING_THREADS, SCALING_ITERATIONS);
+			
+			if (round >= SCALING_WARMUP_ROUNDS) {
+				singleThreadDuration = Math.min(singleThreadDuration, singleThreadRound);
+				multiThreadDuration = Math.min(multiThreadDuration, multiThreadRound);
+			}
+		}
+		
+		double speedup = (double) singleThreadDuration / multiThreadDuration;
+		
+		assertTrue("Throughput with " + SCALING_THREADS + " threads is only " + String.format("%.2f", speedup) + 
+				   " times the throughput with one thread", speedup >= MIN_SPEEDUP);
+	}
+	
+	
+	private void runConcurrentRoundTrips(String exiCodec, int exiCodecPoolSize) throws Exception {
+		writeProperties(exiCodec, exiCodecPoolSize);
+		MessageHandler messageHandler = new MessageHandler();
+		
+		runRoundTrips(messageHandler, new ReferenceEncodings(messageHandler), THREADS, ITERATIONS_PER_THREAD);
+	}
+	
+	
+	/**
+	 * Lets the given number of threads en- and decode the reference messages at the same time and checks the 
+	 * results against the reference encodings. For each MeteringReceiptReq, the digest of the body and the 
+	 * SignedInfo element referencing it are encoded as well, just like for a signed message.
+	 * 
+	 * @return The time (in nanoseconds) it took all threads to complete their round trips
+	 */
+	private long runRoundTrips(
+			final MessageHandler messageHandler, 
+			final ReferenceEncodings reference, 
+			int threads, 
+			final int iterationsPerThread) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		final CountDownLatch startSignal = new CountDownLatch(1);
+		List<Future<Void>> results = new ArrayList<Future<Void>>();
+		
+		try {
+			for (int thread = 0; thread < threads; thread++) {
+				final int offset = thread;
+				
+				results.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						startSignal.await();
+						
+						for (int i = 0; i < iterationsPerThread; i++) {
+							int index = (offset + i) % DISTINCT_MESSAGES;
+							byte[] expected = reference.getEncodings().get(index);
+							
+							byte[] encoded = (byte[]) messageHandler.v2gMsgToExi(reference.getMessages().get(index));
+							assertArrayEquals("Concurrent encoding of message " + index + " differs", expected, encoded);
+							
+							if (reference.getDigests().get(index) != null) {
+								JAXBElement<?> body = reference.getMessages().get(index).getBody().getBodyElement();
+								byte[] digest = SecurityUtils.generateDigest("id" + index, body);
+								assertArrayEquals("Concurrent digest of message " + index + " differs", reference.getDigests().get(index), digest);
+								
+								byte[] exiEncodedSignedInfo = messageHandler.getExiCodec().getExiEncodedSignedInfo(
+										messageHandler.getJaxbElement(getSignedInfo(index, digest)));
+								assertArrayEquals("Concurrent encoding of the SignedInfo element of message " + index + " differs", 
+												  reference.getSignedInfoEncodings().get(index), exiEncodedSignedInfo);
+							}
+							
+							Object decoded = (i % 2 == 0) ? 
+									messageHandler.exiToV2gMsg(encoded) : 
+									messageHandler.exiToV2gMsg(ByteBuffer.wrap(encoded));
+							assertTrue("Concurrent decoding of message " + index + " failed", decoded instanceof V2GMessage);
+							
+							byte[] reencoded = (byte[]) messageHandler.v2gMsgToExi(decoded);
+							assertArrayEquals("Round trip of message " + index + " differs", expected, reencoded);
+						}
+						
+						return null;
+					}
+				}));
+			}
+			
+			long startTime = System.nanoTime();
+			startSignal.countDown();
+			
+			// Future.get() rethrows the first assertion error of the respective thread
+			for (Future<Void> result : results) result.get(2, TimeUnit.MINUTES);
+			
+			return System.nanoTime() - startTime;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	
+	/**
+	 * The messages of the test and their single-threaded encodings, which are the reference all threads are 
+	 * checked against. Digests and SignedInfo encodings are only given for the MeteringReceiptReqs, which 
+	 * are signed messages.
+	 */
+	private static final class ReferenceEncodings {
+		
+		private final List<V2GMessage> messages = new ArrayList<V2GMessage>();
+		private final List<byte[]> encodings = new ArrayList<byte[]>();
+		private final List<byte[]> digests = new ArrayList<byte[]>();
+		private final List<byte[]> signedInfoEncodings = new ArrayList<byte[]>();
+		
+		private ReferenceEncodings(MessageHandler messageHandler) {
+			for (int i = 0; i < DISTINCT_MESSAGES; i++) {
+				V2GMessage v2gMessage = getV2GMessage(messageHandler, i);
+				byte[] exiEncodedMessage = (byte[]) messageHandler.v2gMsgToExi(v2gMessage);
+				assertNotNull("Reference encoding of message " + i + " failed", exiEncodedMessage);
+				
+				messages.add(v2gMessage);
+				encodings.add(exiEncodedMessage);
+				
+				if (v2gMessage.getBody().getBodyElement().getValue() instanceof MeteringReceiptReqType) {
+					byte[] digest = SecurityUtils.generateDigest("id" + i, v2gMessage.getBody().getBodyElement());
+					assertNotNull("Reference digest of message " + i + " failed", digest);
+					
+					byte[] exiEncodedSignedInfo = messageHandler.getExiCodec().getExiEncodedSignedInfo(
+							messageHandler.getJaxbElement(getSignedInfo(i, digest)));
+					assertNotNull("Reference encoding of the SignedInfo element of message " + i + " failed", exiEncodedSignedInfo);
+					
+					digests.add(digest);
+					signedInfoEncodings.add(exiEncodedSignedInfo);
+				} else {
+					digests.add(null);
+					signedInfoEncodings.add(null);
+				}
+			}
+		}
+		
+		private List<V2GMessage> getMessages() {
+			return messages;
+		}
+		
+		private List<byte[]> getEncodings() {
+			return encodings;
+		}
+		
+		private List<byte[]> getDigests() {
+			return digests;
+		}
+		
+		private List<byte[]> getSignedInfoEncodings() {
+			return signedInfoEncodings;
+		}
+	}
+	
+	
+	private static SignedInfoType getSignedInfo(int i, byte[] digest) {
+		HashMap<String, byte[]> xmlSignatureRefElements = new HashMap<String, byte[]>();
+		xmlSignatureRefElements.put("id" + i, digest);
+		
+		return SecurityUtils.getSignedInfo(xmlSignatureRefElements);
+	}
+	
+	
+	private static V2GMessage getV2GMessage(MessageHandler messageHandler, int i) {
+		byte[] sessionID = ByteBuffer.allocate(8).putLong(0x1122334400000000L + i).array();
+		
+		switch (i % 4) {
+		case 0:
+			SessionSetupReqType sessionSetupReq = new SessionSetupReqType();
+			sessionSetupReq.setEVCCID(new byte[] {0x00, 0x1A, 0x2B, 0x3C, 0x4D, (byte) i});
+			return messageHandler.getV2GMessage(new byte[] {0x00}, null, null, messageHandler.getJaxbElement(sessionSetupReq));
+		case 1:
+			return messageHandler.getV2GMessage(sessionID, null, null, messageHandler.getJaxbElement(new ChargingStatusReqType()));
+		case 2:
+			MeterInfoType meterInfo = new MeterInfoType();
+			meterInfo.setMeterID("METER-" + i);
+			meterInfo.setMeterReading(BigInteger.valueOf(1000L * i));
+			meterInfo.setSigMeterReading(new byte[] {0x01, 0x02, (byte) i});
+			meterInfo.setTMeter(1500000000L + i);
+			
+			MeteringReceiptReqType meteringReceiptReq = new MeteringReceiptReqType();
+			meteringReceiptReq.setId("id" + i);
+			meteringReceiptReq.setSessionID(sessionID);
+			meteringReceiptReq.setSAScheduleTupleID((short) 1);
+			meteringReceiptReq.setMeterInfo(meterInfo);
+			return messageHandler.getV2GMessage(sessionID, null, null, messageHandler.getJaxbElement(meteringReceiptReq));
+		default:
+			SessionStopReqType sessionStopReq = new SessionStopReqType();
+			sessionStopReq.setChargingSession((i % 8 == 3) ? ChargingSessionType.TERMINATE : ChargingSessionType.PAUSE);
+			return messageHandler.getV2GMessage(sessionID, null, null, messageHandler.getJaxbElement(sessionStopReq));
+		}
+	}
+	
+	
+	private static void writeProperties(String exiCodec, int exiCodecPoolSize) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty("exi.codec", exiCodec);
+		properties.setProperty("exi.codec.pool.size", String.valueOf(exiCodecPoolSize));
+		properties.setProperty("exi.messages.showxml", "false");
+		properties.setProperty("exi.messages.showhex", "false");
+		properties.setProperty("signature.verification.showlog", "false");
+		
+		FileOutputStream out = new FileOutputStream(propertiesFile);
+		try {
+			properties.store(out, null);
+		} finally {
+			out.close();
+		}
+		
+		assertTrue(MiscUtils.loadProperties(propertiesFile.getAbsolutePath()));
+	}
+}